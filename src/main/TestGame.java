@@ -4,7 +4,7 @@ import main.client.rendering.Camera;
 import main.client.rendering.MeshRenderer;
 import main.client.rendering.PointLight;
 import main.client.rendering.ShaderProgram;
-import main.client.rendering.geometry.Material;
+import main.client.rendering.geometry.MeshCache;
 import main.client.rendering.geometry.MeshData;
 import main.client.rendering.geometry.MeshHelper;
 import main.client.rendering.geometry.OBJModel;
@@ -18,13 +18,14 @@ import main.core.scene.GameObject;
 import main.core.scene.SceneGraph;
 import main.core.scene.Transformation;
 import main.core.util.MathUtils;
+import main.physics.RigidBody;
+import main.physics.collision.TriangleMeshShape;
 import org.lwjgl.util.vector.Vector3f;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.function.IntPredicate;
 import java.util.stream.IntStream;
@@ -59,14 +60,14 @@ public class TestGame extends GameHandler
             ShaderProgram program = new ShaderProgram(ShaderDataLocations.getDefaultDataLocations(), vertex, geometry, fragment);
 
 
-            MeshData bunny = OBJModel.parseObj("res/models/bunny/bunny.obj").compileMesh();
-            MeshData dragon = OBJModel.parseObj("res/models/dragon/dragon.obj").compileMesh();
-            Map<Material, MeshData> sponza = OBJModel.parseObj("res/models/sponza/sponza.obj").compileMeshWithMaterials();
-//            createPhysicsObject("sponza", root, new Transformation(new Vector3f(0.0F, 1.1F, 0.0F), new Vector3f(0.333F, 0.333F, 0.333F)), sponza, program, true);
-            createPhysicsObject("dragon", root, new Transformation(new Vector3f(-6.0F, 0.0F, -.0F), MathUtils.axisAngleToQuaternion(new Vector3f(0.0F, 1.0F, 0.0F), 0.638F, null), new Vector3f(0.125F, 0.125F, 0.125F)), dragon, program, true);
-            createPhysicsObject("sponza", root, new Transformation(new Vector3f(0.0F, 0.0F, 0.0F), new Vector3f(0.01F, 0.01F, 0.01F)), sponza, program, true);
+            MeshCache bunny = OBJModel.loadCached("res/models/bunny/bunny.obj", program.getDataLocations());
+            MeshCache dragon = OBJModel.loadCached("res/models/dragon/dragon.obj", program.getDataLocations());
+            MeshCache sponza = OBJModel.loadCached("res/models/sponza/sponza.obj", program.getDataLocations());
+//            createPhysicsObject("sponza", root, new Transformation(new Vector3f(0.0F, 1.1F, 0.0F), new Vector3f(0.333F, 0.333F, 0.333F)), sponza, program, true, true);
+            createPhysicsObject("dragon", root, new Transformation(new Vector3f(-6.0F, 0.0F, -.0F), MathUtils.axisAngleToQuaternion(new Vector3f(0.0F, 1.0F, 0.0F), 0.638F, null), new Vector3f(0.125F, 0.125F, 0.125F)), dragon, program, true, false);
+            createPhysicsObject("sponza", root, new Transformation(new Vector3f(0.0F, 0.0F, 0.0F), new Vector3f(0.01F, 0.01F, 0.01F)), sponza, program, true, true);
             GameObject cube = createPhysicsObject("cube", root, new Transformation(new Vector3f(0.0F, 0.5F, 0.0F)), MeshHelper.createCuboid(-0.5F, +0.5F), program, true);
-            createPhysicsObject("bunny", cube, new Transformation(new Vector3f(0.0F, 1.1F, 0.0F), new Vector3f(0.333F, 0.333F, 0.333F)), bunny, program, true);
+            createPhysicsObject("bunny", cube, new Transformation(new Vector3f(0.0F, 1.1F, 0.0F), new Vector3f(0.333F, 0.333F, 0.333F)), bunny, program, true, false);
         } catch (IOException e)
         {
             e.printStackTrace();
@@ -115,14 +116,26 @@ public class TestGame extends GameHandler
     {
         GameObject gameObject = new GameObject(transformation);
         gameObject.addComponent("meshRenderer", new MeshRenderer(mesh, shaderProgram));
+        gameObject.addComponent("rigidBody", new RigidBody(staticObject ? 0.0F : 1.0F).setBounds(mesh.getBounds()));
         parent.addChild(name, gameObject);
         return gameObject;
     }
 
-    private GameObject createPhysicsObject(String name, GameObject parent, Transformation transformation, Map<Material, MeshData> mesh, ShaderProgram shaderProgram, boolean staticObject)
+    /**
+     * Creates an object for the meshes of a {@link MeshCache}. Static objects can collide against the
+     * triangles of the mesh directly, and otherwise only against its bounds.
+     */
+    private GameObject createPhysicsObject(String name, GameObject parent, Transformation transformation, MeshCache mesh, ShaderProgram shaderProgram, boolean staticObject, boolean meshCollider) throws IOException
     {
         GameObject gameObject = new GameObject(transformation);
-        gameObject.addComponent("meshRenderer", new MeshRenderer(mesh, shaderProgram));
+        gameObject.addComponent("meshRenderer", new MeshRenderer(mesh, mesh.loadMaterials(), shaderProgram));
+        RigidBody rigidBody = new RigidBody(staticObject ? 0.0F : 1.0F).setBounds(mesh.getBounds());
+
+        // Static level geometry collides against its triangles directly.
+        if (staticObject && meshCollider)
+            rigidBody.setShape(new TriangleMeshShape(mesh.getPositions(transformation.getScale()), mesh.getIndices()));
+
+        gameObject.addComponent("rigidBody", rigidBody);
         parent.addChild(name, gameObject);
         return gameObject;
     }
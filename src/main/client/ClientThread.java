@@ -267,6 +267,13 @@ public class ClientThread extends TickableThread
         return true;
     }
 
+    @Override
+    protected boolean isFixedTimestep()
+    {
+        // Frames are never rendered back to back to catch up, they are simply late.
+        return false;
+    }
+
     @Override
     public double getUpdateDelta()
     {
@@ -9,9 +9,11 @@ import main.core.scene.Transformation;
 import main.core.scene.boundingbox.AxisAlignedBB;
 import main.core.scene.boundingbox.IntersectionType;
 import main.core.util.MathUtils;
+import main.core.util.ScratchPool;
 import org.lwjgl.util.vector.*;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author Kelan
@@ -27,9 +29,13 @@ public class Camera extends Component
 
     private Matrix4f projectionMatrix = new Matrix4f();
     private Matrix4f viewMatrix = new Matrix4f();
+    private final Matrix4f viewProjectionMatrix = new Matrix4f();
+    private final Quaternion rotation = new Quaternion();
+    private final Vector3f position = new Vector3f();
 
     private Vector4f[] frustum = new Vector4f[6];
     private GLMesh frustumMesh;
+    private MeshData frustumMeshData;
 
     public Camera(Transformation transformationOffset, float near, float far, float fov, float aspect)
     {
@@ -74,7 +80,22 @@ public class Camera extends Component
     @Override
     public void render(double delta)
     {
-        float aspect = getAspect() <= 0.0F ? Engine.getClientThread().getWindowAspectRatio() : getAspect();
+        this.updateMatrices(getAspect() <= 0.0F ? Engine.getClientThread().getWindowAspectRatio() : getAspect());
+
+        if (Engine.getClientThread().doUpdateFrustum())
+        {
+            this.updateFrustumMesh();
+            this.updateFrustum(this.viewProjectionMatrix);
+        }
+    }
+
+    /**
+     * Updates the projection and view matrices from the fov and the transformation of the camera,
+     * in place. This is called by {@link #render(double)} every frame, and can be called directly
+     * where there is no window to take the aspect ratio from.
+     */
+    public void updateMatrices(float aspect)
+    {
         float tangent = (float) (1.0 / Math.tan(Math.toRadians(this.fov * 0.5)));
 
         float right = this.near / tangent * aspect;
@@ -103,38 +124,29 @@ public class Camera extends Component
 //        this.projectionMatrix.m23 = -1.0F;
 //        this.projectionMatrix.m32 = -(2.0F * this.far * this.near) / (this.far - this.near);
 
-        this.viewMatrix = MathUtils.quaternionToMatrix4f(this.getRotationWithOffset(), null).translate(this.getPositionWithOffset().negate(null));
+        if (this.viewMatrix == null)
+            this.viewMatrix = new Matrix4f();
 
-        if (Engine.getClientThread().doUpdateFrustum())
-        {
-            Matrix4f viewProjection = Matrix4f.mul(this.projectionMatrix, this.viewMatrix, null);
-
-            if (this.frustumMesh == null)
-                this.frustumMesh = new GLMesh().allocateBuffers(8 * (Vertex.BYTES / Float.BYTES), 24);
+        this.viewMatrix.setIdentity();
+        MathUtils.quaternionToMatrix4f(this.getRotationWithOffset(this.rotation), this.viewMatrix);
+        this.viewMatrix.translate(this.getPositionWithOffset(this.position).negate(this.position));
 
-            Vector3f p = this.getPositionWithOffset();
+        Matrix4f.mul(this.projectionMatrix, this.viewMatrix, this.viewProjectionMatrix);
+    }
 
-            Vector3f forward = getPickingVector(new Vector2f(0.0F, 0.0F));
-            Vector3f v00 = getPickingVector(new Vector2f(-1.0F, -1.0F));
-            Vector3f v10 = getPickingVector(new Vector2f(+1.0F, -1.0F));
-            Vector3f v01 = getPickingVector(new Vector2f(-1.0F, +1.0F));
-            Vector3f v11 = getPickingVector(new Vector2f(+1.0F, +1.0F));
+    /**
+     * Updates the debug mesh of the frustum, reusing its vertices.
+     */
+    private void updateFrustumMesh()
+    {
+        if (this.frustumMesh == null)
+        {
+            this.frustumMesh = new GLMesh().allocateBuffers(8 * (Vertex.BYTES / Float.BYTES), 24);
 
-            float r00 = 1.0F / Vector3f.dot(forward, v00);
-            float r10 = 1.0F / Vector3f.dot(forward, v10);
-            float r01 = 1.0F / Vector3f.dot(forward, v01);
-            float r11 = 1.0F / Vector3f.dot(forward, v11);
+            Vertex[] vertices = new Vertex[8];
 
-            Vertex[] vertices = new Vertex[]{
-                    new Vertex(Vector3f.add((Vector3f) new Vector3f(v00).scale(r00 * this.near * 2.0F), p, null)),   // TLN // 0
-                    new Vertex(Vector3f.add((Vector3f) new Vector3f(v10).scale(r10 * this.near * 2.0F), p, null)),   // TRN // 1
-                    new Vertex(Vector3f.add((Vector3f) new Vector3f(v01).scale(r11 * this.near * 2.0F), p, null)),   // BLN // 2
-                    new Vertex(Vector3f.add((Vector3f) new Vector3f(v11).scale(r01 * this.near * 2.0F), p, null)),   // BRN // 3
-                    new Vertex(Vector3f.add((Vector3f) new Vector3f(v00).scale(r00 * this.far * 2.0F), p, null)),    // TLF // 4
-                    new Vertex(Vector3f.add((Vector3f) new Vector3f(v10).scale(r10 * this.far * 2.0F), p, null)),    // TRF // 5
-                    new Vertex(Vector3f.add((Vector3f) new Vector3f(v01).scale(r11 * this.far * 2.0F), p, null)),    // BLF // 6
-                    new Vertex(Vector3f.add((Vector3f) new Vector3f(v11).scale(r01 * this.far * 2.0F), p, null)),    // BRF // 7
-            };
+            for (int i = 0; i < vertices.length; i++)
+                vertices[i] = new Vertex(new Vector3f());
 
             Integer[] indices = new Integer[]{
                     6, 2, 4, 2, 0, 4, // left
@@ -143,12 +155,52 @@ public class Camera extends Component
                     2, 6, 3, 6, 7, 3, // bottom
             };
 
-            MeshData mesh = new MeshData(Arrays.asList(vertices), Arrays.asList(indices));
+            this.frustumMeshData = new MeshData(Arrays.asList(vertices), Arrays.asList(indices));
+        }
+
+        ScratchPool pool = ScratchPool.get();
+        pool.push();
 
-            this.frustumMesh.reset().uploadMeshData(mesh);
+        try
+        {
+            Vector3f p = this.getPositionWithOffset(pool.vector3f());
+            Vector2f screenPosition = pool.vector2f();
+
+            Vector3f forward = getPickingVector(screenPosition, pool.vector3f());
+            screenPosition.set(-1.0F, -1.0F);
+            Vector3f v00 = getPickingVector(screenPosition, pool.vector3f());
+            screenPosition.set(+1.0F, -1.0F);
+            Vector3f v10 = getPickingVector(screenPosition, pool.vector3f());
+            screenPosition.set(-1.0F, +1.0F);
+            Vector3f v01 = getPickingVector(screenPosition, pool.vector3f());
+            screenPosition.set(+1.0F, +1.0F);
+            Vector3f v11 = getPickingVector(screenPosition, pool.vector3f());
 
-            this.updateFrustum(viewProjection);
+            float r00 = 1.0F / Vector3f.dot(forward, v00);
+            float r10 = 1.0F / Vector3f.dot(forward, v10);
+            float r01 = 1.0F / Vector3f.dot(forward, v01);
+            float r11 = 1.0F / Vector3f.dot(forward, v11);
+
+            List<Vertex> vertices = this.frustumMeshData.getVertices();
+            setFrustumVertex(vertices.get(0), v00, r00 * this.near * 2.0F, p);   // TLN // 0
+            setFrustumVertex(vertices.get(1), v10, r10 * this.near * 2.0F, p);   // TRN // 1
+            setFrustumVertex(vertices.get(2), v01, r11 * this.near * 2.0F, p);   // BLN // 2
+            setFrustumVertex(vertices.get(3), v11, r01 * this.near * 2.0F, p);   // BRN // 3
+            setFrustumVertex(vertices.get(4), v00, r00 * this.far * 2.0F, p);    // TLF // 4
+            setFrustumVertex(vertices.get(5), v10, r10 * this.far * 2.0F, p);    // TRF // 5
+            setFrustumVertex(vertices.get(6), v01, r11 * this.far * 2.0F, p);    // BLF // 6
+            setFrustumVertex(vertices.get(7), v11, r01 * this.far * 2.0F, p);    // BRF // 7
+        } finally
+        {
+            pool.pop();
         }
+
+        this.frustumMesh.reset().uploadMeshData(this.frustumMeshData);
+    }
+
+    private static void setFrustumVertex(Vertex vertex, Vector3f direction, float distance, Vector3f origin)
+    {
+        vertex.getPosition().set(origin.x + direction.x * distance, origin.y + direction.y * distance, origin.z + direction.z * distance);
     }
 
     @Override
@@ -172,7 +224,7 @@ public class Camera extends Component
         if (viewMatrix != null)
         {
             shaderProgram.setUniformMatrix4f("viewMatrix", viewMatrix);
-            shaderProgram.setUniformVector3f("cameraDirection", new Vector3f(viewMatrix.m20, viewMatrix.m21, viewMatrix.m22));
+            shaderProgram.setUniformVector3f("cameraDirection", viewMatrix.m20, viewMatrix.m21, viewMatrix.m22);
         }
 
         if (projectionMatrix != null)
@@ -183,7 +235,7 @@ public class Camera extends Component
         shaderProgram.setUniformVector1f("Fcoef", (float) (2.0 / (Math.log(this.far + 1.0) / Math.log(2.0)))); // For logarithmic depth buffer.
         shaderProgram.setUniformVector1f("nearPlane", this.near);
         shaderProgram.setUniformVector1f("farPlane", this.far);
-        shaderProgram.setUniformVector3f("cameraPosition", this.getPositionWithOffset());
+        shaderProgram.setUniformVector3f("cameraPosition", this.getPositionWithOffset(this.position));
     }
 
     @Override
@@ -307,6 +359,15 @@ public class Camera extends Component
         return true; // Return true if the point is inside the frustum, or if the frustum is null. No frustum means we just updateUnloadedChunks everything.
     }
 
+    /**
+     * Gets the planes of the frustum as of the last frustum update, with their normals facing into
+     * the frustum. The planes are null until the first update.
+     */
+    public Vector4f[] getFrustum()
+    {
+        return frustum;
+    }
+
     public IntersectionType aabbInFrustum(AxisAlignedBB aabb)
     {
         boolean flag = true;
@@ -318,8 +379,14 @@ public class Camera extends Component
                 Vector4f plane = this.frustum[i];
                 if (plane != null)
                 {
-                    float furthestNormalPos = MathUtils.getSignedPlaneDistance(AxisAlignedBB.getFurthestPoint(aabb, new Vector3f(+plane.x, +plane.y, +plane.z)), plane);
-                    float furthestNormalNeg = MathUtils.getSignedPlaneDistance(AxisAlignedBB.getFurthestPoint(aabb, new Vector3f(-plane.x, -plane.y, -plane.z)), plane);
+                    // The furthest points along the normal and against it are the center plus and minus
+                    // the half extents projected onto the normal, so no corners need to be found.
+                    Vector3f position = aabb.getPosition();
+                    Vector3f halfExtents = aabb.getHalfExtents();
+                    float centerDistance = plane.x * position.x + plane.y * position.y + plane.z * position.z + plane.w;
+                    float radius = Math.abs(plane.x) * halfExtents.x + Math.abs(plane.y) * halfExtents.y + Math.abs(plane.z) * halfExtents.z;
+                    float furthestNormalPos = centerDistance + radius;
+                    float furthestNormalNeg = centerDistance - radius;
 
                     // If the furthest point in the direction of the planes normal is below the plane, there is no way we can be intersecting any of the other planes.
                     if (furthestNormalPos < 0.0F)
@@ -343,7 +410,21 @@ public class Camera extends Component
 
     public Vector3f getPositionWithOffset()
     {
-        return Vector3f.add(getPosition(), getPositionOffset(), null);
+        return getPositionWithOffset(null);
+    }
+
+    public Vector3f getPositionWithOffset(Vector3f dest)
+    {
+        if (getParent() == null)
+        {
+            if (dest == null)
+                dest = new Vector3f();
+
+            dest.set(getPositionOffset());
+            return dest;
+        }
+
+        return Vector3f.add(getParent().getTransformation().getTranslation(), getPositionOffset(), dest);
     }
 
     public Vector3f getPositionOffset()
@@ -358,7 +439,21 @@ public class Camera extends Component
 
     public Quaternion getRotationWithOffset()
     {
-        return Quaternion.mul(getRotation(), getRotationOffset(), null);
+        return getRotationWithOffset(null);
+    }
+
+    public Quaternion getRotationWithOffset(Quaternion dest)
+    {
+        if (getParent() == null)
+        {
+            if (dest == null)
+                dest = new Quaternion();
+
+            dest.set(getRotationOffset());
+            return dest;
+        }
+
+        return Quaternion.mul(getParent().getTransformation().getRotation(), getRotationOffset(), dest);
     }
 
     public Quaternion getRotationOffset()
@@ -397,19 +492,41 @@ public class Camera extends Component
     }
 
     public Vector3f getPickingVector(Vector2f position)
+    {
+        return getPickingVector(position, null);
+    }
+
+    /**
+     * Gets the unit direction of the ray through a point on the screen, from -1 to +1 on both axes,
+     * or null if the matrices of the camera are not set.
+     */
+    public Vector3f getPickingVector(Vector2f position, Vector3f dest)
     {
         if (position != null && this.projectionMatrix != null && this.viewMatrix != null)
         {
-            Matrix4f invProjectionMatrix = Matrix4f.invert(this.projectionMatrix, null);
-            Matrix4f invViewMatrix = Matrix4f.invert(this.viewMatrix, null);
-            Vector4f clipCoords, eyeCoords, worldCoords;
+            ScratchPool pool = ScratchPool.get();
+            pool.push();
+
+            try
+            {
+                Matrix4f invProjectionMatrix = Matrix4f.invert(this.projectionMatrix, pool.matrix4f());
+                Matrix4f invViewMatrix = Matrix4f.invert(this.viewMatrix, pool.matrix4f());
+                Vector4f coords = pool.vector4f();
+
+                coords.set(position.x, -position.y, -1.0F, 1.0F);
+                Matrix4f.transform(invProjectionMatrix, coords, coords); // Clip to eye coordinates.
+                coords.set(coords.x, coords.y, -1.0F, 0.0F);
+                Matrix4f.transform(invViewMatrix, coords, coords);       // Eye to world coordinates.
 
-            clipCoords = new Vector4f(position.x, -position.y, -1.0F, 1.0F);
-            eyeCoords = Matrix4f.transform(invProjectionMatrix, clipCoords, null);
-            eyeCoords = new Vector4f(eyeCoords.x, eyeCoords.y, -1.0F, 0.0F);
-            worldCoords = Matrix4f.transform(invViewMatrix, eyeCoords, null);
+                if (dest == null)
+                    dest = new Vector3f();
 
-            return new Vector3f(worldCoords).normalise(null);
+                dest.set(coords.x, coords.y, coords.z);
+                return dest.normalise(dest);
+            } finally
+            {
+                pool.pop();
+            }
         }
 
         return null;
@@ -440,6 +557,15 @@ public class Camera extends Component
         return viewMatrix;
     }
 
+    /**
+     * Gets the product of the projection and view matrices, as of the last time the matrices were
+     * updated.
+     */
+    public Matrix4f getViewProjectionMatrix()
+    {
+        return viewProjectionMatrix;
+    }
+
     public void setNear(float near)
     {
         this.near = near;
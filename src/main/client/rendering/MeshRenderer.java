@@ -2,13 +2,14 @@ package main.client.rendering;
 
 import main.client.rendering.geometry.GLMesh;
 import main.client.rendering.geometry.Material;
+import main.client.rendering.geometry.MeshCache;
 import main.client.rendering.geometry.MeshData;
 import main.core.Engine;
 import main.core.scene.Component;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.function.BiConsumer;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -17,14 +18,15 @@ import static org.lwjgl.opengl.GL11.*;
  */
 public class MeshRenderer extends Component
 {
-    private Map<Material, GLMesh> mesh = new HashMap<>();
+    private final List<Material> materials = new ArrayList<>();
+    private final List<GLMesh> meshes = new ArrayList<>();
     private ShaderProgram shader = null;
     private boolean enableDepth = true;
     private boolean enableBlend = true;
 
     public MeshRenderer(GLMesh mesh, ShaderProgram shader, Material material)
     {
-        this.mesh.put(material == null ? Material.NO_MATERIAL : material, mesh);
+        this.addMesh(material == null ? Material.NO_MATERIAL : material, mesh);
         this.shader = shader;
     }
 
@@ -35,7 +37,7 @@ public class MeshRenderer extends Component
 
     public MeshRenderer(MeshData mesh, ShaderProgram shader, Material material)
     {
-        this.mesh.put(material == null ? Material.NO_MATERIAL : material, new GLMesh(mesh, shader.getDataLocations()));
+        this.addMesh(material == null ? Material.NO_MATERIAL : material, new GLMesh(mesh, shader.getDataLocations()));
         this.shader = shader;
     }
 
@@ -46,10 +48,40 @@ public class MeshRenderer extends Component
 
     public MeshRenderer(Map<Material, MeshData> meshMap, ShaderProgram shaderProgram)
     {
-        meshMap.forEach((material, meshData) -> mesh.put(material, new GLMesh(meshData, shaderProgram.getDataLocations())));
+        meshMap.forEach((material, meshData) -> addMesh(material, new GLMesh(meshData, shaderProgram.getDataLocations())));
         this.shader = shaderProgram;
     }
 
+    /**
+     * Creates a renderer for the meshes of a {@link MeshCache}, uploading the cached buffers straight
+     * to GL. A range without a material is drawn with {@link Material#NO_MATERIAL}. Every range gets
+     * its own mesh, even when several ranges end up with the same material, such as ranges whose
+     * materials could not be found.
+     *
+     * @param materials The material of every range of the cache.
+     */
+    public MeshRenderer(MeshCache cache, Material[] materials, ShaderProgram shaderProgram)
+    {
+        for (int i = 0; i < cache.getRangeCount(); i++)
+            addMesh(materials[i] == null ? Material.NO_MATERIAL : materials[i], createMesh(cache, i, shaderProgram));
+
+        this.shader = shaderProgram;
+    }
+
+    /**
+     * Uploads a range of a cache to GL.
+     */
+    protected GLMesh createMesh(MeshCache cache, int range, ShaderProgram shaderProgram)
+    {
+        return new GLMesh(cache.getVertexData(range), cache.getIndexData(range), shaderProgram.getDataLocations());
+    }
+
+    private void addMesh(Material material, GLMesh mesh)
+    {
+        materials.add(material);
+        meshes.add(mesh);
+    }
+
     @Override
     public void init()
     {
@@ -71,7 +103,7 @@ public class MeshRenderer extends Component
     @Override
     public void render(double delta, ShaderProgram shaderProgram)
     {
-        if (shaderProgram != null && mesh != null)
+        if (shaderProgram != null)
         {
             ShaderProgram.bind(shaderProgram);
             this.applyUniforms(shaderProgram);
@@ -86,15 +118,18 @@ public class MeshRenderer extends Component
             else
                 glDisable(GL_BLEND);
 
-            mesh.forEach((material, glMesh) -> {
+            for (int i = 0; i < meshes.size(); i++)
+            {
+                Material material = materials.get(i);
+
                 if (material != null)
                 {
                     material.bind(shaderProgram);
-                    glMesh.draw();
+                    meshes.get(i).draw();
                     material.unbind();
                     shaderProgram.setUniformBoolean("normalMap", false);
                 }
-            });
+            }
 
             ShaderProgram.bind(null);
         }
@@ -115,6 +150,24 @@ public class MeshRenderer extends Component
             this.getParent().applyUniforms(shaderProgram);
     }
 
+    /**
+     * @return The number of meshes this renderer draws, one per material range.
+     */
+    public int getMeshCount()
+    {
+        return meshes.size();
+    }
+
+    public Material getMaterial(int mesh)
+    {
+        return materials.get(mesh);
+    }
+
+    public GLMesh getMesh(int mesh)
+    {
+        return meshes.get(mesh);
+    }
+
     public ShaderProgram getShader()
     {
         return shader;
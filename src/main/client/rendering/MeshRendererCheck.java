@@ -0,0 +1,121 @@
+package main.client.rendering;
+
+import main.client.rendering.geometry.GLMesh;
+import main.client.rendering.geometry.Material;
+import main.client.rendering.geometry.MeshCache;
+import main.client.rendering.geometry.MeshData;
+import main.client.rendering.geometry.ShaderDataLocations;
+import main.client.rendering.geometry.Vertex;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that a {@link MeshRenderer} built from a {@link MeshCache} draws every range of the cache. A
+ * cache is written for a model with three ranges that have no material: one whose faces had none, and
+ * two whose materials are not in any material file. The materials of all three are then loaded as
+ * null, and the renderer must still keep a mesh for each of them, drawn with
+ * {@link Material#NO_MATERIAL}, rather than letting one replace the others.
+ *
+ * This needs no window, and exits with a non-zero status if the check fails.
+ *
+ * @author Kelan
+ */
+public class MeshRendererCheck
+{
+    public static void main(String[] args) throws IOException
+    {
+        File directory = Files.createTempDirectory("meshcache").toFile();
+        File source = new File(directory, "model.obj");
+        Files.write(source.toPath(), "# Three ranges without a material\n".getBytes(StandardCharsets.UTF_8));
+
+        Map<Material, MeshData> meshes = new LinkedHashMap<>();
+        meshes.put(null, createTriangles(1));
+        meshes.put(new Material("missing"), createTriangles(2));
+        meshes.put(new Material("alsoMissing"), createTriangles(3));
+
+        ShaderDataLocations attributes = ShaderDataLocations.getDefaultDataLocations();
+        MeshCache.write(source, Collections.emptyList(), meshes, attributes);
+
+        int failures = 0;
+
+        try
+        {
+            MeshCache cache = MeshCache.load(source, attributes);
+
+            if (cache == null)
+            {
+                System.out.println("FAILED: the cache was not loaded");
+                System.exit(1);
+            }
+
+            Material[] materials = cache.loadMaterials();
+            MeshRenderer renderer = new HeadlessMeshRenderer(cache, materials);
+
+            System.out.println(String.format("%d ranges, materials %s: %d meshes drawn", cache.getRangeCount(), Arrays.toString(materials), renderer.getMeshCount()));
+
+            if (renderer.getMeshCount() != cache.getRangeCount())
+                failures++;
+
+            for (int i = 0; i < renderer.getMeshCount(); i++)
+                if (materials[i] != null || renderer.getMaterial(i) != Material.NO_MATERIAL)
+                    failures++;
+        } finally
+        {
+            MeshCache.getCacheFile(source).delete();
+            source.delete();
+            directory.delete();
+        }
+
+        if (failures > 0)
+        {
+            System.out.println("FAILED: ranges without a material are not all drawn");
+            System.exit(1);
+        }
+
+        System.out.println("OK");
+    }
+
+    /**
+     * Creates a mesh of separate triangles, without indices.
+     */
+    private static MeshData createTriangles(int triangles)
+    {
+        List<Vertex> vertices = new ArrayList<>();
+
+        for (int i = 0; i < triangles; i++)
+        {
+            vertices.add(new Vertex(new Vector3f(i, 0.0F, 0.0F)));
+            vertices.add(new Vertex(new Vector3f(i + 1.0F, 0.0F, 0.0F)));
+            vertices.add(new Vertex(new Vector3f(i, 1.0F, 0.0F)));
+        }
+
+        return new MeshData(vertices);
+    }
+
+    /**
+     * A renderer that does not upload its meshes, since there is no GL context to upload them to.
+     */
+    private static class HeadlessMeshRenderer extends MeshRenderer
+    {
+        HeadlessMeshRenderer(MeshCache cache, Material[] materials)
+        {
+            super(cache, materials, null);
+        }
+
+        @Override
+        protected GLMesh createMesh(MeshCache cache, int range, ShaderProgram shaderProgram)
+        {
+            return null;
+        }
+    }
+}
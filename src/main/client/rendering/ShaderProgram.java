@@ -94,7 +94,13 @@ public class ShaderProgram
 
     public int getUniformLocation(String uniform)
     {
-        return this.uniforms.computeIfAbsent(uniform, x -> glGetUniformLocation(this.programID, uniform));
+        // Looked up without a capturing lambda, since this runs for every uniform of every draw.
+        Integer location = this.uniforms.get(uniform);
+
+        if (location == null)
+            this.uniforms.put(uniform, location = glGetUniformLocation(this.programID, uniform));
+
+        return location;
 //        return glGetUniformLocation(program, uniform);
     }
 
@@ -45,6 +45,21 @@ public class GLMesh
         }
     }
 
+    /**
+     * Creates a mesh from vertex and index data that is already laid out as the attributes expect,
+     * such as the buffers of a {@link MeshCache}.
+     */
+    public GLMesh(FloatBuffer vertexBufferData, IntBuffer indexBufferData, ShaderDataLocations attributes)
+    {
+        if (attributes == null)
+            this.attributes = ShaderDataLocations.getDefaultDataLocations();
+        else
+            this.attributes = attributes;
+
+        createBuffers();
+        uploadBufferData(vertexBufferData, indexBufferData);
+    }
+
     public GLMesh(MeshData meshData)
     {
         this(meshData, null);
@@ -101,6 +116,37 @@ public class GLMesh
         return this;
     }
 
+    /**
+     * Replaces the contents of this mesh with vertex and index data that is already laid out as the
+     * attributes of this mesh expect. The buffers are uploaded directly from their position to their
+     * limit, and the index data may be null for a mesh without indices.
+     */
+    public GLMesh uploadBufferData(FloatBuffer vertexBufferData, IntBuffer indexBufferData)
+    {
+        reset();
+
+        glBindVertexArray(vertexArray);
+
+        vertexCapacity = vertexCount = vertexBufferData.remaining() / (attributes.stride / Float.BYTES);
+        indexCapacity = indexCount = indexBufferData == null ? 0 : indexBufferData.remaining();
+
+        glBindBuffer(GL_ARRAY_BUFFER, vertexBuffer);
+        glBufferData(GL_ARRAY_BUFFER, vertexBufferData, GL_STATIC_DRAW);
+
+        if (indexBufferData != null)
+        {
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexBufferData, GL_STATIC_DRAW);
+        }
+
+        attributes.enableVertexAttributes();
+        attributes.bindVertexAttributes();
+        attributes.disableVertexAttributes();
+        glBindVertexArray(0);
+
+        return this;
+    }
+
     public GLMesh allocateBuffers(long vertexCapacity, long indexCapacity)
     {
         reset();
@@ -0,0 +1,577 @@
+package main.client.rendering.geometry;
+
+import main.core.scene.boundingbox.AxisAlignedBB;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A binary cache of the compiled meshes of a model file, kept next to it, so the model does not need
+ * to be parsed, triangulated and compiled again every time it is loaded. The cache holds the vertex
+ * and index buffers of every material exactly as {@link MeshData#getVertexBufferData} and
+ * {@link MeshData#getIndexBufferData} produce them, in native byte order, and is memory mapped when
+ * loaded, so the buffers can be handed straight to GL without creating any objects per vertex.
+ *
+ * A cache belongs to the length, modification time and CRC32C hash of its source file. It is used as
+ * it is when the length and time still match. If only the time has changed, the source is hashed, and
+ * if the hash still matches, the new time is written into the cache. Anything else, as well as a
+ * different version, byte order or vertex format, means the cache is stale, and it is not loaded.
+ *
+ * The file starts with the header, followed by the vertex data of every range, then the index data of
+ * every range:
+ *
+ * <pre>
+ * int magic, int version
+ * long source length, long source modification time, long source hash
+ * int stride, string vertex format
+ * int library count, string library...
+ * int range count, (string material, int vertex offset, int vertex count, int index offset, int index count, float[6] bounds)...
+ * </pre>
+ *
+ * Strings are an int byte length, or -1 for null, followed by UTF-8 bytes. Vertex offsets are in
+ * vertices and index offsets in indices, from the start of their section, and the indices of a range
+ * start at zero for its first vertex.
+ *
+ * @author Kelan
+ */
+public class MeshCache
+{
+    public static final String EXTENSION = ".meshcache";
+
+    private static final int MAGIC = 0x4D534843; // MSHC
+    private static final int VERSION = 3; // 2: the meshes are welded. 3: the meshes are optimised.
+    private static final int SOURCE_MODIFIED_OFFSET = 16;
+    private static final int ALIGNMENT = 16;
+
+    private final File source;
+    private final MappedByteBuffer buffer;
+    private final int stride;
+    private final String vertexFormat;
+    private final List<String> materialLibraries;
+    private final Range[] ranges;
+    private final int vertexDataOffset;
+    private final int indexDataOffset;
+    private final int vertexCount;
+    private final int indexCount;
+
+    private MeshCache(File source, MappedByteBuffer buffer, int stride, String vertexFormat, List<String> materialLibraries, Range[] ranges, int vertexDataOffset)
+    {
+        this.source = source;
+        this.buffer = buffer;
+        this.stride = stride;
+        this.vertexFormat = vertexFormat;
+        this.materialLibraries = materialLibraries;
+        this.ranges = ranges;
+        this.vertexDataOffset = vertexDataOffset;
+
+        int vertexCount = 0, indexCount = 0;
+
+        for (Range range : ranges)
+        {
+            vertexCount += range.vertexCount;
+            indexCount += range.indexCount;
+        }
+
+        this.vertexCount = vertexCount;
+        this.indexCount = indexCount;
+        this.indexDataOffset = align(vertexDataOffset + vertexCount * stride);
+    }
+
+    /**
+     * Gets the cache file of a source file.
+     */
+    public static File getCacheFile(File source)
+    {
+        return new File(source.getPath() + EXTENSION);
+    }
+
+    /**
+     * Loads the cache of a source file.
+     *
+     * @return The cache, or null if there is none, or it is stale or unreadable.
+     */
+    public static MeshCache load(File source, ShaderDataLocations attributes) throws IOException
+    {
+        File file = getCacheFile(source);
+
+        if (!file.isFile() || !source.isFile())
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            if (channel.size() < 8 || channel.size() > Integer.MAX_VALUE)
+                return null;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            long sourceLength = buffer.getLong();
+            long sourceModified = buffer.getLong();
+            long sourceHash = buffer.getLong();
+
+            if (sourceLength != source.length())
+                return null;
+
+            if (sourceModified != source.lastModified())
+            {
+                if (sourceHash != hash(source))
+                    return null;
+
+                updateSourceModified(file, source.lastModified());
+            }
+
+            int stride = buffer.getInt();
+            String vertexFormat = readString(buffer);
+
+            if (stride != attributes.stride || !String.valueOf(attributes.vertexFormat).equals(String.valueOf(vertexFormat)))
+                return null;
+
+            List<String> materialLibraries = new ArrayList<>();
+            int libraryCount = buffer.getInt();
+
+            for (int i = 0; i < libraryCount; i++)
+                materialLibraries.add(readString(buffer));
+
+            Range[] ranges = new Range[buffer.getInt()];
+
+            for (int i = 0; i < ranges.length; i++)
+                ranges[i] = new Range(readString(buffer), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+
+            long vertexCount = 0, indexCount = 0;
+
+            for (Range range : ranges)
+            {
+                if (range.vertexOffset != vertexCount || range.indexOffset != indexCount || range.vertexCount < 0 || range.indexCount < 0)
+                    return null;
+
+                vertexCount += range.vertexCount;
+                indexCount += range.indexCount;
+            }
+
+            long vertexDataOffset = align((long) buffer.position());
+
+            if (align(vertexDataOffset + vertexCount * stride) + indexCount * Integer.BYTES > buffer.capacity())
+                return null;
+
+            return new MeshCache(source, buffer, stride, vertexFormat, materialLibraries, ranges, (int) vertexDataOffset);
+        } catch (RuntimeException e)
+        {
+            // A truncated or corrupt cache reads past the end of the buffer, or has nonsense lengths.
+            System.err.println("Failed to read mesh cache " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a new source modification time into a cache whose source was found to be unchanged. A
+     * cache that cannot be written to is still used, it is just hashed again next time.
+     */
+    private static void updateSourceModified(File file, long sourceModified)
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE))
+        {
+            ByteBuffer modified = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder()).putLong(0, sourceModified);
+            writeFully(channel, modified, SOURCE_MODIFIED_OFFSET);
+        } catch (IOException e)
+        {
+            System.err.println("Failed to update mesh cache " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Writes the cache of a source file, from the meshes compiled from it, one per material. The null
+     * material is allowed. The cache is written to a temporary file first, and moved over the old one
+     * when it is complete.
+     *
+     * @param materialLibraries The material files of the source, relative to it.
+     */
+    public static void write(File source, List<String> materialLibraries, Map<Material, MeshData> meshes, ShaderDataLocations attributes) throws IOException
+    {
+        List<Material> materials = new ArrayList<>(meshes.keySet());
+        List<MeshData> meshData = new ArrayList<>();
+        byte[][] names = new byte[materials.size()][];
+        int headerBytes = 8 + 24 + 4 + stringBytes(attributes.vertexFormat) + 4 + 4;
+        long vertexCount = 0, indexCount = 0;
+
+        for (String library : materialLibraries)
+            headerBytes += stringBytes(library);
+
+        for (int i = 0; i < materials.size(); i++)
+        {
+            MeshData mesh = meshes.get(materials.get(i));
+            meshData.add(mesh);
+            names[i] = materials.get(i) == null ? null : materials.get(i).getName().getBytes(StandardCharsets.UTF_8);
+            headerBytes += 4 + (names[i] == null ? 0 : names[i].length) + 16 + 24;
+            vertexCount += mesh.getNumVertices();
+            indexCount += mesh.getNumIndices();
+        }
+
+        long vertexDataOffset = align(headerBytes);
+        long indexDataOffset = align(vertexDataOffset + vertexCount * attributes.stride);
+
+        if (indexDataOffset + indexCount * Integer.BYTES > Integer.MAX_VALUE)
+            throw new IOException("The meshes of " + source + " are too large to be cached");
+
+        ByteBuffer header = ByteBuffer.allocate((int) vertexDataOffset).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC).putInt(VERSION);
+        header.putLong(source.length()).putLong(source.lastModified()).putLong(hash(source));
+        header.putInt(attributes.stride);
+        putString(header, attributes.vertexFormat);
+        header.putInt(materialLibraries.size());
+
+        for (String library : materialLibraries)
+            putString(header, library);
+
+        header.putInt(materials.size());
+        int vertexOffset = 0, indexOffset = 0;
+
+        for (int i = 0; i < materials.size(); i++)
+        {
+            MeshData mesh = meshData.get(i);
+            AxisAlignedBB bounds = mesh.getBounds();
+
+            putString(header, names[i]);
+            header.putInt(vertexOffset).putInt(mesh.getNumVertices()).putInt(indexOffset).putInt(mesh.getNumIndices());
+
+            if (bounds != null)
+            {
+                Vector3f min = bounds.getMin(), max = bounds.getMax();
+                header.putFloat(min.x).putFloat(min.y).putFloat(min.z).putFloat(max.x).putFloat(max.y).putFloat(max.z);
+            } else
+            {
+                header.putFloat(0.0F).putFloat(0.0F).putFloat(0.0F).putFloat(0.0F).putFloat(0.0F).putFloat(0.0F);
+            }
+
+            vertexOffset += mesh.getNumVertices();
+            indexOffset += mesh.getNumIndices();
+        }
+
+        header.clear();
+
+        File file = getCacheFile(source);
+        File temporary = new File(file.getPath() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            writeFully(channel, header, 0);
+
+            long position = vertexDataOffset;
+
+            for (MeshData mesh : meshData)
+            {
+                if (!mesh.hasVertices())
+                    continue;
+
+                ByteBuffer bytes = ByteBuffer.allocateDirect(mesh.getNumVertices() * attributes.stride).order(ByteOrder.nativeOrder());
+                mesh.getVertexBufferData(bytes.asFloatBuffer(), attributes);
+                position += writeFully(channel, bytes, position);
+            }
+
+            position = indexDataOffset;
+
+            for (MeshData mesh : meshData)
+            {
+                if (!mesh.hasIndices())
+                    continue;
+
+                ByteBuffer bytes = ByteBuffer.allocateDirect(mesh.getNumIndices() * Integer.BYTES).order(ByteOrder.nativeOrder());
+                mesh.getIndexBufferData(bytes.asIntBuffer());
+                position += writeFully(channel, bytes, position);
+            }
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Computes the CRC32C of a file.
+     */
+    public static long hash(File file) throws IOException
+    {
+        CRC32C crc = new CRC32C();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+
+            for (long start = 0; start < size; start += Integer.MAX_VALUE)
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, Integer.MAX_VALUE)));
+        }
+
+        return crc.getValue();
+    }
+
+    public File getSource()
+    {
+        return source;
+    }
+
+    public List<String> getMaterialLibraries()
+    {
+        return Collections.unmodifiableList(materialLibraries);
+    }
+
+    /**
+     * Reads the material files of the source, and finds the material of every range by its name.
+     *
+     * @return The material of every range, with null for a range that has no material, or whose
+     * material was not found.
+     */
+    public Material[] loadMaterials() throws IOException
+    {
+        List<Material> materials = new ArrayList<>();
+
+        for (String library : materialLibraries)
+            materials.addAll(OBJModel.parseMtl(source.getParentFile() + File.separator + library));
+
+        Material[] rangeMaterials = new Material[ranges.length];
+
+        for (int i = 0; i < ranges.length; i++)
+        {
+            for (Material material : materials)
+            {
+                if (material != null && material.getName().equals(ranges[i].material))
+                {
+                    rangeMaterials[i] = material;
+                    break;
+                }
+            }
+        }
+
+        return rangeMaterials;
+    }
+
+    public int getRangeCount()
+    {
+        return ranges.length;
+    }
+
+    /**
+     * @return The name of the material of a range, or null if the faces of the range had none.
+     */
+    public String getMaterialName(int range)
+    {
+        return ranges[range].material;
+    }
+
+    public int getVertexCount(int range)
+    {
+        return ranges[range].vertexCount;
+    }
+
+    public int getIndexCount(int range)
+    {
+        return ranges[range].indexCount;
+    }
+
+    /**
+     * Gets the interleaved vertex data of a range. The buffer is a view of the mapped cache, and
+     * nothing is copied.
+     */
+    public FloatBuffer getVertexData(int range)
+    {
+        return slice(vertexDataOffset + ranges[range].vertexOffset * stride, ranges[range].vertexCount * stride).asFloatBuffer();
+    }
+
+    /**
+     * Gets the index data of a range. The buffer is a view of the mapped cache, and nothing is copied.
+     */
+    public IntBuffer getIndexData(int range)
+    {
+        return slice(indexDataOffset + ranges[range].indexOffset * Integer.BYTES, ranges[range].indexCount * Integer.BYTES).asIntBuffer();
+    }
+
+    /**
+     * @return The bounds of the vertex positions of a range.
+     */
+    public AxisAlignedBB getBounds(int range)
+    {
+        Range r = ranges[range];
+        return new AxisAlignedBB(r.minX, r.minY, r.minZ, r.maxX, r.maxY, r.maxZ, true);
+    }
+
+    /**
+     * @return The bounds of the vertex positions of all ranges, or null if there are no vertices.
+     */
+    public AxisAlignedBB getBounds()
+    {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+        for (Range range : ranges)
+        {
+            if (range.vertexCount == 0)
+                continue;
+
+            minX = Math.min(minX, range.minX);
+            minY = Math.min(minY, range.minY);
+            minZ = Math.min(minZ, range.minZ);
+            maxX = Math.max(maxX, range.maxX);
+            maxY = Math.max(maxY, range.maxY);
+            maxZ = Math.max(maxZ, range.maxZ);
+        }
+
+        return minX > maxX ? null : new AxisAlignedBB(minX, minY, minZ, maxX, maxY, maxZ, true);
+    }
+
+    /**
+     * Gets the vertex positions of all ranges packed as xyz, scaled by the given scale, for a
+     * {@link main.physics.collision.TriangleMeshShape}.
+     */
+    public float[] getPositions(Vector3f scale)
+    {
+        int position = Math.max(0, vertexFormat.toLowerCase().indexOf('p'));
+        int floatStride = stride / Float.BYTES;
+        FloatBuffer vertices = slice(vertexDataOffset, vertexCount * stride).asFloatBuffer();
+        float[] positions = new float[vertexCount * 3];
+
+        for (int i = 0; i < vertexCount; i++)
+        {
+            int offset = i * floatStride + position;
+            positions[i * 3] = scale != null ? vertices.get(offset) * scale.x : vertices.get(offset);
+            positions[i * 3 + 1] = scale != null ? vertices.get(offset + 1) * scale.y : vertices.get(offset + 1);
+            positions[i * 3 + 2] = scale != null ? vertices.get(offset + 2) * scale.z : vertices.get(offset + 2);
+        }
+
+        return positions;
+    }
+
+    /**
+     * Gets the triangle indices of all ranges into {@link #getPositions}. A range without indices
+     * has every three vertices form a triangle.
+     */
+    public int[] getIndices()
+    {
+        int length = 0;
+
+        for (Range range : ranges)
+            length += range.indexCount > 0 ? range.indexCount : range.vertexCount;
+
+        int[] indices = new int[length];
+        int pointer = 0;
+
+        for (int i = 0; i < ranges.length; i++)
+        {
+            Range range = ranges[i];
+
+            if (range.indexCount > 0)
+            {
+                IntBuffer data = getIndexData(i);
+
+                for (int j = 0; j < range.indexCount; j++)
+                    indices[pointer++] = data.get(j) + range.vertexOffset;
+            } else
+            {
+                for (int j = 0; j < range.vertexCount; j++)
+                    indices[pointer++] = j + range.vertexOffset;
+            }
+        }
+
+        return indices;
+    }
+
+    private ByteBuffer slice(int offset, int length)
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException
+    {
+        long written = 0;
+
+        while (bytes.hasRemaining())
+            written += channel.write(bytes, position + written);
+
+        return written;
+    }
+
+    private static int align(int offset)
+    {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static long align(long offset)
+    {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static int stringBytes(String string)
+    {
+        return 4 + (string == null ? 0 : string.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private static void putString(ByteBuffer buffer, String string)
+    {
+        putString(buffer, string == null ? null : string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            buffer.putInt(-1);
+        } else
+        {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+
+        if (length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Range
+    {
+        final String material;
+        final int vertexOffset;
+        final int vertexCount;
+        final int indexOffset;
+        final int indexCount;
+        final float minX, minY, minZ, maxX, maxY, maxZ;
+
+        Range(String material, int vertexOffset, int vertexCount, int indexOffset, int indexCount, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+        {
+            this.material = material;
+            this.vertexOffset = vertexOffset;
+            this.vertexCount = vertexCount;
+            this.indexOffset = indexOffset;
+            this.indexCount = indexCount;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.maxZ = maxZ;
+        }
+    }
+}
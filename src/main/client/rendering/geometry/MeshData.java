@@ -1,7 +1,9 @@
 package main.client.rendering.geometry;
 
 import main.core.scene.Transformation;
+import main.core.scene.boundingbox.AxisAlignedBB;
 import org.lwjgl.BufferUtils;
+import org.lwjgl.util.vector.Vector3f;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
@@ -137,6 +139,37 @@ public class MeshData
         }
     }
 
+    /**
+     * Computes the smallest axis aligned bounding box that encloses the positions of all vertices of
+     * this mesh.
+     *
+     * @return The bounding box, or null if this mesh has no vertices.
+     */
+    public AxisAlignedBB getBounds()
+    {
+        synchronized (this.getVertices())
+        {
+            if (!this.hasVertices())
+                return null;
+
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+            for (Vertex vertex : this.getVertices())
+            {
+                Vector3f position = vertex.getPosition();
+                minX = Math.min(minX, position.x);
+                minY = Math.min(minY, position.y);
+                minZ = Math.min(minZ, position.z);
+                maxX = Math.max(maxX, position.x);
+                maxY = Math.max(maxY, position.y);
+                maxZ = Math.max(maxZ, position.z);
+            }
+
+            return new AxisAlignedBB(minX, minY, minZ, maxX, maxY, maxZ, true);
+        }
+    }
+
     public int getNumVertices()
     {
         return this.getVertices() != null ? this.getVertices().size() : 0;
@@ -0,0 +1,495 @@
+package main.client.rendering.geometry;
+
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reorders the triangles and vertices of indexed triangle meshes so they render faster. The triangles
+ * are ordered for the post transform vertex cache with Tipsify (Sander, Nehab and Barczak, "Fast
+ * Triangle Reordering for Vertex Locality and Reduced Overdraw"), and can then be regrouped into
+ * clusters that are sorted so the outside of the mesh tends to be drawn first, which reduces
+ * overdraw. Finally the vertices are reordered into the order they are first used, so vertex fetches
+ * walk through memory in order.
+ *
+ * The effect on the vertex cache is measured as the ACMR, the average cache miss ratio, which is the
+ * number of vertices transformed per triangle on a FIFO cache. It is 3 in the worst case, and
+ * approaches 0.5 on a large regular grid.
+ *
+ * @author Kelan
+ */
+public class MeshOptimizer
+{
+    public static final int CACHE_SIZE = 16;
+    public static final float OVERDRAW_THRESHOLD = 1.05F; // How much worse than its cluster a split cluster may make the ACMR.
+
+    /**
+     * Reorders the triangles and vertices of each mesh, and reports the ACMR of all of the meshes
+     * before and after.
+     *
+     * @param reduceOverdraw Whether to cluster the triangles to reduce overdraw, at a small cost to the ACMR.
+     */
+    public static void optimize(Collection<MeshData> meshes, boolean reduceOverdraw)
+    {
+        long triangles = 0;
+        double missesBefore = 0.0, missesAfter = 0.0;
+
+        for (MeshData mesh : meshes)
+        {
+            int meshTriangles = mesh.getNumIndices() / 3;
+            missesBefore += (double) getACMR(mesh) * meshTriangles;
+            optimize(mesh, reduceOverdraw);
+            missesAfter += (double) getACMR(mesh) * meshTriangles;
+            triangles += meshTriangles;
+        }
+
+        if (triangles > 0)
+            System.out.println(String.format("Optimised %d triangles in %d meshes, ACMR %.3f -> %.3f", triangles, meshes.size(), missesBefore / triangles, missesAfter / triangles));
+    }
+
+    /**
+     * Reorders the triangles and vertices of the mesh.
+     *
+     * @param reduceOverdraw Whether to cluster the triangles to reduce overdraw, at a small cost to the ACMR.
+     */
+    public static void optimize(MeshData mesh, boolean reduceOverdraw)
+    {
+        List<Vertex> vertices = mesh.getVertices();
+        List<Integer> indexList = mesh.getIndices();
+
+        synchronized (vertices)
+        {
+            synchronized (indexList)
+            {
+                int vertexCount = vertices.size();
+                int[] indices = getIndices(mesh);
+
+                indices = optimizeVertexCache(indices, vertexCount, CACHE_SIZE);
+
+                if (reduceOverdraw)
+                    indices = optimizeOverdraw(indices, getPositions(mesh), vertexCount, CACHE_SIZE, OVERDRAW_THRESHOLD);
+
+                int[] remap = optimizeVertexFetch(indices, vertexCount);
+                Vertex[] reordered = new Vertex[vertexCount];
+
+                for (int vertex = 0; vertex < vertexCount; vertex++)
+                    reordered[remap[vertex]] = vertices.get(vertex);
+
+                for (int vertex = 0; vertex < vertexCount; vertex++)
+                    vertices.set(vertex, reordered[vertex]);
+
+                for (int i = 0; i < indices.length; i++)
+                    indexList.set(i, indices[i]);
+            }
+        }
+    }
+
+    /**
+     * Orders the triangles for the post transform vertex cache. Tipsify fans out around one vertex at a
+     * time, emitting all of its remaining triangles, and then picks the next vertex to fan around from
+     * the vertices of those triangles, preferring the one that went into the cache earliest that will
+     * still be in the cache once all of its own triangles are emitted. When none of them have
+     * triangles left, it backtracks through the most recently used vertices, and then through the
+     * vertices in order.
+     *
+     * @return The indices of the reordered triangles.
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount, int cacheSize)
+    {
+        checkTriangles(indices, vertexCount);
+
+        int triangleCount = indices.length / 3;
+
+        // The triangles that use each vertex, and how many of them are yet to be emitted.
+        int[] liveTriangles = new int[vertexCount];
+        int[] adjacencyOffsets = new int[vertexCount + 1];
+        int[] adjacency = new int[indices.length];
+        int maxTriangles = 0;
+
+        for (int index : indices)
+            liveTriangles[index]++;
+
+        for (int vertex = 0; vertex < vertexCount; vertex++)
+        {
+            adjacencyOffsets[vertex + 1] = adjacencyOffsets[vertex] + liveTriangles[vertex];
+            maxTriangles = Math.max(maxTriangles, liveTriangles[vertex]);
+        }
+
+        int[] adjacencyFill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+
+        for (int i = 0; i < indices.length; i++)
+            adjacency[adjacencyFill[indices[i]]++] = i / 3;
+
+        // A vertex is in the cache when fewer than cacheSize vertices were added since its cache time.
+        int[] cacheTimes = new int[vertexCount];
+        int time = cacheSize + 1;
+
+        boolean[] emitted = new boolean[triangleCount];
+        int[] deadEnds = new int[indices.length];
+        int deadEndCount = 0;
+        int[] candidates = new int[maxTriangles * 3];
+        int nextVertex = 0;
+
+        int[] result = new int[indices.length];
+        int resultCount = 0;
+
+        while (nextVertex < vertexCount && liveTriangles[nextVertex] == 0)
+            nextVertex++;
+
+        int vertex = nextVertex < vertexCount ? nextVertex : -1;
+
+        while (vertex >= 0)
+        {
+            int candidateCount = 0;
+
+            for (int i = adjacencyOffsets[vertex]; i < adjacencyOffsets[vertex + 1]; i++)
+            {
+                int triangle = adjacency[i];
+
+                if (emitted[triangle])
+                    continue;
+
+                emitted[triangle] = true;
+
+                for (int corner = triangle * 3; corner < triangle * 3 + 3; corner++)
+                {
+                    int v = indices[corner];
+                    result[resultCount++] = v;
+                    deadEnds[deadEndCount++] = v;
+                    candidates[candidateCount++] = v;
+                    liveTriangles[v]--;
+
+                    if (time - cacheTimes[v] > cacheSize)
+                        cacheTimes[v] = time++;
+                }
+            }
+
+            // The candidate that will stay in the cache while its remaining triangles are emitted, and
+            // has been in the cache the longest.
+            int best = -1, bestPriority = -1;
+
+            for (int i = 0; i < candidateCount; i++)
+            {
+                int v = candidates[i];
+
+                if (liveTriangles[v] > 0)
+                {
+                    int priority = 0;
+
+                    if (time - cacheTimes[v] + 2 * liveTriangles[v] <= cacheSize)
+                        priority = time - cacheTimes[v];
+
+                    if (priority > bestPriority)
+                    {
+                        bestPriority = priority;
+                        best = v;
+                    }
+                }
+            }
+
+            if (best < 0)
+            {
+                while (deadEndCount > 0 && best < 0)
+                {
+                    int v = deadEnds[--deadEndCount];
+
+                    if (liveTriangles[v] > 0)
+                        best = v;
+                }
+
+                if (best < 0)
+                {
+                    while (nextVertex < vertexCount && liveTriangles[nextVertex] == 0)
+                        nextVertex++;
+
+                    if (nextVertex < vertexCount)
+                        best = nextVertex;
+                }
+            }
+
+            vertex = best;
+        }
+
+        return result;
+    }
+
+    /**
+     * Regroups triangles that were ordered by {@link #optimizeVertexCache} to reduce overdraw. The
+     * triangles are split into clusters wherever the cache was effectively flushed, and these are
+     * split further wherever the ACMR from the start of the cluster is within the threshold of the
+     * ACMR of the whole cluster. The clusters are then sorted by how far they face away from the
+     * centre of the mesh, so the outside of the mesh, which is most likely to hide the rest, is drawn
+     * first. The triangles within a cluster keep their order.
+     *
+     * @param positions The packed x, y and z coordinates of each vertex.
+     * @param threshold How much higher than the ACMR of its cluster the ACMR of a split may be.
+     * @return The indices of the reordered triangles.
+     */
+    public static int[] optimizeOverdraw(int[] indices, float[] positions, int vertexCount, int cacheSize, float threshold)
+    {
+        checkTriangles(indices, vertexCount);
+
+        if (positions.length < vertexCount * 3)
+            throw new IllegalArgumentException("Expected " + vertexCount * 3 + " vertex coordinates, but got " + positions.length);
+
+        int triangleCount = indices.length / 3;
+        int[] cacheTimes = new int[vertexCount];
+        int[] time = {cacheSize + 1};
+
+        // Clusters that start with a triangle that misses the cache on all three vertices.
+        int[] hardClusters = new int[triangleCount + 1];
+        int hardClusterCount = 0;
+
+        for (int triangle = 0; triangle < triangleCount; triangle++)
+            if (cacheMisses(indices, triangle, cacheTimes, time, cacheSize) == 3 || triangle == 0)
+                hardClusters[hardClusterCount++] = triangle;
+
+        hardClusters[hardClusterCount] = triangleCount;
+
+        // Split each hard cluster wherever it is cheap to flush the cache. The cache is reset at the
+        // start of each cluster, so what the splits cost is counted.
+        int[] clusters = new int[triangleCount + 1];
+        int clusterCount = 0;
+
+        for (int hardCluster = 0; hardCluster < hardClusterCount; hardCluster++)
+        {
+            int start = hardClusters[hardCluster], end = hardClusters[hardCluster + 1];
+
+            time[0] += cacheSize + 1;
+            int clusterMisses = 0;
+
+            for (int triangle = start; triangle < end; triangle++)
+                clusterMisses += cacheMisses(indices, triangle, cacheTimes, time, cacheSize);
+
+            float clusterThreshold = threshold * clusterMisses / (end - start);
+            int runningMisses = 0, runningTriangles = 0;
+            clusters[clusterCount++] = start;
+            time[0] += cacheSize + 1;
+
+            for (int triangle = start; triangle < end - 1; triangle++)
+            {
+                runningMisses += cacheMisses(indices, triangle, cacheTimes, time, cacheSize);
+                runningTriangles++;
+
+                if (runningMisses <= clusterThreshold * runningTriangles)
+                {
+                    clusters[clusterCount++] = triangle + 1;
+                    time[0] += cacheSize + 1;
+                    runningMisses = 0;
+                    runningTriangles = 0;
+                }
+            }
+        }
+
+        clusters[clusterCount] = triangleCount;
+
+        // The area weighted centroid of the mesh, and of each cluster.
+        float[] clusterData = new float[clusterCount * 7];
+        float meshX = 0.0F, meshY = 0.0F, meshZ = 0.0F, meshArea = 0.0F;
+
+        for (int cluster = 0; cluster < clusterCount; cluster++)
+        {
+            float centroidX = 0.0F, centroidY = 0.0F, centroidZ = 0.0F, area = 0.0F;
+            float normalX = 0.0F, normalY = 0.0F, normalZ = 0.0F;
+
+            for (int triangle = clusters[cluster]; triangle < clusters[cluster + 1]; triangle++)
+            {
+                int a = indices[triangle * 3] * 3, b = indices[triangle * 3 + 1] * 3, c = indices[triangle * 3 + 2] * 3;
+
+                float abX = positions[b] - positions[a], abY = positions[b + 1] - positions[a + 1], abZ = positions[b + 2] - positions[a + 2];
+                float acX = positions[c] - positions[a], acY = positions[c + 1] - positions[a + 1], acZ = positions[c + 2] - positions[a + 2];
+
+                // The cross product, with a length of twice the area of the triangle.
+                float crossX = abY * acZ - abZ * acY;
+                float crossY = abZ * acX - abX * acZ;
+                float crossZ = abX * acY - abY * acX;
+                float triangleArea = (float) Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ);
+
+                centroidX += (positions[a] + positions[b] + positions[c]) * triangleArea;
+                centroidY += (positions[a + 1] + positions[b + 1] + positions[c + 1]) * triangleArea;
+                centroidZ += (positions[a + 2] + positions[b + 2] + positions[c + 2]) * triangleArea;
+                normalX += crossX;
+                normalY += crossY;
+                normalZ += crossZ;
+                area += triangleArea;
+            }
+
+            meshX += centroidX;
+            meshY += centroidY;
+            meshZ += centroidZ;
+            meshArea += area;
+
+            float scale = area > 0.0F ? 1.0F / (area * 3.0F) : 0.0F;
+            float length = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+            float normalScale = length > 0.0F ? 1.0F / length : 0.0F;
+
+            int i = cluster * 7;
+            clusterData[i] = centroidX * scale;
+            clusterData[i + 1] = centroidY * scale;
+            clusterData[i + 2] = centroidZ * scale;
+            clusterData[i + 3] = normalX * normalScale;
+            clusterData[i + 4] = normalY * normalScale;
+            clusterData[i + 5] = normalZ * normalScale;
+            clusterData[i + 6] = area;
+        }
+
+        float meshScale = meshArea > 0.0F ? 1.0F / (meshArea * 3.0F) : 0.0F;
+        meshX *= meshScale;
+        meshY *= meshScale;
+        meshZ *= meshScale;
+
+        // Sort the clusters by the sort key in the high bits, highest first, then by cluster index.
+        long[] order = new long[clusterCount];
+
+        for (int cluster = 0; cluster < clusterCount; cluster++)
+        {
+            int i = cluster * 7;
+            float facing = (clusterData[i] - meshX) * clusterData[i + 3] + (clusterData[i + 1] - meshY) * clusterData[i + 4] + (clusterData[i + 2] - meshZ) * clusterData[i + 5];
+
+            // Flip the bits of negative floats so they sort as signed integers.
+            int bits = Float.floatToIntBits(-facing);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            order[cluster] = (long) bits << 32 | cluster;
+        }
+
+        Arrays.sort(order);
+
+        int[] result = new int[indices.length];
+        int resultCount = 0;
+
+        for (long key : order)
+        {
+            int cluster = (int) key;
+            int start = clusters[cluster] * 3, end = clusters[cluster + 1] * 3;
+
+            System.arraycopy(indices, start, result, resultCount, end - start);
+            resultCount += end - start;
+        }
+
+        return result;
+    }
+
+    private static int cacheMisses(int[] indices, int triangle, int[] cacheTimes, int[] time, int cacheSize)
+    {
+        int misses = 0;
+
+        for (int corner = triangle * 3; corner < triangle * 3 + 3; corner++)
+        {
+            int vertex = indices[corner];
+
+            if (time[0] - cacheTimes[vertex] > cacheSize)
+            {
+                cacheTimes[vertex] = time[0]++;
+                misses++;
+            }
+        }
+
+        return misses;
+    }
+
+    /**
+     * Renumbers the vertices in the order the indices first use them, rewriting the indices in
+     * place. Vertices that are not used are moved to the end.
+     *
+     * @return The new index of each vertex.
+     */
+    public static int[] optimizeVertexFetch(int[] indices, int vertexCount)
+    {
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+
+        for (int i = 0; i < indices.length; i++)
+        {
+            int vertex = indices[i];
+
+            if (vertex < 0 || vertex >= vertexCount)
+                throw new IllegalArgumentException("Index " + vertex + " is out of range for " + vertexCount + " vertices");
+
+            if (remap[vertex] < 0)
+                remap[vertex] = next++;
+
+            indices[i] = remap[vertex];
+        }
+
+        for (int vertex = 0; vertex < vertexCount; vertex++)
+            if (remap[vertex] < 0)
+                remap[vertex] = next++;
+
+        return remap;
+    }
+
+    /**
+     * Simulates a FIFO vertex cache of the given size.
+     *
+     * @return The average number of cache misses per triangle.
+     */
+    public static float getACMR(int[] indices, int vertexCount, int cacheSize)
+    {
+        checkTriangles(indices, vertexCount);
+
+        if (indices.length == 0)
+            return 0.0F;
+
+        int[] cacheTimes = new int[vertexCount];
+        int[] time = {cacheSize + 1};
+        int misses = 0;
+
+        for (int triangle = 0; triangle < indices.length / 3; triangle++)
+            misses += cacheMisses(indices, triangle, cacheTimes, time, cacheSize);
+
+        return (float) misses / (indices.length / 3);
+    }
+
+    public static float getACMR(MeshData mesh)
+    {
+        return getACMR(getIndices(mesh), mesh.getNumVertices(), CACHE_SIZE);
+    }
+
+    public static int[] getIndices(MeshData mesh)
+    {
+        List<Integer> indexList = mesh.getIndices();
+
+        synchronized (indexList)
+        {
+            int[] indices = new int[indexList.size()];
+
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = indexList.get(i);
+
+            return indices;
+        }
+    }
+
+    public static float[] getPositions(MeshData mesh)
+    {
+        List<Vertex> vertices = mesh.getVertices();
+
+        synchronized (vertices)
+        {
+            float[] positions = new float[vertices.size() * 3];
+
+            for (int vertex = 0; vertex < vertices.size(); vertex++)
+            {
+                Vector3f position = vertices.get(vertex).getPosition();
+                positions[vertex * 3] = position.x;
+                positions[vertex * 3 + 1] = position.y;
+                positions[vertex * 3 + 2] = position.z;
+            }
+
+            return positions;
+        }
+    }
+
+    private static void checkTriangles(int[] indices, int vertexCount)
+    {
+        if (indices.length % 3 != 0)
+            throw new IllegalArgumentException("Expected a triangle list, but got " + indices.length + " indices");
+
+        for (int index : indices)
+            if (index < 0 || index >= vertexCount)
+                throw new IllegalArgumentException("Index " + index + " is out of range for " + vertexCount + " vertices");
+    }
+}
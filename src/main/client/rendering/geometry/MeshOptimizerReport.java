@@ -0,0 +1,144 @@
+package main.client.rendering.geometry;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Reports the ACMR of OBJ models before and after {@link MeshOptimizer} reorders them, with and
+ * without the overdraw pass, and how long each took. The triangles of every optimised mesh are
+ * compared against the original, and any triangle that was lost or changed is reported as a
+ * mismatch. The models are given as arguments, and default to the dragon and sponza models.
+ *
+ * @author Kelan
+ */
+public class MeshOptimizerReport
+{
+    private long triangles;
+    private double originalMisses, cacheMisses, overdrawMisses;
+    private long cacheTime, overdrawTime;
+    private int mismatches;
+
+    private void add(int[] indices, float[] positions, int vertexCount)
+    {
+        int meshTriangles = indices.length / 3;
+
+        long start = System.nanoTime();
+        int[] cacheIndices = MeshOptimizer.optimizeVertexCache(indices, vertexCount, MeshOptimizer.CACHE_SIZE);
+        long end = System.nanoTime();
+        int[] overdrawIndices = MeshOptimizer.optimizeOverdraw(cacheIndices, positions, vertexCount, MeshOptimizer.CACHE_SIZE, MeshOptimizer.OVERDRAW_THRESHOLD);
+        cacheTime += end - start;
+        overdrawTime += System.nanoTime() - end;
+
+        triangles += meshTriangles;
+        originalMisses += (double) MeshOptimizer.getACMR(indices, vertexCount, MeshOptimizer.CACHE_SIZE) * meshTriangles;
+        cacheMisses += (double) MeshOptimizer.getACMR(cacheIndices, vertexCount, MeshOptimizer.CACHE_SIZE) * meshTriangles;
+        overdrawMisses += (double) MeshOptimizer.getACMR(overdrawIndices, vertexCount, MeshOptimizer.CACHE_SIZE) * meshTriangles;
+
+        mismatches += mismatches(indices, cacheIndices, vertexCount) + mismatches(indices, overdrawIndices, vertexCount);
+
+        // Renumbering the vertices must not change the vertices of any triangle.
+        int[] fetchIndices = overdrawIndices.clone();
+        int[] remap = MeshOptimizer.optimizeVertexFetch(fetchIndices, vertexCount);
+
+        for (int i = 0; i < fetchIndices.length; i++)
+            if (remap[overdrawIndices[i]] != fetchIndices[i])
+                mismatches++;
+    }
+
+    /**
+     * Counts the triangles of one index list that are not in the other. Each triangle is rotated so
+     * that its smallest index comes first, which keeps the winding, and the triangles are grouped by
+     * that index and sorted by the other two.
+     */
+    private static int mismatches(int[] expected, int[] actual, int vertexCount)
+    {
+        if (expected.length != actual.length)
+            return Math.abs(expected.length - actual.length) / 3;
+
+        long[] expectedTriangles = triangles(expected, vertexCount), actualTriangles = triangles(actual, vertexCount);
+        int mismatches = 0;
+
+        for (int i = 0; i < expectedTriangles.length; i++)
+            if (expectedTriangles[i] != actualTriangles[i])
+                mismatches++;
+
+        return mismatches;
+    }
+
+    private static long[] triangles(int[] indices, int vertexCount)
+    {
+        int triangleCount = indices.length / 3;
+        int[] first = new int[triangleCount];
+        long[] rest = new long[triangleCount];
+        int[] offsets = new int[vertexCount + 1];
+
+        for (int triangle = 0; triangle < triangleCount; triangle++)
+        {
+            int a = indices[triangle * 3], b = indices[triangle * 3 + 1], c = indices[triangle * 3 + 2];
+
+            if (b < a && b <= c)
+            {
+                first[triangle] = b;
+                rest[triangle] = (long) c << 32 | a;
+            } else if (c < a && c < b)
+            {
+                first[triangle] = c;
+                rest[triangle] = (long) a << 32 | b;
+            } else
+            {
+                first[triangle] = a;
+                rest[triangle] = (long) b << 32 | c;
+            }
+
+            offsets[first[triangle] + 1]++;
+        }
+
+        for (int vertex = 0; vertex < vertexCount; vertex++)
+            offsets[vertex + 1] += offsets[vertex];
+
+        long[] triangles = new long[triangleCount];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+
+        for (int triangle = 0; triangle < triangleCount; triangle++)
+            triangles[fill[first[triangle]]++] = rest[triangle];
+
+        for (int vertex = 0; vertex < vertexCount; vertex++)
+            Arrays.sort(triangles, offsets[vertex], offsets[vertex + 1]);
+
+        return triangles;
+    }
+
+    private void report(String file)
+    {
+        System.out.println(String.format("%-40s %10d %10.3f %10.3f %10.3f %12.1f %12.1f %11d", file, triangles,
+                originalMisses / triangles, cacheMisses / triangles, overdrawMisses / triangles, cacheTime / 1e6, overdrawTime / 1e6, mismatches));
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String[] files = args.length > 0 ? args : new String[]{"res/models/dragon/dragon.obj", "res/models/sponza/sponza.obj"};
+
+        System.out.println(String.format("%-40s %10s %10s %10s %10s %12s %12s %11s", "Model", "Triangles", "ACMR", "Cache", "Overdraw", "Cache (ms)", "Overdraw (ms)", "Mismatches"));
+
+        for (String file : files)
+        {
+            OBJModel model = OBJModel.parseObj(file);
+
+            if (model == null)
+            {
+                System.out.println("Skipping " + file);
+                continue;
+            }
+
+            Map<Material, MeshData> meshes = model.compileMeshWithMaterials();
+            MeshOptimizerReport report = new MeshOptimizerReport();
+
+            for (MeshData mesh : meshes.values())
+                report.add(MeshOptimizer.getIndices(mesh), MeshOptimizer.getPositions(mesh), mesh.getNumVertices());
+
+            if (report.triangles > 0)
+                report.report(file);
+        }
+    }
+}
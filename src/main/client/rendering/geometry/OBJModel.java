@@ -1,12 +1,8 @@
 package main.client.rendering.geometry;
 
 import main.client.rendering.Texture;
-import main.client.rendering.geometry.PolygonTriangulator.Triangle2D;
-import main.client.rendering.geometry.PolygonTriangulator.Vertex2D;
 import main.core.util.FileUtils;
-import main.core.util.MathUtils;
 import main.core.util.StringUtils;
-import org.lwjgl.util.vector.Matrix3f;
 import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
 
@@ -15,11 +11,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Queue;
 
 /**
  * @author Kelan
@@ -61,123 +54,70 @@ public class OBJModel
     public static final String MTL_TEXTURE_TURBULENCE = "-getHead ";
     public static final String MTL_TEXTURE_RESOLUTION = "-texres ";
 
-    private List<OBJFace> faces;
+    private final float[] positions;
+    private final float[] textures;
+    private final float[] normals;
 
-    private OBJModel(List<OBJFace> faces)
+    private int[] faceOffsets;
+    private int[] faceMaterials;
+    private int[] positionIndices;
+    private int[] textureIndices;
+    private int[] normalIndices;
+    private int faceCount;
+
+    private final Material[] materials;
+    private final List<String> materialLibraries;
+
+    private OBJModel(OBJParser parser, Material[] materials)
     {
-        this.faces = faces;
+        this.positions = parser.positions;
+        this.textures = parser.textures;
+        this.normals = parser.normals;
+        this.faceOffsets = parser.faceOffsets;
+        this.faceMaterials = parser.faceMaterials;
+        this.positionIndices = parser.positionIndices;
+        this.textureIndices = parser.textureIndices;
+        this.normalIndices = parser.normalIndices;
+        this.faceCount = parser.faceCount;
+        this.materials = materials;
+        this.materialLibraries = new ArrayList<>(parser.materialLibraries);
     }
 
     public static OBJModel parseObj(String file) throws IOException
     {
         System.out.println("Loading OBJ file " + file);
-        StringBuilder sb = new StringBuilder();
+        File objFile = new File(file);
 
-        if (FileUtils.readFile(file, sb) && sb.length() > 0)
+        if (objFile.isFile() && objFile.length() > 0)
         {
-            String[] fileSource = sb.toString().split("\n");
-
-            List<Vector3f> geometrics = new ArrayList<>();
-            List<Vector3f> normals = new ArrayList<>();
-            List<Vector2f> textures = new ArrayList<>();
-
-            List<OBJFace> faces = new ArrayList<>();
+            OBJParser parser = OBJParser.parse(objFile);
             List<Material> materials = new ArrayList<>();
 
-            Material currentMaterial = null;
-
-            String INVALID_VALUE = "\0INVALID_LINE\0";
-
-            int counter = 0;
-            for (String line : fileSource)
+            for (String mtlStr : parser.materialLibraries)
             {
-                counter++;
-                if (line == null || (line = line.trim()).isEmpty() || line.startsWith(COMMENT_LINE))
-                {
-                    continue;
-                } else if (line.startsWith(OBJ_VERTEX_GEOMETRIC))
-                {
-                    line = line.substring(OBJ_VERTEX_GEOMETRIC.length()).trim();
-                    geometrics.add(readVector3f(line, new Vector3f(0.0F, 0.0F, 0.0F)));
-                } else if (line.startsWith(OBJ_VERTEX_NORMAL))
-                {
-                    line = line.substring(OBJ_VERTEX_NORMAL.length()).trim();
-                    normals.add(readVector3f(line, new Vector3f(0.0F, 0.0F, 0.0F)));
-                } else if (line.startsWith(OBJ_VERTEX_TEXTURE))
-                {
-                    line = line.substring(OBJ_VERTEX_TEXTURE.length()).trim();
-                    textures.add(readVector2f(line, new Vector2f(0.0F, 0.0F)));
-                } else if (line.startsWith(OBJ_FACE_INDEX))
-                {
-                    line = line.substring(OBJ_FACE_INDEX.length()).trim();
-
-                    String[] data = line.split(" ");
-
-                    int[] indicesArr = new int[data.length * 3];
-                    int i = readIndices(line, indicesArr);
-                    int pointer = 0;
+                if (mtlStr.endsWith(".mtl"))
+                    materials.addAll(parseMtl(objFile.getParentFile() + File.separator + mtlStr));
+                else
+                    System.err.println("MTL filePath \"" + mtlStr + "\" was not valid");
+            }
 
-                    if (i == 0)
-                    {
-                        System.err.println("Failed to load face indices \"" + line + "\" from OBJ.");
-                        continue;
-                    }
+            Material[] faceMaterials = new Material[parser.materialNames.size()];
 
-                    if (i >= 1)
-                    {
-                        Vertex[] vertices = new Vertex[data.length];
-
-                        for (int j = 0; j < data.length; j++)
-                            vertices[j] = new Vertex(geometrics.get(indicesArr[pointer++]));
-
-                        if (i >= 2)
-                        {
-                            if (i >= 3)
-                            {
-                                for (int j = 0; j < data.length; j++)
-                                    vertices[j].texture = textures.get(indicesArr[pointer++]);
-
-                                for (int j = 0; j < data.length; j++)
-                                    vertices[j].normal = normals.get(indicesArr[pointer++]);
-                            } else
-                            {
-                                for (int j = 0; j < data.length; j++)
-                                    vertices[j].normal = normals.get(indicesArr[pointer++]);
-                            }
-                        }
-
-                        faces.add(new OBJFace(vertices, currentMaterial));
-                    }
-                } else if (line.startsWith(OBJ_MATERIAL_LIB))
-                {
-                    line = line.substring(OBJ_MATERIAL_LIB.length());
-                    String mtlStr = readString(line, INVALID_VALUE); // default value padded with null characters in case someone decides to name an MTL filePath "INVALID_MTL" for some reason.
-
-                    if (!mtlStr.endsWith(INVALID_VALUE) && mtlStr.endsWith(".mtl"))
-                        materials.addAll(parseMtl(new File(file).getParentFile() + File.separator + mtlStr));
-                    else
-                        System.err.println("Line \"" + line + "\" specifying an MTL filePath was not valid");
-                } else if (line.startsWith(OBJ_MATERIAL_USE))
+            for (int i = 0; i < faceMaterials.length; i++)
+            {
+                for (Material material : materials)
                 {
-                    line = line.substring(OBJ_MATERIAL_USE.length());
-                    String name = readString(line, INVALID_VALUE);
-                    for (Material material : materials)
+                    if (material != null && material.name.equals(parser.materialNames.get(i)))
                     {
-                        if (material == null)
-                        {
-                            materials.remove(null);
-                        } else if (material.name.equals(name))
-                        {
-                            currentMaterial = material;
-                            break;
-                        }
+                        faceMaterials[i] = material;
+                        break;
                     }
                 }
             }
 
             System.out.println("Successfully loaded and compiled OBJ file");
 
-            return new OBJModel(faces);
+            return new OBJModel(parser, faceMaterials);
         } else
         {
             System.err.println("Failed to load OBJ filePath " + file);
@@ -187,6 +127,39 @@ public class OBJModel
         }
     }
 
+    /**
+     * Loads the compiled meshes of an OBJ file from its {@link MeshCache}. If there is no cache, or it
+     * is out of date, the file is parsed and compiled with {@link #compileMeshWithMaterials()}, and
+     * the cache is written first.
+     *
+     * @return The cache, or null if the file could not be loaded.
+     */
+    public static MeshCache loadCached(String file, ShaderDataLocations attributes) throws IOException
+    {
+        File source = new File(file);
+        MeshCache cache = MeshCache.load(source, attributes);
+
+        if (cache == null)
+        {
+            OBJModel model = parseObj(file);
+
+            if (model == null)
+                return null;
+
+            Map<Material, MeshData> meshes = model.compileMeshWithMaterials();
+            MeshOptimizer.optimize(meshes.values(), true);
+
+            System.out.println("Writing mesh cache for " + file);
+            MeshCache.write(source, model.materialLibraries, meshes, attributes);
+            cache = MeshCache.load(source, attributes);
+        } else
+        {
+            System.out.println("Loaded OBJ file " + file + " from its mesh cache");
+        }
+
+        return cache;
+    }
+
     public static List<Material> parseMtl(String file) throws IOException
     {
         System.out.println("Loading MTL file " + file);
@@ -336,62 +309,6 @@ public class OBJModel
         return loader;
     }
 
-    private static int readIndices(String line, int[] indices)
-    {
-        if (line == null || line.isEmpty() || indices == null || indices.length < 3)
-        {
-            return 0;
-        }
-
-        int maxIndex; //1 guarantees a vertex translation. 2 guarantees a translation and a normal. 3 guarantees a translation, texture and normal
-        if (line.contains("/")) //This vertex has normals and/or textures
-        {
-            if (line.contains("//")) //This vertex does not have textures
-            {
-                maxIndex = 2;
-                line = line.replace("//", "/");
-            } else
-            {
-                maxIndex = 3;
-            }
-        } else
-        {
-            maxIndex = 1;
-        }
-
-        String[] data = line.split(" ");
-
-        int numVertices = data.length;
-
-        if (indices.length < maxIndex * numVertices)
-            return 0;
-
-        String[][] vertices = new String[data.length][];
-
-        int lengthCheck = -1;
-
-        for (int i = 0; i < data.length; i++)
-        {
-            vertices[i] = data[i].split("/");
-
-            if (lengthCheck == -1)
-                lengthCheck = vertices[i].length;
-            else if (vertices[i].length != lengthCheck)
-                return 0;
-        }
-
-        int pointer = 0;
-        for (int i = 0; i < maxIndex; i++)
-        {
-            for (int j = 0; j < data.length; j++)
-            {
-                indices[pointer++] = Integer.valueOf(vertices[j][i]) - 1;
-            }
-        }
-
-        return maxIndex;
-    }
-
     private static boolean readBoolean(String str, boolean defaultValue)
     {
         if (str != null && str.length() > 0)
@@ -455,46 +372,81 @@ public class OBJModel
         return data[0] == null || data[0].isEmpty() ? defaultValue : data[0];
     }
 
+    /**
+     * Splits every face with more than three corners into a fan of triangles. The faces are assumed
+     * to be convex.
+     */
     public void triangulate()
     {
-        List<OBJFace> triangles = new ArrayList<>();
+        int triangleCount = 0;
 
-        for (OBJFace face : this.faces)
+        for (int face = 0; face < faceCount; face++)
+            triangleCount += faceOffsets[face + 1] - faceOffsets[face] - 2;
+
+        if (triangleCount == faceCount)
+            return;
+
+        int[] triangleOffsets = new int[triangleCount + 1];
+        int[] triangleMaterials = new int[triangleCount];
+        int[] trianglePositions = new int[triangleCount * 3];
+        int[] triangleTextures = new int[triangleCount * 3];
+        int[] triangleNormals = new int[triangleCount * 3];
+        int triangle = 0;
+
+        for (int face = 0; face < faceCount; face++)
         {
-            face.triangulate(triangles, true);
+            int first = faceOffsets[face];
+
+            for (int corner = first + 2; corner < faceOffsets[face + 1]; corner++)
+            {
+                int i = triangle * 3;
+                trianglePositions[i] = positionIndices[first];
+                trianglePositions[i + 1] = positionIndices[corner - 1];
+                trianglePositions[i + 2] = positionIndices[corner];
+                triangleTextures[i] = textureIndices[first];
+                triangleTextures[i + 1] = textureIndices[corner - 1];
+                triangleTextures[i + 2] = textureIndices[corner];
+                triangleNormals[i] = normalIndices[first];
+                triangleNormals[i + 1] = normalIndices[corner - 1];
+                triangleNormals[i + 2] = normalIndices[corner];
+                triangleMaterials[triangle] = faceMaterials[face];
+                triangleOffsets[++triangle] = i + 3;
+            }
         }
 
-        this.faces = triangles;
+        this.faceOffsets = triangleOffsets;
+        this.faceMaterials = triangleMaterials;
+        this.positionIndices = trianglePositions;
+        this.textureIndices = triangleTextures;
+        this.normalIndices = triangleNormals;
+        this.faceCount = triangleCount;
     }
 
+    /**
+     * Compiles the faces into a single indexed mesh. Corners that share the same position, texture
+     * and normal indices are welded into one vertex.
+     */
     public MeshData compileMesh()
     {
         System.out.println("Triangulating");
         triangulate();
 
         System.out.println("Compiling mesh");
-        List<Vertex> vertices = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-
-        for (OBJFace face : this.faces)
-        {
-            for (int i = 0; i < 3; i++)
-            {
-                Vertex vertex = face.vertices[i];
+        VertexWelder welder = new VertexWelder(faceCount * 3);
 
-                if (vertex != null)
-                {
-                    indices.add(vertices.size());
-                    vertices.add(vertex);
-                }
-            }
-        }
+        for (int corner = 0; corner < faceCount * 3; corner++)
+            welder.add(positionIndices[corner], textureIndices[corner], normalIndices[corner]);
 
-        System.out.println("Done");
+        MeshData meshData = welder.compile();
+        System.out.println("Done, welded " + faceCount * 3 + " corners into " + meshData.getNumVertices() + " vertices");
 
-        return new MeshData(vertices, indices);
+        return meshData;
     }
 
+    /**
+     * Compiles the faces into an indexed mesh per material. Corners of the same material that share
+     * the same position, texture and normal indices are welded into one vertex.
+     */
     public Map<Material, MeshData> compileMeshWithMaterials()
     {
         System.out.println("Triangulating");
@@ -502,172 +454,160 @@ public class OBJModel
 
         System.out.println("Compiling mesh");
 
-        Map<Material, MeshData> materialMap = new HashMap<>();
+        // The welder of every material index, offset by one for faces without a material. Names
+        // that were not found in the material libraries all share the welder of the null material.
+        Map<Material, VertexWelder> welders = new HashMap<>();
+        VertexWelder[] materialWelders = new VertexWelder[materials.length + 1];
+
+        for (int i = 0; i < materialWelders.length; i++)
+            materialWelders[i] = welders.computeIfAbsent(i == 0 ? null : materials[i - 1], material -> new VertexWelder(256));
 
-        for (OBJFace face : this.faces)
+        for (int face = 0; face < faceCount; face++)
         {
-            MeshData meshData = materialMap.computeIfAbsent(face.material, material -> new MeshData());
-            List<Vertex> vertices = meshData.getVertices();
-            List<Integer> indices = meshData.getIndices();
+            VertexWelder welder = materialWelders[faceMaterials[face] + 1];
 
-            for (int i = 0; i < 3; i++)
-            {
-                Vertex vertex = face.vertices[i];
+            for (int corner = face * 3; corner < face * 3 + 3; corner++)
+                welder.add(positionIndices[corner], textureIndices[corner], normalIndices[corner]);
+        }
 
-                if (vertex != null)
-                {
-                    indices.add(vertices.size());
-                    vertices.add(vertex);
-                }
+        Map<Material, MeshData> materialMap = new HashMap<>();
+        int vertexCount = 0;
+
+        for (Map.Entry<Material, VertexWelder> entry : welders.entrySet())
+        {
+            if (entry.getValue().indexCount > 0)
+            {
+                MeshData meshData = entry.getValue().compile();
+                materialMap.put(entry.getKey(), meshData);
+                vertexCount += meshData.getNumVertices();
             }
         }
 
-        System.out.println("Done");
+        System.out.println("Done, welded " + faceCount * 3 + " corners into " + vertexCount + " vertices");
 
         return materialMap;
     }
 
-    public static class OBJFace
+    private Vertex createVertex(int positionIndex, int textureIndex, int normalIndex)
     {
-        public Vertex[] vertices;
-        public Material material;
+        int p = positionIndex * 3;
+        int t = textureIndex * 2;
+        int n = normalIndex * 3;
 
-        public OBJFace(Vertex[] vertices, Material material)
-        {
-            this.vertices = vertices;
-            this.material = material;
-        }
+        Vector3f position = new Vector3f(positions[p], positions[p + 1], positions[p + 2]);
+        Vector2f texture = t < 0 ? new Vector2f() : new Vector2f(textures[t], textures[t + 1]);
+        Vector3f normal = n < 0 ? new Vector3f() : new Vector3f(normals[n], normals[n + 1], normals[n + 2]);
+
+        return new Vertex(position, normal, texture);
+    }
+
+    /**
+     * Welds the corners of faces into unique vertices. Every distinct (position, texture, normal)
+     * index tuple becomes one vertex, found through an open addressing hash map from the tuple to
+     * the vertex, so nothing is boxed. The table holds vertex indices, and the tuple of a vertex is
+     * kept in three int arrays, which the table compares against.
+     */
+    private class VertexWelder
+    {
+        private static final int EMPTY = -1;
+
+        private int[] vertexPositions;
+        private int[] vertexTextures;
+        private int[] vertexNormals;
+        private int vertexCount;
 
-        @Override
-        public boolean equals(Object o)
+        private int[] indices;
+        private int indexCount;
+
+        private int[] table;
+        private int tableMask;
+
+        VertexWelder(int capacity)
         {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            OBJFace objFace = (OBJFace) o;
-            return Arrays.equals(vertices, objFace.vertices) && Objects.equals(material, objFace.material);
+            this.vertexPositions = new int[capacity];
+            this.vertexTextures = new int[capacity];
+            this.vertexNormals = new int[capacity];
+            this.indices = new int[capacity];
+            allocateTable(Integer.highestOneBit(Math.max(16, capacity)) * 2);
         }
 
-        @Override
-        public int hashCode()
+        private void allocateTable(int size)
         {
-            int result = Objects.hash(material);
-            result = 31 * result + Arrays.hashCode(vertices);
-            return result;
+            table = new int[size];
+            tableMask = size - 1;
+            Arrays.fill(table, EMPTY);
+
+            for (int vertex = 0; vertex < vertexCount; vertex++)
+            {
+                int slot = hash(vertexPositions[vertex], vertexTextures[vertex], vertexNormals[vertex]) & tableMask;
+
+                while (table[slot] != EMPTY)
+                    slot = (slot + 1) & tableMask;
+
+                table[slot] = vertex;
+            }
         }
 
-        @Override
-        public String toString()
+        private int hash(int position, int texture, int normal)
         {
-            return "OBJFace{" + "vertices=" + Arrays.toString(vertices) + ", material=" + material + '}';
+            long key = (((long) position * 31 + texture) * 31 + normal) * 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
         }
 
-        public void triangulate(List<OBJFace> faces, boolean convex)
+        /**
+         * Adds a corner, as the index of the vertex with its tuple, creating the vertex if there is none.
+         */
+        void add(int position, int texture, int normal)
         {
-            if (this.vertices.length >= 3)
+            int slot = hash(position, texture, normal) & tableMask;
+            int vertex;
+
+            while ((vertex = table[slot]) != EMPTY)
             {
-                if (this.vertices.length == 3)
-                {
-                    faces.add(this);
-                } else
-                {
-                    if (convex)
-                    {
-                        Queue<Vertex> queue = new LinkedList(Arrays.asList(this.vertices));
+                if (vertexPositions[vertex] == position && vertexTextures[vertex] == texture && vertexNormals[vertex] == normal)
+                    break;
 
-                        Vertex v0 = queue.poll();
-                        Vertex v1 = queue.poll();
+                slot = (slot + 1) & tableMask;
+            }
 
-                        while (!queue.isEmpty())
-                        {
-                            Vertex v2 = queue.poll();
+            if (vertex == EMPTY)
+            {
+                if (vertexCount == vertexPositions.length)
+                {
+                    vertexPositions = Arrays.copyOf(vertexPositions, vertexCount * 2);
+                    vertexTextures = Arrays.copyOf(vertexTextures, vertexCount * 2);
+                    vertexNormals = Arrays.copyOf(vertexNormals, vertexCount * 2);
+                }
 
-                            faces.add(new OBJFace(new Vertex[]{v0, v1, v2}, this.material));
+                vertex = vertexCount++;
+                vertexPositions[vertex] = position;
+                vertexTextures[vertex] = texture;
+                vertexNormals[vertex] = normal;
+                table[slot] = vertex;
 
-                            v1 = v2;
-                        }
-                    } else
-                    {
-                        Vector3f[] points3d = new Vector3f[this.vertices.length];
-                        Vertex2D[] points2d = new Vertex2D[this.vertices.length];
-
-                        for (int i = 0; i < this.vertices.length; i++)
-                        {
-                            points3d[i] = this.vertices[i].position;
-                        }
-
-                        Matrix3f covarianceMatrix = (Matrix3f) MathUtils.computeCovarianceMatrix(points3d).invert();
-                        Vector3f planeNormal = new Vector3f(1.0F, 1.0F, 1.0F);
-                        Vector3f planePosition = MathUtils.average(points3d);
-
-                        if (covarianceMatrix != null)
-                        {
-                            // calculate the largest eigenvector for the inverse of the covariance matrix. this is the smallest eigenvector of the un-inverted matrix.
-                            // This vector is the direction of least variance, and so will be the normal of a plane that will cause the least distortion to the polygon,
-                            // although, if a polygon overlaps itself, it may cause undefined behaviour.
-                            for (int i = 0; i < 200; i++)
-                                Matrix3f.transform(covarianceMatrix, planeNormal, planeNormal).normalise();
-                        } else
-                        {
-                            // These vertices all lie on the same plane, and thus the inverse of the covariance matrix cannot be computed.
-                            // Use the cross product between the first two edges to calculate the plane normal.
-                            Vector3f e0 = Vector3f.sub(this.vertices[2].position, this.vertices[0].position, null);
-                            Vector3f e1 = Vector3f.sub(this.vertices[1].position, this.vertices[0].position, null);
-
-                            planeNormal = Vector3f.cross(e0, e1, null).normalise(null);
-                        }
-
-                        // The x-axis of the plane.
-                        Vector3f w = Math.abs(planeNormal.x) != 1.0F ? new Vector3f(1.0F, 0.0F, 0.0F) : Math.abs(planeNormal.y) != 1.0F ? new Vector3f(0.0F, 1.0F, 0.0F) : Math.abs(planeNormal.z) != 1.0F ? new Vector3f(0.0F, 0.0F, 1.0F) : new Vector3f(1.0F, 1.0F, 1.0F).normalise(null);
-                        Vector3f u = (Vector3f) Vector3f.cross(planeNormal, w, null);
-                        Vector3f v = (Vector3f) Vector3f.cross(planeNormal, u, null); // The y-axis of the plane.
-
-                        if (u.lengthSquared() == 0.0F)
-                            System.out.println(planeNormal + " x " + w);
-                        u.normalise(u);
-                        v.normalise(v);
-
-                        for (int i = 0; i < this.vertices.length; i++)
-                        {
-                            float distance = -Vector3f.dot(planeNormal, Vector3f.sub(points3d[i], planePosition, null)); // The distance to the plane, from point.
-
-                            Vector3f dir = (Vector3f) new Vector3f(planeNormal).scale(distance); // The vector to add to point to place it on the plane.
-
-                            Vector3f planePoint = Vector3f.add(points3d[i], dir, null); // The point is now on the surface of the plane, but is still in 3D world space.
-
-                            // The dot product between the planes u/v axis and the point on the plane should give me a point in plane coordinates relative to the planes origin.
-                            float x = Vector3f.dot(Vector3f.sub(planePoint, planePosition, null), u);
-                            float y = Vector3f.dot(Vector3f.sub(planePoint, planePosition, null), v);
-
-                            points2d[i] = new Vertex2D(i, distance, new Vector2f(x, y));
-                        }
-
-                        List<Triangle2D> triangles = new PolygonTriangulator(new ArrayList<>(Arrays.asList(points2d))).generateTriangles();
-
-                        for (Triangle2D triangle : triangles)
-                        {
-                            Vertex v0 = new Vertex(vertices[triangle.v0.index]);
-                            Vertex v1 = new Vertex(vertices[triangle.v1.index]);
-                            Vertex v2 = new Vertex(vertices[triangle.v2.index]);
-
-                            v0.setPosition(getUnprojectedWorldCoords(triangle.v0, u, v, planeNormal, planePosition));
-                            v1.setPosition(getUnprojectedWorldCoords(triangle.v1, u, v, planeNormal, planePosition));
-                            v2.setPosition(getUnprojectedWorldCoords(triangle.v2, u, v, planeNormal, planePosition));
-
-                            faces.add(new OBJFace(new Vertex[]{v0, v1, v2}, this.material));
-                        }
-                    }
-                }
+                // Keep the table at most half full.
+                if (vertexCount * 2 > table.length)
+                    allocateTable(table.length * 2);
             }
+
+            if (indexCount == indices.length)
+                indices = Arrays.copyOf(indices, indexCount * 2);
+
+            indices[indexCount++] = vertex;
         }
 
-        private Vector3f getUnprojectedWorldCoords(Vertex2D point, Vector3f u, Vector3f v, Vector3f planeNormal, Vector3f planePosition)
+        MeshData compile()
         {
-            u = (Vector3f) u.normalise(null).scale(point.x);
-            v = (Vector3f) v.normalise(null).scale(point.y);
+            List<Vertex> vertices = new ArrayList<>(vertexCount);
+            List<Integer> indexList = new ArrayList<>(indexCount);
+
+            for (int vertex = 0; vertex < vertexCount; vertex++)
+                vertices.add(createVertex(vertexPositions[vertex], vertexTextures[vertex], vertexNormals[vertex]));
 
-            Vector3f pointOnPlane = Vector3f.add(planePosition, Vector3f.add(u, v, null), null);
+            for (int i = 0; i < indexCount; i++)
+                indexList.add(indices[i]);
 
-            return Vector3f.add(pointOnPlane, (Vector3f) new Vector3f(planeNormal).scale(-point.distance), null);
+            return new MeshData(vertices, indexList);
         }
     }
 }
@@ -0,0 +1,855 @@
+package main.client.rendering.geometry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads the geometry of an OBJ file into primitive arrays. The file is memory mapped and scanned a
+ * byte at a time, and numbers are lexed straight from the bytes, so no lines, strings or vectors are
+ * created for the vertices and faces, and the memory used is that of the arrays being filled.
+ *
+ * Positions, texture coordinates and normals are stored packed, three, two and three floats each.
+ * Every face is a run of corners, from {@code faceOffsets[face]} up to {@code faceOffsets[face + 1]},
+ * and every corner has an index into each of the three attribute arrays, with -1 for an attribute
+ * the corner does not have. Relative (negative) indices are resolved as they are read, and all
+ * indices are zero based. The usemtl names are kept in the order they first appear, and every face
+ * has the index of its name, or -1 if no material was in use.
+ *
+ * Only the v, vt, vn, f, mtllib and usemtl statements are read, and everything else is skipped.
+ *
+ * Large files are split at line breaks into chunks that are parsed in parallel, each into its own
+ * arrays, which are then copied one after the other into arrays of the total size. Absolute indices
+ * need nothing more, as the chunks keep the order of the file, but relative indices were resolved
+ * against the attributes of their own chunk, so the corners that had them are recorded and have the
+ * attribute counts of the chunks before added. A chunk does not know which material was in use where
+ * it starts either, so its faces before its first usemtl take the material in use at the end of the
+ * chunk before. While the chunks are being copied, the memory used is about twice the output.
+ *
+ * @author Kelan
+ */
+public class OBJParser
+{
+    private static final int MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+    private static final int MIN_CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final int NO_INDEX = Integer.MIN_VALUE + 1;
+    private static final int INVALID_INDEX = Integer.MIN_VALUE;
+    private static final int ABSENT = -1; // Stored for an attribute a corner does not have.
+
+    private static final int NO_MATERIAL = -1;
+    private static final int UNKNOWN_MATERIAL = -2; // Whatever was in use at the end of the chunk before.
+
+    private static final float[] FLOAT_POWERS_OF_TEN = {1e0F, 1e1F, 1e2F, 1e3F, 1e4F, 1e5F, 1e6F, 1e7F, 1e8F, 1e9F, 1e10F};
+    private static final double[] DOUBLE_POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    float[] positions = new float[3 * 1024];
+    float[] textures = new float[2 * 1024];
+    float[] normals = new float[3 * 1024];
+    int positionCount, textureCount, normalCount;
+
+    int[] faceOffsets = new int[1024 + 1];
+    int[] faceMaterials = new int[1024];
+    int faceCount;
+
+    int[] positionIndices = new int[3 * 1024];
+    int[] textureIndices = new int[3 * 1024];
+    int[] normalIndices = new int[3 * 1024];
+    int cornerCount;
+
+    final List<String> materialLibraries = new ArrayList<>();
+    final List<String> materialNames = new ArrayList<>();
+    private int currentMaterial;
+
+    private int[] relativeCorners = new int[16]; // corner * 3 + attribute, for every relative index.
+    private int relativeCount;
+
+    private ByteBuffer buffer;
+    private int pointer;
+    private int end;
+
+    public OBJParser()
+    {
+        this(NO_MATERIAL);
+    }
+
+    private OBJParser(int initialMaterial)
+    {
+        this.currentMaterial = initialMaterial;
+    }
+
+    /**
+     * Parses a whole OBJ file. Files too large to be mapped at once are mapped and parsed a window
+     * at a time, with every window ending on a line break.
+     */
+    public static OBJParser parse(File file) throws IOException
+    {
+        List<OBJParser> chunks = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            long start = 0;
+
+            while (start < size)
+            {
+                long length = Math.min(size - start, MAX_MAPPED_BYTES);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int end = (int) length;
+
+                if (start + length < size)
+                {
+                    while (end > 0 && buffer.get(end - 1) != '\n')
+                        end--;
+
+                    if (end == 0)
+                        throw new IOException("OBJ file " + file + " has a line longer than " + MAX_MAPPED_BYTES + " bytes");
+                }
+
+                parseChunks(buffer, end, chunks);
+                start += end;
+            }
+        }
+
+        OBJParser parser = chunks.size() == 1 ? chunks.get(0) : merge(chunks);
+        parser.finish();
+        return parser;
+    }
+
+    /**
+     * Splits the start of a buffer into chunks that end on line breaks, and parses them on the
+     * common fork join pool, or on this thread if there is only one.
+     */
+    private static void parseChunks(ByteBuffer buffer, int end, List<OBJParser> chunks)
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkCount = threads > 1 ? Math.max(1, Math.min(end / MIN_CHUNK_BYTES, threads * CHUNKS_PER_THREAD)) : 1;
+        int[] bounds = new int[chunkCount + 1];
+        OBJParser[] parsers = new OBJParser[chunkCount];
+
+        for (int i = 1; i < chunkCount; i++)
+        {
+            int bound = Math.max(bounds[i - 1], (int) ((long) end * i / chunkCount));
+
+            while (bound < end && buffer.get(bound - 1) != '\n')
+                bound++;
+
+            bounds[i] = bound;
+        }
+
+        bounds[chunkCount] = end;
+
+        for (int i = 0; i < chunkCount; i++)
+            parsers[i] = new OBJParser(chunks.isEmpty() && i == 0 ? NO_MATERIAL : UNKNOWN_MATERIAL);
+
+        if (chunkCount == 1)
+            parsers[0].parse(buffer, 0, end);
+        else
+            ForkJoinPool.commonPool().invoke(new ParseTask(buffer, bounds, parsers, 0, chunkCount));
+
+        chunks.addAll(Arrays.asList(parsers));
+    }
+
+    /**
+     * Copies the chunks into one parser, with arrays of exactly their total size.
+     */
+    private static OBJParser merge(List<OBJParser> chunks)
+    {
+        int positionCount = 0, textureCount = 0, normalCount = 0, faceCount = 0, cornerCount = 0;
+
+        for (OBJParser chunk : chunks)
+        {
+            positionCount += chunk.positionCount;
+            textureCount += chunk.textureCount;
+            normalCount += chunk.normalCount;
+            faceCount += chunk.faceCount;
+            cornerCount += chunk.cornerCount;
+        }
+
+        OBJParser merged = new OBJParser(NO_MATERIAL);
+        merged.positions = new float[positionCount * 3];
+        merged.textures = new float[textureCount * 2];
+        merged.normals = new float[normalCount * 3];
+        merged.faceOffsets = new int[faceCount + 1];
+        merged.faceMaterials = new int[faceCount];
+        merged.positionIndices = new int[cornerCount];
+        merged.textureIndices = new int[cornerCount];
+        merged.normalIndices = new int[cornerCount];
+
+        for (OBJParser chunk : chunks)
+            merged.append(chunk);
+
+        return merged;
+    }
+
+    /**
+     * Adds a chunk that followed everything parsed so far. The arrays must already have room for it.
+     */
+    private void append(OBJParser chunk)
+    {
+        int[] materialMap = new int[chunk.materialNames.size()];
+
+        for (int i = 0; i < materialMap.length; i++)
+        {
+            String name = chunk.materialNames.get(i);
+            int index = materialNames.indexOf(name);
+
+            if (index < 0)
+            {
+                index = materialNames.size();
+                materialNames.add(name);
+            }
+
+            materialMap[i] = index;
+        }
+
+        materialLibraries.addAll(chunk.materialLibraries);
+
+        System.arraycopy(chunk.positions, 0, positions, positionCount * 3, chunk.positionCount * 3);
+        System.arraycopy(chunk.textures, 0, textures, textureCount * 2, chunk.textureCount * 2);
+        System.arraycopy(chunk.normals, 0, normals, normalCount * 3, chunk.normalCount * 3);
+        System.arraycopy(chunk.positionIndices, 0, positionIndices, cornerCount, chunk.cornerCount);
+        System.arraycopy(chunk.textureIndices, 0, textureIndices, cornerCount, chunk.cornerCount);
+        System.arraycopy(chunk.normalIndices, 0, normalIndices, cornerCount, chunk.cornerCount);
+
+        for (int i = 0; i < chunk.relativeCount; i++)
+        {
+            int corner = cornerCount + chunk.relativeCorners[i] / 3;
+
+            switch (chunk.relativeCorners[i] % 3)
+            {
+                case 0:
+                    positionIndices[corner] += positionCount;
+                    break;
+                case 1:
+                    textureIndices[corner] += textureCount;
+                    break;
+                default:
+                    normalIndices[corner] += normalCount;
+                    break;
+            }
+        }
+
+        for (int face = 0; face < chunk.faceCount; face++)
+        {
+            int material = chunk.faceMaterials[face];
+            faceMaterials[faceCount + face] = material == UNKNOWN_MATERIAL ? currentMaterial : material < 0 ? material : materialMap[material];
+            faceOffsets[faceCount + face + 1] = cornerCount + chunk.faceOffsets[face + 1];
+        }
+
+        if (chunk.currentMaterial != UNKNOWN_MATERIAL)
+            currentMaterial = chunk.currentMaterial < 0 ? chunk.currentMaterial : materialMap[chunk.currentMaterial];
+
+        positionCount += chunk.positionCount;
+        textureCount += chunk.textureCount;
+        normalCount += chunk.normalCount;
+        faceCount += chunk.faceCount;
+        cornerCount += chunk.cornerCount;
+    }
+
+    /**
+     * Parses the lines between two positions of a buffer, adding them to what has been parsed so
+     * far. The end should be the end of a line, or of the file.
+     */
+    public void parse(ByteBuffer buffer, int start, int end)
+    {
+        this.buffer = buffer;
+        this.pointer = start;
+        this.end = end;
+
+        while (pointer < end)
+        {
+            skipSpaces();
+
+            if (pointer >= end)
+                break;
+
+            int lineStart = pointer;
+            byte c = buffer.get(pointer);
+
+            if (c == 'v')
+            {
+                byte next = peek(1);
+
+                if (isSpace(next))
+                {
+                    pointer += 1;
+                    readPosition();
+                } else if (next == 't' && isSpace(peek(2)))
+                {
+                    pointer += 2;
+                    readTexture();
+                } else if (next == 'n' && isSpace(peek(2)))
+                {
+                    pointer += 2;
+                    readNormal();
+                }
+            } else if (c == 'f' && isSpace(peek(1)))
+            {
+                pointer += 1;
+                readFace(lineStart);
+            } else if (matchesKeyword("mtllib"))
+            {
+                String name;
+
+                while ((name = readName()) != null)
+                    materialLibraries.add(name);
+            } else if (matchesKeyword("usemtl"))
+            {
+                String name = readName();
+
+                if (name != null)
+                {
+                    currentMaterial = materialNames.indexOf(name);
+
+                    if (currentMaterial < 0)
+                    {
+                        currentMaterial = materialNames.size();
+                        materialNames.add(name);
+                    }
+                }
+            }
+
+            skipLine();
+        }
+
+        this.buffer = null;
+    }
+
+    /**
+     * Drops the faces that refer to attributes the file never defined, and trims the arrays to
+     * what was parsed.
+     */
+    public void finish()
+    {
+        int faces = 0, corners = 0, dropped = 0;
+
+        for (int face = 0; face < faceCount; face++)
+        {
+            int first = faceOffsets[face], last = faceOffsets[face + 1];
+            boolean valid = true;
+
+            for (int corner = first; corner < last && valid; corner++)
+                valid = positionIndices[corner] >= 0 && positionIndices[corner] < positionCount && textureIndices[corner] >= ABSENT && textureIndices[corner] < textureCount && normalIndices[corner] >= ABSENT && normalIndices[corner] < normalCount;
+
+            if (!valid)
+            {
+                dropped++;
+                continue;
+            }
+
+            for (int corner = first; corner < last; corner++)
+            {
+                positionIndices[corners] = positionIndices[corner];
+                textureIndices[corners] = textureIndices[corner];
+                normalIndices[corners] = normalIndices[corner];
+                corners++;
+            }
+
+            faceMaterials[faces] = faceMaterials[face];
+            faceOffsets[++faces] = corners;
+        }
+
+        if (dropped > 0)
+            System.err.println("Dropped " + dropped + " OBJ faces that refer to vertices that do not exist");
+
+        positions = trim(positions, positionCount * 3);
+        textures = trim(textures, textureCount * 2);
+        normals = trim(normals, normalCount * 3);
+        faceOffsets = trim(faceOffsets, faces + 1);
+        faceMaterials = trim(faceMaterials, faces);
+        positionIndices = trim(positionIndices, corners);
+        textureIndices = trim(textureIndices, corners);
+        normalIndices = trim(normalIndices, corners);
+        relativeCorners = new int[0];
+        relativeCount = 0;
+        faceCount = faces;
+        cornerCount = corners;
+    }
+
+    private static float[] trim(float[] array, int length)
+    {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    private static int[] trim(int[] array, int length)
+    {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+
+    public int getPositionCount()
+    {
+        return positionCount;
+    }
+
+    public int getTextureCount()
+    {
+        return textureCount;
+    }
+
+    public int getNormalCount()
+    {
+        return normalCount;
+    }
+
+    public int getFaceCount()
+    {
+        return faceCount;
+    }
+
+    private void readPosition()
+    {
+        if (positionCount * 3 == positions.length)
+            positions = Arrays.copyOf(positions, positions.length * 2);
+
+        int i = positionCount++ * 3;
+        positions[i] = readFloat(0.0F);
+        positions[i + 1] = readFloat(0.0F);
+        positions[i + 2] = readFloat(0.0F);
+    }
+
+    private void readTexture()
+    {
+        if (textureCount * 2 == textures.length)
+            textures = Arrays.copyOf(textures, textures.length * 2);
+
+        int i = textureCount++ * 2;
+        textures[i] = readFloat(0.0F);
+        textures[i + 1] = readFloat(0.0F);
+    }
+
+    private void readNormal()
+    {
+        if (normalCount * 3 == normals.length)
+            normals = Arrays.copyOf(normals, normals.length * 2);
+
+        int i = normalCount++ * 3;
+        normals[i] = readFloat(0.0F);
+        normals[i + 1] = readFloat(0.0F);
+        normals[i + 2] = readFloat(0.0F);
+    }
+
+    /**
+     * Reads the corners of a face, in any of the forms v, v/vt, v//vn or v/vt/vn. A face with an
+     * index that cannot be read is skipped as a whole, and one with less than three corners is
+     * skipped quietly, as it has no area.
+     */
+    private void readFace(int lineStart)
+    {
+        int first = cornerCount;
+        boolean valid = true;
+
+        while (true)
+        {
+            skipSpaces();
+
+            if (pointer >= end || buffer.get(pointer) == '\n')
+                break;
+
+            if (cornerCount == positionIndices.length)
+            {
+                positionIndices = Arrays.copyOf(positionIndices, cornerCount * 2);
+                textureIndices = Arrays.copyOf(textureIndices, cornerCount * 2);
+                normalIndices = Arrays.copyOf(normalIndices, cornerCount * 2);
+            }
+
+            int position = readIndex(positionCount, 0);
+            int texture = NO_INDEX;
+            int normal = NO_INDEX;
+
+            if (peek(0) == '/')
+            {
+                pointer++;
+
+                if (peek(0) != '/')
+                    texture = readIndex(textureCount, 1);
+
+                if (peek(0) == '/')
+                {
+                    pointer++;
+                    normal = readIndex(normalCount, 2);
+                }
+            }
+
+            if (position == INVALID_INDEX || position == NO_INDEX || texture == INVALID_INDEX || normal == INVALID_INDEX || !isSeparator(peek(0)))
+            {
+                valid = false;
+                break;
+            }
+
+            positionIndices[cornerCount] = position;
+            textureIndices[cornerCount] = texture == NO_INDEX ? ABSENT : texture;
+            normalIndices[cornerCount] = normal == NO_INDEX ? ABSENT : normal;
+            cornerCount++;
+        }
+
+        if (!valid || cornerCount - first < 3)
+        {
+            if (!valid)
+                System.err.println("Failed to load face indices \"" + readLine(lineStart) + "\" from OBJ.");
+
+            while (relativeCount > 0 && relativeCorners[relativeCount - 1] >= first * 3)
+                relativeCount--;
+
+            cornerCount = first;
+            return;
+        }
+
+        if (faceCount == faceMaterials.length)
+        {
+            faceOffsets = Arrays.copyOf(faceOffsets, faceCount * 2 + 1);
+            faceMaterials = Arrays.copyOf(faceMaterials, faceCount * 2);
+        }
+
+        faceMaterials[faceCount] = currentMaterial;
+        faceOffsets[++faceCount] = cornerCount;
+    }
+
+    /**
+     * Reads a one based index, or a negative index relative to the number of attributes read so far,
+     * in which case the corner is recorded, so the index can be moved along when chunks are merged.
+     * A relative index is only checked once the whole file has been parsed, as it may refer to an
+     * attribute from an earlier chunk.
+     *
+     * @return The zero based index, {@link #NO_INDEX} if there was no index, or {@link #INVALID_INDEX}
+     * if the index was zero or too large.
+     */
+    private int readIndex(int count, int attribute)
+    {
+        ByteBuffer buffer = this.buffer;
+        int end = this.end;
+        int i = pointer;
+        boolean negative = false;
+
+        if (i < end && buffer.get(i) == '-')
+        {
+            negative = true;
+            i++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        byte c;
+
+        while (i < end && (c = buffer.get(i)) >= '0' && c <= '9' && digits <= 10)
+        {
+            value = value * 10 + (c - '0');
+            digits++;
+            i++;
+        }
+
+        pointer = i;
+
+        if (digits == 0)
+            return negative ? INVALID_INDEX : NO_INDEX;
+
+        if (value == 0 || value > Integer.MAX_VALUE)
+            return INVALID_INDEX;
+
+        if (!negative)
+            return (int) value - 1;
+
+        if (relativeCount == relativeCorners.length)
+            relativeCorners = Arrays.copyOf(relativeCorners, relativeCount * 2);
+
+        relativeCorners[relativeCount++] = cornerCount * 3 + attribute;
+        return count - (int) value;
+    }
+
+    /**
+     * Reads a decimal number, with an optional sign, fraction and exponent. The digits are gathered
+     * into a long and scaled by a power of ten, in float arithmetic when both are exact as floats,
+     * and otherwise in double arithmetic, rounded to a float. Anything that does not fit these, such
+     * as very long numbers, large exponents, NaN or infinity, is handed to {@link Float#parseFloat},
+     * so the result is always the same as it would give.
+     *
+     * The buffer, end and pointer are kept in locals here, as this runs for every number in the file.
+     *
+     * @return The number, or the default value if there was no number.
+     */
+    private float readFloat(float defaultValue)
+    {
+        ByteBuffer buffer = this.buffer;
+        int end = this.end;
+        int i = pointer;
+
+        while (i < end && isSpace(buffer.get(i)))
+            i++;
+
+        int start = i;
+        boolean negative = false;
+        byte c = i < end ? buffer.get(i) : 0;
+
+        if (c == '-' || c == '+')
+        {
+            negative = c == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+
+        while (i < end && (c = buffer.get(i)) >= '0' && c <= '9')
+        {
+            if (significantDigits < 19)
+            {
+                mantissa = mantissa * 10 + (c - '0');
+
+                if (mantissa != 0)
+                    significantDigits++;
+            } else
+            {
+                exponent++;
+            }
+
+            hasDigits = true;
+            i++;
+        }
+
+        if (i < end && buffer.get(i) == '.')
+        {
+            i++;
+
+            while (i < end && (c = buffer.get(i)) >= '0' && c <= '9')
+            {
+                if (significantDigits < 19)
+                {
+                    mantissa = mantissa * 10 + (c - '0');
+                    exponent--;
+
+                    if (mantissa != 0)
+                        significantDigits++;
+                }
+
+                hasDigits = true;
+                i++;
+            }
+        }
+
+        c = i < end ? buffer.get(i) : 0;
+
+        if (hasDigits && (c == 'e' || c == 'E'))
+        {
+            i++;
+            c = i < end ? buffer.get(i) : 0;
+            boolean negativeExponent = c == '-';
+
+            if (c == '-' || c == '+')
+                i++;
+
+            int value = 0;
+            int digits = 0;
+
+            while (i < end && (c = buffer.get(i)) >= '0' && c <= '9')
+            {
+                if (value < 100000)
+                    value = value * 10 + (c - '0');
+
+                digits++;
+                i++;
+            }
+
+            if (digits == 0)
+                return readSlowFloat(start, defaultValue);
+
+            exponent += negativeExponent ? -value : value;
+            c = i < end ? buffer.get(i) : 0;
+        }
+
+        if (!hasDigits || !isSeparator(c))
+            return readSlowFloat(start, defaultValue);
+
+        pointer = i;
+        float value;
+
+        if (mantissa == 0)
+        {
+            value = 0.0F;
+        } else if (mantissa < (1L << 24) && exponent >= -10 && exponent <= 10)
+        {
+            value = exponent >= 0 ? mantissa * FLOAT_POWERS_OF_TEN[exponent] : mantissa / FLOAT_POWERS_OF_TEN[-exponent];
+        } else if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22)
+        {
+            double exact = exponent >= 0 ? mantissa * DOUBLE_POWERS_OF_TEN[exponent] : mantissa / DOUBLE_POWERS_OF_TEN[-exponent];
+
+            // Rounding to a double and then to a float only differs from rounding straight to a float
+            // when the double lands exactly half way between two floats, or outside the normal floats.
+            if (exact < Float.MIN_NORMAL || exact > Float.MAX_VALUE || (Double.doubleToRawLongBits(exact) & 0x1FFFFFFFL) == 0x10000000L)
+                return readSlowFloat(start, defaultValue);
+
+            value = (float) exact;
+        } else
+        {
+            return readSlowFloat(start, defaultValue);
+        }
+
+        return negative ? -value : value;
+    }
+
+    private float readSlowFloat(int start, float defaultValue)
+    {
+        pointer = start;
+
+        while (pointer < end && !isSeparator(buffer.get(pointer)))
+            pointer++;
+
+        if (pointer == start)
+            return defaultValue;
+
+        try
+        {
+            return Float.parseFloat(readString(start, pointer));
+        } catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads the next name on the line, up to a space.
+     *
+     * @return The name, or null if there are no more on the line.
+     */
+    private String readName()
+    {
+        skipSpaces();
+        int start = pointer;
+
+        while (pointer < end && !isSeparator(buffer.get(pointer)))
+            pointer++;
+
+        return pointer == start ? null : readString(start, pointer);
+    }
+
+    private String readLine(int lineStart)
+    {
+        int lineEnd = lineStart;
+
+        while (lineEnd < end && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r')
+            lineEnd++;
+
+        return readString(lineStart, lineEnd);
+    }
+
+    private String readString(int start, int end)
+    {
+        byte[] bytes = new byte[end - start];
+
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buffer.get(start + i);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean matchesKeyword(String keyword)
+    {
+        int length = keyword.length();
+
+        for (int i = 0; i < length; i++)
+            if (peek(i) != keyword.charAt(i))
+                return false;
+
+        if (!isSpace(peek(length)))
+            return false;
+
+        pointer += length;
+        return true;
+    }
+
+    private void skipSpaces()
+    {
+        ByteBuffer buffer = this.buffer;
+        int end = this.end;
+        int i = pointer;
+
+        while (i < end && isSpace(buffer.get(i)))
+            i++;
+
+        pointer = i;
+    }
+
+    private void skipLine()
+    {
+        ByteBuffer buffer = this.buffer;
+        int end = this.end;
+        int i = pointer;
+
+        while (i < end && buffer.get(i++) != '\n')
+        {
+        }
+
+        pointer = i;
+    }
+
+    /**
+     * @return The byte at an offset from the pointer, or zero past the end.
+     */
+    private byte peek(int offset)
+    {
+        int i = pointer + offset;
+        return i < end ? buffer.get(i) : 0;
+    }
+
+    /**
+     * Parses a range of chunks, splitting it in halves until there is one chunk left.
+     */
+    private static class ParseTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer;
+        private final int[] bounds;
+        private final OBJParser[] parsers;
+        private final int start;
+        private final int end;
+
+        ParseTask(ByteBuffer buffer, int[] bounds, OBJParser[] parsers, int start, int end)
+        {
+            this.buffer = buffer;
+            this.bounds = bounds;
+            this.parsers = parsers;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (end - start < 2)
+            {
+                for (int i = start; i < end; i++)
+                    parsers[i].parse(buffer.duplicate(), bounds[i], bounds[i + 1]);
+
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new ParseTask(buffer, bounds, parsers, start, middle), new ParseTask(buffer, bounds, parsers, middle, end));
+        }
+    }
+
+    private static boolean isSpace(byte c)
+    {
+        return c == ' ' || c == '\t' || c == '\r';
+    }
+
+    /**
+     * @return Whether a byte can follow a number or name, a space, a line break or the end.
+     */
+    private static boolean isSeparator(byte c)
+    {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == 0;
+    }
+}
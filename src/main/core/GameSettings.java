@@ -15,6 +15,7 @@ public class GameSettings
 
     private int maxFps = 300;
     private int maxTps = 64;
+    private int maxTickSubsteps = 5;
     private int windowWidth = 1600;
     private int windowHeight = 900;
     private String windowTitle = "Test Window";
@@ -53,6 +54,11 @@ public class GameSettings
         return maxTps;
     }
 
+    public int getMaxTickSubsteps()
+    {
+        return maxTickSubsteps;
+    }
+
     public int getWindowWidth()
     {
         return windowWidth;
@@ -78,6 +84,11 @@ public class GameSettings
         this.maxTps = maxTps;
     }
 
+    public void setMaxTickSubsteps(int maxTickSubsteps)
+    {
+        this.maxTickSubsteps = maxTickSubsteps;
+    }
+
     public void setWindowSize(int windowWidth, int windowHeight)
     {
         this.windowWidth = windowWidth;
@@ -95,6 +106,7 @@ public class GameSettings
         Engine.getClientThread().setWindowTitle(windowTitle);
         Engine.getClientThread().setUpdateDelta(1.0 / getMaxFps());
         Engine.getPhysicsThread().setUpdateDelta(1.0 / getMaxTps());
+        Engine.getPhysicsThread().setMaxSubsteps(getMaxTickSubsteps());
 
         Engine.getClientThread().setWindowCentered();
     }
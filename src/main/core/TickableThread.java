@@ -1,5 +1,7 @@
 package main.core;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * @author Kelan
  */
@@ -11,6 +13,11 @@ public abstract class TickableThread implements Runnable
     private boolean running;
     private boolean stopped;
     private Thread thread;
+    private int maxSubsteps = 5;
+
+    private volatile long lastTickTime;
+    private volatile long lastStep = 1L;
+    private volatile long droppedTicks;
 
     public TickableThread(String name)
     {
@@ -42,37 +49,80 @@ public abstract class TickableThread implements Runnable
         LogHandler.getLogger().info("Running");
 
         long lastTime = System.nanoTime();
-        long lastTick = System.nanoTime();
-        double partialTicks = 0.0;
+        long lastTick = lastTime;
+        long accumulator = 0L;
+        long droppedSinceLog = 0L;
+        long lastDropLog = lastTime;
 
         while (isRunning())
         {
             if (isStopped())
                 break;
 
+            long step = (long) Math.max(1.0, 1000000000.0 * getUpdateDelta());
             long now = System.nanoTime();
-            partialTicks += (now - lastTime) / Math.max(1.0, 1000000000.0 * getUpdateDelta());
+            accumulator += now - lastTime;
             lastTime = now;
 
-            if (partialTicks >= 1.0)
+            if (accumulator >= step)
             {
-                synchronized (getLock())
+                if (isFixedTimestep())
+                {
+                    // Run as many fixed steps as are needed to catch up to real time, up to the
+                    // substep cap. Any time left over after that is dropped rather than carried
+                    // forward, so a long stall cannot cause an ever growing backlog of ticks.
+                    int maxSubsteps = Math.max(1, getMaxSubsteps());
+                    int substeps = 0;
+
+                    while (accumulator >= step && substeps < maxSubsteps)
+                    {
+                        // The state produced by this update corresponds to the point in real time
+                        // that will still be "owed" by the accumulator once it has run.
+                        lastStep = step;
+                        lastTickTime = now - (accumulator - step);
+
+                        synchronized (getLock())
+                        {
+                            if (!update(step / 1000000000.0))
+                                Engine.getInstance().stop();
+                        }
+
+                        accumulator -= step;
+                        substeps++;
+                    }
+
+                    if (accumulator >= step)
+                    {
+                        long dropped = accumulator / step;
+                        accumulator -= dropped * step;
+                        droppedSinceLog += dropped;
+                        droppedTicks += dropped;
+                    }
+                } else
                 {
-                    if (!update((now - lastTick) / 1000000000.0))
-                        Engine.getInstance().stop();
+                    lastStep = step;
+                    lastTickTime = now - Math.min(accumulator - step, step);
 
-                    lastTick = now;
-                    partialTicks--;
+                    synchronized (getLock())
+                    {
+                        if (!update((now - lastTick) / 1000000000.0))
+                            Engine.getInstance().stop();
+                    }
+
+                    accumulator = Math.min(accumulator - step, step);
                 }
+
+                lastTick = now;
             }
 
-            try
+            if (droppedSinceLog > 0 && now - lastDropLog > 1000000000L)
             {
-                Thread.sleep(1);
-            } catch (InterruptedException e)
-            {
-                e.printStackTrace();
+                LogHandler.getLogger().warning("Running behind, dropped " + droppedSinceLog + " ticks");
+                droppedSinceLog = 0L;
+                lastDropLog = now;
             }
+
+            waitForNextTick(step - accumulator - (System.nanoTime() - now));
         }
 
         synchronized (getLock())
@@ -85,6 +135,29 @@ public abstract class TickableThread implements Runnable
         LogHandler.getLogger().info("Finished executing thread");
     }
 
+    /**
+     * Waits for the given number of nanoseconds. Most of the wait is spent parked, and the last
+     * fraction of a millisecond is spent yielding, since parking cannot reliably wake up with
+     * sub-millisecond precision.
+     *
+     * @param nanos The number of nanoseconds until the next tick is due.
+     */
+    private void waitForNextTick(long nanos)
+    {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+
+        while (remaining > 0L && !isStopped())
+        {
+            if (remaining > 1000000L)
+                LockSupport.parkNanos(remaining - 500000L);
+            else
+                Thread.yield();
+
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
     public final boolean start(long timeout)
     {
         LogHandler.getLogger().info("Starting " + thread.getName());
@@ -159,6 +232,67 @@ public abstract class TickableThread implements Runnable
 
     public abstract double getUpdateDelta();
 
+    /**
+     * If this thread runs with a fixed timestep, every update is passed exactly
+     * {@link #getUpdateDelta()}, and multiple updates may run back to back to catch up to real time.
+     * Otherwise at most one update is run per iteration, and it is passed the real time elapsed since
+     * the previous update.
+     *
+     * @return true if this thread runs with a fixed timestep.
+     */
+    protected boolean isFixedTimestep()
+    {
+        return true;
+    }
+
+    /**
+     * Gets how far real time has advanced past the last completed update, as a fraction of the
+     * update delta. This is the factor used to blend between the previous and current state of
+     * anything updated by this thread.
+     *
+     * @return The interpolation factor in the range [0, 1].
+     */
+    public final double getInterpolationAlpha()
+    {
+        double alpha = (System.nanoTime() - lastTickTime) / (double) lastStep;
+        return alpha < 0.0 ? 0.0 : alpha > 1.0 ? 1.0 : alpha;
+    }
+
+    /**
+     * Gets the {@link System#nanoTime()} that the most recent update corresponds to. While an update
+     * is running, this is the time of the state being produced by that update.
+     */
+    public final long getLastTickTime()
+    {
+        return lastTickTime;
+    }
+
+    public final long getLastStep()
+    {
+        return lastStep;
+    }
+
+    public final long getDroppedTicks()
+    {
+        return droppedTicks;
+    }
+
+    public final int getMaxSubsteps()
+    {
+        synchronized (getLock())
+        {
+            return maxSubsteps;
+        }
+    }
+
+    public final void setMaxSubsteps(int maxSubsteps)
+    {
+        synchronized (getLock())
+        {
+            this.maxSubsteps = maxSubsteps;
+        }
+    }
+
     public final Object getLock()
     {
         return lock;
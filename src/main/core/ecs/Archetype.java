@@ -0,0 +1,245 @@
+package main.core.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The set of component types of a group of entities, and the storage of those entities. The entities
+ * of an archetype are packed into {@link Chunk}s, and the archetype keeps them dense, so every chunk
+ * but the last is full and the entity in row {@code r} is at index {@code r % capacity} of chunk
+ * {@code r / capacity}. Removing an entity moves the last entity into its row.
+ *
+ * The capacity of the chunks is chosen so that a chunk holds about {@link #CHUNK_BYTES} bytes of
+ * component data, which keeps the columns that a system loops over in the cache together.
+ *
+ * @author Kelan
+ */
+public final class Archetype
+{
+    public static final int CHUNK_BYTES = 16384;
+
+    private static final int MIN_CHUNK_CAPACITY = 16;
+
+    private final long mask;
+    private final ComponentType[] types;
+    private final int[] columns = new int[ComponentType.MAX_TYPES];
+    private final int chunkCapacity;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int size;
+
+    // The archetypes that an entity moves to when a component is added or removed, by type id.
+    final Archetype[] addEdges = new Archetype[ComponentType.MAX_TYPES];
+    final Archetype[] removeEdges = new Archetype[ComponentType.MAX_TYPES];
+
+    Archetype(long mask)
+    {
+        this.mask = mask;
+        this.types = new ComponentType[Long.bitCount(mask)];
+
+        Arrays.fill(columns, -1);
+        int bytesPerEntity = Integer.BYTES;
+
+        for (int id = 0, column = 0; id < ComponentType.MAX_TYPES; id++)
+        {
+            if ((mask & 1L << id) == 0L)
+                continue;
+
+            ComponentType type = ComponentType.get(id);
+            types[column] = type;
+            columns[id] = column++;
+            bytesPerEntity += type.isObject() ? Integer.BYTES : type.getWidth() * Float.BYTES;
+        }
+
+        this.chunkCapacity = Math.max(MIN_CHUNK_CAPACITY, CHUNK_BYTES / bytesPerEntity);
+    }
+
+    /**
+     * Appends an entity to the end of this archetype. Its components are left as they were in the
+     * row, and must be written by the caller.
+     *
+     * @return The row of the entity.
+     */
+    int add(int entity)
+    {
+        int row = size++;
+        int chunkIndex = row / chunkCapacity;
+
+        if (chunkIndex == chunks.size())
+            chunks.add(new Chunk(this, chunkCapacity));
+
+        Chunk chunk = chunks.get(chunkIndex);
+        chunk.entities[chunk.count++] = entity;
+        return row;
+    }
+
+    /**
+     * Removes the entity in a row, by moving the last entity of this archetype into it.
+     *
+     * @return The entity that was moved into the row, or -1 if the removed entity was the last one.
+     */
+    int remove(int row)
+    {
+        int last = --size;
+        Chunk lastChunk = chunks.get(last / chunkCapacity);
+        int lastIndex = --lastChunk.count;
+        int moved = -1;
+
+        if (row != last)
+        {
+            Chunk chunk = chunks.get(row / chunkCapacity);
+            int index = row % chunkCapacity;
+            moved = lastChunk.entities[lastIndex];
+            chunk.entities[index] = moved;
+
+            for (int c = 0; c < types.length; c++)
+            {
+                if (chunk.objects[c] != null)
+                {
+                    chunk.objects[c][index] = lastChunk.objects[c][lastIndex];
+                } else
+                {
+                    int width = types[c].getWidth();
+                    System.arraycopy(lastChunk.floats[c], lastIndex * width, chunk.floats[c], index * width, width);
+                }
+            }
+        }
+
+        // Do not hold on to the objects of removed entities.
+        for (int c = 0; c < types.length; c++)
+            if (lastChunk.objects[c] != null)
+                lastChunk.objects[c][lastIndex] = null;
+
+        return moved;
+    }
+
+    /**
+     * Copies the components of the entity in a row of this archetype that the other archetype also
+     * has into a row of the other archetype.
+     */
+    void copyTo(int row, Archetype dest, int destRow)
+    {
+        Chunk chunk = chunks.get(row / chunkCapacity);
+        Chunk destChunk = dest.chunks.get(destRow / dest.chunkCapacity);
+        int index = row % chunkCapacity;
+        int destIndex = destRow % dest.chunkCapacity;
+
+        for (int c = 0; c < types.length; c++)
+        {
+            int d = dest.columns[types[c].getId()];
+
+            if (d < 0)
+                continue;
+
+            if (chunk.objects[c] != null)
+            {
+                destChunk.objects[d][destIndex] = chunk.objects[c][index];
+            } else
+            {
+                int width = types[c].getWidth();
+                System.arraycopy(chunk.floats[c], index * width, destChunk.floats[d], destIndex * width, width);
+            }
+        }
+    }
+
+    /**
+     * Clears the components of the entity in a row to zero and null.
+     */
+    void clear(int row)
+    {
+        Chunk chunk = chunks.get(row / chunkCapacity);
+        int index = row % chunkCapacity;
+
+        for (int c = 0; c < types.length; c++)
+        {
+            if (chunk.objects[c] != null)
+            {
+                chunk.objects[c][index] = null;
+            } else
+            {
+                int width = types[c].getWidth();
+                Arrays.fill(chunk.floats[c], index * width, index * width + width, 0.0F);
+            }
+        }
+    }
+
+    /**
+     * Gets the chunk that holds a row.
+     */
+    Chunk getChunkOfRow(int row)
+    {
+        return chunks.get(row / chunkCapacity);
+    }
+
+    /**
+     * Gets the index of a component type in the columns of the chunks of this archetype.
+     *
+     * @throws IllegalArgumentException if this archetype does not have the component.
+     */
+    int getColumn(ComponentType type)
+    {
+        int column = columns[type.getId()];
+
+        if (column < 0)
+            throw new IllegalArgumentException("Archetype does not have component " + type.getName());
+
+        return column;
+    }
+
+    public boolean hasComponent(ComponentType type)
+    {
+        return (mask & type.getMask()) != 0L;
+    }
+
+    /**
+     * Checks whether this archetype has every component of one mask and none of the components of
+     * another.
+     */
+    public boolean matches(long all, long none)
+    {
+        return (mask & all) == all && (mask & none) == 0L;
+    }
+
+    public long getMask()
+    {
+        return mask;
+    }
+
+    /**
+     * Gets the component types of this archetype, in the order of their ids. The array must not be
+     * modified.
+     */
+    public ComponentType[] getTypes()
+    {
+        return types;
+    }
+
+    public int getChunkCount()
+    {
+        return chunks.size();
+    }
+
+    public Chunk getChunk(int index)
+    {
+        return chunks.get(index);
+    }
+
+    public int getChunkCapacity()
+    {
+        return chunkCapacity;
+    }
+
+    /**
+     * Gets the number of entities in this archetype.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Archetype{" + "types=" + Arrays.toString(Arrays.stream(types).map(ComponentType::getName).toArray()) + ", size=" + size + ", chunks=" + chunks.size() + '}';
+    }
+}
@@ -0,0 +1,92 @@
+package main.core.ecs;
+
+/**
+ * A fixed size block of the entities of one {@link Archetype}. Every float component of the
+ * archetype has a column in the chunk, which holds the floats of each entity back to back, so the
+ * floats of entity {@code i} of a component of width {@code w} are at {@code [i * w, i * w + w)}.
+ * Object components have one reference per entity. The first {@link #getCount()} entities of the
+ * chunk are live, and a system that loops over them walks each column from the start.
+ *
+ * @author Kelan
+ */
+public final class Chunk
+{
+    final Archetype archetype;
+    final int[] entities;
+    final float[][] floats;
+    final Object[][] objects;
+    int count;
+
+    Chunk(Archetype archetype, int capacity)
+    {
+        ComponentType[] types = archetype.getTypes();
+
+        this.archetype = archetype;
+        this.entities = new int[capacity];
+        this.floats = new float[types.length][];
+        this.objects = new Object[types.length][];
+
+        for (int i = 0; i < types.length; i++)
+        {
+            if (types[i].isObject())
+                objects[i] = new Object[capacity];
+            else
+                floats[i] = new float[capacity * types[i].getWidth()];
+        }
+    }
+
+    /**
+     * Gets the float column of a component of this chunk.
+     *
+     * @throws IllegalArgumentException if the archetype of this chunk does not have the component, or
+     *                                  the component is not a float component.
+     */
+    public float[] getFloats(ComponentType type)
+    {
+        float[] column = floats[archetype.getColumn(type)];
+
+        if (column == null)
+            throw new IllegalArgumentException(type.getName() + " is not a float component");
+
+        return column;
+    }
+
+    /**
+     * Gets the object column of a component of this chunk.
+     *
+     * @throws IllegalArgumentException if the archetype of this chunk does not have the component, or
+     *                                  the component is not an object component.
+     */
+    public Object[] getObjects(ComponentType type)
+    {
+        Object[] column = objects[archetype.getColumn(type)];
+
+        if (column == null)
+            throw new IllegalArgumentException(type.getName() + " is not an object component");
+
+        return column;
+    }
+
+    /**
+     * Gets the entity at an index of this chunk.
+     */
+    public int getEntity(int index)
+    {
+        return entities[index];
+    }
+
+    public Archetype getArchetype()
+    {
+        return archetype;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public int getCapacity()
+    {
+        return entities.length;
+    }
+}
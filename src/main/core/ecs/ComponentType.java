@@ -0,0 +1,119 @@
+package main.core.ecs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A type of component that an entity can have. A component is either a fixed number of floats, which
+ * are stored in a primitive column of every chunk that holds it, or a single object reference, for
+ * data such as meshes and shaders that cannot be flattened.
+ *
+ * Every type has a unique id below {@link #MAX_TYPES}, so a set of types is a bit mask, and the
+ * archetype of an entity is the mask of its component types.
+ *
+ * @author Kelan
+ */
+public final class ComponentType
+{
+    public static final int MAX_TYPES = 64;
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+    private static final ComponentType[] TYPES = new ComponentType[MAX_TYPES];
+
+    private final String name;
+    private final int id;
+    private final int width;
+
+    private ComponentType(String name, int width)
+    {
+        int id = NEXT_ID.getAndIncrement();
+
+        if (id >= MAX_TYPES)
+            throw new IllegalStateException("Cannot register component type " + name + ", only " + MAX_TYPES + " types are supported");
+
+        this.name = name;
+        this.id = id;
+        this.width = width;
+
+        synchronized (TYPES)
+        {
+            TYPES[id] = this;
+        }
+    }
+
+    /**
+     * Registers a component type that is stored as the given number of floats per entity.
+     */
+    public static ComponentType floats(String name, int width)
+    {
+        if (width <= 0)
+            throw new IllegalArgumentException("Component type " + name + " must have at least one float");
+
+        return new ComponentType(name, width);
+    }
+
+    /**
+     * Registers a component type that is stored as a single object reference per entity.
+     */
+    public static ComponentType objects(String name)
+    {
+        return new ComponentType(name, 0);
+    }
+
+    /**
+     * Gets the registered component type with the given id.
+     */
+    static ComponentType get(int id)
+    {
+        synchronized (TYPES)
+        {
+            return TYPES[id];
+        }
+    }
+
+    /**
+     * Gets the mask of a set of component types.
+     */
+    public static long mask(ComponentType... types)
+    {
+        long mask = 0L;
+
+        for (ComponentType type : types)
+            mask |= type.getMask();
+
+        return mask;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public long getMask()
+    {
+        return 1L << id;
+    }
+
+    /**
+     * Gets the number of floats of this component, or 0 if it is an object component.
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public boolean isObject()
+    {
+        return width == 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ComponentType{" + "name='" + name + '\'' + ", id=" + id + ", width=" + width + '}';
+    }
+}
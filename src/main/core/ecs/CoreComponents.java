@@ -0,0 +1,145 @@
+package main.core.ecs;
+
+import main.core.scene.TransformSnapshot;
+import main.core.scene.Transformation;
+import org.lwjgl.util.vector.Matrix4f;
+
+/**
+ * The component types of the reference systems, which mirror the state of the {@link main.core.scene}
+ * components that they port.
+ *
+ * @author Kelan
+ */
+public final class CoreComponents
+{
+    /**
+     * Translation xyz, rotation xyzw and scale xyz, as in {@link TransformSnapshot#STRIDE}.
+     */
+    public static final ComponentType TRANSFORM = ComponentType.floats("transform", TransformSnapshot.STRIDE);
+
+    /**
+     * The column major matrix of the transform, as computed by {@link Transformation#getMatrix()}.
+     */
+    public static final ComponentType MODEL_MATRIX = ComponentType.floats("modelMatrix", 16);
+
+    /**
+     * The near plane, far plane, field of view and aspect ratio of a camera, followed by the
+     * translation xyz and rotation xyzw of its offset from the transform of the entity. An aspect
+     * ratio of zero or less follows the window.
+     */
+    public static final ComponentType CAMERA = ComponentType.floats("camera", 11);
+
+    /**
+     * The projection matrix of a camera, followed by its view matrix, both column major.
+     */
+    public static final ComponentType CAMERA_MATRICES = ComponentType.floats("cameraMatrices", 32);
+
+    /**
+     * The move speed, mouse speed and acceleration speed of a fly controller, followed by the time
+     * it has been accelerating for.
+     */
+    public static final ComponentType FLY_CONTROLLER = ComponentType.floats("flyController", 4);
+
+    /**
+     * A {@code Map<Material, GLMesh>} of the meshes to draw with each material.
+     */
+    public static final ComponentType MESH = ComponentType.objects("mesh");
+
+    /**
+     * The {@link main.client.rendering.ShaderProgram} to draw a mesh with.
+     */
+    public static final ComponentType SHADER = ComponentType.objects("shader");
+
+    public static final int CAMERA_NEAR = 0;
+    public static final int CAMERA_FAR = 1;
+    public static final int CAMERA_FOV = 2;
+    public static final int CAMERA_ASPECT = 3;
+    public static final int CAMERA_OFFSET = 4;
+    public static final int CAMERA_PROJECTION = 0;
+    public static final int CAMERA_VIEW = 16;
+    public static final int FLY_MOVE_SPEED = 0;
+    public static final int FLY_MOUSE_SPEED = 1;
+    public static final int FLY_ACCELERATION_SPEED = 2;
+    public static final int FLY_MOTION_TIMER = 3;
+
+    private CoreComponents()
+    {
+    }
+
+    /**
+     * Sets the transform component of an entity.
+     */
+    public static void setTransform(EntityWorld world, int entity, Transformation transformation)
+    {
+        world.setFloats(entity, TRANSFORM,
+                transformation.getTranslation().x, transformation.getTranslation().y, transformation.getTranslation().z,
+                transformation.getRotation().x, transformation.getRotation().y, transformation.getRotation().z, transformation.getRotation().w,
+                transformation.getScale().x, transformation.getScale().y, transformation.getScale().z);
+    }
+
+    /**
+     * Sets the camera component of an entity, with no offset.
+     */
+    public static void setCamera(EntityWorld world, int entity, float near, float far, float fov, float aspect)
+    {
+        world.setFloats(entity, CAMERA, near, far, fov, aspect, 0.0F, 0.0F, 0.0F, 0.0F, 0.0F, 0.0F, 1.0F);
+    }
+
+    /**
+     * Sets the fly controller component of an entity.
+     */
+    public static void setFlyController(EntityWorld world, int entity, float moveSpeed, float mouseSpeed, float accelerationSpeed)
+    {
+        world.setFloats(entity, FLY_CONTROLLER, moveSpeed, mouseSpeed, accelerationSpeed, 0.0F);
+    }
+
+    /**
+     * Copies a column major matrix out of a float column.
+     */
+    public static Matrix4f loadMatrix(float[] src, int offset, Matrix4f dest)
+    {
+        if (dest == null)
+            dest = new Matrix4f();
+
+        dest.m00 = src[offset];
+        dest.m01 = src[offset + 1];
+        dest.m02 = src[offset + 2];
+        dest.m03 = src[offset + 3];
+        dest.m10 = src[offset + 4];
+        dest.m11 = src[offset + 5];
+        dest.m12 = src[offset + 6];
+        dest.m13 = src[offset + 7];
+        dest.m20 = src[offset + 8];
+        dest.m21 = src[offset + 9];
+        dest.m22 = src[offset + 10];
+        dest.m23 = src[offset + 11];
+        dest.m30 = src[offset + 12];
+        dest.m31 = src[offset + 13];
+        dest.m32 = src[offset + 14];
+        dest.m33 = src[offset + 15];
+        return dest;
+    }
+
+    /**
+     * Copies a matrix into a float column, column major.
+     */
+    public static void storeMatrix(Matrix4f src, float[] dest, int offset)
+    {
+        dest[offset] = src.m00;
+        dest[offset + 1] = src.m01;
+        dest[offset + 2] = src.m02;
+        dest[offset + 3] = src.m03;
+        dest[offset + 4] = src.m10;
+        dest[offset + 5] = src.m11;
+        dest[offset + 6] = src.m12;
+        dest[offset + 7] = src.m13;
+        dest[offset + 8] = src.m20;
+        dest[offset + 9] = src.m21;
+        dest[offset + 10] = src.m22;
+        dest[offset + 11] = src.m23;
+        dest[offset + 12] = src.m30;
+        dest[offset + 13] = src.m31;
+        dest[offset + 14] = src.m32;
+        dest[offset + 15] = src.m33;
+    }
+}
@@ -0,0 +1,280 @@
+package main.core.ecs;
+
+import main.client.rendering.ShaderProgram;
+import main.core.ecs.systems.CameraSystem;
+import main.core.ecs.systems.ModelMatrixSystem;
+import main.core.scene.Component;
+import main.core.scene.FlatScene;
+import main.core.scene.GameObject;
+import main.core.scene.Transformation;
+import main.core.util.MathUtils;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Random;
+
+/**
+ * Compares a tick of a scene of moving objects as game objects with components, traversed through a
+ * {@link FlatScene}, against the same scene as entities updated by systems, run by a
+ * {@link SystemScheduler} both serially and in parallel. Every tick, each object moves by its
+ * velocity and has its model matrix recomputed, and every camera recomputes its matrices.
+ *
+ * @author Kelan
+ */
+public class EcsBenchmark
+{
+    private static final ComponentType VELOCITY = ComponentType.floats("velocity", 3);
+    private static final int CAMERA_COUNT = 4;
+    private static final int WARMUP_TICKS = 50;
+    private static final int TICKS = 200;
+    private static final double DELTA = 1.0 / 60.0;
+
+    private final int count;
+    private final float[] positions;
+    private final float[] rotations;
+    private final float[] velocities;
+
+    public EcsBenchmark(int count, long seed)
+    {
+        this.count = count;
+        this.positions = new float[count * 3];
+        this.rotations = new float[count * 4];
+        this.velocities = new float[count * 3];
+
+        Random random = new Random(seed);
+
+        for (int i = 0; i < count; i++)
+        {
+            Quaternion rotation = new Quaternion(random.nextFloat() - 0.5F, random.nextFloat() - 0.5F, random.nextFloat() - 0.5F, random.nextFloat() - 0.5F).normalise(null);
+
+            for (int j = 0; j < 3; j++)
+            {
+                positions[i * 3 + j] = random.nextFloat() * 100.0F;
+                velocities[i * 3 + j] = random.nextFloat() - 0.5F;
+            }
+
+            rotations[i * 4] = rotation.x;
+            rotations[i * 4 + 1] = rotation.y;
+            rotations[i * 4 + 2] = rotation.z;
+            rotations[i * 4 + 3] = rotation.w;
+        }
+    }
+
+    /**
+     * Runs the scene as game objects.
+     *
+     * @return The average tick time, in milliseconds.
+     */
+    public double runObjects()
+    {
+        GameObject root = new GameObject();
+
+        for (int i = 0; i < count; i++)
+        {
+            GameObject object = new GameObject(new Transformation(
+                    new Vector3f(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2]),
+                    new Quaternion(rotations[i * 4], rotations[i * 4 + 1], rotations[i * 4 + 2], rotations[i * 4 + 3])));
+
+            object.addComponent("mover", new Mover(velocities[i * 3], velocities[i * 3 + 1], velocities[i * 3 + 2]));
+
+            if (i < CAMERA_COUNT)
+                object.addComponent("camera", new CameraMatrices());
+
+            root.addChild("object" + i, object);
+        }
+
+        FlatScene scene = new FlatScene(root);
+
+        for (int tick = 0; tick < WARMUP_TICKS; tick++)
+            scene.update(DELTA);
+
+        long start = System.nanoTime();
+
+        for (int tick = 0; tick < TICKS; tick++)
+            scene.update(DELTA);
+
+        return (System.nanoTime() - start) / 1e6 / TICKS;
+    }
+
+    /**
+     * Runs the scene as entities.
+     *
+     * @return The average tick time, in milliseconds.
+     */
+    public double runEntities(boolean parallel)
+    {
+        EntityWorld world = new EntityWorld();
+
+        for (int i = 0; i < count; i++)
+        {
+            int entity = i < CAMERA_COUNT
+                    ? world.createEntity(CoreComponents.TRANSFORM, CoreComponents.MODEL_MATRIX, VELOCITY, CoreComponents.CAMERA, CoreComponents.CAMERA_MATRICES)
+                    : world.createEntity(CoreComponents.TRANSFORM, CoreComponents.MODEL_MATRIX, VELOCITY);
+
+            world.setFloats(entity, CoreComponents.TRANSFORM, positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2],
+                    rotations[i * 4], rotations[i * 4 + 1], rotations[i * 4 + 2], rotations[i * 4 + 3], 1.0F, 1.0F, 1.0F);
+            world.setFloats(entity, VELOCITY, velocities[i * 3], velocities[i * 3 + 1], velocities[i * 3 + 2]);
+
+            if (i < CAMERA_COUNT)
+                CoreComponents.setCamera(world, entity, 0.001F, 1000.0F, 90.0F, 16.0F / 9.0F);
+        }
+
+        SystemScheduler scheduler = new SystemScheduler()
+                .addSystem(new MoveSystem())
+                .addSystem(new ModelMatrixSystem())
+                .addSystem(new CameraSystem())
+                .setParallel(parallel);
+
+        for (int tick = 0; tick < WARMUP_TICKS; tick++)
+            scheduler.update(world, DELTA);
+
+        long start = System.nanoTime();
+
+        for (int tick = 0; tick < TICKS; tick++)
+            scheduler.update(world, DELTA);
+
+        long time = System.nanoTime() - start;
+        scheduler.dispose();
+        return time / 1e6 / TICKS;
+    }
+
+    public static void main(String[] args)
+    {
+        int[] counts = new int[]{10000, 50000, 200000};
+
+        System.out.println(String.format("%-20s %8s %12s %8s", "Scene", "Objects", "Tick (ms)", "Speedup"));
+
+        for (int count : counts)
+        {
+            EcsBenchmark benchmark = new EcsBenchmark(count, 1234L);
+            double objects = benchmark.runObjects();
+            double serial = benchmark.runEntities(false);
+            double parallel = benchmark.runEntities(true);
+
+            System.out.println(String.format("%-20s %8d %12.3f %8.2f", "GameObject", count, objects, 1.0));
+            System.out.println(String.format("%-20s %8d %12.3f %8.2f", "Entity (serial)", count, serial, objects / serial));
+            System.out.println(String.format("%-20s %8d %12.3f %8.2f", "Entity (parallel)", count, parallel, objects / parallel));
+        }
+    }
+
+    /**
+     * Moves its object by a constant velocity, and keeps a copy of its model matrix.
+     */
+    private static class Mover extends BenchmarkComponent
+    {
+        private final Vector3f velocity;
+        private final Matrix4f modelMatrix = new Matrix4f();
+
+        Mover(float velocityX, float velocityY, float velocityZ)
+        {
+            this.velocity = new Vector3f(velocityX, velocityY, velocityZ);
+        }
+
+        @Override
+        public void update(double delta)
+        {
+            Transformation transformation = getParent().getTransformation();
+            Vector3f translation = transformation.getTranslation();
+            translation.x += velocity.x * (float) delta;
+            translation.y += velocity.y * (float) delta;
+            translation.z += velocity.z * (float) delta;
+            modelMatrix.load(transformation.getMatrix());
+        }
+    }
+
+    /**
+     * Computes the view matrix of a camera on its object, as the camera component does.
+     */
+    private static class CameraMatrices extends BenchmarkComponent
+    {
+        private final Matrix4f viewMatrix = new Matrix4f();
+        private final Quaternion rotation = new Quaternion();
+        private final Vector3f position = new Vector3f();
+
+        @Override
+        public void update(double delta)
+        {
+            Transformation transformation = getParent().getTransformation();
+            Quaternion r = transformation.getRotation();
+            rotation.set(r.x, r.y, r.z, r.w);
+            transformation.getTranslation().negate(position);
+            viewMatrix.setIdentity();
+            MathUtils.quaternionToMatrix4f(rotation, viewMatrix).translate(position);
+        }
+    }
+
+    private abstract static class BenchmarkComponent extends Component
+    {
+        @Override
+        public void init()
+        {
+
+        }
+
+        @Override
+        public void render(double delta)
+        {
+
+        }
+
+        @Override
+        public void render(double delta, ShaderProgram shaderProgram)
+        {
+
+        }
+
+        @Override
+        public void dispose()
+        {
+
+        }
+
+        @Override
+        public void applyUniforms(ShaderProgram shaderProgram)
+        {
+
+        }
+    }
+
+    /**
+     * Moves every entity by its velocity.
+     */
+    private static class MoveSystem implements EntitySystem
+    {
+        private final EntityQuery query = new EntityQuery(CoreComponents.TRANSFORM, VELOCITY);
+        private float delta;
+
+        @Override
+        public ComponentType[] getReads()
+        {
+            return new ComponentType[]{VELOCITY};
+        }
+
+        @Override
+        public ComponentType[] getWrites()
+        {
+            return new ComponentType[]{CoreComponents.TRANSFORM};
+        }
+
+        @Override
+        public void update(EntityWorld world, double delta)
+        {
+            this.delta = (float) delta;
+            query.forEachChunkParallel(world, this::moveChunk);
+        }
+
+        private void moveChunk(Chunk chunk)
+        {
+            float[] transform = chunk.getFloats(CoreComponents.TRANSFORM);
+            float[] velocity = chunk.getFloats(VELOCITY);
+
+            for (int i = 0, t = 0, v = 0; i < chunk.getCount(); i++, t += 10, v += 3)
+            {
+                transform[t] += velocity[v] * delta;
+                transform[t + 1] += velocity[v + 1] * delta;
+                transform[t + 2] += velocity[v + 2] * delta;
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package main.core.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the archetypes of an {@link EntityWorld} that have all of a set of components and none of
+ * another, and loops over their chunks. The matching archetypes are cached, and only the archetypes
+ * created since the last loop are checked, so a query is cheap to run every frame.
+ *
+ * A query is owned by one system, and is not thread safe.
+ *
+ * @author Kelan
+ */
+public class EntityQuery
+{
+    private static final int MIN_PARALLEL_CHUNKS = 2;
+
+    private final long all;
+    private long none;
+    private final List<Archetype> matches = new ArrayList<>();
+    private EntityWorld world;
+    private int checkedArchetypes;
+    private Chunk[] chunks = new Chunk[16];
+
+    public EntityQuery(ComponentType... all)
+    {
+        this.all = ComponentType.mask(all);
+    }
+
+    /**
+     * Excludes the archetypes that have any of the given components.
+     */
+    public EntityQuery exclude(ComponentType... none)
+    {
+        this.none |= ComponentType.mask(none);
+        this.world = null;
+        return this;
+    }
+
+    /**
+     * Gets the archetypes of a world that match this query, in the order that they were created.
+     */
+    public List<Archetype> getArchetypes(EntityWorld world)
+    {
+        if (this.world != world)
+        {
+            this.world = world;
+            this.checkedArchetypes = 0;
+            this.matches.clear();
+        }
+
+        List<Archetype> archetypes = world.getArchetypes();
+
+        for (; checkedArchetypes < archetypes.size(); checkedArchetypes++)
+        {
+            Archetype archetype = archetypes.get(checkedArchetypes);
+
+            if (archetype.matches(all, none))
+                matches.add(archetype);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Counts the entities of a world that match this query.
+     */
+    public int count(EntityWorld world)
+    {
+        int count = 0;
+
+        for (Archetype archetype : getArchetypes(world))
+            count += archetype.getSize();
+
+        return count;
+    }
+
+    /**
+     * Calls the callback for every chunk of the matching archetypes that holds at least one entity.
+     */
+    public void forEachChunk(EntityWorld world, ChunkCallback callback)
+    {
+        for (Archetype archetype : getArchetypes(world))
+        {
+            for (int i = 0; i < archetype.getChunkCount(); i++)
+            {
+                Chunk chunk = archetype.getChunk(i);
+
+                if (chunk.count > 0)
+                    callback.chunkCallback(chunk);
+            }
+        }
+    }
+
+    /**
+     * Calls the callback for every chunk of the matching archetypes that holds at least one entity,
+     * splitting the chunks across the workers of the fork join pool that the calling thread belongs
+     * to. A system that the {@link SystemScheduler} runs on its workers can use this to spread its
+     * own work out. Called from any other thread, the chunks are visited in order on the calling
+     * thread, so the callback must not depend on the order or thread it is called on.
+     */
+    public void forEachChunkParallel(EntityWorld world, ChunkCallback callback)
+    {
+        int chunkCount = 0;
+
+        for (Archetype archetype : getArchetypes(world))
+        {
+            for (int i = 0; i < archetype.getChunkCount(); i++)
+            {
+                Chunk chunk = archetype.getChunk(i);
+
+                if (chunk.count == 0)
+                    continue;
+
+                if (chunkCount == chunks.length)
+                    chunks = Arrays.copyOf(chunks, chunkCount * 2);
+
+                chunks[chunkCount++] = chunk;
+            }
+        }
+
+        if (chunkCount < MIN_PARALLEL_CHUNKS || !ForkJoinTask.inForkJoinPool())
+        {
+            for (int i = 0; i < chunkCount; i++)
+                callback.chunkCallback(chunks[i]);
+        } else
+        {
+            new ChunkTask(chunks, 0, chunkCount, callback).invoke();
+        }
+    }
+
+    /**
+     * Visits a range of chunks, splitting it in halves until there is one chunk left.
+     */
+    private static class ChunkTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk[] chunks;
+        private final int start;
+        private final int end;
+        private final ChunkCallback callback;
+
+        ChunkTask(Chunk[] chunks, int start, int end, ChunkCallback callback)
+        {
+            this.chunks = chunks;
+            this.start = start;
+            this.end = end;
+            this.callback = callback;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (end - start < 2)
+            {
+                for (int i = start; i < end; i++)
+                    callback.chunkCallback(chunks[i]);
+
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new ChunkTask(chunks, start, middle, callback), new ChunkTask(chunks, middle, end, callback));
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChunkCallback
+    {
+        void chunkCallback(Chunk chunk);
+    }
+}
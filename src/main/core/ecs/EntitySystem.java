@@ -0,0 +1,34 @@
+package main.core.ecs;
+
+/**
+ * A system loops over the entities of an {@link EntityWorld} that have the components it works on.
+ * Every system declares the components it reads and the components it writes, and the
+ * {@link SystemScheduler} runs systems whose declarations do not conflict at the same time. A
+ * system must not touch any component outside of its declarations, and a component that is both
+ * read and written only needs to be declared as written.
+ *
+ * @author Kelan
+ */
+public interface EntitySystem
+{
+    /**
+     * Gets the components that this system reads but does not write.
+     */
+    ComponentType[] getReads();
+
+    /**
+     * Gets the components that this system writes.
+     */
+    ComponentType[] getWrites();
+
+    void update(EntityWorld world, double delta);
+
+    /**
+     * Checks whether this system must run on the thread that runs the scheduler, such as a system
+     * that renders through the OpenGL context or reads input.
+     */
+    default boolean isThreadBound()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,366 @@
+package main.core.ecs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds a set of entities and their components. An entity is only an id, and its components are
+ * stored in the chunks of the {@link Archetype} of its component types, so every entity with the
+ * same components is stored together and systems loop over primitive columns instead of objects.
+ * Adding or removing a component moves the entity to another archetype.
+ *
+ * An entity id holds the index of the entity in its low {@link #INDEX_BITS} bits, and a generation
+ * that is bumped every time the index is reused in the high bits, so ids of destroyed entities are
+ * never mistaken for new ones.
+ *
+ * Creating and destroying entities and adding and removing components changes the layout of the
+ * chunks, and is not allowed while a {@link SystemScheduler} runs systems on the world. Systems queue
+ * those changes with {@link #defer(Runnable)} instead, and they are applied once every system has
+ * run. Component values may be read and written by any system that declared them.
+ *
+ * @author Kelan
+ */
+public class EntityWorld
+{
+    public static final int INDEX_BITS = 24;
+
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int MAX_GENERATION = (1 << (Integer.SIZE - INDEX_BITS - 1)) - 1;
+
+    private final Map<Long, Archetype> archetypeMap = new HashMap<>();
+    private final List<Archetype> archetypes = new ArrayList<>();
+    private final Archetype emptyArchetype;
+
+    private Archetype[] entityArchetypes = new Archetype[64];
+    private int[] entityRows = new int[64];
+    private int[] generations = new int[64];
+    private int[] freeIndices = new int[64];
+    private int freeCount;
+    private int indexCount;
+    private int entityCount;
+
+    private final List<Runnable> deferred = new ArrayList<>();
+    private volatile boolean updating;
+
+    public EntityWorld()
+    {
+        this.emptyArchetype = getArchetype(0L);
+    }
+
+    /**
+     * Creates an entity with the given components, which start at zero and null.
+     *
+     * @return The id of the entity.
+     */
+    public int createEntity(ComponentType... types)
+    {
+        checkStructuralChange();
+
+        int index;
+
+        if (freeCount > 0)
+        {
+            index = freeIndices[--freeCount];
+        } else
+        {
+            if (indexCount > INDEX_MASK)
+                throw new IllegalStateException("Too many entities");
+
+            index = indexCount++;
+
+            if (index == entityArchetypes.length)
+            {
+                entityArchetypes = Arrays.copyOf(entityArchetypes, index * 2);
+                entityRows = Arrays.copyOf(entityRows, index * 2);
+                generations = Arrays.copyOf(generations, index * 2);
+            }
+        }
+
+        int entity = index | generations[index] << INDEX_BITS;
+        Archetype archetype = types.length == 0 ? emptyArchetype : getArchetype(ComponentType.mask(types));
+        int row = archetype.add(entity);
+        archetype.clear(row);
+
+        entityArchetypes[index] = archetype;
+        entityRows[index] = row;
+        entityCount++;
+        return entity;
+    }
+
+    /**
+     * Destroys an entity, and releases its components.
+     *
+     * @throws IllegalArgumentException if the entity is not alive.
+     */
+    public void destroyEntity(int entity)
+    {
+        checkStructuralChange();
+        int index = checkAlive(entity);
+
+        removeRow(entityArchetypes[index], entityRows[index]);
+        entityArchetypes[index] = null;
+        generations[index] = generations[index] == MAX_GENERATION ? 0 : generations[index] + 1;
+
+        if (freeCount == freeIndices.length)
+            freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+
+        freeIndices[freeCount++] = index;
+        entityCount--;
+    }
+
+    /**
+     * Adds a component to an entity, which starts at zero or null. Adding a component that the
+     * entity already has does nothing.
+     */
+    public void addComponent(int entity, ComponentType type)
+    {
+        checkStructuralChange();
+        int index = checkAlive(entity);
+        Archetype archetype = entityArchetypes[index];
+
+        if (archetype.hasComponent(type))
+            return;
+
+        Archetype target = archetype.addEdges[type.getId()];
+
+        if (target == null)
+            target = archetype.addEdges[type.getId()] = getArchetype(archetype.getMask() | type.getMask());
+
+        move(index, target);
+    }
+
+    /**
+     * Removes a component from an entity. Removing a component that the entity does not have does
+     * nothing.
+     */
+    public void removeComponent(int entity, ComponentType type)
+    {
+        checkStructuralChange();
+        int index = checkAlive(entity);
+        Archetype archetype = entityArchetypes[index];
+
+        if (!archetype.hasComponent(type))
+            return;
+
+        Archetype target = archetype.removeEdges[type.getId()];
+
+        if (target == null)
+            target = archetype.removeEdges[type.getId()] = getArchetype(archetype.getMask() & ~type.getMask());
+
+        move(index, target);
+    }
+
+    private void move(int index, Archetype target)
+    {
+        Archetype archetype = entityArchetypes[index];
+        int row = entityRows[index];
+        int entity = index | generations[index] << INDEX_BITS;
+
+        int targetRow = target.add(entity);
+        target.clear(targetRow);
+        archetype.copyTo(row, target, targetRow);
+        removeRow(archetype, row);
+
+        entityArchetypes[index] = target;
+        entityRows[index] = targetRow;
+    }
+
+    private void removeRow(Archetype archetype, int row)
+    {
+        int moved = archetype.remove(row);
+
+        if (moved >= 0)
+            entityRows[moved & INDEX_MASK] = row;
+    }
+
+    /**
+     * Gets the archetype with the given component mask, creating it if it does not exist yet.
+     */
+    private Archetype getArchetype(long mask)
+    {
+        Archetype archetype = archetypeMap.get(mask);
+
+        if (archetype == null)
+        {
+            archetype = new Archetype(mask);
+            archetypeMap.put(mask, archetype);
+            archetypes.add(archetype);
+        }
+
+        return archetype;
+    }
+
+    /**
+     * Queues a change to the structure of this world. If no systems are running the change is
+     * applied immediately, otherwise it is applied once they have all finished, in the order that
+     * the changes were queued. This may be called from any thread.
+     */
+    public void defer(Runnable change)
+    {
+        synchronized (deferred)
+        {
+            if (updating)
+            {
+                deferred.add(change);
+                return;
+            }
+        }
+
+        change.run();
+    }
+
+    /**
+     * Marks the start of an update, after which structural changes must be deferred.
+     */
+    void beginUpdate()
+    {
+        synchronized (deferred)
+        {
+            if (updating)
+                throw new IllegalStateException("The entity world is already being updated");
+
+            updating = true;
+        }
+    }
+
+    /**
+     * Marks the end of an update, and applies the structural changes that were deferred during it.
+     */
+    void endUpdate()
+    {
+        Runnable[] changes;
+
+        synchronized (deferred)
+        {
+            updating = false;
+            changes = deferred.toArray(new Runnable[0]);
+            deferred.clear();
+        }
+
+        for (Runnable change : changes)
+            change.run();
+    }
+
+    private void checkStructuralChange()
+    {
+        if (updating)
+            throw new IllegalStateException("The structure of the entity world cannot change while systems are running, use defer instead");
+    }
+
+    private int checkAlive(int entity)
+    {
+        if (!isAlive(entity))
+            throw new IllegalArgumentException("Entity " + entity + " is not alive");
+
+        return entity & INDEX_MASK;
+    }
+
+    public boolean isAlive(int entity)
+    {
+        int index = entity & INDEX_MASK;
+        return entity >= 0 && index < indexCount && entityArchetypes[index] != null && generations[index] == entity >>> INDEX_BITS;
+    }
+
+    public boolean hasComponent(int entity, ComponentType type)
+    {
+        return getArchetype(entity).hasComponent(type);
+    }
+
+    /**
+     * Gets the archetype of an entity.
+     */
+    public Archetype getArchetype(int entity)
+    {
+        return entityArchetypes[checkAlive(entity)];
+    }
+
+    /**
+     * Gets the chunk that holds an entity.
+     */
+    public Chunk getChunk(int entity)
+    {
+        int index = checkAlive(entity);
+        return entityArchetypes[index].getChunkOfRow(entityRows[index]);
+    }
+
+    /**
+     * Gets the index of an entity in its chunk.
+     */
+    public int getChunkIndex(int entity)
+    {
+        int index = checkAlive(entity);
+        return entityRows[index] % entityArchetypes[index].getChunkCapacity();
+    }
+
+    public float getFloat(int entity, ComponentType type, int element)
+    {
+        return getChunk(entity).getFloats(type)[getChunkIndex(entity) * type.getWidth() + element];
+    }
+
+    public void setFloat(int entity, ComponentType type, int element, float value)
+    {
+        getChunk(entity).getFloats(type)[getChunkIndex(entity) * type.getWidth() + element] = value;
+    }
+
+    /**
+     * Copies the floats of a component of an entity into an array, which must hold at least the
+     * width of the component.
+     */
+    public float[] getFloats(int entity, ComponentType type, float[] dest)
+    {
+        if (dest == null)
+            dest = new float[type.getWidth()];
+
+        System.arraycopy(getChunk(entity).getFloats(type), getChunkIndex(entity) * type.getWidth(), dest, 0, type.getWidth());
+        return dest;
+    }
+
+    /**
+     * Sets the floats of a component of an entity, starting at the first.
+     */
+    public void setFloats(int entity, ComponentType type, float... values)
+    {
+        if (values.length > type.getWidth())
+            throw new IllegalArgumentException("Component " + type.getName() + " only has " + type.getWidth() + " floats");
+
+        System.arraycopy(values, 0, getChunk(entity).getFloats(type), getChunkIndex(entity) * type.getWidth(), values.length);
+    }
+
+    public Object getObject(int entity, ComponentType type)
+    {
+        return getChunk(entity).getObjects(type)[getChunkIndex(entity)];
+    }
+
+    public void setObject(int entity, ComponentType type, Object value)
+    {
+        getChunk(entity).getObjects(type)[getChunkIndex(entity)] = value;
+    }
+
+    /**
+     * Gets the archetypes of this world, in the order that they were created. Archetypes are never
+     * removed, so a list of matching archetypes can be kept up to date by only checking the ones
+     * past the end of the last check.
+     */
+    List<Archetype> getArchetypes()
+    {
+        return archetypes;
+    }
+
+    public int getArchetypeCount()
+    {
+        return archetypes.size();
+    }
+
+    public int getEntityCount()
+    {
+        return entityCount;
+    }
+
+    public boolean isUpdating()
+    {
+        return updating;
+    }
+}
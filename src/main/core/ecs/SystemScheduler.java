@@ -0,0 +1,220 @@
+package main.core.ecs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Runs a list of {@link EntitySystem}s over an {@link EntityWorld}. The systems are grouped into
+ * phases from their declared reads and writes. Two systems conflict if one writes a component that
+ * the other reads or writes, and each system goes in the phase after the last phase that holds a
+ * system added before it that it conflicts with. Systems that conflict therefore always run in the
+ * order they were added, while the systems of a phase touch disjoint data and run in parallel on the
+ * workers of the scheduler. Thread bound systems run on the calling thread alongside them. The other
+ * systems run on the workers even when they are alone in their phase, so that they can spread their
+ * chunks out with {@link EntityQuery#forEachChunkParallel}.
+ *
+ * Every phase finishes before the next one starts, and structural changes that the systems defer
+ * are applied once the last phase has finished.
+ *
+ * @author Kelan
+ */
+public class SystemScheduler
+{
+    private final List<EntitySystem> systems = new ArrayList<>();
+    private final List<List<EntitySystem>> phases = new ArrayList<>();
+    private boolean phasesValid;
+    private boolean parallel = true;
+    private int workerCount;
+    private ForkJoinPool workerPool;
+    private final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+    public SystemScheduler addSystem(EntitySystem system)
+    {
+        systems.add(system);
+        phasesValid = false;
+        return this;
+    }
+
+    public boolean removeSystem(EntitySystem system)
+    {
+        phasesValid = false;
+        return systems.remove(system);
+    }
+
+    /**
+     * Runs every system once, phase by phase.
+     */
+    public void update(EntityWorld world, double delta)
+    {
+        buildPhases();
+        world.beginUpdate();
+
+        try
+        {
+            for (List<EntitySystem> phase : phases)
+                runPhase(phase, world, delta);
+        } finally
+        {
+            world.endUpdate();
+        }
+    }
+
+    private void runPhase(List<EntitySystem> phase, EntityWorld world, double delta)
+    {
+        if (!parallel)
+        {
+            for (EntitySystem system : phase)
+                system.update(world, delta);
+
+            return;
+        }
+
+        tasks.clear();
+
+        try
+        {
+            for (EntitySystem system : phase)
+                if (!system.isThreadBound())
+                    tasks.add(getWorkerPool().submit(() -> system.update(world, delta)));
+
+            for (EntitySystem system : phase)
+                if (system.isThreadBound())
+                    system.update(world, delta);
+        } finally
+        {
+            // Every task has to finish before the phase ends, even if one of the systems failed.
+            RuntimeException exception = null;
+
+            for (ForkJoinTask<?> task : tasks)
+            {
+                try
+                {
+                    task.join();
+                } catch (RuntimeException e)
+                {
+                    if (exception == null)
+                        exception = e;
+                }
+            }
+
+            tasks.clear();
+
+            if (exception != null)
+                throw exception;
+        }
+    }
+
+    private void buildPhases()
+    {
+        if (phasesValid)
+            return;
+
+        phases.clear();
+        int[] systemPhases = new int[systems.size()];
+
+        for (int i = 0; i < systems.size(); i++)
+        {
+            EntitySystem system = systems.get(i);
+            long reads = ComponentType.mask(system.getReads());
+            long writes = ComponentType.mask(system.getWrites());
+            int phase = 0;
+
+            for (int j = 0; j < i; j++)
+            {
+                EntitySystem other = systems.get(j);
+                long otherReads = ComponentType.mask(other.getReads());
+                long otherWrites = ComponentType.mask(other.getWrites());
+
+                if ((writes & (otherReads | otherWrites)) != 0L || (otherWrites & reads) != 0L)
+                    phase = Math.max(phase, systemPhases[j] + 1);
+            }
+
+            systemPhases[i] = phase;
+
+            if (phase == phases.size())
+                phases.add(new ArrayList<>());
+
+            phases.get(phase).add(system);
+        }
+
+        phasesValid = true;
+    }
+
+    private ForkJoinPool getWorkerPool()
+    {
+        if (workerPool == null)
+        {
+            int parallelism = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+
+            workerPool = new ForkJoinPool(parallelism, pool ->
+            {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("SYSTEM-WORKER-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+
+        return workerPool;
+    }
+
+    /**
+     * Stops the workers of this scheduler. They are started again if the scheduler is used again.
+     */
+    public void dispose()
+    {
+        if (workerPool != null)
+        {
+            workerPool.shutdown();
+            workerPool = null;
+        }
+    }
+
+    /**
+     * Gets the phases that the systems run in, in order.
+     */
+    public List<List<EntitySystem>> getPhases()
+    {
+        buildPhases();
+        return Collections.unmodifiableList(phases);
+    }
+
+    public List<EntitySystem> getSystems()
+    {
+        return Collections.unmodifiableList(systems);
+    }
+
+    public boolean isParallel()
+    {
+        return parallel;
+    }
+
+    /**
+     * Sets whether the systems of a phase run in parallel. If not, every system runs on the calling
+     * thread, phase by phase.
+     */
+    public SystemScheduler setParallel(boolean parallel)
+    {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public int getWorkerCount()
+    {
+        return workerCount;
+    }
+
+    /**
+     * Sets the number of worker threads, or 0 to use one per processor. This takes effect the next
+     * time the workers are started.
+     */
+    public SystemScheduler setWorkerCount(int workerCount)
+    {
+        this.workerCount = workerCount;
+        return this;
+    }
+}
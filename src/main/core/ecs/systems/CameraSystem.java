@@ -0,0 +1,105 @@
+package main.core.ecs.systems;
+
+import main.core.Engine;
+import main.core.ecs.Chunk;
+import main.core.ecs.ComponentType;
+import main.core.ecs.CoreComponents;
+import main.core.ecs.EntityQuery;
+import main.core.ecs.EntitySystem;
+import main.core.ecs.EntityWorld;
+import main.core.util.MathUtils;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * Computes the projection and view matrices of every camera entity, as {@link
+ * main.client.rendering.Camera} does when it is rendered. The debug frustum mesh of the camera
+ * component is not ported.
+ *
+ * @author Kelan
+ */
+public class CameraSystem implements EntitySystem
+{
+    private static final ComponentType[] READS = new ComponentType[]{CoreComponents.TRANSFORM, CoreComponents.CAMERA};
+    private static final ComponentType[] WRITES = new ComponentType[]{CoreComponents.CAMERA_MATRICES};
+
+    private final EntityQuery query = new EntityQuery(CoreComponents.TRANSFORM, CoreComponents.CAMERA, CoreComponents.CAMERA_MATRICES);
+    private final EntityQuery.ChunkCallback updateChunk = this::updateChunk;
+    private final Quaternion rotation = new Quaternion();
+    private final Quaternion rotationOffset = new Quaternion();
+    private final Vector3f position = new Vector3f();
+    private final Matrix4f viewMatrix = new Matrix4f();
+
+    @Override
+    public ComponentType[] getReads()
+    {
+        return READS;
+    }
+
+    @Override
+    public ComponentType[] getWrites()
+    {
+        return WRITES;
+    }
+
+    @Override
+    public void update(EntityWorld world, double delta)
+    {
+        query.forEachChunk(world, updateChunk);
+    }
+
+    private void updateChunk(Chunk chunk)
+    {
+        float[] transform = chunk.getFloats(CoreComponents.TRANSFORM);
+        float[] camera = chunk.getFloats(CoreComponents.CAMERA);
+        float[] matrices = chunk.getFloats(CoreComponents.CAMERA_MATRICES);
+        int transformWidth = CoreComponents.TRANSFORM.getWidth();
+        int cameraWidth = CoreComponents.CAMERA.getWidth();
+        int matricesWidth = CoreComponents.CAMERA_MATRICES.getWidth();
+
+        for (int i = 0; i < chunk.getCount(); i++)
+        {
+            int t = i * transformWidth;
+            int c = i * cameraWidth;
+            int p = i * matricesWidth + CoreComponents.CAMERA_PROJECTION;
+            int v = i * matricesWidth + CoreComponents.CAMERA_VIEW;
+
+            float near = camera[c + CoreComponents.CAMERA_NEAR];
+            float fov = camera[c + CoreComponents.CAMERA_FOV];
+            float aspect = camera[c + CoreComponents.CAMERA_ASPECT];
+
+            if (aspect <= 0.0F)
+                aspect = Engine.getClientThread().getWindowAspectRatio();
+
+            float tangent = (float) (1.0 / Math.tan(Math.toRadians(fov * 0.5)));
+            float right = near / tangent * aspect;
+            float left = -near / tangent * aspect;
+            float top = near / tangent;
+            float bottom = -near / tangent;
+            float nudge = 1.0F;
+
+            // The same projection matrix as the camera component, with an unlimited far plane.
+            for (int j = 0; j < 16; j++)
+                matrices[p + j] = 0.0F;
+
+            matrices[p] = 2.0F * near / (right - left);
+            matrices[p + 5] = 2.0F * near / (top - bottom);
+            matrices[p + 8] = (right + left) / (right - left);
+            matrices[p + 9] = (top + bottom) / (top - bottom);
+            matrices[p + 10] = nudge * -1.0F;
+            matrices[p + 11] = -1.0F;
+            matrices[p + 14] = near * nudge * -2.0F;
+
+            int o = c + CoreComponents.CAMERA_OFFSET;
+            rotation.set(transform[t + 3], transform[t + 4], transform[t + 5], transform[t + 6]);
+            rotationOffset.set(camera[o + 3], camera[o + 4], camera[o + 5], camera[o + 6]);
+            Quaternion.mul(rotation, rotationOffset, rotation);
+            position.set(-(transform[t] + camera[o]), -(transform[t + 1] + camera[o + 1]), -(transform[t + 2] + camera[o + 2]));
+
+            viewMatrix.setIdentity();
+            MathUtils.quaternionToMatrix4f(rotation, viewMatrix).translate(position);
+            CoreComponents.storeMatrix(viewMatrix, matrices, v);
+        }
+    }
+}
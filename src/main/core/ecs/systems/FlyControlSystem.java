@@ -0,0 +1,166 @@
+package main.core.ecs.systems;
+
+import main.core.Engine;
+import main.core.ecs.Chunk;
+import main.core.ecs.ComponentType;
+import main.core.ecs.CoreComponents;
+import main.core.ecs.EntityQuery;
+import main.core.ecs.EntitySystem;
+import main.core.ecs.EntityWorld;
+import main.core.input.InputContext;
+import main.core.input.InputHandler;
+import main.core.util.MathUtils;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector2f;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * Moves and turns every entity with a fly controller from the keyboard and mouse, as
+ * {@link main.core.input.components.FlyController} does. The system reads input, so it is bound to
+ * the client thread, and every controlled entity follows the same input.
+ *
+ * @author Kelan
+ */
+public class FlyControlSystem implements EntitySystem
+{
+    private static final Vector3f UNIT_X = new Vector3f(1.0F, 0.0F, 0.0F);
+    private static final Vector3f UNIT_Z = new Vector3f(0.0F, 0.0F, 1.0F);
+    private static final ComponentType[] READS = new ComponentType[0];
+    private static final ComponentType[] WRITES = new ComponentType[]{CoreComponents.TRANSFORM, CoreComponents.FLY_CONTROLLER};
+
+    private final EntityQuery query = new EntityQuery(CoreComponents.TRANSFORM, CoreComponents.FLY_CONTROLLER);
+    private final EntityQuery.ChunkCallback updateChunk = this::updateChunk;
+    private final InputContext inputContext = new InputContext(3);
+    private final Vector3f input = new Vector3f();
+
+    private final Quaternion orientation = new Quaternion();
+    private final Quaternion turn = new Quaternion();
+    private final Vector3f xAxis = new Vector3f();
+    private final Vector3f yAxis = new Vector3f();
+    private final Vector3f zAxis = new Vector3f();
+    private final Vector3f axis = new Vector3f();
+    private final Vector3f motion = new Vector3f();
+    private final Vector2f mouseVelocity = new Vector2f();
+    private double delta;
+
+    public FlyControlSystem()
+    {
+        this.inputContext.registerState("forward", () -> {
+            input.z--;
+            return true;
+        });
+        this.inputContext.registerState("backward", () -> {
+            input.z++;
+            return true;
+        });
+        this.inputContext.registerState("left", () -> {
+            input.x--;
+            return true;
+        });
+        this.inputContext.registerState("right", () -> {
+            input.x++;
+            return true;
+        });
+        this.inputContext.registerState("up", () -> {
+            input.y++;
+            return true;
+        });
+        this.inputContext.registerState("down", () -> {
+            input.y--;
+            return true;
+        });
+    }
+
+    @Override
+    public ComponentType[] getReads()
+    {
+        return READS;
+    }
+
+    @Override
+    public ComponentType[] getWrites()
+    {
+        return WRITES;
+    }
+
+    @Override
+    public boolean isThreadBound()
+    {
+        return true;
+    }
+
+    @Override
+    public void update(EntityWorld world, double delta)
+    {
+        InputHandler inputHandler = Engine.getInputHandler();
+        inputHandler.addContext(this.inputContext);
+
+        if (inputHandler.isMouseGrabbed())
+            inputHandler.getMouseVelocity(mouseVelocity);
+        else
+            mouseVelocity.set(0.0F, 0.0F);
+
+        this.delta = delta;
+        query.forEachChunk(world, updateChunk);
+        input.set(0.0F, 0.0F, 0.0F);
+    }
+
+    private void updateChunk(Chunk chunk)
+    {
+        float[] transform = chunk.getFloats(CoreComponents.TRANSFORM);
+        float[] controller = chunk.getFloats(CoreComponents.FLY_CONTROLLER);
+        int transformWidth = CoreComponents.TRANSFORM.getWidth();
+        int controllerWidth = CoreComponents.FLY_CONTROLLER.getWidth();
+
+        for (int i = 0; i < chunk.getCount(); i++)
+        {
+            int t = i * transformWidth;
+            int c = i * controllerWidth;
+            float moveSpeed = controller[c + CoreComponents.FLY_MOVE_SPEED];
+            float mouseSpeed = controller[c + CoreComponents.FLY_MOUSE_SPEED];
+            float accelerationSpeed = controller[c + CoreComponents.FLY_ACCELERATION_SPEED];
+            float motionTimer = controller[c + CoreComponents.FLY_MOTION_TIMER];
+
+            // The axes are taken from the orientation before it is turned, as in the fly controller.
+            orientation.set(transform[t + 3], transform[t + 4], transform[t + 5], transform[t + 6]);
+            Quaternion.negate(orientation, turn);
+            MathUtils.rotateVector3f(turn, UNIT_X, xAxis);
+            MathUtils.rotateVector3f(turn, UNIT_Z, zAxis);
+            yAxis.set(0.0F, 1.0F, 0.0F);
+
+            float pitch = (float) Math.toRadians(mouseVelocity.y * mouseSpeed);
+            float yaw = (float) Math.toRadians(mouseVelocity.x * mouseSpeed);
+
+            turn.setIdentity();
+            Quaternion.mul(MathUtils.axisAngleToQuaternion(xAxis.negate(axis), pitch, turn), orientation, orientation).normalise();
+            turn.setIdentity();
+            Quaternion.mul(MathUtils.axisAngleToQuaternion(yAxis.negate(axis), yaw, turn), orientation, orientation).normalise();
+
+            transform[t + 3] = orientation.x;
+            transform[t + 4] = orientation.y;
+            transform[t + 5] = orientation.z;
+            transform[t + 6] = orientation.w;
+
+            if (input.lengthSquared() > 0.0)
+            {
+                float acceleration = (float) (Math.min(motionTimer, 1.0F) * delta);
+
+                motion.set(xAxis.x * input.x + yAxis.x * input.y + zAxis.x * input.z,
+                        xAxis.y * input.x + yAxis.y * input.y + zAxis.y * input.z,
+                        xAxis.z * input.x + yAxis.z * input.y + zAxis.z * input.z);
+                motion.normalise().scale(moveSpeed * acceleration);
+
+                transform[t] += motion.x;
+                transform[t + 1] += motion.y;
+                transform[t + 2] += motion.z;
+
+                motionTimer += delta * accelerationSpeed;
+            } else
+            {
+                motionTimer = 0.0F;
+            }
+
+            controller[c + CoreComponents.FLY_MOTION_TIMER] = motionTimer;
+        }
+    }
+}
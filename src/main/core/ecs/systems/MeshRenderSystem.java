@@ -0,0 +1,195 @@
+package main.core.ecs.systems;
+
+import main.client.rendering.ShaderProgram;
+import main.client.rendering.geometry.GLMesh;
+import main.client.rendering.geometry.Material;
+import main.core.Engine;
+import main.core.ecs.Archetype;
+import main.core.ecs.Chunk;
+import main.core.ecs.ComponentType;
+import main.core.ecs.CoreComponents;
+import main.core.ecs.EntityQuery;
+import main.core.ecs.EntitySystem;
+import main.core.ecs.EntityWorld;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * Draws the mesh of every entity with a model matrix, as {@link main.client.rendering.MeshRenderer}
+ * does, from the view of a camera entity. The shader is only bound again, and the uniforms of the
+ * scene and the camera only set again, when it differs from the shader of the previous entity. The
+ * system renders through the OpenGL context, so it is bound to the client thread.
+ *
+ * @author Kelan
+ */
+public class MeshRenderSystem implements EntitySystem
+{
+    private static final ComponentType[] READS = new ComponentType[]{CoreComponents.MODEL_MATRIX, CoreComponents.MESH, CoreComponents.SHADER, CoreComponents.TRANSFORM, CoreComponents.CAMERA, CoreComponents.CAMERA_MATRICES};
+    private static final ComponentType[] WRITES = new ComponentType[0];
+    private static final long CAMERA_MASK = ComponentType.mask(CoreComponents.TRANSFORM, CoreComponents.CAMERA, CoreComponents.CAMERA_MATRICES);
+
+    private final EntityQuery query = new EntityQuery(CoreComponents.MODEL_MATRIX, CoreComponents.MESH, CoreComponents.SHADER);
+    private final EntityQuery cameraQuery = new EntityQuery(CoreComponents.TRANSFORM, CoreComponents.CAMERA, CoreComponents.CAMERA_MATRICES);
+    private final EntityQuery.ChunkCallback renderChunk = this::renderChunk;
+    private final Matrix4f modelMatrix = new Matrix4f();
+    private final Matrix4f viewMatrix = new Matrix4f();
+    private final Matrix4f projectionMatrix = new Matrix4f();
+    private final Vector3f cameraDirection = new Vector3f();
+    private final Vector3f cameraPosition = new Vector3f();
+    private float near;
+    private float far;
+    private int camera = -1;
+    private ShaderProgram boundShader;
+
+    @Override
+    public ComponentType[] getReads()
+    {
+        return READS;
+    }
+
+    @Override
+    public ComponentType[] getWrites()
+    {
+        return WRITES;
+    }
+
+    @Override
+    public boolean isThreadBound()
+    {
+        return true;
+    }
+
+    @Override
+    public void update(EntityWorld world, double delta)
+    {
+        if (!loadCamera(world))
+            return;
+
+        glEnable(GL_DEPTH_TEST);
+        glEnable(GL_BLEND);
+
+        query.forEachChunk(world, renderChunk);
+
+        if (boundShader != null)
+        {
+            ShaderProgram.bind(null);
+            boundShader = null;
+        }
+    }
+
+    /**
+     * Copies the state of the camera that the meshes are drawn from, which is the camera entity of
+     * this system if it is alive, or otherwise the first camera entity in the world.
+     *
+     * @return true if there is a camera.
+     */
+    private boolean loadCamera(EntityWorld world)
+    {
+        int entity = camera;
+
+        if (!world.isAlive(entity) || !world.getArchetype(entity).matches(CAMERA_MASK, 0L))
+        {
+            entity = -1;
+
+            for (Archetype archetype : cameraQuery.getArchetypes(world))
+            {
+                if (archetype.getSize() > 0)
+                {
+                    entity = archetype.getChunk(0).getEntity(0);
+                    break;
+                }
+            }
+
+            if (entity < 0)
+                return false;
+        }
+
+        Chunk chunk = world.getChunk(entity);
+        int index = world.getChunkIndex(entity);
+        float[] transform = chunk.getFloats(CoreComponents.TRANSFORM);
+        float[] camera = chunk.getFloats(CoreComponents.CAMERA);
+        float[] matrices = chunk.getFloats(CoreComponents.CAMERA_MATRICES);
+        int t = index * CoreComponents.TRANSFORM.getWidth();
+        int c = index * CoreComponents.CAMERA.getWidth();
+        int m = index * CoreComponents.CAMERA_MATRICES.getWidth();
+
+        CoreComponents.loadMatrix(matrices, m + CoreComponents.CAMERA_PROJECTION, projectionMatrix);
+        CoreComponents.loadMatrix(matrices, m + CoreComponents.CAMERA_VIEW, viewMatrix);
+        cameraDirection.set(viewMatrix.m20, viewMatrix.m21, viewMatrix.m22);
+        cameraPosition.set(transform[t] + camera[c + CoreComponents.CAMERA_OFFSET], transform[t + 1] + camera[c + CoreComponents.CAMERA_OFFSET + 1], transform[t + 2] + camera[c + CoreComponents.CAMERA_OFFSET + 2]);
+        near = camera[c + CoreComponents.CAMERA_NEAR];
+        far = camera[c + CoreComponents.CAMERA_FAR];
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void renderChunk(Chunk chunk)
+    {
+        float[] matrices = chunk.getFloats(CoreComponents.MODEL_MATRIX);
+        Object[] meshes = chunk.getObjects(CoreComponents.MESH);
+        Object[] shaders = chunk.getObjects(CoreComponents.SHADER);
+
+        for (int i = 0; i < chunk.getCount(); i++)
+        {
+            ShaderProgram shader = (ShaderProgram) shaders[i];
+            Map<Material, GLMesh> mesh = (Map<Material, GLMesh>) meshes[i];
+
+            if (shader == null || mesh == null)
+                continue;
+
+            if (shader != boundShader)
+            {
+                ShaderProgram.bind(shader);
+                applyUniforms(shader);
+                boundShader = shader;
+            }
+
+            shader.setUniformMatrix4f("modelMatrix", CoreComponents.loadMatrix(matrices, i * 16, modelMatrix));
+
+            mesh.forEach((material, glMesh) -> {
+                if (material != null)
+                {
+                    material.bind(shader);
+                    glMesh.draw();
+                    material.unbind();
+                    shader.setUniformBoolean("normalMap", false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Applies the uniforms of the scene, and then the uniforms of the camera entity in place of the
+     * camera of the scene.
+     */
+    private void applyUniforms(ShaderProgram shaderProgram)
+    {
+        Engine.getSceneGraph().applyUniforms(shaderProgram);
+
+        shaderProgram.setUniformMatrix4f("viewMatrix", viewMatrix);
+        shaderProgram.setUniformVector3f("cameraDirection", cameraDirection);
+        shaderProgram.setUniformMatrix4f("projectionMatrix", projectionMatrix);
+        shaderProgram.setUniformVector1f("Fcoef", (float) (2.0 / (Math.log(far + 1.0) / Math.log(2.0)))); // For logarithmic depth buffer.
+        shaderProgram.setUniformVector1f("nearPlane", near);
+        shaderProgram.setUniformVector1f("farPlane", far);
+        shaderProgram.setUniformVector3f("cameraPosition", cameraPosition);
+    }
+
+    /**
+     * Gets the camera entity that the meshes are drawn from, or -1 to use the first camera entity.
+     */
+    public int getCamera()
+    {
+        return camera;
+    }
+
+    public MeshRenderSystem setCamera(int camera)
+    {
+        this.camera = camera;
+        return this;
+    }
+}
@@ -0,0 +1,82 @@
+package main.core.ecs.systems;
+
+import main.core.ecs.Chunk;
+import main.core.ecs.ComponentType;
+import main.core.ecs.CoreComponents;
+import main.core.ecs.EntityQuery;
+import main.core.ecs.EntitySystem;
+import main.core.ecs.EntityWorld;
+
+/**
+ * Computes the model matrix of every entity with a transform, in the same way as
+ * {@link main.core.scene.Transformation#getMatrix()}. The chunks are independent, so they are split
+ * across the workers of the scheduler.
+ *
+ * @author Kelan
+ */
+public class ModelMatrixSystem implements EntitySystem
+{
+    private static final ComponentType[] READS = new ComponentType[]{CoreComponents.TRANSFORM};
+    private static final ComponentType[] WRITES = new ComponentType[]{CoreComponents.MODEL_MATRIX};
+
+    private final EntityQuery query = new EntityQuery(CoreComponents.TRANSFORM, CoreComponents.MODEL_MATRIX);
+    private final EntityQuery.ChunkCallback updateChunk = ModelMatrixSystem::updateChunk;
+
+    @Override
+    public ComponentType[] getReads()
+    {
+        return READS;
+    }
+
+    @Override
+    public ComponentType[] getWrites()
+    {
+        return WRITES;
+    }
+
+    @Override
+    public void update(EntityWorld world, double delta)
+    {
+        query.forEachChunkParallel(world, updateChunk);
+    }
+
+    private static void updateChunk(Chunk chunk)
+    {
+        float[] transform = chunk.getFloats(CoreComponents.TRANSFORM);
+        float[] matrix = chunk.getFloats(CoreComponents.MODEL_MATRIX);
+        int count = chunk.getCount();
+
+        for (int i = 0, t = 0, m = 0; i < count; i++, t += 10, m += 16)
+        {
+            float qx = transform[t + 3], qy = transform[t + 4], qz = transform[t + 5], qw = transform[t + 6];
+            float lengthSquared = qx * qx + qy * qy + qz * qz + qw * qw;
+
+            if (lengthSquared > 0.0F)
+            {
+                float invLength = (float) (1.0 / Math.sqrt(lengthSquared));
+                qx *= invLength;
+                qy *= invLength;
+                qz *= invLength;
+                qw *= invLength;
+            }
+
+            float sx = transform[t + 7], sy = transform[t + 8], sz = transform[t + 9];
+            matrix[m] = (1.0F - 2.0F * (qy * qy + qz * qz)) * sx;
+            matrix[m + 1] = 2.0F * (qx * qy - qw * qz) * sx;
+            matrix[m + 2] = 2.0F * (qx * qz + qw * qy) * sx;
+            matrix[m + 3] = 0.0F;
+            matrix[m + 4] = 2.0F * (qx * qy + qw * qz) * sy;
+            matrix[m + 5] = (1.0F - 2.0F * (qx * qx + qz * qz)) * sy;
+            matrix[m + 6] = 2.0F * (qy * qz - qw * qx) * sy;
+            matrix[m + 7] = 0.0F;
+            matrix[m + 8] = 2.0F * (qx * qz - qw * qy) * sz;
+            matrix[m + 9] = 2.0F * (qy * qz + qw * qx) * sz;
+            matrix[m + 10] = (1.0F - 2.0F * (qx * qx + qy * qy)) * sz;
+            matrix[m + 11] = 0.0F;
+            matrix[m + 12] = transform[t];
+            matrix[m + 13] = transform[t + 1];
+            matrix[m + 14] = transform[t + 2];
+            matrix[m + 15] = 1.0F;
+        }
+    }
+}
@@ -231,7 +231,16 @@ public class InputHandler
 
     public Vector2f getMouseVelocity()
     {
-        return new Vector2f(mouseVelocity);
+        return getMouseVelocity(null);
+    }
+
+    public Vector2f getMouseVelocity(Vector2f dest)
+    {
+        if (dest == null)
+            dest = new Vector2f();
+
+        dest.set(mouseVelocity);
+        return dest;
     }
 
     public Vector2f getMouseDragStart()
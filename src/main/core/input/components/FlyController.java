@@ -7,6 +7,7 @@ import main.core.input.InputHandler;
 import main.core.scene.Component;
 import main.core.scene.Transformation;
 import main.core.util.MathUtils;
+import main.core.util.ScratchPool;
 import org.lwjgl.util.vector.Matrix3f;
 import org.lwjgl.util.vector.Quaternion;
 import org.lwjgl.util.vector.Vector2f;
@@ -23,6 +24,7 @@ public class FlyController extends Component
     private InputContext inputContext = new InputContext(3);
 
     private Vector3f motion = new Vector3f();
+    private final Matrix3f orientationMatrix = new Matrix3f();
 
     private float motionTimer = 0.0F;
 
@@ -84,7 +86,7 @@ public class FlyController extends Component
             motionTimer = 0.0F;
         }
 
-        this.motion = new Vector3f();
+        this.motion.set(0.0F, 0.0F, 0.0F);
     }
 
     @Override
@@ -122,38 +124,47 @@ public class FlyController extends Component
         Transformation transformation = this.getParent().getTransformation();
         Quaternion orientation = transformation.getRotation();
 
-        InputHandler inputHandler = Engine.getInputHandler();
-        Vector2f mouseVelocity = new Vector2f();
-
-        if (inputHandler.isMouseGrabbed())
-            mouseVelocity = inputHandler.getMouseVelocity();
-
-        float pitch = (float) Math.toRadians(mouseVelocity.y * this.mouseSpeed);
-        float yaw = (float) Math.toRadians(mouseVelocity.x * this.mouseSpeed);
-
-        Vector3f xAxis = MathUtils.rotateVector3f(orientation.negate(null), new Vector3f(1.0F, 0.0F, 0.0F), null);
-        Vector3f zAxis = MathUtils.rotateVector3f(orientation.negate(null), new Vector3f(0.0F, 0.0F, 1.0F), null);
-        Vector3f yAxis;
-
-        if (yAxisLock)
-            yAxis = new Vector3f(0.0F, 1.0F, 0.0F);
-        else
-            yAxis = MathUtils.rotateVector3f(orientation.negate(null), new Vector3f(0.0F, 1.0F, 0.0F), null);
-
-        Quaternion.mul(MathUtils.axisAngleToQuaternion(xAxis.negate(null), pitch, null), orientation, orientation).normalise();
-        Quaternion.mul(MathUtils.axisAngleToQuaternion(yAxis.negate(null), yaw, null), orientation, orientation).normalise();
-
-        Matrix3f matrix = new Matrix3f();
-        matrix.m00 = xAxis.x;
-        matrix.m01 = xAxis.y;
-        matrix.m02 = xAxis.z;
-        matrix.m10 = yAxis.x;
-        matrix.m11 = yAxis.y;
-        matrix.m12 = yAxis.z;
-        matrix.m20 = zAxis.x;
-        matrix.m21 = zAxis.y;
-        matrix.m22 = zAxis.z;
-        return matrix;
+        ScratchPool pool = ScratchPool.get();
+        pool.push();
+
+        try
+        {
+            InputHandler inputHandler = Engine.getInputHandler();
+            Vector2f mouseVelocity = pool.vector2f();
+
+            if (inputHandler.isMouseGrabbed())
+                inputHandler.getMouseVelocity(mouseVelocity);
+
+            float pitch = (float) Math.toRadians(mouseVelocity.y * this.mouseSpeed);
+            float yaw = (float) Math.toRadians(mouseVelocity.x * this.mouseSpeed);
+
+            Quaternion inverse = orientation.negate(pool.quaternion());
+            Vector3f xAxis = pool.vector3f();
+            Vector3f yAxis = pool.vector3f();
+            Vector3f zAxis = pool.vector3f();
+            Quaternion turn = pool.quaternion();
+
+            xAxis.set(1.0F, 0.0F, 0.0F);
+            yAxis.set(0.0F, 1.0F, 0.0F);
+            zAxis.set(0.0F, 0.0F, 1.0F);
+            MathUtils.rotateVector3f(inverse, xAxis, xAxis);
+            MathUtils.rotateVector3f(inverse, zAxis, zAxis);
+
+            if (!yAxisLock)
+                MathUtils.rotateVector3f(inverse, yAxis, yAxis);
+
+            // The axes are negated to turn, and negated back before they are stored in the matrix.
+            Quaternion.mul(MathUtils.axisAngleToQuaternion(xAxis.negate(xAxis), pitch, turn), orientation, orientation).normalise();
+            turn.setIdentity();
+            Quaternion.mul(MathUtils.axisAngleToQuaternion(yAxis.negate(yAxis), yaw, turn), orientation, orientation).normalise();
+            xAxis.negate(xAxis);
+            yAxis.negate(yAxis);
+
+            return MathUtils.setAxisMatrix3f(xAxis, yAxis, zAxis, this.orientationMatrix);
+        } finally
+        {
+            pool.pop();
+        }
     }
 
     public float getMoveSpeed()
@@ -0,0 +1,294 @@
+package main.core.scene;
+
+import main.client.rendering.Camera;
+import main.client.rendering.ShaderProgram;
+import main.core.Engine;
+import main.core.scene.boundingbox.AxisAlignedBB;
+import main.core.scene.boundingbox.IntersectionType;
+import main.core.util.MathUtils;
+import main.physics.PhysicsWorld;
+import main.physics.RaycastHit;
+import main.physics.RigidBody;
+import main.physics.collision.BoxShape;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector2f;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Checks that the code which runs every tick and every frame does not allocate once it has warmed
+ * up. A scene graph of spinning objects and a pile of physics bodies is driven the way the engine
+ * drives it: every tick steps the physics world, updates the scene graph, dispatches its changes
+ * and publishes its transformations, like the physics thread, and every frame prepares the scene
+ * graph, renders it through a renderer that draws nothing, and picks an object under the cursor,
+ * like the client thread. The bytes the thread allocated are measured around a run of frames, less
+ * the cost of the measurement itself, and the check fails if any are left.
+ *
+ * This needs no window, and exits with a non-zero status if the check fails.
+ *
+ * @author Kelan
+ */
+public class AllocationCheck
+{
+    private static final int OBJECT_COUNT = 1000;
+    private static final int BODY_COUNT = 100;
+    private static final int WARMUP_FRAMES = 20000; // Enough for the methods that run once per frame to reach the final tier of the JIT.
+    private static final int FRAMES = 1000;
+    private static final double DELTA = 1.0 / 60.0;
+    private static final long TICK_LENGTH = 16666667L;
+
+    private final SceneGraph sceneGraph = new HeadlessSceneGraph();
+    private final PhysicsWorld physicsWorld = Engine.getPhysicsThread().getPhysicsWorld();
+    private final Camera camera;
+
+    private final RaycastHit hit = new RaycastHit();
+    private final Quaternion quaternion = new Quaternion();
+    private final Vector2f screenPosition = new Vector2f(0.25F, -0.5F);
+
+    public AllocationCheck(long seed)
+    {
+        Random random = new Random(seed);
+        GameObject parent = sceneGraph.getRoot();
+        this.camera = (Camera) sceneGraph.getPlayer().getComponent("camera");
+
+        for (int i = 0; i < OBJECT_COUNT; i++)
+        {
+            GameObject object = new GameObject(new Transformation(new Vector3f(random.nextFloat() * 40.0F - 20.0F, random.nextFloat() * 40.0F - 20.0F, -random.nextFloat() * 40.0F)));
+            object.addComponent("spinner", new Spinner(random.nextFloat() - 0.5F, random.nextFloat() - 0.5F, random.nextFloat() - 0.5F));
+            object.addComponent("renderer", new HeadlessRenderer(camera));
+
+            // Every tenth object starts a new branch, and the rest are nested a few levels deep.
+            if (i % 10 == 0)
+                parent = sceneGraph.getRoot();
+
+            parent.addChild("object" + i, object);
+            parent = object;
+        }
+
+        GameObject ground = new GameObject(new Transformation(new Vector3f(0.0F, -1.0F, -20.0F)));
+        ground.addComponent("body", new RigidBody(0.0F).setShape(new BoxShape(20.0F, 1.0F, 20.0F)));
+        sceneGraph.getWorld().addChild("ground", ground);
+
+        // The boxes settle into a pile, and are kept awake so that their contacts are solved every tick.
+        for (int i = 0; i < BODY_COUNT; i++)
+        {
+            GameObject box = new GameObject(new Transformation(new Vector3f((i % 10) * 1.1F - 5.0F, 0.5F + (i / 10) * 1.1F, -20.0F + random.nextFloat() * 0.2F)));
+            box.addComponent("body", new RigidBody(1.0F).setShape(new BoxShape(0.5F, 0.5F, 0.5F)));
+            box.addComponent("renderer", new HeadlessRenderer(camera));
+            sceneGraph.getWorld().addChild("box" + i, box);
+        }
+
+        physicsWorld.setSleepingEnabled(false);
+
+        // A thread that blocks on the workers of a fork join pool allocates a wait node inside the
+        // JDK, so the world solves its islands on the thread that steps it, as the check measures.
+        physicsWorld.setMultithreaded(false);
+
+        // The frustum mesh of the camera needs GL, so the frustum is updated by the check instead.
+        Engine.getClientThread().setUpdateFrustum(false);
+        sceneGraph.init();
+    }
+
+    /**
+     * Runs a tick of the scene graph, in the same order as the physics thread.
+     */
+    private void tick()
+    {
+        sceneGraph.storePreviousTransformations();
+        physicsWorld.step((float) DELTA);
+        sceneGraph.update(DELTA);
+        sceneGraph.dispatchChanges();
+
+        // The tick is published as if it had started half a tick ago, so every frame interpolates
+        // halfway between the last two ticks, however long the tick took to run.
+        sceneGraph.publishTransformations(System.nanoTime() - TICK_LENGTH / 2, TICK_LENGTH);
+    }
+
+    /**
+     * Runs a frame of the scene graph, like the client thread, without the GL calls.
+     */
+    private void frame()
+    {
+        sceneGraph.getPlayer().getTransformation().rotate(MathUtils.axisAngleToQuaternion(Spinner.UP, 0.001F, quaternion.setIdentity()));
+        sceneGraph.prepareFrame(DELTA);
+        camera.updateFrustum(camera.getViewProjectionMatrix());
+        sceneGraph.renderSimple(DELTA, null);
+        sceneGraph.pick(screenPosition, 100.0F, hit);
+    }
+
+    /**
+     * Measures the bytes allocated by the current thread over a number of ticks and frames.
+     */
+    private long measure(int frames, boolean empty)
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(thread);
+
+        if (!empty)
+        {
+            for (int i = 0; i < frames; i++)
+            {
+                tick();
+                frame();
+            }
+        }
+
+        return threads.getThreadAllocatedBytes(thread) - start;
+    }
+
+    public static void main(String[] args)
+    {
+        AllocationCheck check = new AllocationCheck(1234L);
+        check.measure(WARMUP_FRAMES, false);
+
+        long baseline = check.measure(0, true);
+        long allocated = Math.max(0L, check.measure(FRAMES, false) - baseline);
+
+        System.out.println(String.format("%d objects, %d bodies, %d frames: %d bytes allocated (%.1f per frame)", OBJECT_COUNT, BODY_COUNT, FRAMES, allocated, allocated / (double) FRAMES));
+
+        if (allocated > 0L)
+        {
+            System.out.println("FAILED: the tick and frame paths allocate");
+            System.exit(1);
+        }
+
+        System.out.println("OK");
+    }
+
+    /**
+     * A scene graph whose player only carries a camera, as the default player controller reads the
+     * input of the window.
+     */
+    private static class HeadlessSceneGraph extends SceneGraph
+    {
+        @Override
+        protected GameObject createPlayerObject()
+        {
+            GameObject player = new GameObject();
+            player.addComponent("camera", new Camera(new Transformation(), 0.1F, 1000.0F, 70.0F, 16.0F / 9.0F));
+            return player;
+        }
+    }
+
+    /**
+     * Stands in for a {@link main.client.rendering.MeshRenderer} without a window. It reads the world
+     * matrix that its object is rendered with, and culls its bounds against the camera, but draws
+     * nothing.
+     */
+    private static class HeadlessRenderer extends Component
+    {
+        private final Camera camera;
+        private final AxisAlignedBB bounds = new AxisAlignedBB(new Vector3f(), new Vector3f(0.5F, 0.5F, 0.5F));
+        private int drawn; // Keeps the results alive, so the culling is not optimised away.
+
+        HeadlessRenderer(Camera camera)
+        {
+            this.camera = camera;
+        }
+
+        @Override
+        public void render(double delta)
+        {
+            Matrix4f matrix = getParent().getRenderWorldMatrix();
+            bounds.getPosition().set(matrix.m30, matrix.m31, matrix.m32);
+
+            if (camera.aabbInFrustum(bounds) != IntersectionType.OUTSIDE)
+                drawn++;
+        }
+
+        @Override
+        public void render(double delta, ShaderProgram shaderProgram)
+        {
+            render(delta);
+        }
+
+        @Override
+        public void init()
+        {
+
+        }
+
+        @Override
+        public void update(double delta)
+        {
+
+        }
+
+        @Override
+        public void dispose()
+        {
+
+        }
+
+        @Override
+        public void applyUniforms(ShaderProgram shaderProgram)
+        {
+
+        }
+    }
+
+    /**
+     * Spins and drifts its object, and keeps a copy of its local matrix.
+     */
+    private static class Spinner extends Component
+    {
+        static final Vector3f UP = new Vector3f(0.0F, 1.0F, 0.0F);
+
+        private final Vector3f velocity;
+        private final Quaternion spin = new Quaternion();
+        private final Matrix4f localMatrix = new Matrix4f();
+
+        Spinner(float velocityX, float velocityY, float velocityZ)
+        {
+            this.velocity = new Vector3f(velocityX, velocityY, velocityZ);
+        }
+
+        @Override
+        public void update(double delta)
+        {
+            Transformation transformation = getParent().getTransformation();
+            Vector3f translation = transformation.getTranslation();
+            translation.x += velocity.x * (float) delta;
+            translation.y += velocity.y * (float) delta;
+            translation.z += velocity.z * (float) delta;
+
+            spin.setIdentity();
+            transformation.rotate(MathUtils.axisAngleToQuaternion(UP, (float) delta, spin));
+            localMatrix.load(transformation.getMatrix());
+        }
+
+        @Override
+        public void init()
+        {
+
+        }
+
+        @Override
+        public void render(double delta)
+        {
+
+        }
+
+        @Override
+        public void render(double delta, ShaderProgram shaderProgram)
+        {
+
+        }
+
+        @Override
+        public void dispose()
+        {
+
+        }
+
+        @Override
+        public void applyUniforms(ShaderProgram shaderProgram)
+        {
+
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package main.core.scene;
+
+import main.client.rendering.ShaderProgram;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * A flattened view of one or more trees of {@link GameObject}s. The objects are laid out in
+ * topological order, so every object comes after its parent, and the hierarchy is stored as an array
+ * of parent indices. The components of all of the objects are held in one dense array, in the order
+ * that {@link GameObject#update(double)} visits them, so a traversal of the whole scene is a single
+ * linear loop over primitive arrays instead of a recursion through the child and component maps.
+ *
+ * The game objects stay the way that the scene is built and modified, and this view is rebuilt
+ * whenever the structure of one of its trees changes. Objects and components added during a
+ * traversal are picked up by the next one.
+ *
+ * The world matrices of the objects are kept in primitive arrays, as the upper 3x4 part of each
+ * matrix, and are kept up to date by a transform pass, either of the live transformations with
+ * {@link #updateTransformations()}, or of the transformations interpolated for rendering with
+ * {@link #updateRenderTransformations}. The local transformation of each object is compared against
+ * the values its world matrix was last computed from, and objects that changed are marked dirty.
+ * Parents come before their children, so the dirty flag is pushed down the hierarchy in the same
+ * pass, and the world matrix of an object is only recomputed, from the row of its parent, when it or
+ * one of its ancestors is dirty. The matrices of a {@link GameObject} read the rows of the scene
+ * whose pass last computed them.
+ *
+ * A flat scene is not thread safe, so every thread that traverses a scene owns its own view of it.
+ *
+ * @author Kelan
+ */
+public class FlatScene
+{
+    private static final int MATRIX_STRIDE = 12;
+
+    private final GameObject[] roots;
+    private final int[] rootVersions;
+    private boolean built;
+    private int buildCount;
+
+    private int objectCount;
+    private GameObject[] objects = new GameObject[16];
+    private int[] parents = new int[16]; // The index of the parent of each object, or -1 for a root.
+    private boolean[] active = new boolean[16];
+    private boolean[] moved = new boolean[16];
+    private boolean[] dirty = new boolean[16];
+    private float[] local = new float[16 * TransformSnapshot.STRIDE]; // The values each world matrix was computed from.
+    private float[] world = new float[16 * MATRIX_STRIDE];
+    private float[] renderWorld = new float[16 * MATRIX_STRIDE];
+    private boolean transformationsValid;
+    private boolean renderTransformations; // Whether the last pass computed the render matrices.
+    private final Transformation interpolated = new Transformation();
+
+    private int componentCount;
+    private Component[] components = new Component[16];
+    private int[] componentObjects = new int[16]; // The index of the object that owns each component.
+
+    public FlatScene(GameObject... roots)
+    {
+        this.roots = roots.clone();
+        this.rootVersions = new int[roots.length];
+    }
+
+    /**
+     * Rebuilds the flat arrays if the structure of any of the trees has changed since they were last
+     * built.
+     */
+    public void validate()
+    {
+        boolean changed = !built;
+
+        for (int i = 0; i < roots.length; i++)
+            changed |= roots[i].structureVersion != rootVersions[i];
+
+        if (changed)
+            build();
+    }
+
+    private void build()
+    {
+        // Read the versions first, so a change made while building triggers another rebuild.
+        for (int i = 0; i < roots.length; i++)
+            rootVersions[i] = roots[i].structureVersion;
+
+        // The indices are about to change, so the objects keep a copy of their matrices until the
+        // next pass computes them again.
+        for (int i = 0; i < objectCount; i++)
+        {
+            GameObject object = objects[i];
+
+            if (object.worldScene == this)
+            {
+                getWorldMatrix(i, object.worldMatrix);
+                object.worldScene = null;
+            }
+
+            if (object.renderWorldScene == this)
+            {
+                getRenderWorldMatrix(i, object.renderWorldMatrix);
+                object.renderWorldScene = null;
+            }
+        }
+
+        Arrays.fill(objects, 0, objectCount, null);
+        Arrays.fill(components, 0, componentCount, null);
+        objectCount = 0;
+        componentCount = 0;
+
+        for (GameObject root : roots)
+            add(root, -1);
+
+        built = true;
+        buildCount++;
+        transformationsValid = false;
+    }
+
+    private void add(GameObject object, int parent)
+    {
+        int i = objectCount++;
+
+        if (i == objects.length)
+        {
+            objects = Arrays.copyOf(objects, i * 2);
+            parents = Arrays.copyOf(parents, i * 2);
+            active = Arrays.copyOf(active, i * 2);
+            moved = Arrays.copyOf(moved, i * 2);
+            dirty = Arrays.copyOf(dirty, i * 2);
+            local = Arrays.copyOf(local, i * 2 * TransformSnapshot.STRIDE);
+            world = Arrays.copyOf(world, i * 2 * MATRIX_STRIDE);
+            renderWorld = Arrays.copyOf(renderWorld, i * 2 * MATRIX_STRIDE);
+        }
+
+        objects[i] = object;
+        parents[i] = parent;
+
+        // Children are updated before the components of their parent.
+        for (GameObject child : object.getChildren())
+            add(child, i);
+
+        for (Component component : object.getComponents())
+        {
+            if (componentCount == components.length)
+            {
+                components = Arrays.copyOf(components, componentCount * 2);
+                componentObjects = Arrays.copyOf(componentObjects, componentCount * 2);
+            }
+
+            components[componentCount] = component;
+            componentObjects[componentCount] = i;
+            componentCount++;
+        }
+    }
+
+    /**
+     * Initialises every component, once the world matrices have been computed, so components can
+     * read the world pose of their object.
+     */
+    public void init()
+    {
+        updateTransformations();
+
+        for (int c = 0; c < componentCount; c++)
+            components[c].init();
+    }
+
+    /**
+     * Updates every component whose object and ancestors all tick. The roots always tick.
+     */
+    public void update(double delta)
+    {
+        updateActive();
+
+        for (int c = 0; c < componentCount; c++)
+        {
+            if (active[componentObjects[c]] && components[c].doTick())
+                components[c].update(delta);
+        }
+    }
+
+    /**
+     * Marks which objects tick, which are the objects whose ancestors all tick. The roots always
+     * tick.
+     */
+    void updateActive()
+    {
+        validate();
+
+        for (int i = 0; i < objectCount; i++)
+            active[i] = parents[i] < 0 || active[parents[i]] && objects[i].doTick();
+    }
+
+    /**
+     * Checks whether an object ticked in the last update.
+     */
+    boolean isActive(int index)
+    {
+        return active[index];
+    }
+
+    /**
+     * Gets the number of times the flat arrays have been built, which changes whenever the indices
+     * of the objects and components do.
+     */
+    int getBuildCount()
+    {
+        return buildCount;
+    }
+
+    /**
+     * Renders every component whose object and ancestors are all rendered. The roots are always
+     * rendered.
+     *
+     * @param shaderProgram The shader program to render with, or null to let each component use its
+     *                      own.
+     */
+    public void render(double delta, ShaderProgram shaderProgram)
+    {
+        validate();
+
+        for (int i = 0; i < objectCount; i++)
+            active[i] = parents[i] < 0 || active[parents[i]] && objects[i].doRender();
+
+        for (int c = 0; c < componentCount; c++)
+        {
+            if (!active[componentObjects[c]] || !components[c].doRender())
+                continue;
+
+            if (shaderProgram != null)
+                components[c].render(delta, shaderProgram);
+            else
+                components[c].render(delta);
+        }
+    }
+
+    public void dispose()
+    {
+        validate();
+
+        for (int c = 0; c < componentCount; c++)
+            components[c].dispose();
+    }
+
+    /**
+     * Records the current transformation of every object as its previous tick state.
+     */
+    public void storePreviousTransformations()
+    {
+        validate();
+
+        for (int i = 0; i < objectCount; i++)
+            objects[i].getPreviousTransformation().set(objects[i].getTransformation());
+    }
+
+    /**
+     * Writes the previous and current transformation of every object into a snapshot, assigning
+     * snapshot slots to objects that do not have one yet.
+     */
+    void publishTransformations(SceneGraph sceneGraph, TransformSnapshot snapshot)
+    {
+        validate();
+
+        for (int i = 0; i < objectCount; i++)
+        {
+            GameObject object = objects[i];
+
+            if (object.snapshotSlot < 0)
+                object.snapshotSlot = sceneGraph.allocateSnapshotSlot();
+
+            snapshot.set(object.snapshotSlot, object.getPreviousTransformation(), object.getTransformation());
+        }
+    }
+
+    /**
+     * Recomputes the world matrices of the live transformations, {@link GameObject#getWorldMatrix()},
+     * of every object whose transformation or any of whose ancestors' transformations changed since
+     * the last pass. Only the thread that moves the objects may call this.
+     */
+    public void updateTransformations()
+    {
+        updateTransformations(false, null, 0.0F);
+    }
+
+    /**
+     * Recomputes the world matrices to render with, {@link GameObject#getRenderWorldMatrix()}, from
+     * the transformations interpolated between the previous and current state of a snapshot. Objects
+     * that are not in the snapshot, such as the player or objects added since it was published, are
+     * rendered with their live transformation.
+     *
+     * @param snapshot The snapshot to interpolate, or null to render every object with its live
+     *                 transformation.
+     * @param alpha    The interpolation factor between the previous and current state.
+     */
+    public void updateRenderTransformations(TransformSnapshot snapshot, float alpha)
+    {
+        updateTransformations(true, snapshot, alpha);
+    }
+
+    private void updateTransformations(boolean render, TransformSnapshot snapshot, float alpha)
+    {
+        validate();
+
+        // The local values are those of whichever matrices were computed last.
+        if (render != renderTransformations)
+            transformationsValid = false;
+
+        renderTransformations = render;
+        float[] matrices = render ? renderWorld : world;
+
+        for (int i = 0; i < objectCount; i++)
+        {
+            GameObject object = objects[i];
+            Transformation transformation = object.getTransformation();
+
+            if (render && snapshot != null && snapshot.contains(object.snapshotSlot))
+                transformation = snapshot.interpolate(object.snapshotSlot, alpha, interpolated);
+
+            Vector3f translation = transformation.getTranslation();
+            Quaternion rotation = transformation.getRotation();
+            Vector3f scale = transformation.getScale();
+            int l = i * TransformSnapshot.STRIDE;
+            int parent = parents[i];
+
+            boolean changed = !transformationsValid || local[l] != translation.x || local[l + 1] != translation.y || local[l + 2] != translation.z
+                    || local[l + 3] != rotation.x || local[l + 4] != rotation.y || local[l + 5] != rotation.z || local[l + 6] != rotation.w
+                    || local[l + 7] != scale.x || local[l + 8] != scale.y || local[l + 9] != scale.z;
+
+            dirty[i] = changed || parent >= 0 && dirty[parent];
+
+            if (render)
+            {
+                object.renderWorldScene = this;
+                object.renderWorldIndex = i;
+            } else
+            {
+                object.worldScene = this;
+                object.worldIndex = i;
+            }
+
+            if (!dirty[i])
+                continue;
+
+            local[l] = translation.x;
+            local[l + 1] = translation.y;
+            local[l + 2] = translation.z;
+            local[l + 3] = rotation.x;
+            local[l + 4] = rotation.y;
+            local[l + 5] = rotation.z;
+            local[l + 6] = rotation.w;
+            local[l + 7] = scale.x;
+            local[l + 8] = scale.y;
+            local[l + 9] = scale.z;
+
+            computeWorldMatrix(l, matrices, parent * MATRIX_STRIDE, i * MATRIX_STRIDE);
+        }
+
+        transformationsValid = true;
+    }
+
+    /**
+     * Computes a world matrix from the local values of an object, in the same way as
+     * {@link Transformation#getMatrix()}, and the world matrix of its parent, which must already be
+     * up to date.
+     *
+     * @param p The offset of the world matrix of the parent, or negative if the object is a root.
+     * @param d The offset to write the world matrix of the object to.
+     */
+    private void computeWorldMatrix(int l, float[] m, int p, int d)
+    {
+        float qx = local[l + 3], qy = local[l + 4], qz = local[l + 5], qw = local[l + 6];
+        float lengthSquared = qx * qx + qy * qy + qz * qz + qw * qw;
+
+        if (lengthSquared > 0.0F)
+        {
+            float invLength = (float) (1.0 / Math.sqrt(lengthSquared));
+            qx *= invLength;
+            qy *= invLength;
+            qz *= invLength;
+            qw *= invLength;
+        }
+
+        float sx = local[l + 7], sy = local[l + 8], sz = local[l + 9];
+        float a00 = (1.0F - 2.0F * (qy * qy + qz * qz)) * sx, a01 = 2.0F * (qx * qy - qw * qz) * sx, a02 = 2.0F * (qx * qz + qw * qy) * sx;
+        float a10 = 2.0F * (qx * qy + qw * qz) * sy, a11 = (1.0F - 2.0F * (qx * qx + qz * qz)) * sy, a12 = 2.0F * (qy * qz - qw * qx) * sy;
+        float a20 = 2.0F * (qx * qz - qw * qy) * sz, a21 = 2.0F * (qy * qz + qw * qx) * sz, a22 = (1.0F - 2.0F * (qx * qx + qy * qy)) * sz;
+        float a30 = local[l], a31 = local[l + 1], a32 = local[l + 2];
+
+        if (p < 0)
+        {
+            set(m, d, a00, a01, a02, a10, a11, a12, a20, a21, a22, a30, a31, a32);
+            return;
+        }
+
+        // Both matrices are affine, so the bottom row of the product is always (0, 0, 0, 1). The rows
+        // hold m00, m01, m02, m10, m11, m12, m20, m21, m22, m30, m31, m32.
+        set(m, d,
+                m[p] * a00 + m[p + 3] * a01 + m[p + 6] * a02, m[p + 1] * a00 + m[p + 4] * a01 + m[p + 7] * a02, m[p + 2] * a00 + m[p + 5] * a01 + m[p + 8] * a02,
+                m[p] * a10 + m[p + 3] * a11 + m[p + 6] * a12, m[p + 1] * a10 + m[p + 4] * a11 + m[p + 7] * a12, m[p + 2] * a10 + m[p + 5] * a11 + m[p + 8] * a12,
+                m[p] * a20 + m[p + 3] * a21 + m[p + 6] * a22, m[p + 1] * a20 + m[p + 4] * a21 + m[p + 7] * a22, m[p + 2] * a20 + m[p + 5] * a21 + m[p + 8] * a22,
+                m[p] * a30 + m[p + 3] * a31 + m[p + 6] * a32 + m[p + 9], m[p + 1] * a30 + m[p + 4] * a31 + m[p + 7] * a32 + m[p + 10], m[p + 2] * a30 + m[p + 5] * a31 + m[p + 8] * a32 + m[p + 11]);
+    }
+
+    private static void set(float[] m, int d, float m00, float m01, float m02, float m10, float m11, float m12, float m20, float m21, float m22, float m30, float m31, float m32)
+    {
+        m[d] = m00;
+        m[d + 1] = m01;
+        m[d + 2] = m02;
+        m[d + 3] = m10;
+        m[d + 4] = m11;
+        m[d + 5] = m12;
+        m[d + 6] = m20;
+        m[d + 7] = m21;
+        m[d + 8] = m22;
+        m[d + 9] = m30;
+        m[d + 10] = m31;
+        m[d + 11] = m32;
+    }
+
+    private static Matrix4f load(float[] m, int d, Matrix4f dest)
+    {
+        if (dest == null)
+            dest = new Matrix4f();
+
+        dest.m00 = m[d];
+        dest.m01 = m[d + 1];
+        dest.m02 = m[d + 2];
+        dest.m03 = 0.0F;
+        dest.m10 = m[d + 3];
+        dest.m11 = m[d + 4];
+        dest.m12 = m[d + 5];
+        dest.m13 = 0.0F;
+        dest.m20 = m[d + 6];
+        dest.m21 = m[d + 7];
+        dest.m22 = m[d + 8];
+        dest.m23 = 0.0F;
+        dest.m30 = m[d + 9];
+        dest.m31 = m[d + 10];
+        dest.m32 = m[d + 11];
+        dest.m33 = 1.0F;
+        return dest;
+    }
+
+    /**
+     * Records a transform change for every object whose world matrix changed since the last call,
+     * because its own transformation or the transformation of one of its ancestors changed, or
+     * because it was moved to another parent. Objects seen for the first time are not reported, as
+     * they were reported as added. Only the thread that moves the objects may call this.
+     */
+    void collectTransformChanges(SceneChangeLog log)
+    {
+        validate();
+
+        for (int i = 0; i < objectCount; i++)
+        {
+            GameObject object = objects[i];
+            int version = object.getTransformation().getMatrixVersion();
+            int previous = object.changeVersion;
+            int parent = parents[i];
+            object.changeVersion = version;
+            moved[i] = previous != GameObject.NEW_OBJECT && previous != version || parent >= 0 && moved[parent];
+
+            if (moved[i])
+                log.record(SceneChanges.Type.TRANSFORM_CHANGED, object, parent >= 0 ? objects[parent] : null, null, null);
+        }
+    }
+
+    public int getObjectCount()
+    {
+        return objectCount;
+    }
+
+    public GameObject getObject(int index)
+    {
+        return objects[index];
+    }
+
+    /**
+     * Gets the world matrix of an object as of the last {@link #updateTransformations()} pass.
+     */
+    public Matrix4f getWorldMatrix(int index, Matrix4f dest)
+    {
+        return load(world, index * MATRIX_STRIDE, dest);
+    }
+
+    /**
+     * Gets the world matrix to render an object with as of the last
+     * {@link #updateRenderTransformations} pass.
+     */
+    public Matrix4f getRenderWorldMatrix(int index, Matrix4f dest)
+    {
+        return load(renderWorld, index * MATRIX_STRIDE, dest);
+    }
+
+    /**
+     * Gets the index of the parent of an object, or -1 if the object is one of the roots.
+     */
+    public int getParent(int index)
+    {
+        return parents[index];
+    }
+
+    public int getComponentCount()
+    {
+        return componentCount;
+    }
+
+    public Component getComponent(int index)
+    {
+        return components[index];
+    }
+
+    /**
+     * Gets the index of the object that owns a component.
+     */
+    public int getComponentObject(int index)
+    {
+        return componentObjects[index];
+    }
+}
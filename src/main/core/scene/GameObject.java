@@ -3,31 +3,72 @@ package main.core.scene;
 import main.client.rendering.IRenderable;
 import main.client.rendering.ShaderProgram;
 import main.physics.ITickable;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
 
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
+ * A node in the scene graph. Children and components are held in concurrent maps and the
+ * transformation reference never changes, so none of the accessors need to lock. The maps are
+ * sorted by id, so children and components are always updated in the same order, regardless of the
+ * order they were added in or how their ids hash. The physics thread
+ * is the only thread that moves non-player objects, and the client thread renders them from the
+ * {@link TransformSnapshot} published by the physics thread rather than from the live
+ * transformation.
+ *
+ * The world matrix of an object is its local matrix multiplied by the world matrix of its parent.
+ * Each object holds two world matrices, one of the live transformation and one of the interpolated
+ * render transformation, which are written by the transform passes of {@link FlatScene}. A pass
+ * pushes changes down the hierarchy, and only recomputes the matrices of objects whose
+ * transformation or whose ancestors' transformations changed since the previous pass.
+ *
+ * The scene graph traverses its objects through {@link FlatScene}s, which lay the trees out in flat
+ * arrays. Adding or removing a child or a component bumps the structure version of this object and
+ * all of its ancestors, which tells the flat views of the tree to rebuild, and records the change in
+ * the {@link SceneChanges} of the scene graph that the tree belongs to.
+ *
  * @author Kelan
  */
 public class GameObject implements ITickable, IRenderable
 {
+    static final int NEW_OBJECT = -1;
+    static final int MOVED = Integer.MIN_VALUE;
+
     private GameObject parent;
     private Map<String, GameObject> children;
     private Map<String, Component> components;
 
-    private Transformation transformation;
+    private final Transformation transformation;
+    private final Transformation previousTransformation;
+    private final Transformation renderTransformation;
+    final Matrix4f worldMatrix = new Matrix4f();       // Loaded from the scene of the physics thread's transform pass.
+    final Matrix4f renderWorldMatrix = new Matrix4f(); // Loaded from the scene of the client thread's transform pass.
+    FlatScene worldScene;                              // The scene holding the world matrix, and the index in it.
+    int worldIndex;
+    FlatScene renderWorldScene;
+    int renderWorldIndex;
+    int snapshotSlot = -1;
+    volatile int structureVersion;
+    SceneChangeLog changeLog;            // Only set on the roots of a scene graph.
+    int changeVersion = NEW_OBJECT;      // The matrix version of the transformation at the last transform pass.
 
     public GameObject(Transformation transformation)
     {
-        this.children = new HashMap<>();
-        this.components = new HashMap<>();
+        this.children = new ConcurrentSkipListMap<>();
+        this.components = new ConcurrentSkipListMap<>();
 
         if (transformation == null)
             this.transformation = new Transformation();
         else
             this.transformation = transformation;
+
+        this.previousTransformation = new Transformation(this.transformation);
+        this.renderTransformation = new Transformation(this.transformation);
     }
 
     public GameObject()
@@ -36,45 +77,284 @@ public class GameObject implements ITickable, IRenderable
     }
 
 
-    public synchronized boolean addChild(String id, GameObject child)
+    /**
+     * Adds a child to this object. If the child already has a parent, it is moved from it, and if
+     * this object already has a child with the same id, that child is removed.
+     *
+     * @throws IllegalArgumentException if the child is this object or one of its ancestors.
+     */
+    public boolean addChild(String id, GameObject child)
     {
-        if (id != null && !id.isEmpty() && child != null)
+        if (id == null || id.isEmpty() || child == null)
+            return false;
+
+        for (GameObject object = this; object != null; object = object.parent)
+            if (object == child)
+                throw new IllegalArgumentException("Cannot add an object as a child of itself or one of its descendants");
+
+        GameObject previousParent = child.parent;
+        SceneChangeLog previousLog = child.getChangeLog();
+
+        if (previousParent != null)
+        {
+            previousParent.children.values().remove(child);
+            previousParent.structureChanged();
+        }
+
+        GameObject replaced = this.children.put(id, child);
+        SceneChangeLog log = this.getChangeLog();
+        child.parent = this;
+        this.structureChanged();
+
+        if (replaced != null)
+        {
+            replaced.parent = null;
+
+            if (log != null)
+                log.recordRemoved(replaced, this);
+        }
+
+        if (previousLog != null && previousLog == log)
         {
-            this.children.put(id, child);
-            child.parent = this;
-            return true;
+            if (previousParent != this)
+            {
+                // The world transform of the subtree changes, which the next transform pass reports.
+                child.changeVersion = MOVED;
+                log.record(SceneChanges.Type.OBJECT_REPARENTED, child, this, previousParent, null);
+            }
+        } else
+        {
+            if (previousLog != null)
+                previousLog.recordRemoved(child, previousParent);
+
+            if (log != null)
+                log.recordAdded(child, this);
         }
 
-        return false;
+        return true;
     }
 
-    public synchronized boolean addComponent(String id, Component component)
+    /**
+     * Removes a child from this object.
+     *
+     * @return The child that was removed, or null if there was no child with the id.
+     */
+    public GameObject removeChild(String id)
     {
-        if (id != null && !id.isEmpty() && component != null)
+        GameObject child = id != null ? this.children.remove(id) : null;
+
+        if (child == null)
+            return null;
+
+        SceneChangeLog log = this.getChangeLog();
+        child.parent = null;
+        this.structureChanged();
+
+        if (log != null)
+            log.recordRemoved(child, this);
+
+        return child;
+    }
+
+    /**
+     * Adds a component to this object. If the component already belongs to an object, it is removed
+     * from it, and if this object already has a component with the same id, that component is
+     * removed.
+     */
+    public boolean addComponent(String id, Component component)
+    {
+        if (id == null || id.isEmpty() || component == null)
+            return false;
+
+        GameObject previousObject = component.parent;
+
+        if (previousObject != null && previousObject.components.values().remove(component))
         {
-            this.components.put(id, component);
-            component.parent = this;
-            return true;
+            previousObject.structureChanged();
+            previousObject.componentRemoved(component);
         }
 
-        return false;
+        Component replaced = this.components.put(id, component);
+        component.parent = this;
+        this.structureChanged();
+
+        if (replaced != null)
+            componentRemoved(replaced);
+
+        SceneChangeLog log = this.getChangeLog();
+
+        if (log != null)
+            log.record(SceneChanges.Type.COMPONENT_ADDED, this, null, null, component);
+
+        return true;
+    }
+
+    /**
+     * Removes a component from this object.
+     *
+     * @return The component that was removed, or null if there was no component with the id.
+     */
+    public Component removeComponent(String id)
+    {
+        Component component = id != null ? this.components.remove(id) : null;
+
+        if (component == null)
+            return null;
+
+        this.structureChanged();
+        componentRemoved(component);
+        return component;
+    }
+
+    private void componentRemoved(Component component)
+    {
+        component.parent = null;
+        SceneChangeLog log = this.getChangeLog();
+
+        if (log != null)
+            log.record(SceneChanges.Type.COMPONENT_REMOVED, this, null, null, component);
+    }
+
+    private void structureChanged()
+    {
+        for (GameObject object = this; object != null; object = object.parent)
+            object.structureVersion++;
+    }
+
+    /**
+     * Gets the change log of the scene graph that the tree of this object belongs to, which is held
+     * by the root of the tree, or null if the tree is not part of a scene graph.
+     */
+    private SceneChangeLog getChangeLog()
+    {
+        GameObject object = this;
+
+        while (object.parent != null)
+            object = object.parent;
+
+        return object.changeLog;
+    }
+
+    /**
+     * Gets the children of this object, sorted by id.
+     */
+    Collection<GameObject> getChildren()
+    {
+        return this.children.values();
+    }
+
+    /**
+     * Gets the components of this object, sorted by id.
+     */
+    Collection<Component> getComponents()
+    {
+        return this.components.values();
+    }
+
+    /**
+     * Gets the object that this object is a child of, or null if it is a root.
+     */
+    public GameObject getParent()
+    {
+        return parent;
     }
 
-    public synchronized GameObject getChild(String id)
+    public GameObject getChild(String id)
     {
         return this.children.get(id);
     }
 
-    public synchronized Component getComponent(String id)
+    public Component getComponent(String id)
     {
         return this.components.get(id);
     }
 
-    public synchronized Transformation getTransformation()
+    public Transformation getTransformation()
     {
         return transformation;
     }
 
+    /**
+     * Gets the transformation of this object as it was at the start of the current tick. Rendering
+     * blends between this and {@link #getTransformation()} to smooth out motion between ticks.
+     */
+    public Transformation getPreviousTransformation()
+    {
+        return previousTransformation;
+    }
+
+    /**
+     * Gets the transformation to render this object with, blended between the previous and current
+     * tick state.
+     *
+     * @param alpha The interpolation factor between the previous and current tick.
+     * @return The interpolated transformation. This instance is reused by subsequent calls.
+     */
+    public Transformation getRenderTransformation(float alpha)
+    {
+        return Transformation.interpolate(previousTransformation, getTransformation(), alpha, renderTransformation);
+    }
+
+    /**
+     * Gets the world matrix of the live transformation of this object, which includes the
+     * transformations of all of its ancestors, as of the last {@link FlatScene#updateTransformations()}
+     * pass over the scene it belongs to. The scene graph runs that pass at the end of every tick.
+     *
+     * @return The world matrix, which must not be modified.
+     */
+    public Matrix4f getWorldMatrix()
+    {
+        if (worldScene != null)
+            worldScene.getWorldMatrix(worldIndex, worldMatrix);
+
+        return worldMatrix;
+    }
+
+    /**
+     * Gets the translation of this object in world space.
+     */
+    public Vector3f getWorldTranslation(Vector3f dest)
+    {
+        if (dest == null)
+            dest = new Vector3f();
+
+        Matrix4f matrix = getWorldMatrix();
+        dest.set(matrix.m30, matrix.m31, matrix.m32);
+        return dest;
+    }
+
+    /**
+     * Gets the rotation of this object in world space, which is its rotation followed by the
+     * rotations of all of its ancestors. Non-uniform scales of the ancestors are not included.
+     */
+    public Quaternion getWorldRotation(Quaternion dest)
+    {
+        if (dest == null)
+            dest = new Quaternion();
+
+        dest.set(transformation.getRotation());
+
+        for (GameObject object = parent; object != null; object = object.parent)
+            Quaternion.mul(dest, object.transformation.getRotation(), dest);
+
+        return dest;
+    }
+
+    /**
+     * Gets the world matrix to render this object with, from the interpolated transformations of
+     * this object and its ancestors, as of the last {@link FlatScene#updateRenderTransformations}
+     * pass over the scene it belongs to. The scene graph runs that pass at the start of every frame.
+     *
+     * @return The world matrix, which must not be modified.
+     */
+    public Matrix4f getRenderWorldMatrix()
+    {
+        if (renderWorldScene != null)
+            renderWorldScene.getRenderWorldMatrix(renderWorldIndex, renderWorldMatrix);
+
+        return renderWorldMatrix;
+    }
+
     @Override
     public void init()
     {
@@ -146,7 +426,7 @@ public class GameObject implements ITickable, IRenderable
     @Override
     public void applyUniforms(ShaderProgram shaderProgram)
     {
-        shaderProgram.setUniformMatrix4f("modelMatrix", this.getTransformation().getMatrix());
+        shaderProgram.setUniformMatrix4f("modelMatrix", getRenderWorldMatrix());
     }
 
     @Override
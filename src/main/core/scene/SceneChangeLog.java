@@ -0,0 +1,60 @@
+package main.core.scene;
+
+/**
+ * Records the changes made to the trees of a scene graph from any thread, into a batch that is
+ * handed over once per tick. There are two batches, one being recorded into while the other is
+ * delivered, so recording never waits on the listeners.
+ *
+ * @author Kelan
+ */
+class SceneChangeLog
+{
+    private SceneChanges recording = new SceneChanges();
+    private SceneChanges delivering = new SceneChanges();
+
+    synchronized void record(SceneChanges.Type type, GameObject object, GameObject parent, GameObject previousParent, Component component)
+    {
+        recording.add(type, object, parent, previousParent, component);
+    }
+
+    /**
+     * Records an object and everything below it as added, parents before children.
+     */
+    synchronized void recordAdded(GameObject object, GameObject parent)
+    {
+        recording.add(SceneChanges.Type.OBJECT_ADDED, object, parent, null, null);
+
+        for (Component component : object.getComponents())
+            recording.add(SceneChanges.Type.COMPONENT_ADDED, object, null, null, component);
+
+        for (GameObject child : object.getChildren())
+            recordAdded(child, object);
+    }
+
+    /**
+     * Records an object and everything below it as removed, children before parents.
+     */
+    synchronized void recordRemoved(GameObject object, GameObject previousParent)
+    {
+        for (GameObject child : object.getChildren())
+            recordRemoved(child, object);
+
+        for (Component component : object.getComponents())
+            recording.add(SceneChanges.Type.COMPONENT_REMOVED, object, null, null, component);
+
+        recording.add(SceneChanges.Type.OBJECT_REMOVED, object, null, previousParent, null);
+    }
+
+    /**
+     * Takes the changes recorded since the last call, and starts recording into the other batch.
+     * The returned batch stays valid until the next call.
+     */
+    synchronized SceneChanges swap()
+    {
+        SceneChanges changes = recording;
+        recording = delivering;
+        recording.clear();
+        delivering = changes;
+        return changes;
+    }
+}
@@ -0,0 +1,141 @@
+package main.core.scene;
+
+import java.util.Arrays;
+
+/**
+ * A batch of changes to the scene graph, in the order they were made. The scene graph collects the
+ * changes of a tick and delivers them together once the tick has finished, so an index over the
+ * scene, such as a broadphase, a render list or a spatial index, can be kept up to date with work
+ * proportional to the number of changes instead of rescanning the scene.
+ *
+ * Adding a subtree reports every object of the subtree, parents before children, each followed by
+ * its components. Removing a subtree reports them the other way around. Moving an object to another
+ * parent in the same scene only reports the object itself, and the objects whose world transform
+ * changed as a result are reported as transform changes at the end of the tick.
+ *
+ * A batch is only valid during the call that delivers it, and is reused afterwards.
+ *
+ * @author Kelan
+ */
+public class SceneChanges
+{
+    public enum Type
+    {
+        /**
+         * An object was added to the scene under {@link #getParent(int)}.
+         */
+        OBJECT_ADDED,
+        /**
+         * An object was removed from the scene, from under {@link #getPreviousParent(int)}.
+         */
+        OBJECT_REMOVED,
+        /**
+         * An object was moved from {@link #getPreviousParent(int)} to {@link #getParent(int)}.
+         */
+        OBJECT_REPARENTED,
+        /**
+         * {@link #getComponent(int)} was added to an object.
+         */
+        COMPONENT_ADDED,
+        /**
+         * {@link #getComponent(int)} was removed from an object.
+         */
+        COMPONENT_REMOVED,
+        /**
+         * The world matrix of an object changed during the tick, because its own transformation or
+         * the transformation of one of its ancestors changed.
+         */
+        TRANSFORM_CHANGED
+    }
+
+    private int count;
+    private Type[] types = new Type[16];
+    private GameObject[] objects = new GameObject[16];
+    private GameObject[] parents = new GameObject[16];
+    private GameObject[] previousParents = new GameObject[16];
+    private Component[] components = new Component[16];
+
+    void add(Type type, GameObject object, GameObject parent, GameObject previousParent, Component component)
+    {
+        if (count == types.length)
+        {
+            types = Arrays.copyOf(types, count * 2);
+            objects = Arrays.copyOf(objects, count * 2);
+            parents = Arrays.copyOf(parents, count * 2);
+            previousParents = Arrays.copyOf(previousParents, count * 2);
+            components = Arrays.copyOf(components, count * 2);
+        }
+
+        types[count] = type;
+        objects[count] = object;
+        parents[count] = parent;
+        previousParents[count] = previousParent;
+        components[count] = component;
+        count++;
+    }
+
+    void clear()
+    {
+        Arrays.fill(objects, 0, count, null);
+        Arrays.fill(parents, 0, count, null);
+        Arrays.fill(previousParents, 0, count, null);
+        Arrays.fill(components, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Gets the number of changes in this batch.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    public boolean isEmpty()
+    {
+        return count == 0;
+    }
+
+    public Type getType(int index)
+    {
+        return types[index];
+    }
+
+    /**
+     * Gets the object that changed, or the object that a component was added to or removed from.
+     */
+    public GameObject getObject(int index)
+    {
+        return objects[index];
+    }
+
+    /**
+     * Gets the parent of the object after the change, or null if it was removed or is a root.
+     */
+    public GameObject getParent(int index)
+    {
+        return parents[index];
+    }
+
+    /**
+     * Gets the parent of the object before the change, or null if it was added or was a root.
+     */
+    public GameObject getPreviousParent(int index)
+    {
+        return previousParents[index];
+    }
+
+    /**
+     * Gets the component that was added or removed, or null for changes to objects.
+     */
+    public Component getComponent(int index)
+    {
+        return components[index];
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SceneChanges{" + "count=" + count + '}';
+    }
+}
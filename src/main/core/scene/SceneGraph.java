@@ -7,15 +7,20 @@ import main.client.rendering.PointLight;
 import main.client.rendering.ShaderProgram;
 import main.core.Engine;
 import main.core.input.components.FlyController;
+import main.core.scene.boundingbox.AxisAlignedBB;
 import main.core.util.MathUtils;
+import main.core.util.ScratchPool;
 import main.physics.ITickable;
+import main.physics.PhysicsWorld;
+import main.physics.RaycastHit;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.util.vector.Matrix3f;
+import org.lwjgl.util.vector.Vector2f;
 import org.lwjgl.util.vector.Vector3f;
-import org.lwjgl.util.vector.Vector4f;
 
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -28,6 +33,24 @@ import static org.lwjgl.opengl.GL30.GL_RGBA32F;
 public class SceneGraph implements ITickable, IRenderable
 {
     public static final int MAX_LIGHTS = 16;
+
+    // The uniform names of the lights, built once rather than concatenated for every light of every frame.
+    private static final String[] LIGHT_POSITIONS = new String[MAX_LIGHTS];
+    private static final String[] LIGHT_COLOURS = new String[MAX_LIGHTS];
+    private static final String[] LIGHT_ATTENUATIONS = new String[MAX_LIGHTS];
+    private static final String[] LIGHT_INTENSITIES = new String[MAX_LIGHTS];
+    private static final PointLight NULL_LIGHT = new PointLight(new Vector3f(), new Vector3f(), new Vector3f(), 0.0F);
+
+    static
+    {
+        for (int i = 0; i < MAX_LIGHTS; i++)
+        {
+            LIGHT_POSITIONS[i] = "lights[" + i + "].position";
+            LIGHT_COLOURS[i] = "lights[" + i + "].colour";
+            LIGHT_ATTENUATIONS[i] = "lights[" + i + "].attenuation";
+            LIGHT_INTENSITIES[i] = "lights[" + i + "].intensity";
+        }
+    }
     private GameObject root;
     private GameObject player;
     private GameObject world;
@@ -37,11 +60,32 @@ public class SceneGraph implements ITickable, IRenderable
     private Camera camera;
     private Matrix3f[] mapDirections;
 
+    private final FlatScene tickScene;      // Every object, updated by the physics thread.
+    private final FlatScene simulatedScene; // The world and root objects, published by the physics thread.
+    private final FlatScene renderScene;    // The world and root objects, rendered by the client thread.
+    private final FlatScene playerScene;    // The player, rendered by the client thread.
+    private final TickGraph tickGraph;
+    private final SceneChangeLog changeLog = new SceneChangeLog();
+    private volatile ChangeListener[] changeListeners = new ChangeListener[0]; // Copied on write, so dispatching needs no iterator.
+
+    private final TransformBuffer transformBuffer = new TransformBuffer();
+    private TransformSnapshot renderSnapshot;
+    private float renderAlpha;
+    private int snapshotSlots;
+
     public SceneGraph()
     {
         this.root = new GameObject();
         this.player = this.createPlayerObject();
         this.world = this.createWorld();
+        this.tickScene = new FlatScene(this.player, this.world, this.root);
+        this.simulatedScene = new FlatScene(this.world, this.root);
+        this.renderScene = new FlatScene(this.world, this.root);
+        this.playerScene = new FlatScene(this.player);
+        this.tickGraph = new TickGraph(this.tickScene);
+        this.player.changeLog = this.changeLog;
+        this.world.changeLog = this.changeLog;
+        this.root.changeLog = this.changeLog;
 
         if (mapDirections == null)
             mapDirections = new Matrix3f[6];
@@ -89,22 +133,224 @@ public class SceneGraph implements ITickable, IRenderable
         return lights;
     }
 
+    /**
+     * Casts a ray into the scene, against the collision shapes of the physics bodies, and finds the
+     * closest object it hits.
+     *
+     * @param maxFraction The length of the ray, in units of the direction.
+     * @return true if an object was hit.
+     * @see PhysicsWorld#raycast(Vector3f, Vector3f, float, RaycastHit)
+     */
+    public boolean raycast(Vector3f origin, Vector3f direction, float maxFraction, RaycastHit hit)
+    {
+        return getPhysicsWorld().raycast(origin, direction, maxFraction, hit);
+    }
+
+    /**
+     * Sweeps a sphere through the scene, and finds the first object it touches.
+     *
+     * @see PhysicsWorld#sphereCast(Vector3f, Vector3f, float, float, RaycastHit)
+     */
+    public boolean sphereCast(Vector3f origin, Vector3f direction, float radius, float maxFraction, RaycastHit hit)
+    {
+        return getPhysicsWorld().sphereCast(origin, direction, radius, maxFraction, hit);
+    }
+
+    /**
+     * Casts a batch of rays into the scene, in parallel for large batches.
+     *
+     * @see PhysicsWorld#raycast(float[], int, float, RaycastHit[])
+     */
+    public void raycast(float[] rays, int count, float maxFraction, RaycastHit[] hits)
+    {
+        getPhysicsWorld().raycast(rays, count, maxFraction, hits);
+    }
+
+    /**
+     * Sweeps a batch of spheres through the scene, in parallel for large batches.
+     *
+     * @see PhysicsWorld#sphereCast(float[], int, float, float, RaycastHit[])
+     */
+    public void sphereCast(float[] rays, int count, float radius, float maxFraction, RaycastHit[] hits)
+    {
+        getPhysicsWorld().sphereCast(rays, count, radius, maxFraction, hits);
+    }
+
+    /**
+     * Finds the objects whose collision shapes overlap a box.
+     *
+     * @return The number of objects that were reported to the callback.
+     * @see PhysicsWorld#overlap
+     */
+    public int overlap(AxisAlignedBB bounds, PhysicsWorld.OverlapCallback callback)
+    {
+        Vector3f position = bounds.getPosition();
+        Vector3f halfExtents = bounds.getHalfExtents();
+        return getPhysicsWorld().overlap(position.x - halfExtents.x, position.y - halfExtents.y, position.z - halfExtents.z, position.x + halfExtents.x, position.y + halfExtents.y, position.z + halfExtents.z, callback);
+    }
+
+    /**
+     * Casts a ray from the camera through a point on the screen.
+     *
+     * @param screenPosition The point on the screen, in normalized device coordinates.
+     * @param maxDistance    The distance to search up to.
+     * @return true if an object was hit.
+     */
+    public boolean pick(Vector2f screenPosition, float maxDistance, RaycastHit hit)
+    {
+        if (camera == null && getPlayer() != null)
+            camera = (Camera) getPlayer().getComponent("camera");
+
+        if (camera == null)
+            return false;
+
+        ScratchPool pool = ScratchPool.get();
+        pool.push();
+
+        try
+        {
+            Vector3f direction = camera.getPickingVector(screenPosition, pool.vector3f());
+
+            if (direction == null)
+                return false;
+
+            return raycast(camera.getPositionWithOffset(pool.vector3f()), direction, maxDistance, hit);
+        } finally
+        {
+            pool.pop();
+        }
+    }
+
+    private PhysicsWorld getPhysicsWorld()
+    {
+        return Engine.getPhysicsThread().getPhysicsWorld();
+    }
+
     @Override
     public void init()
     {
         System.out.println("Initializing scene graph");
 
-        this.player.init();
-        this.world.init();
-        this.root.init();
+        this.tickScene.init();
     }
 
+    /**
+     * Records the current transformations of the world and root objects as the previous tick state,
+     * so that rendering can interpolate towards the state produced by the coming tick. The player is
+     * moved by the client thread every frame, and so is not interpolated.
+     */
+    public void storePreviousTransformations()
+    {
+        this.simulatedScene.storePreviousTransformations();
+    }
+
+    /**
+     * Updates every object. Tickables that opt in to concurrent ticking are updated on the workers
+     * of the tick graph, and this only returns once all of them have finished, so the state that is
+     * published afterwards is complete. The world matrices of the objects that moved are then
+     * recomputed, and are read by the physics world during the next tick.
+     *
+     * @see TickGraph
+     */
     @Override
     public void update(double delta)
     {
-        this.player.update(delta);
-        this.world.update(delta);
-        this.root.update(delta);
+        this.tickGraph.update(delta);
+        this.tickScene.updateTransformations();
+    }
+
+    public TickGraph getTickGraph()
+    {
+        return tickGraph;
+    }
+
+    /**
+     * Delivers the changes made to the scene since the last call to every change listener, as one
+     * batch. The batch ends with the transform changes of the world and root objects during the
+     * tick. The player is moved by the client thread, and its transform changes are not reported.
+     * Only the physics thread may call this, once every tick, before the transformations are
+     * published.
+     */
+    public void dispatchChanges()
+    {
+        this.simulatedScene.collectTransformChanges(this.changeLog);
+        SceneChanges changes = this.changeLog.swap();
+
+        if (changes.isEmpty())
+            return;
+
+        for (ChangeListener listener : this.changeListeners)
+            listener.sceneChanged(changes);
+    }
+
+    /**
+     * Adds a listener that is given the changes to the scene once every tick. Only changes made
+     * after it was added are delivered, so a listener that indexes the scene scans it once when it
+     * is added.
+     */
+    public synchronized void addChangeListener(ChangeListener listener)
+    {
+        ChangeListener[] listeners = Arrays.copyOf(this.changeListeners, this.changeListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        this.changeListeners = listeners;
+    }
+
+    public synchronized boolean removeChangeListener(ChangeListener listener)
+    {
+        ChangeListener[] listeners = this.changeListeners;
+
+        for (int i = 0; i < listeners.length; i++)
+        {
+            if (Objects.equals(listeners[i], listener))
+            {
+                ChangeListener[] remaining = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, remaining, i, listeners.length - i - 1);
+                this.changeListeners = remaining;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Copies the transformations of the world and root objects into the back buffer of the transform
+     * snapshot buffer, and publishes it to the client thread. Only the physics thread may call this.
+     *
+     * @param tickTime   The {@link System#nanoTime()} that the published state corresponds to.
+     * @param tickLength The length of one tick in nanoseconds.
+     */
+    public void publishTransformations(long tickTime, long tickLength)
+    {
+        TransformSnapshot snapshot = transformBuffer.getWriteSnapshot();
+        snapshot.begin(tickTime, tickLength);
+
+        this.simulatedScene.publishTransformations(this, snapshot);
+
+        transformBuffer.publish();
+    }
+
+    int allocateSnapshotSlot()
+    {
+        return snapshotSlots++;
+    }
+
+    /**
+     * Gets the snapshot acquired at the start of the current frame. Only the client thread may call
+     * this.
+     */
+    public TransformSnapshot getRenderSnapshot()
+    {
+        return renderSnapshot;
+    }
+
+    /**
+     * Gets the interpolation factor for the current frame, between the previous and current state
+     * stored in the render snapshot.
+     */
+    public float getRenderAlpha()
+    {
+        return renderAlpha;
     }
 
     @Override
@@ -118,6 +364,23 @@ public class SceneGraph implements ITickable, IRenderable
         this.camera = camera != null ? camera : (Camera) getPlayer().getComponent("camera");
     }
 
+    /**
+     * Acquires the latest published transformations, computes the world matrices that every object
+     * is rendered with this frame, and renders the player, which updates the camera. This makes no
+     * GL calls, so a frame can be prepared without a window. Only the client thread may call this,
+     * once every frame, before anything is drawn.
+     */
+    public void prepareFrame(double delta)
+    {
+        renderSnapshot = transformBuffer.acquire();
+        renderAlpha = renderSnapshot.getInterpolationAlpha();
+
+        // The player is moved by the client thread, so it is rendered where it is now.
+        renderScene.updateRenderTransformations(renderSnapshot, renderAlpha);
+        playerScene.updateRenderTransformations(null, 0.0F);
+        playerScene.render(delta, null);
+    }
+
     public void renderSimple(double delta, ShaderProgram shaderProgram)
     {
         ClientThread clientThread = Engine.getClientThread();
@@ -126,15 +389,7 @@ public class SceneGraph implements ITickable, IRenderable
         clientThread.setDrawWireframe(false);
         clientThread.setDrawGeometry(true);
 
-        if (shaderProgram != null)
-        {
-            world.render(delta, shaderProgram);
-            root.render(delta, shaderProgram);
-        } else
-        {
-            world.render(delta);
-            root.render(delta);
-        }
+        renderScene.render(delta, shaderProgram);
 
         clientThread.setDrawWireframe(drawWireframe);
         clientThread.setDrawGeometry(drawGeometry);
@@ -148,9 +403,9 @@ public class SceneGraph implements ITickable, IRenderable
         glCullFace(GL_BACK);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-        ClientThread clientThread = Engine.getClientThread();
-        Engine.getSceneGraph().getPlayer().render(delta);
+        prepareFrame(delta);
 
+        ClientThread clientThread = Engine.getClientThread();
         boolean drawWireframe = clientThread.doDrawWireframe();
         boolean drawGeometry = clientThread.doDrawGeometry();
         boolean shadows = true;
@@ -196,9 +451,8 @@ public class SceneGraph implements ITickable, IRenderable
     @Override
     public void dispose()
     {
-        this.player.dispose();
-        this.world.dispose();
-        this.root.dispose();
+        this.tickScene.dispose();
+        this.tickGraph.dispose();
     }
 
     @Override
@@ -219,25 +473,23 @@ public class SceneGraph implements ITickable, IRenderable
             shaderProgram.setUniformBoolean("drawWireframe", true);
         } else
         {
-            shaderProgram.setUniformVector4f("colourMultiplier", new Vector4f(1.0F, 1.0F, 1.0F, 1.0F));
+            shaderProgram.setUniformVector4f("colourMultiplier", 1.0F, 1.0F, 1.0F, 1.0F);
             shaderProgram.setUniformBoolean("drawWireframe", false);
         }
 
         shaderProgram.setUniformBoolean("drawGeometry", clientThread.doDrawGeometry());
 
-        PointLight nullLight = new PointLight(new Vector3f(), new Vector3f(), new Vector3f(), 0.0F);
-
         for (int i = 0; i < MAX_LIGHTS; i++)
         {
-            PointLight light = nullLight;
+            PointLight light = NULL_LIGHT;
 
             if (i < lights.size())
                 light = lights.get(i);
 
-            shaderProgram.setUniformVector3f("lights[" + i + "].position", light.getPosition());
-            shaderProgram.setUniformVector3f("lights[" + i + "].colour", light.getColour());
-            shaderProgram.setUniformVector3f("lights[" + i + "].attenuation", light.getAttenuation());
-            shaderProgram.setUniformVector1f("lights[" + i + "].intensity", light.getIntensity());
+            shaderProgram.setUniformVector3f(LIGHT_POSITIONS[i], light.getPosition());
+            shaderProgram.setUniformVector3f(LIGHT_COLOURS[i], light.getColour());
+            shaderProgram.setUniformVector3f(LIGHT_ATTENUATIONS[i], light.getAttenuation());
+            shaderProgram.setUniformVector1f(LIGHT_INTENSITIES[i], light.getIntensity());
         }
     }
 
@@ -262,4 +514,10 @@ public class SceneGraph implements ITickable, IRenderable
     {
         return "SceneGraph{" + "root=" + root + ", player=" + player + ", world=" + world + '}';
     }
+
+    @FunctionalInterface
+    public interface ChangeListener
+    {
+        void sceneChanged(SceneChanges changes);
+    }
 }
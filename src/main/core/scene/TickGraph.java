@@ -0,0 +1,453 @@
+package main.core.scene;
+
+import main.physics.ITickable;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Updates the components of a {@link FlatScene} as a graph of jobs on a work stealing pool. Every
+ * component is a job, and a job starts once all of the jobs it depends on have finished.
+ *
+ * By default every component depends on the component before it, so the scene updates in the same
+ * order as {@link FlatScene#update(double)}. Tickables opt out of that order through
+ * {@link ITickable#isConcurrentTick()}. A component that opts in only waits for its declared
+ * {@link ITickable#getTickDependencies() dependencies}. A game object that opts in starts a new
+ * chain for the components of its subtree, so independent subtrees update side by side, while the
+ * components within each of them keep their order.
+ *
+ * An update does not return until every job has finished, which is the barrier between the tick
+ * and publishing its state for rendering. If nothing in the scene opts in, the graph is a single
+ * chain and is updated on the calling thread.
+ *
+ * @author Kelan
+ */
+public class TickGraph
+{
+    private final FlatScene scene;
+    private int buildCount = -1;
+
+    private int nodeCount;
+    private int[] dependencyCounts = new int[16];
+    private int[] dependentStart = new int[17]; // The dependents of node i are dependents[dependentStart[i]..dependentStart[i + 1]).
+    private int[] dependents = new int[16];
+    private int[] order = new int[16];          // A topological order, as close to the component order as the edges allow.
+    private boolean concurrent;
+
+    private int edgeCount;
+    private int[] edgeFrom = new int[16];
+    private int[] edgeTo = new int[16];
+
+    private boolean parallel = true;
+    private int workerCount;
+    private ForkJoinPool workerPool;
+
+    private AtomicIntegerArray pending;
+    private double delta;
+    private volatile Throwable failure;
+
+    public TickGraph(FlatScene scene)
+    {
+        this.scene = scene;
+    }
+
+    /**
+     * Updates every component whose object and ancestors all tick, and waits for all of them to
+     * finish. If an update throws, the components that have not started yet are skipped, and the
+     * exception is rethrown once the running ones have finished.
+     */
+    public void update(double delta)
+    {
+        scene.updateActive();
+
+        if (buildCount != scene.getBuildCount())
+            build();
+
+        if (!parallel || !concurrent)
+        {
+            for (int i = 0; i < nodeCount; i++)
+                tick(order[i], delta);
+
+            return;
+        }
+
+        this.delta = delta;
+        this.failure = null;
+
+        for (int i = 0; i < nodeCount; i++)
+            pending.set(i, dependencyCounts[i]);
+
+        getWorkerPool().invoke(new RootTask());
+
+        Throwable failure = this.failure;
+        this.failure = null;
+
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        if (failure != null)
+            throw new IllegalStateException(failure);
+    }
+
+    private void tick(int node, double delta)
+    {
+        Component component = scene.getComponent(node);
+
+        if (scene.isActive(scene.getComponentObject(node)) && component.doTick())
+            component.update(delta);
+    }
+
+    /**
+     * Builds the edges of the graph from the current structure of the scene.
+     */
+    private void build()
+    {
+        buildCount = scene.getBuildCount();
+        nodeCount = scene.getComponentCount();
+        edgeCount = 0;
+        concurrent = false;
+
+        int objectCount = scene.getObjectCount();
+        int[] chains = new int[objectCount];      // The object whose subtree is the chain of each object, or -1 for the main chain.
+        int[] firstComponent = new int[objectCount];
+        int[] endComponent = new int[objectCount];
+        Map<ITickable, Integer> objectIndices = new IdentityHashMap<>();
+
+        for (int i = 0; i < objectCount; i++)
+        {
+            GameObject object = scene.getObject(i);
+            int parent = scene.getParent(i);
+            chains[i] = object.isConcurrentTick() ? i : parent >= 0 ? chains[parent] : -1;
+            firstComponent[i] = nodeCount;
+            endComponent[i] = 0;
+            objectIndices.put(object, i);
+            concurrent |= chains[i] >= 0;
+        }
+
+        // The components of a subtree are contiguous, so its range is the union of the ranges of its
+        // object and of its children, which come after it in the object order.
+        for (int c = 0; c < nodeCount; c++)
+        {
+            int object = scene.getComponentObject(c);
+            firstComponent[object] = Math.min(firstComponent[object], c);
+            endComponent[object] = Math.max(endComponent[object], c + 1);
+        }
+
+        for (int i = objectCount - 1; i >= 0; i--)
+        {
+            int parent = scene.getParent(i);
+
+            if (parent >= 0)
+            {
+                firstComponent[parent] = Math.min(firstComponent[parent], firstComponent[i]);
+                endComponent[parent] = Math.max(endComponent[parent], endComponent[i]);
+            }
+        }
+
+        Map<ITickable, Integer> componentIndices = new IdentityHashMap<>();
+        int[] lastInChain = new int[objectCount + 1];
+        Arrays.fill(lastInChain, -1);
+
+        for (int c = 0; c < nodeCount; c++)
+        {
+            Component component = scene.getComponent(c);
+            componentIndices.put(component, c);
+
+            if (component.isConcurrentTick())
+            {
+                concurrent = true;
+                continue;
+            }
+
+            int chain = chains[scene.getComponentObject(c)] + 1;
+
+            if (lastInChain[chain] >= 0)
+                addEdge(lastInChain[chain], c);
+
+            lastInChain[chain] = c;
+        }
+
+        for (int c = 0; c < nodeCount; c++)
+            addDependencies(scene.getComponent(c).getTickDependencies(), c, c + 1, componentIndices, objectIndices, firstComponent, endComponent);
+
+        for (int i = 0; i < objectCount; i++)
+            addDependencies(scene.getObject(i).getTickDependencies(), firstComponent[i], endComponent[i], componentIndices, objectIndices, firstComponent, endComponent);
+
+        buildAdjacency();
+        sort();
+
+        if (pending == null || pending.length() < nodeCount)
+            pending = new AtomicIntegerArray(Math.max(16, nodeCount));
+    }
+
+    /**
+     * Makes every component in a range depend on every component that the dependencies stand for.
+     */
+    private void addDependencies(ITickable[] dependencies, int start, int end, Map<ITickable, Integer> componentIndices, Map<ITickable, Integer> objectIndices, int[] firstComponent, int[] endComponent)
+    {
+        if (dependencies == null)
+            return;
+
+        for (ITickable dependency : dependencies)
+        {
+            Integer component = componentIndices.get(dependency);
+            Integer object = objectIndices.get(dependency);
+            int dependencyStart, dependencyEnd;
+
+            if (component != null)
+            {
+                dependencyStart = component;
+                dependencyEnd = component + 1;
+            } else if (object != null)
+            {
+                dependencyStart = firstComponent[object];
+                dependencyEnd = endComponent[object];
+            } else
+            {
+                continue; // Not part of this scene.
+            }
+
+            for (int c = start; c < end; c++)
+                for (int d = dependencyStart; d < dependencyEnd; d++)
+                    if (d != c)
+                        addEdge(d, c);
+        }
+    }
+
+    private void addEdge(int from, int to)
+    {
+        if (edgeCount == edgeFrom.length)
+        {
+            edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+            edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+        }
+
+        edgeFrom[edgeCount] = from;
+        edgeTo[edgeCount] = to;
+        edgeCount++;
+    }
+
+    /**
+     * Groups the edges by the node they come from, with a prefix sum over the number of dependents
+     * of each node.
+     */
+    private void buildAdjacency()
+    {
+        if (dependencyCounts.length < nodeCount)
+        {
+            dependencyCounts = new int[nodeCount];
+            dependentStart = new int[nodeCount + 1];
+            order = new int[nodeCount];
+        }
+
+        if (dependents.length < edgeCount)
+            dependents = new int[edgeCount];
+
+        Arrays.fill(dependencyCounts, 0, nodeCount, 0);
+        Arrays.fill(dependentStart, 0, nodeCount + 1, 0);
+
+        for (int e = 0; e < edgeCount; e++)
+        {
+            dependencyCounts[edgeTo[e]]++;
+            dependentStart[edgeFrom[e] + 1]++;
+        }
+
+        for (int i = 0; i < nodeCount; i++)
+            dependentStart[i + 1] += dependentStart[i];
+
+        int[] next = Arrays.copyOf(dependentStart, nodeCount);
+
+        for (int e = 0; e < edgeCount; e++)
+            dependents[next[edgeFrom[e]]++] = edgeTo[e];
+    }
+
+    /**
+     * Sorts the nodes topologically, always taking the lowest ready node next, so a graph without
+     * concurrent tickables keeps the component order exactly.
+     *
+     * @throws IllegalStateException if the dependencies form a cycle.
+     */
+    private void sort()
+    {
+        int[] remaining = Arrays.copyOf(dependencyCounts, nodeCount);
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        int count = 0;
+
+        for (int i = 0; i < nodeCount; i++)
+            if (remaining[i] == 0)
+                ready.add(i);
+
+        while (!ready.isEmpty())
+        {
+            int node = ready.poll();
+            order[count++] = node;
+
+            for (int d = dependentStart[node]; d < dependentStart[node + 1]; d++)
+                if (--remaining[dependents[d]] == 0)
+                    ready.add(dependents[d]);
+        }
+
+        if (count != nodeCount)
+        {
+            buildCount = -1;
+            throw new IllegalStateException("The tick dependencies of the scene form a cycle");
+        }
+    }
+
+    private ForkJoinPool getWorkerPool()
+    {
+        if (workerPool == null)
+        {
+            int parallelism = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+
+            workerPool = new ForkJoinPool(parallelism, pool ->
+            {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("TICK-WORKER-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+
+        return workerPool;
+    }
+
+    /**
+     * Stops the workers of this graph. They are started again if the graph is updated again.
+     */
+    public void dispose()
+    {
+        if (workerPool != null)
+        {
+            workerPool.shutdown();
+            workerPool = null;
+        }
+    }
+
+    public boolean isParallel()
+    {
+        return parallel;
+    }
+
+    /**
+     * Sets whether concurrent tickables run on the workers. If not, the whole graph is updated on
+     * the calling thread in its topological order.
+     */
+    public TickGraph setParallel(boolean parallel)
+    {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public int getWorkerCount()
+    {
+        return workerCount;
+    }
+
+    /**
+     * Sets the number of worker threads, or 0 to use one per processor. This takes effect the next
+     * time the workers are started.
+     */
+    public TickGraph setWorkerCount(int workerCount)
+    {
+        this.workerCount = workerCount;
+        return this;
+    }
+
+    /**
+     * Starts the nodes that have no dependencies, and completes once every node it started, and every
+     * node those went on to start, has finished.
+     */
+    private class RootTask extends CountedCompleter<Void>
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void compute()
+        {
+            for (int i = 0; i < nodeCount; i++)
+            {
+                if (dependencyCounts[i] == 0)
+                {
+                    addToPendingCount(1);
+                    new NodeTask(this, i).fork();
+                }
+            }
+
+            tryComplete();
+        }
+    }
+
+    /**
+     * Updates a node, then releases its dependents. The first dependent that becomes ready runs next
+     * in the same task, so a chain of components runs without forking, and the others are forked.
+     */
+    private class NodeTask extends CountedCompleter<Void>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final RootTask root;
+        private final int node;
+
+        NodeTask(RootTask root, int node)
+        {
+            super(root);
+            this.root = root;
+            this.node = node;
+        }
+
+        @Override
+        public void compute()
+        {
+            int node = this.node;
+
+            while (node >= 0)
+            {
+                if (failure == null)
+                {
+                    try
+                    {
+                        tick(node, delta);
+                    } catch (Throwable e)
+                    {
+                        synchronized (TickGraph.this)
+                        {
+                            if (failure == null)
+                                failure = e;
+                        }
+                    }
+                }
+
+                int next = -1;
+
+                for (int d = dependentStart[node]; d < dependentStart[node + 1]; d++)
+                {
+                    int dependent = dependents[d];
+
+                    if (pending.decrementAndGet(dependent) != 0)
+                        continue;
+
+                    if (next < 0)
+                    {
+                        next = dependent;
+                    } else
+                    {
+                        root.addToPendingCount(1);
+                        new NodeTask(root, dependent).fork();
+                    }
+                }
+
+                node = next;
+            }
+
+            tryComplete();
+        }
+    }
+}
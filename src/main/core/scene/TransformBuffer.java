@@ -0,0 +1,57 @@
+package main.core.scene;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer of {@link TransformSnapshot}s, with a single writer (the physics thread)
+ * and a single reader (the client thread). The writer fills its back buffer and publishes it with
+ * one atomic swap, receiving the previously shared buffer in exchange. The reader swaps its front
+ * buffer for the shared one only when something new has been published, so neither side ever
+ * blocks or sees a buffer that the other side is still using.
+ *
+ * @author Kelan
+ */
+public class TransformBuffer
+{
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final TransformSnapshot[] snapshots = new TransformSnapshot[]{new TransformSnapshot(), new TransformSnapshot(), new TransformSnapshot()};
+
+    /**
+     * The index of the buffer that is currently shared between the writer and the reader, combined
+     * with the {@link #FRESH} flag if it has been published since the reader last acquired it.
+     */
+    private final AtomicInteger shared = new AtomicInteger(1);
+    private int back = 0;   // Owned by the writer.
+    private int front = 2;  // Owned by the reader.
+
+    /**
+     * Gets the snapshot that the writer should fill before calling {@link #publish()}. Only the
+     * writer thread may call this.
+     */
+    public TransformSnapshot getWriteSnapshot()
+    {
+        return snapshots[back];
+    }
+
+    /**
+     * Makes the write snapshot visible to the reader. Only the writer thread may call this.
+     */
+    public void publish()
+    {
+        back = shared.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Gets the most recently published snapshot. The returned snapshot will not be modified until
+     * the next call to this method. Only the reader thread may call this.
+     */
+    public TransformSnapshot acquire()
+    {
+        if ((shared.get() & FRESH) != 0)
+            front = shared.getAndSet(front) & INDEX_MASK;
+
+        return snapshots[front];
+    }
+}
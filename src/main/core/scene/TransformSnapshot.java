@@ -0,0 +1,125 @@
+package main.core.scene;
+
+import main.core.util.MathUtils;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * A flat copy of the transformations of every published game object, as they were at the end of
+ * one physics tick. Each object occupies a fixed slot, and each slot stores both the previous and
+ * the current tick state, so that a reader can interpolate between them without touching the live
+ * {@link Transformation} objects.
+ *
+ * @author Kelan
+ */
+public class TransformSnapshot
+{
+    /**
+     * Translation xyz, rotation xyzw and scale xyz.
+     */
+    public static final int STRIDE = 10;
+
+    private float[] previous = new float[0];
+    private float[] current = new float[0];
+    private int size;
+    private long tickTime;
+    private long tickLength = 1L;
+
+    void begin(long tickTime, long tickLength)
+    {
+        this.size = 0;
+        this.tickTime = tickTime;
+        this.tickLength = Math.max(1L, tickLength);
+    }
+
+    void set(int slot, Transformation previous, Transformation current)
+    {
+        if (this.current.length < (slot + 1) * STRIDE)
+        {
+            int capacity = Math.max(slot + 1, 2 * this.current.length / STRIDE) * STRIDE;
+            this.previous = Arrays.copyOf(this.previous, capacity);
+            this.current = Arrays.copyOf(this.current, capacity);
+        }
+
+        size = Math.max(size, slot + 1);
+        write(this.previous, slot * STRIDE, previous);
+        write(this.current, slot * STRIDE, current);
+    }
+
+    private static void write(float[] data, int i, Transformation transformation)
+    {
+        Vector3f translation = transformation.getTranslation();
+        Quaternion rotation = transformation.getRotation();
+        Vector3f scale = transformation.getScale();
+
+        data[i] = translation.x;
+        data[i + 1] = translation.y;
+        data[i + 2] = translation.z;
+        data[i + 3] = rotation.x;
+        data[i + 4] = rotation.y;
+        data[i + 5] = rotation.z;
+        data[i + 6] = rotation.w;
+        data[i + 7] = scale.x;
+        data[i + 8] = scale.y;
+        data[i + 9] = scale.z;
+    }
+
+    public boolean contains(int slot)
+    {
+        return slot >= 0 && slot < size;
+    }
+
+    /**
+     * Blends the previous and current state of a slot into the destination transformation.
+     *
+     * @param slot  The slot of the object to read.
+     * @param alpha The interpolation factor between the previous and current tick.
+     * @param dest  The transformation to write into.
+     * @return The destination transformation.
+     */
+    public Transformation interpolate(int slot, float alpha, Transformation dest)
+    {
+        int i = slot * STRIDE;
+        float[] a = previous;
+        float[] b = current;
+
+        dest.getTranslation().set(a[i] + (b[i] - a[i]) * alpha, a[i + 1] + (b[i + 1] - a[i + 1]) * alpha, a[i + 2] + (b[i + 2] - a[i + 2]) * alpha);
+        dest.getScale().set(a[i + 7] + (b[i + 7] - a[i + 7]) * alpha, a[i + 8] + (b[i + 8] - a[i + 8]) * alpha, a[i + 9] + (b[i + 9] - a[i + 9]) * alpha);
+
+        // Normalized linear interpolation along the shortest arc, as in MathUtils.nlerp
+        float sign = a[i + 3] * b[i + 3] + a[i + 4] * b[i + 4] + a[i + 5] * b[i + 5] + a[i + 6] * b[i + 6] < 0.0F ? -1.0F : 1.0F;
+        float x = a[i + 3] + (b[i + 3] * sign - a[i + 3]) * alpha;
+        float y = a[i + 4] + (b[i + 4] * sign - a[i + 4]) * alpha;
+        float z = a[i + 5] + (b[i + 5] * sign - a[i + 5]) * alpha;
+        float w = a[i + 6] + (b[i + 6] * sign - a[i + 6]) * alpha;
+        float lengthSquared = x * x + y * y + z * z + w * w;
+        float invLength = lengthSquared > 0.0F ? (float) (1.0 / Math.sqrt(lengthSquared)) : 0.0F;
+
+        dest.getRotation().set(x * invLength, y * invLength, z * invLength, w * invLength);
+
+        return dest;
+    }
+
+    /**
+     * Gets how far real time has advanced past the tick this snapshot was taken at, as a fraction
+     * of the tick length.
+     *
+     * @return The interpolation factor in the range [0, 1].
+     */
+    public float getInterpolationAlpha()
+    {
+        return MathUtils.clamp((System.nanoTime() - tickTime) / (double) tickLength, 0.0, 1.0);
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public long getTickTime()
+    {
+        return tickTime;
+    }
+}
@@ -8,6 +8,10 @@ import org.lwjgl.util.vector.Vector3f;
 import java.util.Objects;
 
 /**
+ * A translation, rotation and scale. The matrix of a transformation is cached, and is recomputed the
+ * next time it is asked for once any of the values have changed, including through the vectors
+ * returned by the getters. Like the rest of the scene, a transformation is not thread safe.
+ *
  * @author Kelan
  */
 public class Transformation
@@ -16,6 +20,10 @@ public class Transformation
     private Quaternion rotation;
     private Vector3f scale;
 
+    private final Matrix4f matrix = new Matrix4f();
+    private final float[] matrixValues = new float[10]; // The values that the matrix was computed from.
+    private int matrixVersion;
+
     public Transformation(Vector3f translation, Quaternion rotation, Vector3f scale)
     {
         this.translation = translation;
@@ -81,6 +89,46 @@ public class Transformation
         return this;
     }
 
+    /**
+     * Copies the translation, rotation and scale of the given transformation into this one,
+     * without replacing any of the vectors owned by this transformation.
+     *
+     * @param transformation The transformation to copy.
+     * @return this transformation.
+     */
+    public Transformation set(Transformation transformation)
+    {
+        this.translation.set(transformation.translation);
+        this.rotation.set(transformation.rotation);
+        this.scale.set(transformation.scale);
+        return this;
+    }
+
+    /**
+     * Blends between two transformations. The translation and scale are linearly interpolated, and
+     * the rotation is normalized-linearly interpolated along the shortest arc.
+     *
+     * @param a     The transformation at {@code alpha = 0}
+     * @param b     The transformation at {@code alpha = 1}
+     * @param alpha The interpolation factor.
+     * @param dest  The destination transformation, or null to create a new one.
+     * @return The interpolated transformation.
+     */
+    public static Transformation interpolate(Transformation a, Transformation b, float alpha, Transformation dest)
+    {
+        if (dest == null)
+            dest = new Transformation();
+
+        Vector3f at = a.translation, bt = b.translation;
+        Vector3f as = a.scale, bs = b.scale;
+
+        dest.translation.set(at.x + (bt.x - at.x) * alpha, at.y + (bt.y - at.y) * alpha, at.z + (bt.z - at.z) * alpha);
+        dest.scale.set(as.x + (bs.x - as.x) * alpha, as.y + (bs.y - as.y) * alpha, as.z + (bs.z - as.z) * alpha);
+        MathUtils.nlerp(a.rotation, b.rotation, alpha, dest.rotation);
+
+        return dest;
+    }
+
     public Transformation translate(Vector3f translation)
     {
         Vector3f.add(translation, this.translation, this.translation);
@@ -102,17 +150,78 @@ public class Transformation
         return this;
     }
 
+    /**
+     * Gets the matrix of this transformation, which scales, then rotates, then translates. The
+     * matrix is owned by this transformation, and must not be modified.
+     *
+     * @return The cached matrix, recomputed first if any of the values have changed.
+     */
     public Matrix4f getMatrix()
     {
-        Matrix4f matrix = new Matrix4f();
-
-        Matrix4f.translate(this.translation, matrix, matrix);
-        MathUtils.quaternionToMatrix4f(this.rotation, matrix);
-        Matrix4f.scale(this.scale, matrix, matrix);
-
+        float[] v = matrixValues;
+        Vector3f t = this.translation;
+        Quaternion r = this.rotation;
+        Vector3f s = this.scale;
+
+        if (matrixVersion != 0 && v[0] == t.x && v[1] == t.y && v[2] == t.z && v[3] == r.x && v[4] == r.y && v[5] == r.z && v[6] == r.w && v[7] == s.x && v[8] == s.y && v[9] == s.z)
+            return matrix;
+
+        v[0] = t.x;
+        v[1] = t.y;
+        v[2] = t.z;
+        v[3] = r.x;
+        v[4] = r.y;
+        v[5] = r.z;
+        v[6] = r.w;
+        v[7] = s.x;
+        v[8] = s.y;
+        v[9] = s.z;
+
+        // The same matrix as MathUtils.quaternionToMatrix4f, without normalizing the rotation in
+        // place, which would change the values the matrix was computed from.
+        float qx = r.x, qy = r.y, qz = r.z, qw = r.w;
+        float lengthSquared = qx * qx + qy * qy + qz * qz + qw * qw;
+
+        if (lengthSquared > 0.0F)
+        {
+            float invLength = (float) (1.0 / Math.sqrt(lengthSquared));
+            qx *= invLength;
+            qy *= invLength;
+            qz *= invLength;
+            qw *= invLength;
+        }
+
+        matrix.m00 = (1.0F - 2.0F * (qy * qy + qz * qz)) * s.x;
+        matrix.m01 = 2.0F * (qx * qy - qw * qz) * s.x;
+        matrix.m02 = 2.0F * (qx * qz + qw * qy) * s.x;
+        matrix.m03 = 0.0F;
+        matrix.m10 = 2.0F * (qx * qy + qw * qz) * s.y;
+        matrix.m11 = (1.0F - 2.0F * (qx * qx + qz * qz)) * s.y;
+        matrix.m12 = 2.0F * (qy * qz - qw * qx) * s.y;
+        matrix.m13 = 0.0F;
+        matrix.m20 = 2.0F * (qx * qz - qw * qy) * s.z;
+        matrix.m21 = 2.0F * (qy * qz + qw * qx) * s.z;
+        matrix.m22 = (1.0F - 2.0F * (qx * qx + qy * qy)) * s.z;
+        matrix.m23 = 0.0F;
+        matrix.m30 = t.x;
+        matrix.m31 = t.y;
+        matrix.m32 = t.z;
+        matrix.m33 = 1.0F;
+
+        matrixVersion++;
         return matrix;
     }
 
+    /**
+     * Gets a number that changes every time the matrix of this transformation is recomputed, so
+     * matrices derived from it can tell when they are out of date.
+     */
+    int getMatrixVersion()
+    {
+        getMatrix();
+        return matrixVersion;
+    }
+
     @Override
     public boolean equals(Object o)
     {
@@ -52,14 +52,24 @@ public class AxisAlignedBB extends AbstractBoundingBox
      */
     public static boolean contains(AxisAlignedBB a, Vector3f b)
     {
-        Vector3f min = a.getMin();
-        Vector3f max = a.getMax();
+        return contains(a, b.x, b.y, b.z);
+    }
+
+    /**
+     * Checks if a point is enclosed by a bounding box, without allocating.
+     *
+     * @see AxisAlignedBB#contains(AxisAlignedBB a, Vector3f b)
+     */
+    public static boolean contains(AxisAlignedBB a, float x, float y, float z)
+    {
+        Vector3f position = a.position;
+        Vector3f halfExtents = a.halfExtents;
 
-        if (b.x < min.x || b.x > max.x) // x axis
+        if (x < position.x - halfExtents.x || x > position.x + halfExtents.x) // x axis
             return false;
-        if (b.y < min.y || b.y > max.y) // y axis
+        if (y < position.y - halfExtents.y || y > position.y + halfExtents.y) // y axis
             return false;
-        if (b.z < min.z || b.z > max.z) // z axis
+        if (z < position.z - halfExtents.z || z > position.z + halfExtents.z) // z axis
             return false;
 
         return true;
@@ -76,24 +86,13 @@ public class AxisAlignedBB extends AbstractBoundingBox
      */
     public static boolean contains(AxisAlignedBB a, AxisAlignedBB b)
     {
-        Vector3f min = b.getMin();
-        Vector3f max = b.getMax();
+        // Both boxes are axis aligned, so all 8 vertices are contained if the two extreme ones are.
+        Vector3f position = b.position;
+        Vector3f halfExtents = b.halfExtents;
 
-        if (!AxisAlignedBB.contains(a, new Vector3f(min.x, min.y, min.z)))
-            return false;
-        if (!AxisAlignedBB.contains(a, new Vector3f(max.x, min.y, min.z)))
-            return false;
-        if (!AxisAlignedBB.contains(a, new Vector3f(min.x, max.y, min.z)))
-            return false;
-        if (!AxisAlignedBB.contains(a, new Vector3f(max.x, max.y, min.z)))
-            return false;
-        if (!AxisAlignedBB.contains(a, new Vector3f(min.x, min.y, max.z)))
-            return false;
-        if (!AxisAlignedBB.contains(a, new Vector3f(max.x, min.y, max.z)))
-            return false;
-        if (!AxisAlignedBB.contains(a, new Vector3f(min.x, max.y, max.z)))
+        if (!AxisAlignedBB.contains(a, position.x - halfExtents.x, position.y - halfExtents.y, position.z - halfExtents.z))
             return false;
-        if (!AxisAlignedBB.contains(a, new Vector3f(max.x, max.y, max.z)))
+        if (!AxisAlignedBB.contains(a, position.x + halfExtents.x, position.y + halfExtents.y, position.z + halfExtents.z))
             return false;
 
         return true;
@@ -109,13 +108,12 @@ public class AxisAlignedBB extends AbstractBoundingBox
      */
     public static boolean intersects(AxisAlignedBB a, AxisAlignedBB b)
     {
-        Vector3f aMin = a.getMin();
-        Vector3f aMax = a.getMax();
-        Vector3f bMin = b.getMin();
-        Vector3f bMax = b.getMax();
-
-        return aMin.x < bMax.x && aMax.x > bMin.x && aMin.y < bMax.y && aMax.y > bMin.y && aMin.z < bMax.z && aMax.z > bMin.z;
+        Vector3f aPosition = a.position, aHalfExtents = a.halfExtents;
+        Vector3f bPosition = b.position, bHalfExtents = b.halfExtents;
 
+        return aPosition.x - aHalfExtents.x < bPosition.x + bHalfExtents.x && aPosition.x + aHalfExtents.x > bPosition.x - bHalfExtents.x
+                && aPosition.y - aHalfExtents.y < bPosition.y + bHalfExtents.y && aPosition.y + aHalfExtents.y > bPosition.y - bHalfExtents.y
+                && aPosition.z - aHalfExtents.z < bPosition.z + bHalfExtents.z && aPosition.z + aHalfExtents.z > bPosition.z - bHalfExtents.z;
     }
 
     public static AxisAlignedBB getSmallestEnclosing(Collection<Vector3f> points)
@@ -163,17 +161,36 @@ public class AxisAlignedBB extends AbstractBoundingBox
 
     public Vector3f getFullExtents()
     {
-        return new Vector3f(this.halfExtents.x * 2.0F, this.halfExtents.y * 2.0F, this.halfExtents.z * 2.0F);
+        return getFullExtents(null);
+    }
+
+    public Vector3f getFullExtents(Vector3f dest)
+    {
+        if (dest == null)
+            dest = new Vector3f();
+
+        dest.set(this.halfExtents.x * 2.0F, this.halfExtents.y * 2.0F, this.halfExtents.z * 2.0F);
+        return dest;
     }
 
     public Vector3f getMin()
     {
-        return Vector3f.sub(this.position, this.halfExtents, null);
+        return getMin(null);
+    }
+
+    public Vector3f getMin(Vector3f dest)
+    {
+        return Vector3f.sub(this.position, this.halfExtents, dest);
     }
 
     public Vector3f getMax()
     {
-        return Vector3f.add(this.position, this.halfExtents, null);
+        return getMax(null);
+    }
+
+    public Vector3f getMax(Vector3f dest)
+    {
+        return Vector3f.add(this.position, this.halfExtents, dest);
     }
 
     @Override
@@ -199,25 +216,22 @@ public class AxisAlignedBB extends AbstractBoundingBox
 
     public static Vector3f getFurthestPoint(AxisAlignedBB aabb, Vector3f direction)
     {
-        Vector3f point = new Vector3f();
-        Vector3f min = aabb.getMin();
-        Vector3f max = aabb.getMax();
+        return getFurthestPoint(aabb, direction, null);
+    }
 
-        if (direction.x < 0.0F) // get furthest x value in the direction of the planes normal.
-            point.x = min.x;
-        else
-            point.x = max.x;
+    public static Vector3f getFurthestPoint(AxisAlignedBB aabb, Vector3f direction, Vector3f dest)
+    {
+        if (dest == null)
+            dest = new Vector3f();
 
-        if (direction.y < 0.0F) // get furthest y value in the direction of the planes normal.
-            point.y = min.y;
-        else
-            point.y = max.y;
+        Vector3f position = aabb.position;
+        Vector3f halfExtents = aabb.halfExtents;
 
-        if (direction.z < 0.0F) // get furthest z value in the direction of the planes normal.
-            point.z = min.z;
-        else
-            point.z = max.z;
+        // get the furthest value on each axis in the direction of the planes normal.
+        dest.x = direction.x < 0.0F ? position.x - halfExtents.x : position.x + halfExtents.x;
+        dest.y = direction.y < 0.0F ? position.y - halfExtents.y : position.y + halfExtents.y;
+        dest.z = direction.z < 0.0F ? position.z - halfExtents.z : position.z + halfExtents.z;
 
-        return point;
+        return dest;
     }
 }
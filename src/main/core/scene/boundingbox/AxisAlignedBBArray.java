@@ -0,0 +1,387 @@
+package main.core.scene.boundingbox;
+
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import java.util.Arrays;
+
+/**
+ * A packed array of axis aligned bounding boxes, with each bound of the boxes in its own float
+ * array, and batch tests of every box against a box, a frustum or a ray.
+ *
+ * The batch tests work through the boxes a block at a time. Each block is first converted to
+ * centers and half extents, and each test is then an arithmetic expression per box that is
+ * accumulated over the planes or axes of the test, as the sum of x - |x| over the values that must
+ * not be negative. That sum is negative if and only if one of the values is, and it needs no
+ * branches, comparisons or min and max, so the loops are simple enough for the JIT to vectorize.
+ * The boxes that pass are then gathered into the result.
+ *
+ * Boxes that touch count as overlapping, as in the broadphase. The scratch memory of the blocks is
+ * owned by the array, so an array must not be tested from several threads at once.
+ *
+ * @author Kelan
+ */
+public class AxisAlignedBBArray
+{
+    private static final int BLOCK_SIZE = 256;
+    private static final float RAY_EPSILON = 1e-6F;
+
+    private float[] minX, minY, minZ;
+    private float[] maxX, maxY, maxZ;
+    private int count;
+
+    private final float[] centerX = new float[BLOCK_SIZE], centerY = new float[BLOCK_SIZE], centerZ = new float[BLOCK_SIZE];
+    private final float[] extentX = new float[BLOCK_SIZE], extentY = new float[BLOCK_SIZE], extentZ = new float[BLOCK_SIZE];
+    private final float[] outside = new float[BLOCK_SIZE];
+    private final float[] crossing = new float[BLOCK_SIZE];
+
+    public AxisAlignedBBArray(int initialCapacity)
+    {
+        int capacity = Math.max(16, initialCapacity);
+        this.minX = new float[capacity];
+        this.minY = new float[capacity];
+        this.minZ = new float[capacity];
+        this.maxX = new float[capacity];
+        this.maxY = new float[capacity];
+        this.maxZ = new float[capacity];
+    }
+
+    public AxisAlignedBBArray()
+    {
+        this(16);
+    }
+
+    /**
+     * Adds a box to the end of the array.
+     *
+     * @return The index of the box.
+     */
+    public int add(float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        if (count == this.minX.length)
+        {
+            int capacity = count * 2;
+            this.minX = Arrays.copyOf(this.minX, capacity);
+            this.minY = Arrays.copyOf(this.minY, capacity);
+            this.minZ = Arrays.copyOf(this.minZ, capacity);
+            this.maxX = Arrays.copyOf(this.maxX, capacity);
+            this.maxY = Arrays.copyOf(this.maxY, capacity);
+            this.maxZ = Arrays.copyOf(this.maxZ, capacity);
+        }
+
+        set(count, minX, minY, minZ, maxX, maxY, maxZ);
+        return count++;
+    }
+
+    public int add(AxisAlignedBB aabb)
+    {
+        int index = add(0.0F, 0.0F, 0.0F, 0.0F, 0.0F, 0.0F);
+        set(index, aabb);
+        return index;
+    }
+
+    public void set(int index, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        this.minX[index] = minX;
+        this.minY[index] = minY;
+        this.minZ[index] = minZ;
+        this.maxX[index] = maxX;
+        this.maxY[index] = maxY;
+        this.maxZ[index] = maxZ;
+    }
+
+    public void set(int index, AxisAlignedBB aabb)
+    {
+        Vector3f position = aabb.getPosition();
+        Vector3f halfExtents = aabb.getHalfExtents();
+        set(index, position.x - halfExtents.x, position.y - halfExtents.y, position.z - halfExtents.z, position.x + halfExtents.x, position.y + halfExtents.y, position.z + halfExtents.z);
+    }
+
+    /**
+     * Removes a box by moving the last box into its place.
+     *
+     * @return The old index of the box that was moved, or -1 if the last box was removed.
+     */
+    public int remove(int index)
+    {
+        if (index < 0 || index >= count)
+            throw new IllegalArgumentException("Box index " + index + " is out of range for " + count + " boxes");
+
+        int last = --count;
+
+        if (index == last)
+            return -1;
+
+        set(index, minX[last], minY[last], minZ[last], maxX[last], maxY[last], maxZ[last]);
+        return last;
+    }
+
+    public void clear()
+    {
+        count = 0;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public float getMinX(int index)
+    {
+        return minX[index];
+    }
+
+    public float getMinY(int index)
+    {
+        return minY[index];
+    }
+
+    public float getMinZ(int index)
+    {
+        return minZ[index];
+    }
+
+    public float getMaxX(int index)
+    {
+        return maxX[index];
+    }
+
+    public float getMaxY(int index)
+    {
+        return maxY[index];
+    }
+
+    public float getMaxZ(int index)
+    {
+        return maxZ[index];
+    }
+
+    /**
+     * Finds the boxes that overlap a box.
+     *
+     * @param results The indices of the boxes that overlap, in increasing order. This must have room
+     *                for every box in the array.
+     * @return The number of boxes that overlap.
+     */
+    public int queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] results)
+    {
+        checkResults(results.length);
+        float[] aMinX = this.minX, aMinY = this.minY, aMinZ = this.minZ;
+        float[] aMaxX = this.maxX, aMaxY = this.maxY, aMaxZ = this.maxZ;
+        float[] outside = this.outside;
+        int resultCount = 0;
+
+        for (int start = 0; start < count; start += BLOCK_SIZE)
+        {
+            int n = Math.min(BLOCK_SIZE, count - start);
+
+            // Two boxes overlap when, on every axis, each maximum is at least the other minimum.
+            for (int i = 0; i < n; i++)
+            {
+                int j = start + i;
+                float s0 = maxX - aMinX[j], s1 = aMaxX[j] - minX;
+                float s2 = maxY - aMinY[j], s3 = aMaxY[j] - minY;
+                float s4 = maxZ - aMinZ[j], s5 = aMaxZ[j] - minZ;
+                outside[i] = (s0 - Math.abs(s0)) + (s1 - Math.abs(s1)) + (s2 - Math.abs(s2)) + (s3 - Math.abs(s3)) + (s4 - Math.abs(s4)) + (s5 - Math.abs(s5));
+            }
+
+            resultCount = gather(start, n, results, resultCount);
+        }
+
+        return resultCount;
+    }
+
+    /**
+     * Finds the boxes that are not fully outside a frustum, which is a set of planes with normals
+     * of unit length facing into it, such as the frustum of a camera. Null planes, and planes that
+     * could not be normalised, are ignored.
+     *
+     * @param results The indices of the boxes that are inside or intersecting the frustum, in
+     *                increasing order. This must have room for every box in the array.
+     * @return The number of boxes that are inside or intersecting the frustum.
+     * @see main.client.rendering.Camera#getFrustum()
+     */
+    public int queryFrustum(Vector4f[] planes, int[] results)
+    {
+        checkResults(results.length);
+        float[] outside = this.outside;
+        int resultCount = 0;
+
+        for (int start = 0; start < count; start += BLOCK_SIZE)
+        {
+            int n = Math.min(BLOCK_SIZE, count - start);
+            loadBlock(start, n, 0.0F);
+            Arrays.fill(outside, 0, n, 0.0F);
+
+            for (Vector4f plane : planes)
+            {
+                if (isDegenerate(plane))
+                    continue;
+
+                // The furthest corner along the normal is the center plus the half extents projected onto it.
+                float nx = plane.x, ny = plane.y, nz = plane.z, w = plane.w;
+                float ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+
+                for (int i = 0; i < n; i++)
+                {
+                    float furthest = nx * centerX[i] + ny * centerY[i] + nz * centerZ[i] + w + ax * extentX[i] + ay * extentY[i] + az * extentZ[i];
+                    outside[i] += furthest - Math.abs(furthest);
+                }
+            }
+
+            resultCount = gather(start, n, results, resultCount);
+        }
+
+        return resultCount;
+    }
+
+    /**
+     * Classifies every box against a frustum, as {@link main.client.rendering.Camera#aabbInFrustum}
+     * does for a single box.
+     *
+     * @param results The intersection of each box with the frustum, by the index of the box. This
+     *                must have room for every box in the array.
+     */
+    public void classifyFrustum(Vector4f[] planes, IntersectionType[] results)
+    {
+        checkResults(results.length);
+        float[] outside = this.outside;
+        float[] crossing = this.crossing;
+
+        for (int start = 0; start < count; start += BLOCK_SIZE)
+        {
+            int n = Math.min(BLOCK_SIZE, count - start);
+            loadBlock(start, n, 0.0F);
+            Arrays.fill(outside, 0, n, 0.0F);
+            Arrays.fill(crossing, 0, n, 0.0F);
+
+            for (Vector4f plane : planes)
+            {
+                if (isDegenerate(plane))
+                    continue;
+
+                float nx = plane.x, ny = plane.y, nz = plane.z, w = plane.w;
+                float ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+
+                for (int i = 0; i < n; i++)
+                {
+                    float distance = nx * centerX[i] + ny * centerY[i] + nz * centerZ[i] + w;
+                    float radius = ax * extentX[i] + ay * extentY[i] + az * extentZ[i];
+                    float furthest = distance + radius;
+                    float nearest = distance - radius;
+                    outside[i] += furthest - Math.abs(furthest);
+                    crossing[i] += nearest - Math.abs(nearest);
+                }
+            }
+
+            for (int i = 0; i < n; i++)
+                results[start + i] = outside[i] < 0.0F ? IntersectionType.OUTSIDE : crossing[i] < 0.0F ? IntersectionType.INTERSECT : IntersectionType.INSIDE;
+        }
+    }
+
+    /**
+     * Finds the boxes that a sphere may touch as it is cast along a ray, from the origin to
+     * origin + direction * maxFraction. A radius of zero casts a ray. The boxes are grown by the
+     * radius rather than rounded, so this finds the candidates of a sphere cast, which must then be
+     * tested exactly.
+     *
+     * @param maxFraction How far along the ray to search, in units of the direction. This must be
+     *                    finite.
+     * @param results     The indices of the boxes the ray passes through, in increasing order. This
+     *                    must have room for every box in the array.
+     * @return The number of boxes the ray passes through.
+     */
+    public int queryRay(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius, float maxFraction, int[] results)
+    {
+        checkResults(results.length);
+
+        if (!(maxFraction >= 0.0F) || Float.isInfinite(maxFraction))
+            throw new IllegalArgumentException("The max fraction of a ray query must be finite and not negative");
+
+        // The segment as its midpoint and half length, tested against each box along the three axes
+        // and the cross products of the segment with each axis. The epsilon keeps the cross product
+        // tests from rejecting boxes when the segment is close to parallel with an axis.
+        float halfX = directionX * maxFraction * 0.5F, halfY = directionY * maxFraction * 0.5F, halfZ = directionZ * maxFraction * 0.5F;
+        float midX = originX + halfX, midY = originY + halfY, midZ = originZ + halfZ;
+        float absX = Math.abs(halfX) + RAY_EPSILON, absY = Math.abs(halfY) + RAY_EPSILON, absZ = Math.abs(halfZ) + RAY_EPSILON;
+        float[] outside = this.outside;
+        int resultCount = 0;
+
+        for (int start = 0; start < count; start += BLOCK_SIZE)
+        {
+            int n = Math.min(BLOCK_SIZE, count - start);
+            loadBlock(start, n, radius);
+
+            for (int i = 0; i < n; i++)
+            {
+                float ex = extentX[i], ey = extentY[i], ez = extentZ[i];
+                float tx = midX - centerX[i], ty = midY - centerY[i], tz = midZ - centerZ[i];
+
+                float s0 = ex + absX - Math.abs(tx);
+                float s1 = ey + absY - Math.abs(ty);
+                float s2 = ez + absZ - Math.abs(tz);
+                float s3 = ey * absZ + ez * absY - Math.abs(ty * halfZ - tz * halfY);
+                float s4 = ex * absZ + ez * absX - Math.abs(tz * halfX - tx * halfZ);
+                float s5 = ex * absY + ey * absX - Math.abs(tx * halfY - ty * halfX);
+                outside[i] = (s0 - Math.abs(s0)) + (s1 - Math.abs(s1)) + (s2 - Math.abs(s2)) + (s3 - Math.abs(s3)) + (s4 - Math.abs(s4)) + (s5 - Math.abs(s5));
+            }
+
+            resultCount = gather(start, n, results, resultCount);
+        }
+
+        return resultCount;
+    }
+
+    /**
+     * Checks whether a plane could not be normalised, such as the far plane of a projection without
+     * one. The camera ignores those, since every comparison with them is false, but they would turn
+     * the sums of every box into NaN, so they are skipped.
+     */
+    private static boolean isDegenerate(Vector4f plane)
+    {
+        return plane == null || Float.isNaN(plane.x) || Float.isNaN(plane.y) || Float.isNaN(plane.z) || Float.isNaN(plane.w);
+    }
+
+    /**
+     * Converts a block of boxes to centers and half extents, growing the half extents by a margin.
+     */
+    private void loadBlock(int start, int n, float margin)
+    {
+        float[] minX = this.minX, minY = this.minY, minZ = this.minZ;
+        float[] maxX = this.maxX, maxY = this.maxY, maxZ = this.maxZ;
+
+        for (int i = 0; i < n; i++)
+        {
+            int j = start + i;
+            centerX[i] = (minX[j] + maxX[j]) * 0.5F;
+            centerY[i] = (minY[j] + maxY[j]) * 0.5F;
+            centerZ[i] = (minZ[j] + maxZ[j]) * 0.5F;
+            extentX[i] = (maxX[j] - minX[j]) * 0.5F + margin;
+            extentY[i] = (maxY[j] - minY[j]) * 0.5F + margin;
+            extentZ[i] = (maxZ[j] - minZ[j]) * 0.5F + margin;
+        }
+    }
+
+    /**
+     * Appends the boxes of a block that were not found to be outside to the results. Every index is
+     * written, and only counted if the box passed, so the loop does not branch.
+     */
+    private int gather(int start, int n, int[] results, int resultCount)
+    {
+        float[] outside = this.outside;
+
+        for (int i = 0; i < n; i++)
+        {
+            results[resultCount] = start + i;
+            resultCount += outside[i] < 0.0F ? 0 : 1;
+        }
+
+        return resultCount;
+    }
+
+    private void checkResults(int length)
+    {
+        if (length < count)
+            throw new IllegalArgumentException("The results must have room for all " + count + " boxes, but only have room for " + length);
+    }
+}
@@ -0,0 +1,231 @@
+package main.core.scene.boundingbox;
+
+import main.client.rendering.Camera;
+import main.core.scene.GameObject;
+import main.core.scene.Transformation;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import java.util.Random;
+
+/**
+ * Compares the batch tests of an {@link AxisAlignedBBArray} against testing the same boxes one at a
+ * time, as a loop over the bounds for box and ray queries, and as {@link AxisAlignedBB} objects
+ * tested by {@link Camera#aabbInFrustum} for the frustum. The results of both are compared, and any
+ * box they disagree on is reported as a mismatch.
+ *
+ * @author Kelan
+ */
+public class AxisAlignedBBArrayBenchmark
+{
+    private static final long BOXES_PER_TIMING = 20000000L; // Enough work for the JIT to compile each test before it is timed.
+
+    private final int count;
+    private final float[] minX, minY, minZ, maxX, maxY, maxZ;
+    private final AxisAlignedBB[] boxes;
+    private final AxisAlignedBBArray array;
+    private final Camera camera = new Camera(0.1F, 1000.0F, 70.0F);
+    private final int[] results;
+    private final IntersectionType[] types;
+    private final float worldSize;
+
+    public AxisAlignedBBArrayBenchmark(int count, long seed)
+    {
+        this.count = count;
+        this.minX = new float[count];
+        this.minY = new float[count];
+        this.minZ = new float[count];
+        this.maxX = new float[count];
+        this.maxY = new float[count];
+        this.maxZ = new float[count];
+        this.boxes = new AxisAlignedBB[count];
+        this.array = new AxisAlignedBBArray(count);
+        this.results = new int[count];
+        this.types = new IntersectionType[count];
+        this.worldSize = (float) Math.cbrt(count) * 4.0F;
+
+        Random random = new Random(seed);
+
+        for (int i = 0; i < count; i++)
+        {
+            float size = 0.5F + random.nextFloat() * 1.5F;
+            minX[i] = (random.nextFloat() - 0.5F) * worldSize;
+            minY[i] = (random.nextFloat() - 0.5F) * worldSize;
+            minZ[i] = (random.nextFloat() - 0.5F) * worldSize;
+            maxX[i] = minX[i] + size;
+            maxY[i] = minY[i] + size;
+            maxZ[i] = minZ[i] + size;
+
+            array.add(minX[i], minY[i], minZ[i], maxX[i], maxY[i], maxZ[i]);
+            boxes[i] = new AxisAlignedBB(new Vector3f(array.getMinX(i), array.getMinY(i), array.getMinZ(i)), new Vector3f(array.getMaxX(i), array.getMaxY(i), array.getMaxZ(i)), true);
+        }
+
+        // A camera in the middle of the boxes, looking along a diagonal.
+        GameObject object = new GameObject(new Transformation(new Vector3f(), new Quaternion(0.2F, 0.3F, 0.1F, 0.9F).normalise(null)));
+        object.addComponent("camera", camera);
+        camera.updateMatrices(16.0F / 9.0F);
+        camera.updateFrustum(camera.getViewProjectionMatrix());
+    }
+
+    private int queryBoxScalar(float qMinX, float qMinY, float qMinZ, float qMaxX, float qMaxY, float qMaxZ, int[] results)
+    {
+        int resultCount = 0;
+
+        for (int i = 0; i < count; i++)
+            if (minX[i] <= qMaxX && maxX[i] >= qMinX && minY[i] <= qMaxY && maxY[i] >= qMinY && minZ[i] <= qMaxZ && maxZ[i] >= qMinZ)
+                results[resultCount++] = i;
+
+        return resultCount;
+    }
+
+    private int classifyFrustumScalar(IntersectionType[] types)
+    {
+        int visible = 0;
+
+        for (int i = 0; i < count; i++)
+            if ((types[i] = camera.aabbInFrustum(boxes[i])) != IntersectionType.OUTSIDE)
+                visible++;
+
+        return visible;
+    }
+
+    /**
+     * A slab test of the ray against each box grown by the radius.
+     */
+    private int queryRayScalar(float ox, float oy, float oz, float dx, float dy, float dz, float radius, float maxFraction, int[] results)
+    {
+        int resultCount = 0;
+
+        for (int i = 0; i < count; i++)
+        {
+            float near = 0.0F, far = maxFraction;
+            float[] origin = {ox, oy, oz}, direction = {dx, dy, dz};
+            float[] min = {minX[i] - radius, minY[i] - radius, minZ[i] - radius}, max = {maxX[i] + radius, maxY[i] + radius, maxZ[i] + radius};
+
+            for (int axis = 0; axis < 3 && near <= far; axis++)
+            {
+                if (direction[axis] == 0.0F)
+                {
+                    if (origin[axis] < min[axis] || origin[axis] > max[axis])
+                        far = -1.0F;
+
+                    continue;
+                }
+
+                float t0 = (min[axis] - origin[axis]) / direction[axis];
+                float t1 = (max[axis] - origin[axis]) / direction[axis];
+                near = Math.max(near, Math.min(t0, t1));
+                far = Math.min(far, Math.max(t0, t1));
+            }
+
+            if (near <= far)
+                results[resultCount++] = i;
+        }
+
+        return resultCount;
+    }
+
+    private static int mismatches(int[] a, int aCount, int[] b, int bCount)
+    {
+        int mismatches = 0, i = 0, j = 0;
+
+        while (i < aCount || j < bCount)
+        {
+            if (j >= bCount || i < aCount && a[i] < b[j])
+            {
+                mismatches++;
+                i++;
+            } else if (i >= aCount || b[j] < a[i])
+            {
+                mismatches++;
+                j++;
+            } else
+            {
+                i++;
+                j++;
+            }
+        }
+
+        return mismatches;
+    }
+
+    public void run()
+    {
+        int[] expected = new int[count];
+        float half = worldSize * 0.1F;
+        float ox = -worldSize * 0.5F, oy = -worldSize * 0.4F, oz = -worldSize * 0.3F;
+        float dx = 0.6F, dy = 0.5F, dz = 0.62F, radius = 0.5F, maxFraction = worldSize * 1.5F;
+
+        int expectedCount = queryBoxScalar(-half, -half, -half, half, half, half, expected);
+        int resultCount = array.queryBox(-half, -half, -half, half, half, half, results);
+        report("Box", mismatches(expected, expectedCount, results, resultCount),
+                time(() -> queryBoxScalar(-half, -half, -half, half, half, half, expected)),
+                time(() -> array.queryBox(-half, -half, -half, half, half, half, results)));
+
+        IntersectionType[] expectedTypes = new IntersectionType[count];
+        Vector4f[] frustum = camera.getFrustum();
+        classifyFrustumScalar(expectedTypes);
+        array.classifyFrustum(frustum, types);
+        int typeMismatches = 0;
+
+        for (int i = 0; i < count; i++)
+            if (types[i] != expectedTypes[i])
+                typeMismatches++;
+
+        report("Frustum", typeMismatches,
+                time(() -> classifyFrustumScalar(expectedTypes)),
+                time(() -> array.classifyFrustum(frustum, types)));
+        expectedCount = 0;
+
+        for (int i = 0; i < count; i++)
+            if (expectedTypes[i] != IntersectionType.OUTSIDE)
+                expected[expectedCount++] = i;
+
+        resultCount = array.queryFrustum(frustum, results);
+        report("Frustum (cull)", mismatches(expected, expectedCount, results, resultCount),
+                time(() -> classifyFrustumScalar(expectedTypes)),
+                time(() -> array.queryFrustum(frustum, results)));
+
+        expectedCount = queryRayScalar(ox, oy, oz, dx, dy, dz, radius, maxFraction, expected);
+        resultCount = array.queryRay(ox, oy, oz, dx, dy, dz, radius, maxFraction, results);
+        report("Ray", mismatches(expected, expectedCount, results, resultCount),
+                time(() -> queryRayScalar(ox, oy, oz, dx, dy, dz, radius, maxFraction, expected)),
+                time(() -> array.queryRay(ox, oy, oz, dx, dy, dz, radius, maxFraction, results)));
+    }
+
+    /**
+     * Times a test over all of the boxes.
+     *
+     * @return The number of boxes tested per microsecond.
+     */
+    private double time(Runnable test)
+    {
+        int runs = (int) Math.max(1L, BOXES_PER_TIMING / count);
+
+        for (int run = 0; run < runs; run++)
+            test.run();
+
+        long start = System.nanoTime();
+
+        for (int run = 0; run < runs; run++)
+            test.run();
+
+        return (double) count * runs / ((System.nanoTime() - start) / 1e3);
+    }
+
+    private void report(String test, int mismatches, double scalar, double batch)
+    {
+        System.out.println(String.format("%-16s %8d %16.1f %16.1f %8.2f %11d", test, count, scalar, batch, batch / scalar, mismatches));
+    }
+
+    public static void main(String[] args)
+    {
+        int[] counts = new int[]{1000, 10000, 100000};
+
+        System.out.println(String.format("%-16s %8s %16s %16s %8s %11s", "Test", "Boxes", "Scalar (per us)", "Batch (per us)", "Speedup", "Mismatches"));
+
+        for (int count : counts)
+            new AxisAlignedBBArrayBenchmark(count, 1234L).run();
+    }
+}
@@ -18,7 +18,20 @@ public class MathUtils
             dest = new Vector3f();
         }
 
-        return Matrix3f.transform(quaternionToMatrix3f(quat, null), vec, dest);
+        float x = vec.x, y = vec.y, z = vec.z;
+        float lengthSquared = quat.x * quat.x + quat.y * quat.y + quat.z * quat.z + quat.w * quat.w;
+        float invLength = lengthSquared > 0.0F ? (float) (1.0 / Math.sqrt(lengthSquared)) : 1.0F;
+
+        // The vector is rotated by the conjugate of the quaternion, the same as multiplying it by
+        // the matrix of quaternionToMatrix3f. v' = v + 2w(q x v) + 2q x (q x v), with q negated.
+        float qx = -quat.x * invLength, qy = -quat.y * invLength, qz = -quat.z * invLength, qw = quat.w * invLength;
+        float tx = 2.0F * (qy * z - qz * y);
+        float ty = 2.0F * (qz * x - qx * z);
+        float tz = 2.0F * (qx * y - qy * x);
+
+        dest.set(x + qw * tx + (qy * tz - qz * ty), y + qw * ty + (qz * tx - qx * tz), z + qw * tz + (qx * ty - qy * tx));
+
+        return dest;
     }
 
     public static Vector4f rotateVector4f(Quaternion quat, Vector4f vec, Vector4f dest)
@@ -28,7 +41,18 @@ public class MathUtils
             dest = new Vector4f();
         }
 
-        return Matrix4f.transform(quaternionToMatrix4f(quat, null), vec, dest);
+        float x = vec.x, y = vec.y, z = vec.z;
+        float lengthSquared = quat.x * quat.x + quat.y * quat.y + quat.z * quat.z + quat.w * quat.w;
+        float invLength = lengthSquared > 0.0F ? (float) (1.0 / Math.sqrt(lengthSquared)) : 1.0F;
+
+        float qx = -quat.x * invLength, qy = -quat.y * invLength, qz = -quat.z * invLength, qw = quat.w * invLength;
+        float tx = 2.0F * (qy * z - qz * y);
+        float ty = 2.0F * (qz * x - qx * z);
+        float tz = 2.0F * (qx * y - qy * x);
+
+        dest.set(x + qw * tx + (qy * tz - qz * ty), y + qw * ty + (qz * tx - qx * tz), z + qw * tz + (qx * ty - qy * tx), vec.w);
+
+        return dest;
     }
 
     public static float getAngleVector3f(Vector3f a, Vector3f b)
@@ -38,26 +62,96 @@ public class MathUtils
 
     public static float interpolate(double v1, double v2, double d)
     {
-        return interpolate(new Vector2f((float) v1, 0.0F), new Vector2f((float) v2, 0.0F), d).x;
+        return (float) (v1 + d * (v2 - v1));
     }
 
     public static Vector2f interpolate(Vector2f v1, Vector2f v2, double d)
     {
-        return new Vector2f(interpolate(new Vector3f(v1.x, v1.y, 0.0F), new Vector3f(v2.x, v2.y, 0.0F), d));
+        return interpolate(v1, v2, d, null);
     }
 
     public static Vector3f interpolate(Vector3f v1, Vector3f v2, double d)
     {
-        return new Vector3f(interpolate(new Vector4f(v1.x, v1.y, v1.z, 0.0F), new Vector4f(v2.x, v2.y, v2.z, 0.0F), d));
+        return interpolate(v1, v2, d, null);
     }
 
     public static Vector4f interpolate(Vector4f v1, Vector4f v2, double d)
     {
-        float x = (float) (v1.x + d * (v2.x - v1.x));
-        float y = (float) (v1.y + d * (v2.y - v1.y));
-        float z = (float) (v1.z + d * (v2.z - v1.z));
-        float w = (float) (v1.w + d * (v2.w - v1.w));
-        return new Vector4f(x, y, z, w);
+        return interpolate(v1, v2, d, null);
+    }
+
+    public static Vector2f interpolate(Vector2f v1, Vector2f v2, double d, Vector2f dest)
+    {
+        if (dest == null)
+        {
+            dest = new Vector2f();
+        }
+
+        dest.x = (float) (v1.x + d * (v2.x - v1.x));
+        dest.y = (float) (v1.y + d * (v2.y - v1.y));
+
+        return dest;
+    }
+
+    public static Vector3f interpolate(Vector3f v1, Vector3f v2, double d, Vector3f dest)
+    {
+        if (dest == null)
+        {
+            dest = new Vector3f();
+        }
+
+        dest.x = (float) (v1.x + d * (v2.x - v1.x));
+        dest.y = (float) (v1.y + d * (v2.y - v1.y));
+        dest.z = (float) (v1.z + d * (v2.z - v1.z));
+
+        return dest;
+    }
+
+    public static Vector4f interpolate(Vector4f v1, Vector4f v2, double d, Vector4f dest)
+    {
+        if (dest == null)
+        {
+            dest = new Vector4f();
+        }
+
+        dest.x = (float) (v1.x + d * (v2.x - v1.x));
+        dest.y = (float) (v1.y + d * (v2.y - v1.y));
+        dest.z = (float) (v1.z + d * (v2.z - v1.z));
+        dest.w = (float) (v1.w + d * (v2.w - v1.w));
+
+        return dest;
+    }
+
+    /**
+     * Normalized linear interpolation between two quaternions along the shortest arc. This is
+     * cheaper than a spherical interpolation, and is accurate for the small angles between
+     * consecutive simulation states.
+     */
+    public static Quaternion nlerp(Quaternion q1, Quaternion q2, float d, Quaternion dest)
+    {
+        if (dest == null)
+        {
+            dest = new Quaternion();
+        }
+
+        float sign = Quaternion.dot(q1, q2) < 0.0F ? -1.0F : 1.0F;
+
+        float x = q1.x + d * (q2.x * sign - q1.x);
+        float y = q1.y + d * (q2.y * sign - q1.y);
+        float z = q1.z + d * (q2.z * sign - q1.z);
+        float w = q1.w + d * (q2.w * sign - q1.w);
+        float lengthSquared = x * x + y * y + z * z + w * w;
+
+        if (lengthSquared > 0.0F)
+        {
+            float invLength = (float) (1.0 / Math.sqrt(lengthSquared));
+            dest.set(x * invLength, y * invLength, z * invLength, w * invLength);
+        } else
+        {
+            dest.set(q2);
+        }
+
+        return dest;
     }
 
     public static Vector2f direction(Vector2f a, Vector2f b)
@@ -77,32 +171,35 @@ public class MathUtils
 
     public static float distanceSquared(Vector2f a, Vector2f b)
     {
-        return direction(a, b).lengthSquared();
+        float x = b.x - a.x, y = b.y - a.y;
+        return x * x + y * y;
     }
 
     public static float distanceSquared(Vector3f a, Vector3f b)
     {
-        return direction(a, b).lengthSquared();
+        float x = b.x - a.x, y = b.y - a.y, z = b.z - a.z;
+        return x * x + y * y + z * z;
     }
 
     public static float distanceSquared(Vector4f a, Vector4f b)
     {
-        return direction(a, b).lengthSquared();
+        float x = b.x - a.x, y = b.y - a.y, z = b.z - a.z, w = b.w - a.w;
+        return x * x + y * y + z * z + w * w;
     }
 
     public static float distance(Vector2f a, Vector2f b)
     {
-        return direction(a, b).length();
+        return (float) Math.sqrt(distanceSquared(a, b));
     }
 
     public static float distance(Vector3f a, Vector3f b)
     {
-        return direction(a, b).length();
+        return (float) Math.sqrt(distanceSquared(a, b));
     }
 
     public static float distance(Vector4f a, Vector4f b)
     {
-        return direction(a, b).length();
+        return (float) Math.sqrt(distanceSquared(a, b));
     }
 
     public static Vector3f reflect(Vector3f vector, Vector3f normal, Vector3f dest)
@@ -163,17 +260,20 @@ public class MathUtils
 
     public static Vector4f setArrayVector4(float[] array, Vector4f vector)
     {
-        return vector.set(getArrayVector4(array));
+        vector.set(array[0], array[1], array[2], array[3]);
+        return vector;
     }
 
     public static Vector3f setArrayVector3(float[] array, Vector3f vector)
     {
-        return vector.set(getArrayVector3(array));
+        vector.set(array[0], array[1], array[2]);
+        return vector;
     }
 
     public static Vector2f setArrayVector2(float[] array, Vector2f vector)
     {
-        return vector.set(getArrayVector2(array));
+        vector.set(array[0], array[1]);
+        return vector;
     }
 
     public static float dotPerp(Vector2f v1, Vector2f v2)
@@ -223,7 +323,26 @@ public class MathUtils
 
     public static Quaternion quaternionDifference(Quaternion a, Quaternion b)
     {
-        return Quaternion.mul(Quaternion.negate(a, null), b, null);
+        return quaternionDifference(a, b, null);
+    }
+
+    /**
+     * Gets the rotation from a to b, which is the conjugate of a times b.
+     */
+    public static Quaternion quaternionDifference(Quaternion a, Quaternion b, Quaternion dest)
+    {
+        if (dest == null)
+        {
+            dest = new Quaternion();
+        }
+
+        float x = a.w * b.x - a.x * b.w - a.y * b.z + a.z * b.y;
+        float y = a.w * b.y - a.y * b.w - a.z * b.x + a.x * b.z;
+        float z = a.w * b.z - a.z * b.w - a.x * b.y + a.y * b.x;
+        float w = a.w * b.w + a.x * b.x + a.y * b.y + a.z * b.z;
+        dest.set(x, y, z, w);
+
+        return dest;
     }
 
     public static Quaternion axisAngleToQuaternion(Vector3f axis, float radians, Quaternion dest)
@@ -235,7 +354,8 @@ public class MathUtils
 
         if (radians != 0.0F && axis.lengthSquared() > 0.0F)
         {
-            dest.setFromAxisAngle(new Vector4f(axis.x, axis.y, axis.z, radians));
+            float s = (float) (Math.sin(0.5 * radians) / Math.sqrt(axis.x * axis.x + axis.y * axis.y + axis.z * axis.z));
+            dest.set(axis.x * s, axis.y * s, axis.z * s, (float) Math.cos(0.5 * radians));
         }
 
         return dest;
@@ -294,7 +414,29 @@ public class MathUtils
 
     public static Matrix3f quaternionToMatrix3f(Quaternion quat, Matrix3f dest)
     {
-        return matrix4fToMatrix3f(quaternionToMatrix4f(quat, null), dest);
+        if (dest == null)
+        {
+            dest = new Matrix3f();
+        }
+
+        if (quat.lengthSquared() > 0.0F)
+        {
+            quat.normalise();
+        }
+
+        float s = 2.0F;
+
+        dest.m00 = 1.0F - s * (quat.y * quat.y + quat.z * quat.z);
+        dest.m10 = s * (quat.x * quat.y + quat.w * quat.z);
+        dest.m20 = s * (quat.x * quat.z - quat.w * quat.y);
+        dest.m01 = s * (quat.x * quat.y - quat.w * quat.z);
+        dest.m11 = 1.0F - s * (quat.x * quat.x + quat.z * quat.z);
+        dest.m21 = s * (quat.y * quat.z + quat.w * quat.x);
+        dest.m02 = s * (quat.x * quat.z + quat.w * quat.y);
+        dest.m12 = s * (quat.y * quat.z - quat.w * quat.x);
+        dest.m22 = 1.0F - s * (quat.x * quat.x + quat.y * quat.y);
+
+        return dest;
     }
 
     public static Matrix3f matrix4fToMatrix3f(Matrix4f matrix, Matrix3f dest)
@@ -415,15 +557,23 @@ public class MathUtils
 
     public static Vector3f closestPointOnTriangle(Vector3f v0, Vector3f v1, Vector3f v2, Vector3f point)
     {
-        Vector3f aEdge = Vector3f.sub(v1, v0, null);
-        Vector3f bEdge = Vector3f.sub(v2, v0, null);
-        Vector3f relativePoint = Vector3f.sub(v0, point, null);
+        return closestPointOnTriangle(v0, v1, v2, point, null);
+    }
+
+    public static Vector3f closestPointOnTriangle(Vector3f v0, Vector3f v1, Vector3f v2, Vector3f point, Vector3f dest)
+    {
+        if (dest == null)
+            dest = new Vector3f();
+
+        float aEdgeX = v1.x - v0.x, aEdgeY = v1.y - v0.y, aEdgeZ = v1.z - v0.z;
+        float bEdgeX = v2.x - v0.x, bEdgeY = v2.y - v0.y, bEdgeZ = v2.z - v0.z;
+        float relativeX = v0.x - point.x, relativeY = v0.y - point.y, relativeZ = v0.z - point.z;
 
-        float aEdgeLengthSq = aEdge.lengthSquared();
-        float bEdgeLengthSq = bEdge.lengthSquared();
-        float aDotb = Vector3f.dot(aEdge, bEdge);
-        float aDotRel = Vector3f.dot(aEdge, relativePoint);
-        float bDotRel = Vector3f.dot(bEdge, relativePoint);
+        float aEdgeLengthSq = aEdgeX * aEdgeX + aEdgeY * aEdgeY + aEdgeZ * aEdgeZ;
+        float bEdgeLengthSq = bEdgeX * bEdgeX + bEdgeY * bEdgeY + bEdgeZ * bEdgeZ;
+        float aDotb = aEdgeX * bEdgeX + aEdgeY * bEdgeY + aEdgeZ * bEdgeZ;
+        float aDotRel = aEdgeX * relativeX + aEdgeY * relativeY + aEdgeZ * relativeZ;
+        float bDotRel = bEdgeX * relativeX + bEdgeY * relativeY + bEdgeZ * relativeZ;
 
         float barycentricScalar = aEdgeLengthSq * bEdgeLengthSq - aDotb * aDotb;
         float u = aDotb * bDotRel - bEdgeLengthSq * aDotRel;
@@ -486,7 +636,7 @@ public class MathUtils
                     v = 1 - u;
                 } else
                 {
-                    u = clamp(-bDotRel / bEdgeLengthSq, 0.0F, 1.0F);
+                    u = clamp(-aDotRel / aEdgeLengthSq, 0.0F, 1.0F);
                     v = 0.0F;
                 }
             } else
@@ -498,7 +648,8 @@ public class MathUtils
             }
         }
 
-        return Vector3f.add(v0, Vector3f.add((Vector3f) aEdge.scale(u), (Vector3f) bEdge.scale(v), null), null);
+        dest.set(v0.x + aEdgeX * u + bEdgeX * v, v0.y + aEdgeY * u + bEdgeY * v, v0.z + aEdgeZ * u + bEdgeZ * v);
+        return dest;
     }
 
     public static float triangleDistanceSquared(Vector3f v0, Vector3f v1, Vector3f v2, Vector3f point)
@@ -835,44 +986,78 @@ public class MathUtils
         return clamp((float) val, (float) min, (float) max);
     }
 
+    /**
+     * Clamps a value between two bounds, which may be given in either order.
+     */
     public static float clamp(float val, float min, float max)
     {
-        return clamp(new Vector2f(val, 0.0F), new Vector2f(min, 0.0F), new Vector2f(max, 0.0F)).x;
+        return Math.max(Math.min(val, Math.max(min, max)), Math.min(min, max));
     }
 
     public static Vector2f clamp(Vector2f val, float min, float max)
     {
-        return clamp(val, new Vector2f(min, min), new Vector2f(max, max));
+        return new Vector2f(clamp(val.x, min, max), clamp(val.y, min, max));
     }
 
     public static Vector3f clamp(Vector3f val, float min, float max)
     {
-        return clamp(val, new Vector3f(min, min, min), new Vector3f(max, max, max));
+        return new Vector3f(clamp(val.x, min, max), clamp(val.y, min, max), clamp(val.z, min, max));
     }
 
     public static Vector4f clamp(Vector4f val, float min, float max)
     {
-        return clamp(val, new Vector4f(min, min, min, min), new Vector4f(max, max, max, max));
+        return new Vector4f(clamp(val.x, min, max), clamp(val.y, min, max), clamp(val.z, min, max), clamp(val.w, min, max));
     }
 
     public static Vector2f clamp(Vector2f val, Vector2f min, Vector2f max)
     {
-        return new Vector2f(clamp(new Vector3f(val.x, val.y, 0.0F), new Vector3f(min.x, min.y, 0.0F), new Vector3f(max.x, max.y, 0.0F)));
+        return clamp(val, min, max, null);
     }
 
     public static Vector3f clamp(Vector3f val, Vector3f min, Vector3f max)
     {
-        return new Vector3f(clamp(new Vector4f(val.x, val.y, val.z, 0.0F), new Vector4f(min.x, min.y, min.z, 0.0F), new Vector4f(max.x, max.y, max.z, 0.0F)));
+        return clamp(val, min, max, null);
     }
 
     public static Vector4f clamp(Vector4f val, Vector4f min, Vector4f max)
     {
-        float x = Math.max(Math.min(val.x, Math.max(min.x, max.x)), Math.min(min.x, max.x));
-        float y = Math.max(Math.min(val.y, Math.max(min.y, max.y)), Math.min(min.y, max.y));
-        float z = Math.max(Math.min(val.z, Math.max(min.z, max.z)), Math.min(min.z, max.z));
-        float w = Math.max(Math.min(val.w, Math.max(min.w, max.w)), Math.min(min.w, max.w));
+        return clamp(val, min, max, null);
+    }
+
+    public static Vector2f clamp(Vector2f val, Vector2f min, Vector2f max, Vector2f dest)
+    {
+        if (dest == null)
+        {
+            dest = new Vector2f();
+        }
 
-        return new Vector4f(x, y, z, w);
+        dest.set(clamp(val.x, min.x, max.x), clamp(val.y, min.y, max.y));
+
+        return dest;
+    }
+
+    public static Vector3f clamp(Vector3f val, Vector3f min, Vector3f max, Vector3f dest)
+    {
+        if (dest == null)
+        {
+            dest = new Vector3f();
+        }
+
+        dest.set(clamp(val.x, min.x, max.x), clamp(val.y, min.y, max.y), clamp(val.z, min.z, max.z));
+
+        return dest;
+    }
+
+    public static Vector4f clamp(Vector4f val, Vector4f min, Vector4f max, Vector4f dest)
+    {
+        if (dest == null)
+        {
+            dest = new Vector4f();
+        }
+
+        dest.set(clamp(val.x, min.x, max.x), clamp(val.y, min.y, max.y), clamp(val.z, min.z, max.z), clamp(val.w, min.w, max.w));
+
+        return dest;
     }
 
     public static float sign(float f)
@@ -893,7 +1078,19 @@ public class MathUtils
 
     public static Vector3f abs(Vector3f vector)
     {
-        return new Vector3f(Math.abs(vector.x), Math.abs(vector.y), Math.abs(vector.z));
+        return abs(vector, null);
+    }
+
+    public static Vector3f abs(Vector3f vector, Vector3f dest)
+    {
+        if (dest == null)
+        {
+            dest = new Vector3f();
+        }
+
+        dest.set(Math.abs(vector.x), Math.abs(vector.y), Math.abs(vector.z));
+
+        return dest;
     }
 
     public static boolean getRoots(float a, float b, float c, FloatBuffer buf)
@@ -947,7 +1144,12 @@ public class MathUtils
 
     public static float getUnsignedLineDistance(Vector3f point, Vector3f linePoint, Vector3f lineDirection)
     {
-        return Vector3f.cross(lineDirection, Vector3f.sub(point, linePoint, null), null).length() / lineDirection.length();
+        float x = point.x - linePoint.x, y = point.y - linePoint.y, z = point.z - linePoint.z;
+        float cx = lineDirection.y * z - lineDirection.z * y;
+        float cy = lineDirection.z * x - lineDirection.x * z;
+        float cz = lineDirection.x * y - lineDirection.y * x;
+
+        return (float) Math.sqrt(cx * cx + cy * cy + cz * cz) / lineDirection.length();
     }
 
     public static float getColourBrightness(Color colour)
@@ -0,0 +1,190 @@
+package main.core.util;
+
+import org.lwjgl.util.vector.Matrix3f;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector2f;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import java.util.Arrays;
+
+/**
+ * Temporary vectors, quaternions and matrices for the code that runs every frame or every tick, so
+ * that math needing intermediate values does not allocate once the pool has warmed up. Every thread
+ * has its own pool.
+ *
+ * Temporaries are taken between a push and a pop, and everything taken after a push is handed out
+ * again after the matching pop, so a temporary must not be kept past it:
+ *
+ * <pre>
+ * ScratchPool pool = ScratchPool.get();
+ * pool.push();
+ * try
+ * {
+ *     Vector3f v = pool.vector3f();
+ *     ...
+ * } finally
+ * {
+ *     pool.pop();
+ * }
+ * </pre>
+ *
+ * Vectors are handed out zeroed, and quaternions and matrices as the identity.
+ *
+ * @author Kelan
+ */
+public class ScratchPool
+{
+    private static final ThreadLocal<ScratchPool> POOL = ThreadLocal.withInitial(ScratchPool::new);
+
+    private Vector2f[] vector2fs = new Vector2f[16];
+    private Vector3f[] vector3fs = new Vector3f[16];
+    private Vector4f[] vector4fs = new Vector4f[16];
+    private Quaternion[] quaternions = new Quaternion[16];
+    private Matrix3f[] matrix3fs = new Matrix3f[8];
+    private Matrix4f[] matrix4fs = new Matrix4f[8];
+    private int vector2fCount, vector3fCount, vector4fCount, quaternionCount, matrix3fCount, matrix4fCount;
+
+    private int[] marks = new int[6 * 8]; // The counts of each type at every push that has not been popped.
+    private int depth;
+
+    private ScratchPool()
+    {
+    }
+
+    /**
+     * Gets the pool of the current thread.
+     */
+    public static ScratchPool get()
+    {
+        return POOL.get();
+    }
+
+    /**
+     * Marks the temporaries that are currently taken, so that everything taken from here on is
+     * given back by the matching {@link #pop()}.
+     */
+    public void push()
+    {
+        if ((depth + 1) * 6 > marks.length)
+            marks = Arrays.copyOf(marks, marks.length * 2);
+
+        int i = depth++ * 6;
+        marks[i] = vector2fCount;
+        marks[i + 1] = vector3fCount;
+        marks[i + 2] = vector4fCount;
+        marks[i + 3] = quaternionCount;
+        marks[i + 4] = matrix3fCount;
+        marks[i + 5] = matrix4fCount;
+    }
+
+    /**
+     * Gives back everything that was taken since the matching {@link #push()}.
+     *
+     * @throws IllegalStateException if there was no matching push.
+     */
+    public void pop()
+    {
+        if (depth == 0)
+            throw new IllegalStateException("Popped a scratch pool without a matching push");
+
+        int i = --depth * 6;
+        vector2fCount = marks[i];
+        vector3fCount = marks[i + 1];
+        vector4fCount = marks[i + 2];
+        quaternionCount = marks[i + 3];
+        matrix3fCount = marks[i + 4];
+        matrix4fCount = marks[i + 5];
+    }
+
+    public Vector2f vector2f()
+    {
+        if (vector2fCount == vector2fs.length)
+            vector2fs = Arrays.copyOf(vector2fs, vector2fCount * 2);
+
+        Vector2f vector = vector2fs[vector2fCount];
+
+        if (vector == null)
+            vector2fs[vector2fCount] = vector = new Vector2f();
+
+        vector2fCount++;
+        vector.set(0.0F, 0.0F);
+        return vector;
+    }
+
+    public Vector3f vector3f()
+    {
+        if (vector3fCount == vector3fs.length)
+            vector3fs = Arrays.copyOf(vector3fs, vector3fCount * 2);
+
+        Vector3f vector = vector3fs[vector3fCount];
+
+        if (vector == null)
+            vector3fs[vector3fCount] = vector = new Vector3f();
+
+        vector3fCount++;
+        vector.set(0.0F, 0.0F, 0.0F);
+        return vector;
+    }
+
+    public Vector4f vector4f()
+    {
+        if (vector4fCount == vector4fs.length)
+            vector4fs = Arrays.copyOf(vector4fs, vector4fCount * 2);
+
+        Vector4f vector = vector4fs[vector4fCount];
+
+        if (vector == null)
+            vector4fs[vector4fCount] = vector = new Vector4f();
+
+        vector4fCount++;
+        vector.set(0.0F, 0.0F, 0.0F, 0.0F);
+        return vector;
+    }
+
+    public Quaternion quaternion()
+    {
+        if (quaternionCount == quaternions.length)
+            quaternions = Arrays.copyOf(quaternions, quaternionCount * 2);
+
+        Quaternion quaternion = quaternions[quaternionCount];
+
+        if (quaternion == null)
+            quaternions[quaternionCount] = quaternion = new Quaternion();
+
+        quaternionCount++;
+        quaternion.setIdentity();
+        return quaternion;
+    }
+
+    public Matrix3f matrix3f()
+    {
+        if (matrix3fCount == matrix3fs.length)
+            matrix3fs = Arrays.copyOf(matrix3fs, matrix3fCount * 2);
+
+        Matrix3f matrix = matrix3fs[matrix3fCount];
+
+        if (matrix == null)
+            matrix3fs[matrix3fCount] = matrix = new Matrix3f();
+
+        matrix3fCount++;
+        matrix.setIdentity();
+        return matrix;
+    }
+
+    public Matrix4f matrix4f()
+    {
+        if (matrix4fCount == matrix4fs.length)
+            matrix4fs = Arrays.copyOf(matrix4fs, matrix4fCount * 2);
+
+        Matrix4f matrix = matrix4fs[matrix4fCount];
+
+        if (matrix == null)
+            matrix4fs[matrix4fCount] = matrix = new Matrix4f();
+
+        matrix4fCount++;
+        matrix.setIdentity();
+        return matrix;
+    }
+}
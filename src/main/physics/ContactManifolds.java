@@ -0,0 +1,702 @@
+package main.physics;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The persistent contact manifolds of a {@link PhysicsWorld}. Every pair of touching bodies has one
+ * manifold of up to four contact points, which is kept from one step to the next so that the
+ * impulses found by the solver can be used to warm start it in the following step.
+ *
+ * Contact points are stored in the local space of both bodies. At the start of every step the
+ * cached points are moved with their bodies, and points that have separated or slid too far apart
+ * are dropped. New points from the narrowphase either replace a nearby cached point, keeping its
+ * impulses, or are added to the manifold, which keeps the deepest point and the largest contact
+ * area once it is full.
+ *
+ * Manifolds are stored as a structure of arrays, and looked up by the stable ids of their two bodies
+ * in an open addressing hash map. Every body also has a linked list of the edges to its manifolds,
+ * so that the per step work only visits the manifolds of awake bodies. Edge {@code m * 2} links
+ * manifold m into the list of body A, and edge {@code m * 2 + 1} into the list of body B.
+ *
+ * @author Kelan
+ */
+class ContactManifolds
+{
+    static final int MAX_POINTS = 4;
+
+    private static final float BREAKING_THRESHOLD = 0.02F;
+    private static final float MERGE_THRESHOLD = 0.02F;
+    private static final long EMPTY = -1L;
+    private static final int MANIFOLD_SIZE = 48;
+    private static final int POINT_SIZE = 52;
+
+    int[] bodyA;
+    int[] bodyB;
+    long[] key;
+    int[] pointCount;
+    float[] friction;
+    float[] restitution;
+    boolean[] touched;
+    int count;
+    private int capacity;
+
+    // Contact points, where point k of manifold m is at index m * MAX_POINTS + k.
+    float[] localAX;
+    float[] localAY;
+    float[] localAZ;
+    float[] localBX;
+    float[] localBY;
+    float[] localBZ;
+    float[] normalX; // Points from body A towards body B.
+    float[] normalY;
+    float[] normalZ;
+    float[] depth;
+    float[] normalImpulse;
+    float[] tangentImpulse1;
+    float[] tangentImpulse2;
+
+    int[] edgeNext;
+    int[] edgePrev;
+    int[] bodyEdges = new int[0]; // The first edge of each body, or -1.
+
+    private int[] removed = new int[16];
+
+    private long[] tableKeys;
+    private int[] tableValues;
+    private int tableMask;
+
+    ContactManifolds()
+    {
+        allocate(64);
+        allocateTable(256);
+    }
+
+    private void allocate(int capacity)
+    {
+        this.capacity = capacity;
+        this.bodyA = bodyA == null ? new int[capacity] : Arrays.copyOf(bodyA, capacity);
+        this.bodyB = bodyB == null ? new int[capacity] : Arrays.copyOf(bodyB, capacity);
+        this.key = key == null ? new long[capacity] : Arrays.copyOf(key, capacity);
+        this.pointCount = pointCount == null ? new int[capacity] : Arrays.copyOf(pointCount, capacity);
+        this.friction = grow(friction, capacity);
+        this.restitution = grow(restitution, capacity);
+        this.touched = touched == null ? new boolean[capacity] : Arrays.copyOf(touched, capacity);
+        this.edgeNext = edgeNext == null ? new int[capacity * 2] : Arrays.copyOf(edgeNext, capacity * 2);
+        this.edgePrev = edgePrev == null ? new int[capacity * 2] : Arrays.copyOf(edgePrev, capacity * 2);
+
+        int points = capacity * MAX_POINTS;
+        this.localAX = grow(localAX, points);
+        this.localAY = grow(localAY, points);
+        this.localAZ = grow(localAZ, points);
+        this.localBX = grow(localBX, points);
+        this.localBY = grow(localBY, points);
+        this.localBZ = grow(localBZ, points);
+        this.normalX = grow(normalX, points);
+        this.normalY = grow(normalY, points);
+        this.normalZ = grow(normalZ, points);
+        this.depth = grow(depth, points);
+        this.normalImpulse = grow(normalImpulse, points);
+        this.tangentImpulse1 = grow(tangentImpulse1, points);
+        this.tangentImpulse2 = grow(tangentImpulse2, points);
+    }
+
+    private static float[] grow(float[] array, int capacity)
+    {
+        return array == null ? new float[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private void allocateTable(int size)
+    {
+        tableKeys = new long[size];
+        tableValues = new int[size];
+        tableMask = size - 1;
+        Arrays.fill(tableKeys, EMPTY);
+
+        for (int m = 0; m < count; m++)
+            insert(key[m], m);
+    }
+
+    /**
+     * Makes room for the edge lists of the given number of bodies.
+     */
+    void ensureBodyCapacity(int bodyCapacity)
+    {
+        if (bodyEdges.length >= bodyCapacity)
+            return;
+
+        int from = bodyEdges.length;
+        bodyEdges = Arrays.copyOf(bodyEdges, bodyCapacity);
+        Arrays.fill(bodyEdges, from, bodyCapacity, -1);
+    }
+
+    private void link(int edge, int body)
+    {
+        edgePrev[edge] = -1;
+        edgeNext[edge] = bodyEdges[body];
+
+        if (bodyEdges[body] >= 0)
+            edgePrev[bodyEdges[body]] = edge;
+
+        bodyEdges[body] = edge;
+    }
+
+    private void unlink(int edge, int body)
+    {
+        if (edgePrev[edge] >= 0)
+            edgeNext[edgePrev[edge]] = edgeNext[edge];
+        else
+            bodyEdges[body] = edgeNext[edge];
+
+        if (edgeNext[edge] >= 0)
+            edgePrev[edgeNext[edge]] = edgePrev[edge];
+    }
+
+    /**
+     * Moves an edge to a new index, keeping its place in the list of its body.
+     */
+    private void relink(int from, int to, int body)
+    {
+        edgeNext[to] = edgeNext[from];
+        edgePrev[to] = edgePrev[from];
+
+        if (edgePrev[to] >= 0)
+            edgeNext[edgePrev[to]] = to;
+        else
+            bodyEdges[body] = to;
+
+        if (edgeNext[to] >= 0)
+            edgePrev[edgeNext[to]] = to;
+    }
+
+    static long getKey(int idA, int idB)
+    {
+        return ((long) idA << 32) | (idB & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key)
+    {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private void insert(long key, int manifold)
+    {
+        int slot = hash(key) & tableMask;
+
+        while (tableKeys[slot] != EMPTY)
+            slot = (slot + 1) & tableMask;
+
+        tableKeys[slot] = key;
+        tableValues[slot] = manifold;
+    }
+
+    private int findSlot(long key)
+    {
+        int slot = hash(key) & tableMask;
+
+        while (tableKeys[slot] != EMPTY)
+        {
+            if (tableKeys[slot] == key)
+                return slot;
+
+            slot = (slot + 1) & tableMask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gets the manifold between two bodies, or -1 if they have none.
+     */
+    int find(long key)
+    {
+        int slot = findSlot(key);
+        return slot < 0 ? -1 : tableValues[slot];
+    }
+
+    /**
+     * Gets the manifold between two bodies, creating an empty one if they have none.
+     */
+    int findOrCreate(long key, int a, int b)
+    {
+        int manifold = find(key);
+
+        if (manifold >= 0)
+            return manifold;
+
+        if (count == capacity)
+            allocate(capacity * 2);
+
+        // Keep the table at most half full.
+        if ((count + 1) * 2 > tableKeys.length)
+            allocateTable(tableKeys.length * 2);
+
+        manifold = count++;
+        bodyA[manifold] = a;
+        bodyB[manifold] = b;
+        this.key[manifold] = key;
+        pointCount[manifold] = 0;
+        touched[manifold] = false;
+        insert(key, manifold);
+        link(manifold * 2, a);
+        link(manifold * 2 + 1, b);
+        return manifold;
+    }
+
+    /**
+     * Removes a manifold. The last manifold is moved into the freed slot.
+     */
+    void remove(int manifold)
+    {
+        removeFromTable(key[manifold]);
+        unlink(manifold * 2, bodyA[manifold]);
+        unlink(manifold * 2 + 1, bodyB[manifold]);
+        int last = --count;
+
+        if (manifold == last)
+            return;
+
+        relink(last * 2, manifold * 2, bodyA[last]);
+        relink(last * 2 + 1, manifold * 2 + 1, bodyB[last]);
+
+        bodyA[manifold] = bodyA[last];
+        bodyB[manifold] = bodyB[last];
+        key[manifold] = key[last];
+        pointCount[manifold] = pointCount[last];
+        friction[manifold] = friction[last];
+        restitution[manifold] = restitution[last];
+        touched[manifold] = touched[last];
+
+        for (int k = 0; k < pointCount[last]; k++)
+            copyPoint(last * MAX_POINTS + k, manifold * MAX_POINTS + k);
+
+        tableValues[findSlot(key[manifold])] = manifold;
+    }
+
+    private void removeFromTable(long key)
+    {
+        int slot = findSlot(key);
+
+        if (slot < 0)
+            return;
+
+        // Shift the following entries of the cluster back, so no tombstones are needed.
+        int next = slot;
+
+        while (true)
+        {
+            next = (next + 1) & tableMask;
+
+            if (tableKeys[next] == EMPTY)
+                break;
+
+            int home = hash(tableKeys[next]) & tableMask;
+
+            // Move the entry if its home slot is not cyclically within (slot, next].
+            if (slot <= next ? (home <= slot || home > next) : (home <= slot && home > next))
+            {
+                tableKeys[slot] = tableKeys[next];
+                tableValues[slot] = tableValues[next];
+                slot = next;
+            }
+        }
+
+        tableKeys[slot] = EMPTY;
+    }
+
+    /**
+     * Gets an upper bound on the number of bytes that {@link #write(PhysicsSnapshot, int)} writes.
+     */
+    int getSnapshotSize(int bodyCount)
+    {
+        return 4 + count * (MANIFOLD_SIZE + MAX_POINTS * POINT_SIZE) + bodyCount * 4;
+    }
+
+    /**
+     * Writes every manifold, including the cached points and impulses, and the edge lists of the
+     * bodies into a snapshot.
+     */
+    void write(PhysicsSnapshot snapshot, int bodyCount)
+    {
+        ByteBuffer buffer = snapshot.ensureRemaining(getSnapshotSize(bodyCount));
+        buffer.putInt(count);
+
+        for (int m = 0; m < count; m++)
+        {
+            buffer.putInt(bodyA[m]).putInt(bodyB[m]).putLong(key[m]).putInt(pointCount[m]);
+            buffer.putFloat(friction[m]).putFloat(restitution[m]).putInt(touched[m] ? 1 : 0);
+            buffer.putInt(edgeNext[m * 2]).putInt(edgeNext[m * 2 + 1]).putInt(edgePrev[m * 2]).putInt(edgePrev[m * 2 + 1]);
+
+            for (int p = m * MAX_POINTS; p < m * MAX_POINTS + pointCount[m]; p++)
+            {
+                buffer.putFloat(localAX[p]).putFloat(localAY[p]).putFloat(localAZ[p]);
+                buffer.putFloat(localBX[p]).putFloat(localBY[p]).putFloat(localBZ[p]);
+                buffer.putFloat(normalX[p]).putFloat(normalY[p]).putFloat(normalZ[p]);
+                buffer.putFloat(depth[p]).putFloat(normalImpulse[p]).putFloat(tangentImpulse1[p]).putFloat(tangentImpulse2[p]);
+            }
+        }
+
+        for (int i = 0; i < bodyCount; i++)
+            buffer.putInt(bodyEdges[i]);
+    }
+
+    /**
+     * Replaces every manifold with the ones written into a snapshot by {@link #write(PhysicsSnapshot,
+     * int)}. The lookup table is rebuilt from the keys, which does not change which manifold a pair
+     * of bodies maps to.
+     */
+    void read(ByteBuffer buffer, int bodyCount)
+    {
+        int manifoldCount = buffer.getInt();
+
+        if (manifoldCount > capacity)
+            allocate(Integer.highestOneBit(manifoldCount) * 2);
+
+        for (int m = 0; m < manifoldCount; m++)
+        {
+            bodyA[m] = buffer.getInt();
+            bodyB[m] = buffer.getInt();
+            key[m] = buffer.getLong();
+            pointCount[m] = buffer.getInt();
+            friction[m] = buffer.getFloat();
+            restitution[m] = buffer.getFloat();
+            touched[m] = buffer.getInt() != 0;
+            edgeNext[m * 2] = buffer.getInt();
+            edgeNext[m * 2 + 1] = buffer.getInt();
+            edgePrev[m * 2] = buffer.getInt();
+            edgePrev[m * 2 + 1] = buffer.getInt();
+
+            for (int p = m * MAX_POINTS; p < m * MAX_POINTS + pointCount[m]; p++)
+            {
+                localAX[p] = buffer.getFloat();
+                localAY[p] = buffer.getFloat();
+                localAZ[p] = buffer.getFloat();
+                localBX[p] = buffer.getFloat();
+                localBY[p] = buffer.getFloat();
+                localBZ[p] = buffer.getFloat();
+                normalX[p] = buffer.getFloat();
+                normalY[p] = buffer.getFloat();
+                normalZ[p] = buffer.getFloat();
+                depth[p] = buffer.getFloat();
+                normalImpulse[p] = buffer.getFloat();
+                tangentImpulse1[p] = buffer.getFloat();
+                tangentImpulse2[p] = buffer.getFloat();
+            }
+        }
+
+        for (int i = 0; i < bodyCount; i++)
+            bodyEdges[i] = buffer.getInt();
+
+        count = 0;
+        int tableSize = tableKeys.length;
+
+        while (manifoldCount * 2 > tableSize)
+            tableSize *= 2;
+
+        // The table is only reallocated if it has to grow, so restoring a snapshot does not allocate.
+        if (tableSize != tableKeys.length)
+            allocateTable(tableSize);
+        else
+            Arrays.fill(tableKeys, EMPTY);
+
+        count = manifoldCount;
+
+        for (int m = 0; m < count; m++)
+            insert(key[m], m);
+    }
+
+    /**
+     * Removes every manifold of a body.
+     */
+    void removeBody(int body)
+    {
+        while (bodyEdges[body] >= 0)
+            remove(bodyEdges[body] >> 1);
+    }
+
+    /**
+     * Updates the manifolds of a body that has been moved to a different index of the world.
+     */
+    void moveBody(int from, int to)
+    {
+        for (int edge = bodyEdges[from]; edge >= 0; edge = edgeNext[edge])
+        {
+            if ((edge & 1) == 0)
+                bodyA[edge >> 1] = to;
+            else
+                bodyB[edge >> 1] = to;
+        }
+
+        bodyEdges[to] = bodyEdges[from];
+        bodyEdges[from] = -1;
+    }
+
+    /**
+     * Checks if the given edge is the one that the manifold is visited through when walking the
+     * edges of the awake bodies. Manifolds are visited through body A if it is awake, and through
+     * body B otherwise, so that every manifold is visited once.
+     */
+    boolean isVisitedThrough(PhysicsWorld world, int edge)
+    {
+        return (edge & 1) == 0 || !world.isAwake(bodyA[edge >> 1]);
+    }
+
+    /**
+     * Moves the cached points of every manifold with an awake body along with the bodies, and drops
+     * the points that are no longer valid.
+     */
+    void refresh(PhysicsWorld world)
+    {
+        for (int i = 0; i < world.awakeCount; i++)
+        {
+            for (int edge = bodyEdges[world.awakeBodies[i]]; edge >= 0; edge = edgeNext[edge])
+            {
+                if (isVisitedThrough(world, edge))
+                    refresh(world, edge >> 1);
+            }
+        }
+    }
+
+    private void refresh(PhysicsWorld world, int m)
+    {
+        touched[m] = false;
+        int a = bodyA[m];
+        int b = bodyB[m];
+
+        for (int k = pointCount[m] - 1; k >= 0; k--)
+        {
+            int p = m * MAX_POINTS + k;
+
+            float ax = world.positionX[a] + PhysicsWorld.rotateX(world.rotationX[a], world.rotationY[a], world.rotationZ[a], world.rotationW[a], localAX[p], localAY[p], localAZ[p]);
+            float ay = world.positionY[a] + PhysicsWorld.rotateY(world.rotationX[a], world.rotationY[a], world.rotationZ[a], world.rotationW[a], localAX[p], localAY[p], localAZ[p]);
+            float az = world.positionZ[a] + PhysicsWorld.rotateZ(world.rotationX[a], world.rotationY[a], world.rotationZ[a], world.rotationW[a], localAX[p], localAY[p], localAZ[p]);
+            float bx = world.positionX[b] + PhysicsWorld.rotateX(world.rotationX[b], world.rotationY[b], world.rotationZ[b], world.rotationW[b], localBX[p], localBY[p], localBZ[p]);
+            float by = world.positionY[b] + PhysicsWorld.rotateY(world.rotationX[b], world.rotationY[b], world.rotationZ[b], world.rotationW[b], localBX[p], localBY[p], localBZ[p]);
+            float bz = world.positionZ[b] + PhysicsWorld.rotateZ(world.rotationX[b], world.rotationY[b], world.rotationZ[b], world.rotationW[b], localBX[p], localBY[p], localBZ[p]);
+
+            float d = (ax - bx) * normalX[p] + (ay - by) * normalY[p] + (az - bz) * normalZ[p];
+
+            // The point on A projected onto the surface of B, which drifts away from the point on B
+            // when the bodies slide along each other.
+            float driftX = ax - normalX[p] * d - bx;
+            float driftY = ay - normalY[p] * d - by;
+            float driftZ = az - normalZ[p] * d - bz;
+
+            if (d < -BREAKING_THRESHOLD || driftX * driftX + driftY * driftY + driftZ * driftZ > BREAKING_THRESHOLD * BREAKING_THRESHOLD)
+                removePoint(m, k);
+            else
+                depth[p] = d;
+        }
+    }
+
+    /**
+     * Adds a contact point found by the narrowphase to a manifold. The points are given in world
+     * space, and stored in the local space of each body.
+     */
+    void addPoint(PhysicsWorld world, int manifold, float pointAX, float pointAY, float pointAZ, float pointBX, float pointBY, float pointBZ, float nx, float ny, float nz, float d)
+    {
+        int a = bodyA[manifold];
+        int b = bodyB[manifold];
+        touched[manifold] = true;
+
+        float qx = world.rotationX[a], qy = world.rotationY[a], qz = world.rotationZ[a], qw = world.rotationW[a];
+        float rx = pointAX - world.positionX[a], ry = pointAY - world.positionY[a], rz = pointAZ - world.positionZ[a];
+        float lax = PhysicsWorld.rotateX(-qx, -qy, -qz, qw, rx, ry, rz);
+        float lay = PhysicsWorld.rotateY(-qx, -qy, -qz, qw, rx, ry, rz);
+        float laz = PhysicsWorld.rotateZ(-qx, -qy, -qz, qw, rx, ry, rz);
+
+        qx = world.rotationX[b];
+        qy = world.rotationY[b];
+        qz = world.rotationZ[b];
+        qw = world.rotationW[b];
+        rx = pointBX - world.positionX[b];
+        ry = pointBY - world.positionY[b];
+        rz = pointBZ - world.positionZ[b];
+        float lbx = PhysicsWorld.rotateX(-qx, -qy, -qz, qw, rx, ry, rz);
+        float lby = PhysicsWorld.rotateY(-qx, -qy, -qz, qw, rx, ry, rz);
+        float lbz = PhysicsWorld.rotateZ(-qx, -qy, -qz, qw, rx, ry, rz);
+
+        int base = manifold * MAX_POINTS;
+        int count = pointCount[manifold];
+        int index = -1;
+
+        // Replace the closest cached point if the new point is close enough to be the same contact.
+        float closest = MERGE_THRESHOLD * MERGE_THRESHOLD;
+
+        for (int k = 0; k < count; k++)
+        {
+            int p = base + k;
+            float dx = localAX[p] - lax, dy = localAY[p] - lay, dz = localAZ[p] - laz;
+            float distanceSquared = dx * dx + dy * dy + dz * dz;
+
+            if (distanceSquared < closest)
+            {
+                closest = distanceSquared;
+                index = k;
+            }
+        }
+
+        if (index < 0)
+        {
+            if (count < MAX_POINTS)
+            {
+                index = pointCount[manifold]++;
+            } else
+            {
+                index = getReplacedPoint(manifold, lax, lay, laz, d);
+            }
+
+            if (index < 0)
+                return;
+
+            int p = base + index;
+            normalImpulse[p] = 0.0F;
+            tangentImpulse1[p] = 0.0F;
+            tangentImpulse2[p] = 0.0F;
+        }
+
+        // The points of a manifold share the latest normal, so the solver does not push the bodies
+        // apart in slightly different directions from each point.
+        for (int k = 0; k < pointCount[manifold]; k++)
+        {
+            normalX[base + k] = nx;
+            normalY[base + k] = ny;
+            normalZ[base + k] = nz;
+        }
+
+        int p = base + index;
+        localAX[p] = lax;
+        localAY[p] = lay;
+        localAZ[p] = laz;
+        localBX[p] = lbx;
+        localBY[p] = lby;
+        localBZ[p] = lbz;
+        normalX[p] = nx;
+        normalY[p] = ny;
+        normalZ[p] = nz;
+        depth[p] = d;
+    }
+
+    /**
+     * Chooses the point of a full manifold to replace with a new point. The deepest point is always
+     * kept, and out of the others the one whose replacement gives the largest contact area is
+     * chosen. A new point that is not the deepest and would only shrink the contact area is
+     * dropped, so a manifold that already spans the corners of a face keeps them.
+     *
+     * @return The index of the point to replace, or -1 if the new point should be dropped.
+     */
+    private int getReplacedPoint(int manifold, float x, float y, float z, float d)
+    {
+        int base = manifold * MAX_POINTS;
+        int deepest = -1;
+        float maxDepth = d;
+
+        for (int k = 0; k < MAX_POINTS; k++)
+        {
+            if (depth[base + k] > maxDepth)
+            {
+                maxDepth = depth[base + k];
+                deepest = k;
+            }
+        }
+
+        int best = -1;
+        float bestArea = deepest < 0 ? -1.0F : quadArea(localAX[base], localAY[base], localAZ[base], localAX[base + 1], localAY[base + 1], localAZ[base + 1], localAX[base + 2], localAY[base + 2], localAZ[base + 2], localAX[base + 3], localAY[base + 3], localAZ[base + 3]);
+
+        for (int k = 0; k < MAX_POINTS; k++)
+        {
+            if (k == deepest)
+                continue;
+
+            // The area of the quad with point k replaced, from the cross product of its diagonals.
+            int i0 = base + (k == 0 ? 1 : 0);
+            int i1 = base + (k <= 1 ? 2 : 1);
+            int i2 = base + (k <= 2 ? 3 : 2);
+            float area = quadArea(x, y, z, localAX[i0], localAY[i0], localAZ[i0], localAX[i1], localAY[i1], localAZ[i1], localAX[i2], localAY[i2], localAZ[i2]);
+
+            if (area > bestArea)
+            {
+                bestArea = area;
+                best = k;
+            }
+        }
+
+        return best;
+    }
+
+    private static float quadArea(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3)
+    {
+        // The largest of the three ways to pair up the points into diagonals.
+        float area = diagonalArea(x0, y0, z0, x1, y1, z1, x2, y2, z2, x3, y3, z3);
+        area = Math.max(area, diagonalArea(x0, y0, z0, x2, y2, z2, x1, y1, z1, x3, y3, z3));
+        return Math.max(area, diagonalArea(x0, y0, z0, x3, y3, z3, x1, y1, z1, x2, y2, z2));
+    }
+
+    private static float diagonalArea(float ax, float ay, float az, float bx, float by, float bz, float cx, float cy, float cz, float dx, float dy, float dz)
+    {
+        float ux = ax - bx, uy = ay - by, uz = az - bz;
+        float vx = cx - dx, vy = cy - dy, vz = cz - dz;
+        float nx = uy * vz - uz * vy;
+        float ny = uz * vx - ux * vz;
+        float nz = ux * vy - uy * vx;
+        return nx * nx + ny * ny + nz * nz;
+    }
+
+    private void removePoint(int manifold, int point)
+    {
+        int last = --pointCount[manifold];
+
+        if (point != last)
+            copyPoint(manifold * MAX_POINTS + last, manifold * MAX_POINTS + point);
+    }
+
+    private void copyPoint(int from, int to)
+    {
+        localAX[to] = localAX[from];
+        localAY[to] = localAY[from];
+        localAZ[to] = localAZ[from];
+        localBX[to] = localBX[from];
+        localBY[to] = localBY[from];
+        localBZ[to] = localBZ[from];
+        normalX[to] = normalX[from];
+        normalY[to] = normalY[from];
+        normalZ[to] = normalZ[from];
+        depth[to] = depth[from];
+        normalImpulse[to] = normalImpulse[from];
+        tangentImpulse1[to] = tangentImpulse1[from];
+        tangentImpulse2[to] = tangentImpulse2[from];
+    }
+
+    /**
+     * Removes the manifolds of awake bodies that have no points left and were not touched by the
+     * narrowphase in this step. Manifolds between sleeping bodies are never visited, so they are
+     * kept to warm start the solver when the bodies wake up.
+     */
+    void removeStale(PhysicsWorld world)
+    {
+        int removedCount = 0;
+
+        for (int i = 0; i < world.awakeCount; i++)
+        {
+            for (int edge = bodyEdges[world.awakeBodies[i]]; edge >= 0; edge = edgeNext[edge])
+            {
+                int m = edge >> 1;
+
+                if (!isVisitedThrough(world, edge) || touched[m] || pointCount[m] > 0)
+                    continue;
+
+                if (removedCount == removed.length)
+                    removed = Arrays.copyOf(removed, removedCount * 2);
+
+                removed[removedCount++] = m;
+            }
+        }
+
+        // Remove from the highest index down, so no manifold still to be removed is moved.
+        Arrays.sort(removed, 0, removedCount);
+
+        for (int i = removedCount - 1; i >= 0; i--)
+            remove(removed[i]);
+    }
+}
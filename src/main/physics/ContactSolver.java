@@ -0,0 +1,328 @@
+package main.physics;
+
+import java.util.Arrays;
+
+/**
+ * A sequential impulse contact solver. Each island is solved on its own: the contact constraints are
+ * prepared from the manifolds, warm started with the impulses cached from the previous step, and
+ * then the impulses are iterated a fixed number of times, solving friction before the non
+ * penetration constraint of each point.
+ *
+ * Penetration is resolved with a Baumgarte bias on the normal velocity, and restitution with a
+ * velocity bias that is only applied above a small approach speed, so resting contacts do not
+ * bounce. Friction uses two tangent directions, each clamped by the normal impulse.
+ *
+ * @author Kelan
+ */
+class ContactSolver
+{
+    private static final float BAUMGARTE = 0.2F;
+    private static final float LINEAR_SLOP = 0.005F;
+    private static final float MAX_CORRECTION_VELOCITY = 4.0F;
+    private static final float RESTITUTION_THRESHOLD = 1.0F;
+
+    // Per point solver data, indexed like the points of the manifolds.
+    private float[] rAX, rAY, rAZ;
+    private float[] rBX, rBY, rBZ;
+    private float[] tangent1X, tangent1Y, tangent1Z;
+    private float[] tangent2X, tangent2Y, tangent2Z;
+    private float[] normalMass;
+    private float[] tangentMass1;
+    private float[] tangentMass2;
+    private float[] bias;
+    private int capacity;
+
+    // World space inverse inertia tensors of the bodies, as the six unique entries of each.
+    private float[] inertiaXX, inertiaXY, inertiaXZ, inertiaYY, inertiaYZ, inertiaZZ;
+
+    ContactSolver()
+    {
+        allocate(256);
+        allocateBodies(64);
+    }
+
+    private void allocate(int capacity)
+    {
+        this.capacity = capacity;
+        rAX = grow(rAX, capacity);
+        rAY = grow(rAY, capacity);
+        rAZ = grow(rAZ, capacity);
+        rBX = grow(rBX, capacity);
+        rBY = grow(rBY, capacity);
+        rBZ = grow(rBZ, capacity);
+        tangent1X = grow(tangent1X, capacity);
+        tangent1Y = grow(tangent1Y, capacity);
+        tangent1Z = grow(tangent1Z, capacity);
+        tangent2X = grow(tangent2X, capacity);
+        tangent2Y = grow(tangent2Y, capacity);
+        tangent2Z = grow(tangent2Z, capacity);
+        normalMass = grow(normalMass, capacity);
+        tangentMass1 = grow(tangentMass1, capacity);
+        tangentMass2 = grow(tangentMass2, capacity);
+        bias = grow(bias, capacity);
+    }
+
+    private void allocateBodies(int capacity)
+    {
+        inertiaXX = grow(inertiaXX, capacity);
+        inertiaXY = grow(inertiaXY, capacity);
+        inertiaXZ = grow(inertiaXZ, capacity);
+        inertiaYY = grow(inertiaYY, capacity);
+        inertiaYZ = grow(inertiaYZ, capacity);
+        inertiaZZ = grow(inertiaZZ, capacity);
+    }
+
+    private static float[] grow(float[] array, int capacity)
+    {
+        return array == null ? new float[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    /**
+     * Makes room for the solver data of every manifold and body, which must be done before islands
+     * are solved.
+     */
+    void prepare(PhysicsWorld world, ContactManifolds contacts)
+    {
+        if (contacts.count * ContactManifolds.MAX_POINTS > capacity)
+            allocate(Math.max(capacity * 2, contacts.count * ContactManifolds.MAX_POINTS));
+
+        if (world.getBodyCount() > inertiaXX.length)
+            allocateBodies(Math.max(inertiaXX.length * 2, world.getBodyCount()));
+    }
+
+    /**
+     * Solves the contacts of one island, updating the velocities of its bodies.
+     */
+    void solveIsland(PhysicsWorld world, ContactManifolds contacts, Islands islands, int island, float dt, int iterations)
+    {
+        int bodyStart = islands.bodyStart[island];
+        int bodyEnd = islands.bodyStart[island + 1];
+        int manifoldStart = islands.manifoldStart[island];
+        int manifoldEnd = islands.manifoldStart[island + 1];
+
+        if (manifoldStart == manifoldEnd)
+            return;
+
+        for (int i = bodyStart; i < bodyEnd; i++)
+            computeWorldInertia(world, islands.bodies[i]);
+
+        for (int i = manifoldStart; i < manifoldEnd; i++)
+            prepareManifold(world, contacts, islands.manifolds[i], dt);
+
+        for (int i = manifoldStart; i < manifoldEnd; i++)
+            warmStart(world, contacts, islands.manifolds[i]);
+
+        for (int iteration = 0; iteration < iterations; iteration++)
+        {
+            for (int i = manifoldStart; i < manifoldEnd; i++)
+                solveManifold(world, contacts, islands.manifolds[i]);
+        }
+    }
+
+    /**
+     * Computes R * I^-1 * R^T from the diagonal local inverse inertia of a body.
+     */
+    private void computeWorldInertia(PhysicsWorld world, int i)
+    {
+        float qx = world.rotationX[i], qy = world.rotationY[i], qz = world.rotationZ[i], qw = world.rotationW[i];
+        float xx = qx * qx, yy = qy * qy, zz = qz * qz;
+        float xy = qx * qy, xz = qx * qz, yz = qy * qz;
+        float wx = qw * qx, wy = qw * qy, wz = qw * qz;
+        float m00 = 1.0F - 2.0F * (yy + zz), m01 = 2.0F * (xy - wz), m02 = 2.0F * (xz + wy);
+        float m10 = 2.0F * (xy + wz), m11 = 1.0F - 2.0F * (xx + zz), m12 = 2.0F * (yz - wx);
+        float m20 = 2.0F * (xz - wy), m21 = 2.0F * (yz + wx), m22 = 1.0F - 2.0F * (xx + yy);
+        float ix = world.inverseInertiaX[i], iy = world.inverseInertiaY[i], iz = world.inverseInertiaZ[i];
+
+        inertiaXX[i] = m00 * m00 * ix + m01 * m01 * iy + m02 * m02 * iz;
+        inertiaXY[i] = m00 * m10 * ix + m01 * m11 * iy + m02 * m12 * iz;
+        inertiaXZ[i] = m00 * m20 * ix + m01 * m21 * iy + m02 * m22 * iz;
+        inertiaYY[i] = m10 * m10 * ix + m11 * m11 * iy + m12 * m12 * iz;
+        inertiaYZ[i] = m10 * m20 * ix + m11 * m21 * iy + m12 * m22 * iz;
+        inertiaZZ[i] = m20 * m20 * ix + m21 * m21 * iy + m22 * m22 * iz;
+    }
+
+    /**
+     * Gets the effective mass of a body pair along a direction, for impulses applied at the given
+     * offsets from the centers of the bodies.
+     */
+    private float getInverseEffectiveMass(PhysicsWorld world, int a, int b, float rax, float ray, float raz, float rbx, float rby, float rbz, float dx, float dy, float dz)
+    {
+        float inverseMass = world.inverseMass[a] + world.inverseMass[b];
+
+        if (world.inverseMass[a] > 0.0F)
+        {
+            // (I^-1 (r x d)) . (r x d)
+            float cx = ray * dz - raz * dy, cy = raz * dx - rax * dz, cz = rax * dy - ray * dx;
+            inverseMass += cx * (inertiaXX[a] * cx + inertiaXY[a] * cy + inertiaXZ[a] * cz) + cy * (inertiaXY[a] * cx + inertiaYY[a] * cy + inertiaYZ[a] * cz) + cz * (inertiaXZ[a] * cx + inertiaYZ[a] * cy + inertiaZZ[a] * cz);
+        }
+
+        if (world.inverseMass[b] > 0.0F)
+        {
+            float cx = rby * dz - rbz * dy, cy = rbz * dx - rbx * dz, cz = rbx * dy - rby * dx;
+            inverseMass += cx * (inertiaXX[b] * cx + inertiaXY[b] * cy + inertiaXZ[b] * cz) + cy * (inertiaXY[b] * cx + inertiaYY[b] * cy + inertiaYZ[b] * cz) + cz * (inertiaXZ[b] * cx + inertiaYZ[b] * cy + inertiaZZ[b] * cz);
+        }
+
+        return inverseMass > 0.0F ? 1.0F / inverseMass : 0.0F;
+    }
+
+    private void prepareManifold(PhysicsWorld world, ContactManifolds contacts, int m, float dt)
+    {
+        int a = contacts.bodyA[m];
+        int b = contacts.bodyB[m];
+        float restitution = contacts.restitution[m];
+
+        for (int k = 0; k < contacts.pointCount[m]; k++)
+        {
+            int p = m * ContactManifolds.MAX_POINTS + k;
+            float nx = contacts.normalX[p], ny = contacts.normalY[p], nz = contacts.normalZ[p];
+
+            rAX[p] = PhysicsWorld.rotateX(world.rotationX[a], world.rotationY[a], world.rotationZ[a], world.rotationW[a], contacts.localAX[p], contacts.localAY[p], contacts.localAZ[p]);
+            rAY[p] = PhysicsWorld.rotateY(world.rotationX[a], world.rotationY[a], world.rotationZ[a], world.rotationW[a], contacts.localAX[p], contacts.localAY[p], contacts.localAZ[p]);
+            rAZ[p] = PhysicsWorld.rotateZ(world.rotationX[a], world.rotationY[a], world.rotationZ[a], world.rotationW[a], contacts.localAX[p], contacts.localAY[p], contacts.localAZ[p]);
+            rBX[p] = PhysicsWorld.rotateX(world.rotationX[b], world.rotationY[b], world.rotationZ[b], world.rotationW[b], contacts.localBX[p], contacts.localBY[p], contacts.localBZ[p]);
+            rBY[p] = PhysicsWorld.rotateY(world.rotationX[b], world.rotationY[b], world.rotationZ[b], world.rotationW[b], contacts.localBX[p], contacts.localBY[p], contacts.localBZ[p]);
+            rBZ[p] = PhysicsWorld.rotateZ(world.rotationX[b], world.rotationY[b], world.rotationZ[b], world.rotationW[b], contacts.localBX[p], contacts.localBY[p], contacts.localBZ[p]);
+
+            // Two tangent directions perpendicular to the normal.
+            float t1x, t1y, t1z;
+
+            if (Math.abs(nx) > 0.57735F)
+            {
+                t1x = ny;
+                t1y = -nx;
+                t1z = 0.0F;
+            } else
+            {
+                t1x = 0.0F;
+                t1y = nz;
+                t1z = -ny;
+            }
+
+            float length = (float) Math.sqrt(t1x * t1x + t1y * t1y + t1z * t1z);
+            t1x /= length;
+            t1y /= length;
+            t1z /= length;
+            tangent1X[p] = t1x;
+            tangent1Y[p] = t1y;
+            tangent1Z[p] = t1z;
+            tangent2X[p] = ny * t1z - nz * t1y;
+            tangent2Y[p] = nz * t1x - nx * t1z;
+            tangent2Z[p] = nx * t1y - ny * t1x;
+
+            normalMass[p] = getInverseEffectiveMass(world, a, b, rAX[p], rAY[p], rAZ[p], rBX[p], rBY[p], rBZ[p], nx, ny, nz);
+            tangentMass1[p] = getInverseEffectiveMass(world, a, b, rAX[p], rAY[p], rAZ[p], rBX[p], rBY[p], rBZ[p], t1x, t1y, t1z);
+            tangentMass2[p] = getInverseEffectiveMass(world, a, b, rAX[p], rAY[p], rAZ[p], rBX[p], rBY[p], rBZ[p], tangent2X[p], tangent2Y[p], tangent2Z[p]);
+
+            // Points that are still separated only stop the bodies from closing more than the gap
+            // between them in one step, which keeps persistent points from acting like glue.
+            float depth = contacts.depth[p];
+            float correction = depth < 0.0F ? depth / dt : Math.min(BAUMGARTE / dt * Math.max(depth - LINEAR_SLOP, 0.0F), MAX_CORRECTION_VELOCITY);
+            float approach = getRelativeVelocity(world, a, b, p, nx, ny, nz);
+            bias[p] = approach < -RESTITUTION_THRESHOLD ? Math.max(correction, -restitution * approach) : correction;
+        }
+    }
+
+    /**
+     * Gets the velocity of the point on B relative to the point on A, along a direction.
+     */
+    private float getRelativeVelocity(PhysicsWorld world, int a, int b, int p, float dx, float dy, float dz)
+    {
+        float wax = world.angularVelocityX[a], way = world.angularVelocityY[a], waz = world.angularVelocityZ[a];
+        float wbx = world.angularVelocityX[b], wby = world.angularVelocityY[b], wbz = world.angularVelocityZ[b];
+
+        float vx = world.velocityX[b] + wby * rBZ[p] - wbz * rBY[p] - world.velocityX[a] - (way * rAZ[p] - waz * rAY[p]);
+        float vy = world.velocityY[b] + wbz * rBX[p] - wbx * rBZ[p] - world.velocityY[a] - (waz * rAX[p] - wax * rAZ[p]);
+        float vz = world.velocityZ[b] + wbx * rBY[p] - wby * rBX[p] - world.velocityZ[a] - (wax * rAY[p] - way * rAX[p]);
+
+        return vx * dx + vy * dy + vz * dz;
+    }
+
+    /**
+     * Applies an impulse to B at the point, and the opposite impulse to A.
+     */
+    private void applyImpulse(PhysicsWorld world, int a, int b, int p, float px, float py, float pz)
+    {
+        float ima = world.inverseMass[a];
+        float imb = world.inverseMass[b];
+
+        if (ima > 0.0F)
+        {
+            world.velocityX[a] -= px * ima;
+            world.velocityY[a] -= py * ima;
+            world.velocityZ[a] -= pz * ima;
+
+            float cx = rAY[p] * pz - rAZ[p] * py, cy = rAZ[p] * px - rAX[p] * pz, cz = rAX[p] * py - rAY[p] * px;
+            world.angularVelocityX[a] -= inertiaXX[a] * cx + inertiaXY[a] * cy + inertiaXZ[a] * cz;
+            world.angularVelocityY[a] -= inertiaXY[a] * cx + inertiaYY[a] * cy + inertiaYZ[a] * cz;
+            world.angularVelocityZ[a] -= inertiaXZ[a] * cx + inertiaYZ[a] * cy + inertiaZZ[a] * cz;
+        }
+
+        if (imb > 0.0F)
+        {
+            world.velocityX[b] += px * imb;
+            world.velocityY[b] += py * imb;
+            world.velocityZ[b] += pz * imb;
+
+            float cx = rBY[p] * pz - rBZ[p] * py, cy = rBZ[p] * px - rBX[p] * pz, cz = rBX[p] * py - rBY[p] * px;
+            world.angularVelocityX[b] += inertiaXX[b] * cx + inertiaXY[b] * cy + inertiaXZ[b] * cz;
+            world.angularVelocityY[b] += inertiaXY[b] * cx + inertiaYY[b] * cy + inertiaYZ[b] * cz;
+            world.angularVelocityZ[b] += inertiaXZ[b] * cx + inertiaYZ[b] * cy + inertiaZZ[b] * cz;
+        }
+    }
+
+    private void warmStart(PhysicsWorld world, ContactManifolds contacts, int m)
+    {
+        int a = contacts.bodyA[m];
+        int b = contacts.bodyB[m];
+
+        for (int k = 0; k < contacts.pointCount[m]; k++)
+        {
+            int p = m * ContactManifolds.MAX_POINTS + k;
+            float normal = contacts.normalImpulse[p];
+            float tangent1 = contacts.tangentImpulse1[p];
+            float tangent2 = contacts.tangentImpulse2[p];
+
+            float px = contacts.normalX[p] * normal + tangent1X[p] * tangent1 + tangent2X[p] * tangent2;
+            float py = contacts.normalY[p] * normal + tangent1Y[p] * tangent1 + tangent2Y[p] * tangent2;
+            float pz = contacts.normalZ[p] * normal + tangent1Z[p] * tangent1 + tangent2Z[p] * tangent2;
+            applyImpulse(world, a, b, p, px, py, pz);
+        }
+    }
+
+    private void solveManifold(PhysicsWorld world, ContactManifolds contacts, int m)
+    {
+        int a = contacts.bodyA[m];
+        int b = contacts.bodyB[m];
+        float friction = contacts.friction[m];
+
+        for (int k = 0; k < contacts.pointCount[m]; k++)
+        {
+            int p = m * ContactManifolds.MAX_POINTS + k;
+            float limit = friction * contacts.normalImpulse[p];
+
+            // Friction, opposing the sliding velocity along each tangent.
+            float velocity = getRelativeVelocity(world, a, b, p, tangent1X[p], tangent1Y[p], tangent1Z[p]);
+            float previous = contacts.tangentImpulse1[p];
+            float impulse = Math.max(-limit, Math.min(limit, previous - velocity * tangentMass1[p]));
+            contacts.tangentImpulse1[p] = impulse;
+            impulse -= previous;
+            applyImpulse(world, a, b, p, tangent1X[p] * impulse, tangent1Y[p] * impulse, tangent1Z[p] * impulse);
+
+            velocity = getRelativeVelocity(world, a, b, p, tangent2X[p], tangent2Y[p], tangent2Z[p]);
+            previous = contacts.tangentImpulse2[p];
+            impulse = Math.max(-limit, Math.min(limit, previous - velocity * tangentMass2[p]));
+            contacts.tangentImpulse2[p] = impulse;
+            impulse -= previous;
+            applyImpulse(world, a, b, p, tangent2X[p] * impulse, tangent2Y[p] * impulse, tangent2Z[p] * impulse);
+
+            // Non penetration, pushing B away from A along the normal.
+            float nx = contacts.normalX[p], ny = contacts.normalY[p], nz = contacts.normalZ[p];
+            velocity = getRelativeVelocity(world, a, b, p, nx, ny, nz);
+            previous = contacts.normalImpulse[p];
+            impulse = Math.max(0.0F, previous + (bias[p] - velocity) * normalMass[p]);
+            contacts.normalImpulse[p] = impulse;
+            impulse -= previous;
+            applyImpulse(world, a, b, p, nx * impulse, ny * impulse, nz * impulse);
+        }
+    }
+}
@@ -13,4 +13,31 @@ public interface ITickable
     {
         return true;
     }
+
+    /**
+     * Opts this tickable in to being updated on a worker thread, at the same time as other
+     * tickables. A component that opts in promises that its update only touches state that no other
+     * component touches during the tick, apart from the tickables it declares as dependencies. A
+     * game object that opts in makes its subtree an independent job, in which the components that
+     * have not opted in themselves still update one after the other in their usual order.
+     *
+     * @return true if this tickable can update concurrently with the rest of the scene.
+     * @see main.core.scene.TickGraph
+     */
+    default boolean isConcurrentTick()
+    {
+        return false;
+    }
+
+    /**
+     * Gets the tickables whose update must finish before the update of this one starts in the same
+     * tick. A game object as a dependency stands for every component in its subtree. Dependencies
+     * are read when the scene is rebuilt after its structure changes.
+     *
+     * @return The dependencies, or null if there are none.
+     */
+    default ITickable[] getTickDependencies()
+    {
+        return null;
+    }
 }
@@ -0,0 +1,178 @@
+package main.physics;
+
+/**
+ * Groups the awake bodies of a {@link PhysicsWorld} into islands, which are sets of bodies that are
+ * connected to each other through contacts. Islands can be solved independently of each other, and
+ * an island is only put to sleep once all of its bodies have come to rest.
+ *
+ * Static bodies never join islands, since they are not moved by the solver, so a static floor does
+ * not merge everything resting on it into one island. Islands are found with a union-find over the
+ * manifolds of the awake bodies, and the bodies and manifolds of each island are then laid out
+ * contiguously.
+ *
+ * @author Kelan
+ */
+class Islands
+{
+    int islandCount;
+    int[] bodyStart = new int[16]; // The bodies of island i are bodies[bodyStart[i] .. bodyStart[i + 1]).
+    int[] bodies = new int[16];
+    int[] manifoldStart = new int[16];
+    int[] manifolds = new int[16];
+
+    private int[] parent = new int[16];
+    private int[] island = new int[16];
+
+    /**
+     * Wakes the sleeping bodies that are touching awake bodies, and builds the islands of the awake
+     * bodies.
+     */
+    void build(PhysicsWorld world, ContactManifolds contacts)
+    {
+        wakeTouching(world, contacts);
+
+        int[] awake = world.awakeBodies;
+        int awakeCount = world.awakeCount;
+
+        if (parent.length < world.getBodyCount())
+        {
+            parent = new int[world.getBodyCount() * 2];
+            island = new int[world.getBodyCount() * 2];
+        }
+
+        if (bodyStart.length < awakeCount + 2)
+        {
+            bodyStart = new int[awakeCount * 2 + 2];
+            bodies = new int[awakeCount * 2];
+            manifoldStart = new int[awakeCount * 2 + 2];
+        }
+
+        for (int i = 0; i < awakeCount; i++)
+            parent[awake[i]] = awake[i];
+
+        int manifoldCount = 0;
+
+        for (int i = 0; i < awakeCount; i++)
+        {
+            for (int edge = contacts.bodyEdges[awake[i]]; edge >= 0; edge = contacts.edgeNext[edge])
+            {
+                int m = edge >> 1;
+
+                if (contacts.pointCount[m] == 0 || !contacts.isVisitedThrough(world, edge))
+                    continue;
+
+                manifoldCount++;
+
+                if (world.isAwake(contacts.bodyA[m]) && world.isAwake(contacts.bodyB[m]))
+                    union(contacts.bodyA[m], contacts.bodyB[m]);
+            }
+        }
+
+        // Number the islands in the order of their roots in the awake list.
+        islandCount = 0;
+
+        for (int i = 0; i < awakeCount; i++)
+        {
+            int body = awake[i];
+
+            if (find(body) == body)
+                island[body] = islandCount++;
+        }
+
+        for (int i = 0; i <= islandCount; i++)
+            bodyStart[i] = manifoldStart[i] = 0;
+
+        for (int i = 0; i < awakeCount; i++)
+        {
+            int body = awake[i];
+            island[body] = island[find(body)];
+            bodyStart[island[body] + 1]++;
+        }
+
+        for (int i = 0; i < awakeCount; i++)
+        {
+            for (int edge = contacts.bodyEdges[awake[i]]; edge >= 0; edge = contacts.edgeNext[edge])
+            {
+                if (contacts.pointCount[edge >> 1] > 0 && contacts.isVisitedThrough(world, edge))
+                    manifoldStart[island[awake[i]] + 1]++;
+            }
+        }
+
+        for (int i = 0; i < islandCount; i++)
+        {
+            bodyStart[i + 1] += bodyStart[i];
+            manifoldStart[i + 1] += manifoldStart[i];
+        }
+
+        if (manifolds.length < manifoldCount)
+            manifolds = new int[manifoldCount * 2];
+
+        // Place the bodies and manifolds, using the start of each island as a cursor, and then shift
+        // the starts back into place.
+        for (int i = 0; i < awakeCount; i++)
+        {
+            int body = awake[i];
+            bodies[bodyStart[island[body]]++] = body;
+
+            for (int edge = contacts.bodyEdges[body]; edge >= 0; edge = contacts.edgeNext[edge])
+            {
+                if (contacts.pointCount[edge >> 1] > 0 && contacts.isVisitedThrough(world, edge))
+                    manifolds[manifoldStart[island[body]]++] = edge >> 1;
+            }
+        }
+
+        for (int i = islandCount; i > 0; i--)
+        {
+            bodyStart[i] = bodyStart[i - 1];
+            manifoldStart[i] = manifoldStart[i - 1];
+        }
+
+        bodyStart[0] = 0;
+        manifoldStart[0] = 0;
+    }
+
+    /**
+     * Wakes every sleeping body that is touching an awake body. Bodies are woken together with the
+     * rest of the island they fell asleep in, and are appended to the awake list, so they are
+     * visited by this loop in turn.
+     */
+    private void wakeTouching(PhysicsWorld world, ContactManifolds contacts)
+    {
+        for (int i = 0; i < world.awakeCount; i++)
+        {
+            int body = world.awakeBodies[i];
+
+            for (int edge = contacts.bodyEdges[body]; edge >= 0; edge = contacts.edgeNext[edge])
+            {
+                int m = edge >> 1;
+                int other = (edge & 1) == 0 ? contacts.bodyB[m] : contacts.bodyA[m];
+
+                if (contacts.pointCount[m] > 0 && world.isSleeping(other))
+                    world.wake(other);
+            }
+        }
+    }
+
+    private int find(int body)
+    {
+        while (parent[body] != body)
+        {
+            parent[body] = parent[parent[body]];
+            body = parent[body];
+        }
+
+        return body;
+    }
+
+    private void union(int a, int b)
+    {
+        int rootA = find(a);
+        int rootB = find(b);
+
+        // Keep the smaller index as the root, so the islands do not depend on the manifold order.
+        if (rootA < rootB)
+            parent[rootB] = rootA;
+        else if (rootB < rootA)
+            parent[rootA] = rootB;
+    }
+}
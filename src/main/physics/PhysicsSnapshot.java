@@ -0,0 +1,106 @@
+package main.physics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A copy of the simulation state of a {@link PhysicsWorld}, held in an off-heap buffer. A snapshot
+ * holds the transforms, velocities, accumulated forces and sleep state of every body, the list of
+ * awake bodies, and the contact manifolds with their cached impulses, which is everything a step
+ * depends on besides the properties of the bodies. Restoring a snapshot into the world it was taken
+ * from therefore continues the simulation exactly as it went on from the point it was taken.
+ *
+ * A full snapshot holds every body. A delta snapshot is taken against a full snapshot, and only
+ * holds the bodies whose state differs from it, which keeps snapshots of a mostly sleeping world
+ * small. The awake list and the manifolds are always held in full. Restoring a delta snapshot
+ * reads the rest of the bodies from its base snapshot, so the base must not be overwritten while
+ * the delta is in use.
+ *
+ * Snapshots can be reused, and only reallocate their buffer when the state outgrows it.
+ *
+ * @author Kelan
+ */
+public class PhysicsSnapshot
+{
+    static final int HEADER_SIZE = 32;
+    static final int BODY_SIZE = 88;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1024).order(ByteOrder.nativeOrder());
+    private PhysicsSnapshot base;
+    private int size;
+
+    /**
+     * Clears this snapshot and makes room for at least the given number of bytes.
+     */
+    ByteBuffer begin(int capacity, PhysicsSnapshot base)
+    {
+        if (buffer.capacity() < capacity)
+            buffer = ByteBuffer.allocateDirect(Math.max(capacity, buffer.capacity() * 2)).order(ByteOrder.nativeOrder());
+
+        this.base = base;
+        this.size = 0;
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Makes room for the given number of bytes past the current position of the buffer, copying
+     * what has been written so far into a larger buffer if needed.
+     */
+    ByteBuffer ensureRemaining(int bytes)
+    {
+        if (buffer.remaining() < bytes)
+        {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.position() + bytes, buffer.capacity() * 2)).order(ByteOrder.nativeOrder());
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+
+        return buffer;
+    }
+
+    void end()
+    {
+        size = buffer.position();
+    }
+
+    /**
+     * Gets the buffer of this snapshot, positioned at the start of the state.
+     */
+    ByteBuffer read()
+    {
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Gets the snapshot that this snapshot was taken against, or null if it is a full snapshot.
+     */
+    public PhysicsSnapshot getBase()
+    {
+        return base;
+    }
+
+    public boolean isDelta()
+    {
+        return base != null;
+    }
+
+    /**
+     * Gets the number of bytes of state held by this snapshot.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the number of steps the world had taken when this snapshot was taken.
+     */
+    public long getStepCount()
+    {
+        return size == 0 ? -1L : buffer.getLong(8);
+    }
+}
@@ -2,17 +2,33 @@ package main.physics;
 
 import main.core.Engine;
 import main.core.TickableThread;
+import main.physics.broadphase.Broadphase;
+import main.physics.broadphase.DynamicAABBTree;
 
 /**
  * @author Kelan
  */
 public class PhysicsThread extends TickableThread
 {
+    private static final int STATE_HASH_HISTORY = 1024;
+
     private double updateDelta = 0.01;
+    private PhysicsWorld physicsWorld;
 
-    public PhysicsThread()
+    private boolean deterministic;
+    private long tick;
+    private final long[] stateHashes = new long[STATE_HASH_HISTORY];
+
+    public PhysicsThread(Broadphase broadphase)
     {
         super("PHYSICS-THREAD");
+
+        this.physicsWorld = new PhysicsWorld(broadphase);
+    }
+
+    public PhysicsThread()
+    {
+        this(new DynamicAABBTree());
     }
 
     @Override
@@ -24,13 +40,27 @@ public class PhysicsThread extends TickableThread
     @Override
     protected boolean update(double delta)
     {
+        // In deterministic mode every tick advances by exactly the update delta, rather than the
+        // delta measured from the clock, so a replay goes through the same sequence of states.
+        if (deterministic)
+            delta = updateDelta;
+
+        Engine.getSceneGraph().storePreviousTransformations();
+        physicsWorld.step((float) delta);
         Engine.getSceneGraph().update(delta);
+
+        stateHashes[(int) (tick % STATE_HASH_HISTORY)] = deterministic ? physicsWorld.computeStateHash() : 0L;
+
+        tick++;
+        Engine.getSceneGraph().dispatchChanges();
+        Engine.getSceneGraph().publishTransformations(getLastTickTime(), getLastStep());
         return true;
     }
 
     @Override
     protected boolean dispose()
     {
+        physicsWorld.dispose();
         return true;
     }
 
@@ -43,6 +73,11 @@ public class PhysicsThread extends TickableThread
         }
     }
 
+    public PhysicsWorld getPhysicsWorld()
+    {
+        return physicsWorld;
+    }
+
     public void setUpdateDelta(double updateDelta)
     {
         synchronized (getLock())
@@ -50,4 +85,55 @@ public class PhysicsThread extends TickableThread
             this.updateDelta = updateDelta;
         }
     }
+
+    public boolean isDeterministic()
+    {
+        synchronized (getLock())
+        {
+            return deterministic;
+        }
+    }
+
+    /**
+     * Enables or disables deterministic mode. In deterministic mode every tick is passed exactly the
+     * update delta, and the state hash of the physics world is recorded after every tick, so that
+     * two runs of a recorded session can be compared tick by tick.
+     */
+    public void setDeterministic(boolean deterministic)
+    {
+        synchronized (getLock())
+        {
+            this.deterministic = deterministic;
+        }
+    }
+
+    /**
+     * Gets the number of ticks that have been run.
+     */
+    public long getTick()
+    {
+        synchronized (getLock())
+        {
+            return tick;
+        }
+    }
+
+    /**
+     * Gets the state hash recorded after the given tick in deterministic mode, or zero if the tick ran
+     * outside of deterministic mode. Only the most recent ticks are kept.
+     *
+     * @param tick The tick, counting from zero.
+     * @return The state hash of the physics world after the tick.
+     * @see PhysicsWorld#computeStateHash()
+     */
+    public long getStateHash(long tick)
+    {
+        synchronized (getLock())
+        {
+            if (tick < 0 || tick >= this.tick || tick < this.tick - STATE_HASH_HISTORY)
+                throw new IllegalArgumentException("No state hash recorded for tick " + tick);
+
+            return stateHashes[(int) (tick % STATE_HASH_HISTORY)];
+        }
+    }
 }
@@ -0,0 +1,1929 @@
+package main.physics;
+
+import main.core.scene.GameObject;
+import main.physics.broadphase.Broadphase;
+import main.physics.broadphase.DynamicAABBTree;
+import main.physics.collision.CollisionContext;
+import main.physics.collision.CollisionResult;
+import main.physics.collision.CollisionShape;
+import main.physics.collision.ConvexShape;
+import main.physics.collision.SphereShape;
+import main.physics.collision.TriangleMeshShape;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The physics world holds the simulation state of every registered {@link RigidBody}. Body state is
+ * stored as a structure of arrays, where body {@code i} occupies index {@code i} of every array, so
+ * that the integration loops walk contiguous primitive memory instead of chasing per-body vector
+ * objects.
+ *
+ * Every body also owns a proxy in the {@link Broadphase}, which is updated after integration and
+ * used to find the pairs of bodies whose bounding boxes overlap. Pairs of bodies that both have a
+ * collision shape are then tested exactly in the narrowphase, and the contacts are merged into
+ * persistent {@link ContactManifolds}, which the {@link ContactSolver} resolves island by island.
+ *
+ * Bodies that have come to rest are put to sleep together with the rest of their island. Sleeping
+ * bodies are treated as static by the broadphase and are left out of the list of awake bodies, which
+ * every per body loop of a step walks, so the cost of a step scales with the number of awake bodies
+ * rather than the total number of bodies.
+ *
+ * Islands do not share any bodies or manifolds, so they are solved in parallel on a work stealing
+ * pool when there are enough contacts to be worth it. Each island is solved by exactly one worker,
+ * in the same order as it would be by a single thread, so the result of a step does not depend on
+ * the number of workers or how the islands were scheduled.
+ *
+ * Bodies that move further than a fraction of their own size in one step are swept before they are
+ * moved, so small fast bodies do not tunnel through thin walls. The largest sphere that fits inside
+ * the bounds of such a body is advanced conservatively towards the bodies it may hit, and the body
+ * stops at the first time of impact, bounces off, and continues with the rest of the step, up to a
+ * fixed number of substeps.
+ *
+ * A step only depends on the state of the world and the order that bodies were added and removed
+ * in: floating point expressions are evaluated strictly, which Java guarantees from release 17 and
+ * the 64-bit JVMs before it already did, the order of every loop is fixed by the body indices, and
+ * parallel solving does not change the result. Two worlds that are given
+ * the same inputs therefore stay bit for bit identical, which {@link #computeStateHash()} can be
+ * used to check cheaply. The state can also be copied into a {@link PhysicsSnapshot} and restored
+ * later, to roll the simulation back or to reset a scenario without rebuilding the scene.
+ *
+ * @author Kelan
+ */
+public class PhysicsWorld
+{
+    private static final int INITIAL_CAPACITY = 64;
+    private static final float LINEAR_SLEEP_TOLERANCE = 0.05F;
+    private static final float ANGULAR_SLEEP_TOLERANCE = 0.05F;
+    private static final float TIME_TO_SLEEP = 0.5F;
+    private static final int PERTURBATION_ITERATIONS = 4;
+    private static final float PERTURBATION_ANGLE = 0.05F;
+    private static final int MAX_TOI_SUBSTEPS = 4;
+    private static final float TOI_TOLERANCE = 0.005F;
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final int SNAPSHOT_MAGIC = 0x50485953;
+    private static final int MIN_PARALLEL_MANIFOLDS = 64; // Islands with fewer manifolds between them are solved on one thread.
+    private static final int MIN_PARALLEL_CASTS = 256; // Batches of casts are split down to this many casts per task.
+
+    private final Vector3f gravity = new Vector3f(0.0F, -9.81F, 0.0F);
+    private final Broadphase broadphase;
+    private final Broadphase.PairCallback pairCallback = this::addPair;
+
+    private final float[] aabb = new float[6];
+    private final CollisionResult collisionResult = new CollisionResult();
+    private final TriangleMeshShape.ContactCallback meshContactCallback = this::addMeshContact;
+    private int meshBody;
+    private int convexBody;
+    private int perturbedBody = -1;
+    private float perturbationX, perturbationY, perturbationZ, perturbationW;
+    private float unperturbedX, unperturbedY, unperturbedZ, unperturbedW;
+    private float perturbationNormalX, perturbationNormalY, perturbationNormalZ;
+
+    private final ContactManifolds contacts = new ContactManifolds();
+    private final Islands islands = new Islands();
+    private final ContactSolver solver = new ContactSolver();
+    private int solverIterations = 10;
+    private boolean sleepingEnabled = true;
+    private int nextBodyId;
+    private long stepCount;
+    private boolean multithreaded = true;
+    private int workerCount; // Zero uses one worker per available processor.
+    private ForkJoinPool workerPool;
+    private final SolveIslandsTask solveTask = new SolveIslandsTask();
+
+    private float sweptRadius;
+    private boolean continuousCollisionEnabled = true;
+    private float continuousCollisionThreshold = 0.5F;
+    private int[] sweptBodies = new int[16];
+    private float[] sweptPositions = new float[48]; // The position of each swept body at the end of the step.
+    private int sweptCount;
+    private final Broadphase.QueryCallback partnerCallback = this::addPartner;
+    private int[] partners = new int[16];
+    private int partnerCount;
+    private int sweptBody;
+    private float impactNormalX, impactNormalY, impactNormalZ;
+
+    private final Matrix4f inverseParentMatrix = new Matrix4f();
+    private final Quaternion parentRotation = new Quaternion();
+
+    RigidBody[] bodies;
+    private int bodyCount;
+    private int capacity;
+
+    float[] positionX;
+    float[] positionY;
+    float[] positionZ;
+    // The rotation of each body, which rotates a vector v to q v q*, unlike a Transformation.
+    float[] rotationX;
+    float[] rotationY;
+    float[] rotationZ;
+    float[] rotationW;
+    float[] velocityX;
+    float[] velocityY;
+    float[] velocityZ;
+    float[] angularVelocityX;
+    float[] angularVelocityY;
+    float[] angularVelocityZ;
+    float[] forceX;
+    float[] forceY;
+    float[] forceZ;
+    float[] torqueX;
+    float[] torqueY;
+    float[] torqueZ;
+    float[] inverseMass;
+    float[] inverseInertiaX; // Diagonal of the local space inverse inertia tensor.
+    float[] inverseInertiaY;
+    float[] inverseInertiaZ;
+    float[] gravityScale;
+    float[] linearDamping;
+    float[] angularDamping;
+    float[] boundsCenterX; // Local space bounding box of the body, with the object scale applied.
+    float[] boundsCenterY;
+    float[] boundsCenterZ;
+    float[] boundsHalfX;
+    float[] boundsHalfY;
+    float[] boundsHalfZ;
+    int[] proxyId;
+    CollisionShape[] shapes;
+    int[] bodyId; // Never reused, unlike body indices, so manifolds can be keyed by it.
+    float[] friction;
+    float[] restitution;
+    float[] sleepTime;
+    int[] awakeIndex; // The index of the body in awakeBodies, or -1 if it is static or sleeping.
+    int[] sleepNext; // The next body of the sleeping island, as a cycle, or -1 if it is not sleeping.
+
+    int[] awakeBodies;
+    int awakeCount;
+
+    int[] pairA = new int[INITIAL_CAPACITY];
+    int[] pairB = new int[INITIAL_CAPACITY];
+    int pairCount;
+    private long[] pairKeys = new long[INITIAL_CAPACITY];
+    private int[] restoredBodies; // The bodies restoring a snapshot has touched, sized with the body arrays.
+
+    /**
+     * @param broadphase The broadphase used to find overlapping bodies. A {@link DynamicAABBTree}
+     *                   suits most scenes, while a {@link main.physics.broadphase.SweepAndPrune}
+     *                   does less work per tick when most bodies are static.
+     */
+    public PhysicsWorld(Broadphase broadphase)
+    {
+        this.broadphase = broadphase;
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    public PhysicsWorld()
+    {
+        this(new DynamicAABBTree());
+    }
+
+    private void allocate(int capacity)
+    {
+        this.capacity = capacity;
+        this.bodies = this.bodies == null ? new RigidBody[capacity] : Arrays.copyOf(this.bodies, capacity);
+        this.positionX = grow(this.positionX, capacity);
+        this.positionY = grow(this.positionY, capacity);
+        this.positionZ = grow(this.positionZ, capacity);
+        this.rotationX = grow(this.rotationX, capacity);
+        this.rotationY = grow(this.rotationY, capacity);
+        this.rotationZ = grow(this.rotationZ, capacity);
+        this.rotationW = grow(this.rotationW, capacity);
+        this.velocityX = grow(this.velocityX, capacity);
+        this.velocityY = grow(this.velocityY, capacity);
+        this.velocityZ = grow(this.velocityZ, capacity);
+        this.angularVelocityX = grow(this.angularVelocityX, capacity);
+        this.angularVelocityY = grow(this.angularVelocityY, capacity);
+        this.angularVelocityZ = grow(this.angularVelocityZ, capacity);
+        this.forceX = grow(this.forceX, capacity);
+        this.forceY = grow(this.forceY, capacity);
+        this.forceZ = grow(this.forceZ, capacity);
+        this.torqueX = grow(this.torqueX, capacity);
+        this.torqueY = grow(this.torqueY, capacity);
+        this.torqueZ = grow(this.torqueZ, capacity);
+        this.inverseMass = grow(this.inverseMass, capacity);
+        this.inverseInertiaX = grow(this.inverseInertiaX, capacity);
+        this.inverseInertiaY = grow(this.inverseInertiaY, capacity);
+        this.inverseInertiaZ = grow(this.inverseInertiaZ, capacity);
+        this.gravityScale = grow(this.gravityScale, capacity);
+        this.linearDamping = grow(this.linearDamping, capacity);
+        this.angularDamping = grow(this.angularDamping, capacity);
+        this.boundsCenterX = grow(this.boundsCenterX, capacity);
+        this.boundsCenterY = grow(this.boundsCenterY, capacity);
+        this.boundsCenterZ = grow(this.boundsCenterZ, capacity);
+        this.boundsHalfX = grow(this.boundsHalfX, capacity);
+        this.boundsHalfY = grow(this.boundsHalfY, capacity);
+        this.boundsHalfZ = grow(this.boundsHalfZ, capacity);
+        this.proxyId = this.proxyId == null ? new int[capacity] : Arrays.copyOf(this.proxyId, capacity);
+        this.shapes = this.shapes == null ? new CollisionShape[capacity] : Arrays.copyOf(this.shapes, capacity);
+        this.bodyId = this.bodyId == null ? new int[capacity] : Arrays.copyOf(this.bodyId, capacity);
+        this.friction = grow(this.friction, capacity);
+        this.restitution = grow(this.restitution, capacity);
+        this.sleepTime = grow(this.sleepTime, capacity);
+        this.awakeIndex = this.awakeIndex == null ? new int[capacity] : Arrays.copyOf(this.awakeIndex, capacity);
+        this.sleepNext = this.sleepNext == null ? new int[capacity] : Arrays.copyOf(this.sleepNext, capacity);
+        this.awakeBodies = this.awakeBodies == null ? new int[capacity] : Arrays.copyOf(this.awakeBodies, capacity);
+        this.restoredBodies = new int[capacity]; // Only used within a restore, so nothing needs to be copied.
+        this.contacts.ensureBodyCapacity(capacity);
+    }
+
+    private static float[] grow(float[] array, int capacity)
+    {
+        return array == null ? new float[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    /**
+     * Registers the rigid body with this world. The initial position and rotation of the body are
+     * taken from the game object it is attached to. The position is read from its world matrix, so
+     * the transform pass of its scene must have run, which {@link main.core.scene.FlatScene#init()}
+     * does before it initialises any components.
+     *
+     * @param body The body to add.
+     * @return true if the body was added, false if it was already part of a world.
+     */
+    public synchronized boolean addBody(RigidBody body)
+    {
+        if (body == null || body.world != null)
+            return false;
+
+        if (bodyCount == capacity)
+            allocate(capacity * 2);
+
+        int i = bodyCount++;
+        bodies[i] = body;
+        body.world = this;
+        body.index = i;
+
+        // Bodies are simulated in world space, so bodies of nested objects start at the world pose
+        // of their object.
+        Vector3f position = body.getParent() != null ? body.getParent().getWorldTranslation(null) : new Vector3f();
+        Quaternion rotation = body.getParent() != null ? body.getParent().getWorldRotation(null) : new Quaternion();
+
+        // A transformation rotates by the conjugate of its quaternion, while the world rotates by the
+        // quaternion itself, so rotations are conjugated on the way in and out of the world.
+        positionX[i] = position.x;
+        positionY[i] = position.y;
+        positionZ[i] = position.z;
+        rotationX[i] = -rotation.x;
+        rotationY[i] = -rotation.y;
+        rotationZ[i] = -rotation.z;
+        rotationW[i] = rotation.w;
+        velocityX[i] = velocityY[i] = velocityZ[i] = 0.0F;
+        angularVelocityX[i] = angularVelocityY[i] = angularVelocityZ[i] = 0.0F;
+        forceX[i] = forceY[i] = forceZ[i] = 0.0F;
+        torqueX[i] = torqueY[i] = torqueZ[i] = 0.0F;
+        proxyId[i] = Broadphase.NULL_PROXY;
+        bodyId[i] = nextBodyId++;
+        sleepTime[i] = 0.0F;
+        awakeIndex[i] = -1;
+        sleepNext[i] = -1;
+
+        body.applyProperties();
+        updateBody(i, false);
+        return true;
+    }
+
+    /**
+     * Removes the rigid body from this world. The last body in the arrays is moved into the freed
+     * slot, so removal is constant time but does not preserve body order.
+     *
+     * @param body The body to remove.
+     * @return true if the body was removed, false if it did not belong to this world.
+     */
+    public synchronized boolean removeBody(RigidBody body)
+    {
+        if (body == null || body.world != this)
+            return false;
+
+        int i = body.index;
+        int last = --bodyCount;
+
+        // Anything resting on the body has lost its support, so wake it up.
+        wake(i);
+
+        for (int edge = contacts.bodyEdges[i]; edge >= 0; edge = contacts.edgeNext[edge])
+            wake((edge & 1) == 0 ? contacts.bodyB[edge >> 1] : contacts.bodyA[edge >> 1]);
+
+        contacts.removeBody(i);
+        removeAwake(i);
+        broadphase.destroyProxy(proxyId[i]);
+
+        if (i != last)
+            moveBody(last, i);
+
+        bodies[last] = null;
+        shapes[last] = null;
+        body.world = null;
+        body.index = -1;
+        return true;
+    }
+
+    private void moveBody(int from, int to)
+    {
+        bodies[to] = bodies[from];
+        bodies[to].index = to;
+        positionX[to] = positionX[from];
+        positionY[to] = positionY[from];
+        positionZ[to] = positionZ[from];
+        rotationX[to] = rotationX[from];
+        rotationY[to] = rotationY[from];
+        rotationZ[to] = rotationZ[from];
+        rotationW[to] = rotationW[from];
+        velocityX[to] = velocityX[from];
+        velocityY[to] = velocityY[from];
+        velocityZ[to] = velocityZ[from];
+        angularVelocityX[to] = angularVelocityX[from];
+        angularVelocityY[to] = angularVelocityY[from];
+        angularVelocityZ[to] = angularVelocityZ[from];
+        forceX[to] = forceX[from];
+        forceY[to] = forceY[from];
+        forceZ[to] = forceZ[from];
+        torqueX[to] = torqueX[from];
+        torqueY[to] = torqueY[from];
+        torqueZ[to] = torqueZ[from];
+        inverseMass[to] = inverseMass[from];
+        inverseInertiaX[to] = inverseInertiaX[from];
+        inverseInertiaY[to] = inverseInertiaY[from];
+        inverseInertiaZ[to] = inverseInertiaZ[from];
+        gravityScale[to] = gravityScale[from];
+        linearDamping[to] = linearDamping[from];
+        angularDamping[to] = angularDamping[from];
+        boundsCenterX[to] = boundsCenterX[from];
+        boundsCenterY[to] = boundsCenterY[from];
+        boundsCenterZ[to] = boundsCenterZ[from];
+        boundsHalfX[to] = boundsHalfX[from];
+        boundsHalfY[to] = boundsHalfY[from];
+        boundsHalfZ[to] = boundsHalfZ[from];
+        proxyId[to] = proxyId[from];
+        shapes[to] = shapes[from];
+        bodyId[to] = bodyId[from];
+        friction[to] = friction[from];
+        restitution[to] = restitution[from];
+        sleepTime[to] = sleepTime[from];
+        awakeIndex[to] = awakeIndex[from];
+        sleepNext[to] = sleepNext[from];
+        broadphase.setUserData(proxyId[to], to);
+        contacts.moveBody(from, to);
+
+        if (awakeIndex[to] >= 0)
+            awakeBodies[awakeIndex[to]] = to;
+
+        if (sleepNext[to] == from)
+        {
+            sleepNext[to] = to;
+        } else if (sleepNext[to] >= 0)
+        {
+            // Point the previous body of the sleeping island at the new index.
+            int previous = sleepNext[to];
+
+            while (sleepNext[previous] != from)
+                previous = sleepNext[previous];
+
+            sleepNext[previous] = to;
+        }
+    }
+
+    /**
+     * Updates the awake state and the broadphase proxy of a body after its properties change. A
+     * change wakes the body up, and bodies that become static leave the awake list.
+     *
+     * @param reshaped If true, the shape or bounds of the body changed, so its proxy is recreated
+     *                 to fit them rather than moved.
+     */
+    void updateBody(int i, boolean reshaped)
+    {
+        if (reshaped && proxyId[i] != Broadphase.NULL_PROXY)
+        {
+            broadphase.destroyProxy(proxyId[i]);
+            proxyId[i] = Broadphase.NULL_PROXY;
+        }
+
+        wake(i);
+
+        boolean dynamic = inverseMass[i] > 0.0F;
+
+        if (dynamic && awakeIndex[i] < 0)
+            addAwake(i);
+        else if (!dynamic)
+            removeAwake(i);
+
+        updateProxy(i);
+    }
+
+    private void addAwake(int i)
+    {
+        if (awakeIndex[i] >= 0)
+            return;
+
+        awakeIndex[i] = awakeCount;
+        awakeBodies[awakeCount++] = i;
+    }
+
+    private void removeAwake(int i)
+    {
+        if (awakeIndex[i] < 0)
+            return;
+
+        int last = awakeBodies[--awakeCount];
+        awakeBodies[awakeIndex[i]] = last;
+        awakeIndex[last] = awakeIndex[i];
+        awakeIndex[i] = -1;
+    }
+
+    boolean isAwake(int i)
+    {
+        return awakeIndex[i] >= 0;
+    }
+
+    boolean isSleeping(int i)
+    {
+        return sleepNext[i] >= 0;
+    }
+
+    /**
+     * Wakes up a sleeping body, along with every other body of the island it fell asleep in.
+     */
+    void wake(int i)
+    {
+        if (sleepNext[i] < 0)
+            return;
+
+        int body = i;
+
+        do
+        {
+            int next = sleepNext[body];
+            sleepNext[body] = -1;
+            sleepTime[body] = 0.0F;
+            addAwake(body);
+            updateProxy(body);
+            body = next;
+        } while (body != i);
+    }
+
+    /**
+     * Puts the bodies of an island to sleep, linking them into a cycle so they wake up together.
+     */
+    private void sleep(int island)
+    {
+        int start = islands.bodyStart[island];
+        int end = islands.bodyStart[island + 1];
+
+        for (int n = start; n < end; n++)
+        {
+            int i = islands.bodies[n];
+            sleepNext[i] = islands.bodies[n + 1 < end ? n + 1 : start];
+            velocityX[i] = velocityY[i] = velocityZ[i] = 0.0F;
+            angularVelocityX[i] = angularVelocityY[i] = angularVelocityZ[i] = 0.0F;
+            removeAwake(i);
+            updateProxy(i);
+        }
+    }
+
+    /**
+     * Updates the broadphase proxy of a body to its current bounds and static state, creating it if
+     * the body has none yet. Called when the body is added, when it wakes up or falls asleep, and
+     * whenever its properties or its pose are changed from outside a step.
+     */
+    void updateProxy(int i)
+    {
+        // Sleeping bodies do not move, so they are static as far as the broadphase is concerned.
+        boolean isStatic = inverseMass[i] == 0.0F || isSleeping(i);
+        computeBounds(i, aabb);
+
+        if (proxyId[i] == Broadphase.NULL_PROXY)
+        {
+            proxyId[i] = broadphase.createProxy(aabb[0], aabb[1], aabb[2], aabb[3], aabb[4], aabb[5], i, isStatic);
+        } else
+        {
+            broadphase.setStatic(proxyId[i], isStatic);
+            broadphase.moveProxy(proxyId[i], aabb[0], aabb[1], aabb[2], aabb[3], aabb[4], aabb[5], 0.0F, 0.0F, 0.0F);
+        }
+    }
+
+    /**
+     * Computes the world space bounding box of the rotated local bounds of a body.
+     *
+     * @param i    The index of the body.
+     * @param dest The array to write min xyz followed by max xyz into.
+     */
+    void computeBounds(int i, float[] dest)
+    {
+        float qx = rotationX[i];
+        float qy = rotationY[i];
+        float qz = rotationZ[i];
+        float qw = rotationW[i];
+
+        // Rotation matrix of the body.
+        float xx = qx * qx, yy = qy * qy, zz = qz * qz;
+        float xy = qx * qy, xz = qx * qz, yz = qy * qz;
+        float wx = qw * qx, wy = qw * qy, wz = qw * qz;
+        float m00 = 1.0F - 2.0F * (yy + zz), m01 = 2.0F * (xy - wz), m02 = 2.0F * (xz + wy);
+        float m10 = 2.0F * (xy + wz), m11 = 1.0F - 2.0F * (xx + zz), m12 = 2.0F * (yz - wx);
+        float m20 = 2.0F * (xz - wy), m21 = 2.0F * (yz + wx), m22 = 1.0F - 2.0F * (xx + yy);
+
+        float cx = boundsCenterX[i], cy = boundsCenterY[i], cz = boundsCenterZ[i];
+        float hx = boundsHalfX[i], hy = boundsHalfY[i], hz = boundsHalfZ[i];
+
+        // The world center is the rotated local center, and the world half extents are the local
+        // half extents projected onto each world axis, i.e. |R| * h.
+        float px = positionX[i] + m00 * cx + m01 * cy + m02 * cz;
+        float py = positionY[i] + m10 * cx + m11 * cy + m12 * cz;
+        float pz = positionZ[i] + m20 * cx + m21 * cy + m22 * cz;
+        float ex = Math.abs(m00) * hx + Math.abs(m01) * hy + Math.abs(m02) * hz;
+        float ey = Math.abs(m10) * hx + Math.abs(m11) * hy + Math.abs(m12) * hz;
+        float ez = Math.abs(m20) * hx + Math.abs(m21) * hy + Math.abs(m22) * hz;
+
+        dest[0] = px - ex;
+        dest[1] = py - ey;
+        dest[2] = pz - ez;
+        dest[3] = px + ex;
+        dest[4] = py + ey;
+        dest[5] = pz + ez;
+    }
+
+    /**
+     * Advances the simulation by {@code delta} seconds using semi-implicit (symplectic) Euler
+     * integration. Velocities are updated from the accumulated forces first, then the contacts are
+     * found and solved, and the new velocities are used to update positions and rotations.
+     * Accumulated forces and torques are cleared once they have been applied.
+     *
+     * @param delta The timestep in seconds.
+     */
+    public synchronized void step(float delta)
+    {
+        if (delta <= 0.0F || bodyCount == 0)
+            return;
+
+        stepCount++;
+        integrateVelocities(delta);
+        updateBroadphase(delta);
+        contacts.refresh(this);
+        findContacts();
+        contacts.removeStale(this);
+        islands.build(this, contacts);
+        solveContacts(delta);
+        sweepFastBodies(delta);
+        integratePositions(delta);
+        applySweptPositions();
+        writeTransformations();
+        updateSleeping(delta);
+    }
+
+    private void integrateVelocities(float dt)
+    {
+        float gx = gravity.x * dt;
+        float gy = gravity.y * dt;
+        float gz = gravity.z * dt;
+
+        // Only awake bodies are visited, which are always dynamic.
+        for (int n = 0; n < awakeCount; n++)
+        {
+            int i = awakeBodies[n];
+            float im = inverseMass[i] * dt;
+            float gs = gravityScale[i];
+            float damping = 1.0F / (1.0F + dt * linearDamping[i]);
+
+            velocityX[i] = (velocityX[i] + gx * gs + forceX[i] * im) * damping;
+            velocityY[i] = (velocityY[i] + gy * gs + forceY[i] * im) * damping;
+            velocityZ[i] = (velocityZ[i] + gz * gs + forceZ[i] * im) * damping;
+
+            forceX[i] = 0.0F;
+            forceY[i] = 0.0F;
+            forceZ[i] = 0.0F;
+        }
+
+        for (int n = 0; n < awakeCount; n++)
+        {
+            int i = awakeBodies[n];
+            float ix = inverseInertiaX[i];
+            float iy = inverseInertiaY[i];
+            float iz = inverseInertiaZ[i];
+
+            if (ix == 0.0F && iy == 0.0F && iz == 0.0F)
+                continue;
+
+            float tx = torqueX[i];
+            float ty = torqueY[i];
+            float tz = torqueZ[i];
+
+            if (tx != 0.0F || ty != 0.0F || tz != 0.0F)
+            {
+                float qx = rotationX[i];
+                float qy = rotationY[i];
+                float qz = rotationZ[i];
+                float qw = rotationW[i];
+
+                // Rotate the torque into local space, scale by the diagonal inverse inertia and
+                // rotate back, i.e. R * I^-1 * R^T * torque.
+                float lx = rotateX(-qx, -qy, -qz, qw, tx, ty, tz) * ix;
+                float ly = rotateY(-qx, -qy, -qz, qw, tx, ty, tz) * iy;
+                float lz = rotateZ(-qx, -qy, -qz, qw, tx, ty, tz) * iz;
+
+                angularVelocityX[i] += rotateX(qx, qy, qz, qw, lx, ly, lz) * dt;
+                angularVelocityY[i] += rotateY(qx, qy, qz, qw, lx, ly, lz) * dt;
+                angularVelocityZ[i] += rotateZ(qx, qy, qz, qw, lx, ly, lz) * dt;
+
+                torqueX[i] = 0.0F;
+                torqueY[i] = 0.0F;
+                torqueZ[i] = 0.0F;
+            }
+
+            float damping = 1.0F / (1.0F + dt * angularDamping[i]);
+            angularVelocityX[i] *= damping;
+            angularVelocityY[i] *= damping;
+            angularVelocityZ[i] *= damping;
+        }
+    }
+
+    private void integratePositions(float dt)
+    {
+        for (int n = 0; n < awakeCount; n++)
+        {
+            int i = awakeBodies[n];
+            positionX[i] += velocityX[i] * dt;
+            positionY[i] += velocityY[i] * dt;
+            positionZ[i] += velocityZ[i] * dt;
+        }
+
+        float h = dt * 0.5F;
+
+        for (int n = 0; n < awakeCount; n++)
+        {
+            int i = awakeBodies[n];
+            float wx = angularVelocityX[i];
+            float wy = angularVelocityY[i];
+            float wz = angularVelocityZ[i];
+
+            if (wx == 0.0F && wy == 0.0F && wz == 0.0F)
+                continue;
+
+            float qx = rotationX[i];
+            float qy = rotationY[i];
+            float qz = rotationZ[i];
+            float qw = rotationW[i];
+
+            // q' = q + 0.5 * dt * (w, 0) * q
+            float nx = qx + h * (wx * qw + wy * qz - wz * qy);
+            float ny = qy + h * (wy * qw + wz * qx - wx * qz);
+            float nz = qz + h * (wz * qw + wx * qy - wy * qx);
+            float nw = qw + h * (-wx * qx - wy * qy - wz * qz);
+
+            float invLength = (float) (1.0 / Math.sqrt(nx * nx + ny * ny + nz * nz + nw * nw));
+            rotationX[i] = nx * invLength;
+            rotationY[i] = ny * invLength;
+            rotationZ[i] = nz * invLength;
+            rotationW[i] = nw * invLength;
+        }
+    }
+
+    /**
+     * Finds the bodies that move far enough to tunnel this step, and sweeps them against the bodies
+     * that they can reach in the broadphase. The final positions are applied after the
+     * other bodies have been integrated, so every sweep sees the other bodies at the start of the
+     * step.
+     */
+    private void sweepFastBodies(float dt)
+    {
+        sweptCount = 0;
+
+        if (!continuousCollisionEnabled)
+            return;
+
+        for (int n = 0; n < awakeCount; n++)
+        {
+            int i = awakeBodies[n];
+
+            if (!(shapes[i] instanceof ConvexShape))
+                continue;
+
+            float radius = getSweptRadius(i);
+            float motion = (velocityX[i] * velocityX[i] + velocityY[i] * velocityY[i] + velocityZ[i] * velocityZ[i]) * dt * dt;
+            float threshold = continuousCollisionThreshold * radius;
+
+            if (motion <= threshold * threshold)
+                continue;
+
+            if (sweptCount == sweptBodies.length)
+            {
+                sweptBodies = Arrays.copyOf(sweptBodies, sweptCount * 2);
+                sweptPositions = Arrays.copyOf(sweptPositions, sweptCount * 6);
+            }
+
+            sweptBodies[sweptCount++] = i;
+        }
+
+        CollisionContext context = CollisionContext.get();
+
+        for (int s = 0; s < sweptCount; s++)
+        {
+            findPartners(sweptBodies[s], dt);
+            sweepBody(context, s, dt);
+        }
+    }
+
+    /**
+     * Finds the bodies that a swept body may hit this step, from the bounds of the body grown by the
+     * distance it can travel in any direction, since it may bounce off in a new direction partway
+     * through the step. The partners are sorted, so the order does not depend on the layout of the
+     * broadphase.
+     */
+    private void findPartners(int i, float dt)
+    {
+        float distance = (float) Math.sqrt(velocityX[i] * velocityX[i] + velocityY[i] * velocityY[i] + velocityZ[i] * velocityZ[i]) * dt;
+        computeBounds(i, aabb);
+        partnerCount = 0;
+        sweptBody = i;
+        broadphase.query(aabb[0] - distance, aabb[1] - distance, aabb[2] - distance, aabb[3] + distance, aabb[4] + distance, aabb[5] + distance, partnerCallback);
+        Arrays.sort(partners, 0, partnerCount);
+    }
+
+    private boolean addPartner(int proxy)
+    {
+        int j = broadphase.getUserData(proxy);
+
+        if (j == sweptBody || shapes[j] == null)
+            return true;
+
+        if (partnerCount == partners.length)
+            partners = Arrays.copyOf(partners, partnerCount * 2);
+
+        partners[partnerCount++] = j;
+        return true;
+    }
+
+    /**
+     * Moves a swept body through the step, stopping at every time of impact to bounce it off the
+     * body it hit. Whatever is left of the step after the last substep is dropped, which leaves the
+     * body resting against the last surface it hit rather than passing through it.
+     */
+    private void sweepBody(CollisionContext context, int s, float dt)
+    {
+        int i = sweptBodies[s];
+        float x = positionX[i], y = positionY[i], z = positionZ[i];
+        float remaining = dt;
+        sweptRadius = getSweptRadius(i);
+
+        for (int substep = 0; substep < MAX_TOI_SUBSTEPS && remaining > 0.0F; substep++)
+        {
+            float timeOfImpact = 1.0F;
+            float nx = 0.0F, ny = 0.0F, nz = 0.0F;
+            int hit = -1;
+
+            for (int p = 0; p < partnerCount; p++)
+            {
+                int j = partners[p];
+                float time = getTimeOfImpact(context, i, j, x, y, z, remaining);
+
+                if (time >= 0.0F && time < timeOfImpact)
+                {
+                    timeOfImpact = time;
+                    hit = j;
+                    nx = impactNormalX;
+                    ny = impactNormalY;
+                    nz = impactNormalZ;
+                }
+            }
+
+            x += velocityX[i] * remaining * timeOfImpact;
+            y += velocityY[i] * remaining * timeOfImpact;
+            z += velocityZ[i] * remaining * timeOfImpact;
+
+            if (hit < 0)
+                break;
+
+            remaining *= 1.0F - timeOfImpact;
+            resolveImpact(i, hit, nx, ny, nz);
+        }
+
+        sweptPositions[s * 3] = x;
+        sweptPositions[s * 3 + 1] = y;
+        sweptPositions[s * 3 + 2] = z;
+    }
+
+    /**
+     * Finds the first time that the swept sphere of body i, starting at the given position, touches
+     * body j while both move with their current velocities for the given time. The normal of the
+     * impact, pointing from j towards i, is left in the impact normal fields.
+     *
+     * @return The fraction of the time at which they touch, or -1 if they do not.
+     */
+    private float getTimeOfImpact(CollisionContext context, int i, int j, float x, float y, float z, float time)
+    {
+        float mx = (velocityX[i] - velocityX[j]) * time;
+        float my = (velocityY[i] - velocityY[j]) * time;
+        float mz = (velocityZ[i] - velocityZ[j]) * time;
+        CollisionResult result = collisionResult;
+
+        if (shapes[j] instanceof TriangleMeshShape)
+        {
+            float fraction = context.sweepSphere((TriangleMeshShape) shapes[j], positionX[j], positionY[j], positionZ[j], rotationX[j], rotationY[j], rotationZ[j], rotationW[j], x, y, z, mx, my, mz, sweptRadius, TOI_TOLERANCE, result);
+
+            if (fraction >= 0.0F)
+            {
+                impactNormalX = result.getNormal().x;
+                impactNormalY = result.getNormal().y;
+                impactNormalZ = result.getNormal().z;
+            }
+
+            return fraction;
+        }
+
+        if (!(shapes[j] instanceof ConvexShape))
+            return -1.0F;
+
+        float fraction = context.sweepSphere((ConvexShape) shapes[j], positionX[j], positionY[j], positionZ[j], rotationX[j], rotationY[j], rotationZ[j], rotationW[j], x, y, z, mx, my, mz, sweptRadius, TOI_TOLERANCE, result);
+
+        if (fraction >= 0.0F)
+        {
+            impactNormalX = result.getNormal().x;
+            impactNormalY = result.getNormal().y;
+            impactNormalZ = result.getNormal().z;
+        }
+
+        return fraction;
+    }
+
+    /**
+     * Bounces body i off body j at a time of impact, along the normal pointing from j towards i.
+     * Only the linear velocities are changed, since the contact point lies on the line through the
+     * center of the swept sphere, and friction is left to the contacts of the next step.
+     */
+    private void resolveImpact(int i, int j, float nx, float ny, float nz)
+    {
+        float approach = (velocityX[i] - velocityX[j]) * nx + (velocityY[i] - velocityY[j]) * ny + (velocityZ[i] - velocityZ[j]) * nz;
+
+        if (approach >= 0.0F)
+            return;
+
+        float ima = inverseMass[i];
+        float imb = inverseMass[j];
+        float impulse = -(1.0F + Math.max(restitution[i], restitution[j])) * approach / (ima + imb);
+
+        velocityX[i] += nx * impulse * ima;
+        velocityY[i] += ny * impulse * ima;
+        velocityZ[i] += nz * impulse * ima;
+
+        if (imb > 0.0F)
+        {
+            velocityX[j] -= nx * impulse * imb;
+            velocityY[j] -= ny * impulse * imb;
+            velocityZ[j] -= nz * impulse * imb;
+            wake(j);
+        }
+    }
+
+    private void applySweptPositions()
+    {
+        for (int s = 0; s < sweptCount; s++)
+        {
+            int i = sweptBodies[s];
+            positionX[i] = sweptPositions[s * 3];
+            positionY[i] = sweptPositions[s * 3 + 1];
+            positionZ[i] = sweptPositions[s * 3 + 2];
+        }
+    }
+
+    /**
+     * Gets the radius of the sphere that is swept for a body, which is the largest sphere that fits
+     * inside its bounds.
+     */
+    private float getSweptRadius(int i)
+    {
+        return Math.min(boundsHalfX[i], Math.min(boundsHalfY[i], boundsHalfZ[i]));
+    }
+
+    private void updateBroadphase(float dt)
+    {
+        for (int n = 0; n < awakeCount; n++)
+        {
+            int i = awakeBodies[n];
+            computeBounds(i, aabb);
+            broadphase.moveProxy(proxyId[i], aabb[0], aabb[1], aabb[2], aabb[3], aabb[4], aabb[5], velocityX[i] * dt, velocityY[i] * dt, velocityZ[i] * dt);
+        }
+
+        pairCount = 0;
+        broadphase.findPairs(pairCallback);
+        sortPairs();
+    }
+
+    /**
+     * Sorts the pairs by the indices of their bodies. The order that the broadphase reports pairs in
+     * depends on the history of its proxies, which is not part of the simulation state, so the pairs
+     * are sorted to keep the order that contacts are created in the same after restoring a snapshot.
+     */
+    private void sortPairs()
+    {
+        if (pairKeys.length < pairCount)
+            pairKeys = new long[pairA.length];
+
+        for (int i = 0; i < pairCount; i++)
+            pairKeys[i] = (long) Math.min(pairA[i], pairB[i]) << 32 | Math.max(pairA[i], pairB[i]);
+
+        Arrays.sort(pairKeys, 0, pairCount);
+
+        for (int i = 0; i < pairCount; i++)
+        {
+            pairA[i] = (int) (pairKeys[i] >>> 32);
+            pairB[i] = (int) pairKeys[i];
+        }
+    }
+
+    private void addPair(int proxyA, int proxyB)
+    {
+        if (pairCount == pairA.length)
+        {
+            pairA = Arrays.copyOf(pairA, pairCount * 2);
+            pairB = Arrays.copyOf(pairB, pairCount * 2);
+        }
+
+        pairA[pairCount] = broadphase.getUserData(proxyA);
+        pairB[pairCount] = broadphase.getUserData(proxyB);
+        pairCount++;
+    }
+
+    private void findContacts()
+    {
+        CollisionContext context = CollisionContext.get();
+
+        for (int i = 0; i < pairCount; i++)
+        {
+            int a = pairA[i];
+            int b = pairB[i];
+
+            // Meshes are always body A, and convex pairs are ordered by body id, so a pair always
+            // maps to the same manifold.
+            if (shapes[b] instanceof TriangleMeshShape || (!(shapes[a] instanceof TriangleMeshShape) && bodyId[a] > bodyId[b]))
+            {
+                a = pairB[i];
+                b = pairA[i];
+            }
+
+            if (!collide(context, a, b))
+                continue;
+
+            // A single step of the narrowphase finds only one point of a flat contact, so the shapes
+            // are tilted slightly around the normal to fill the manifold faster. Spheres only ever
+            // have one point, so they are skipped.
+            if (shapes[a] instanceof SphereShape || shapes[b] instanceof SphereShape)
+                continue;
+
+            int manifold = contacts.find(ContactManifolds.getKey(bodyId[a], bodyId[b]));
+
+            if (manifold >= 0 && contacts.pointCount[manifold] < 3)
+                addPerturbedContacts(context, a, b);
+        }
+    }
+
+    /**
+     * Runs the narrowphase on a pair of bodies, adding any contacts to their manifold.
+     *
+     * @return true if the bodies are touching.
+     */
+    private boolean collide(CollisionContext context, int a, int b)
+    {
+        CollisionShape shapeA = shapes[a];
+        CollisionShape shapeB = shapes[b];
+        CollisionResult result = collisionResult;
+
+        if (shapeA instanceof ConvexShape && shapeB instanceof ConvexShape)
+        {
+            if (!context.collide((ConvexShape) shapeA, positionX[a], positionY[a], positionZ[a], rotationX[a], rotationY[a], rotationZ[a], rotationW[a], (ConvexShape) shapeB, positionX[b], positionY[b], positionZ[b], rotationX[b], rotationY[b], rotationZ[b], rotationW[b], result))
+                return false;
+
+            addContact(a, b, result);
+            return true;
+        } else if (shapeA instanceof TriangleMeshShape && shapeB instanceof ConvexShape)
+        {
+            return collideMesh(context, a, b, result);
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the contacts between a mesh body and a convex body. The mesh body is always body A of
+     * the contacts.
+     */
+    private boolean collideMesh(CollisionContext context, int mesh, int convex, CollisionResult result)
+    {
+        meshBody = mesh;
+        convexBody = convex;
+        return context.collide((TriangleMeshShape) shapes[mesh], positionX[mesh], positionY[mesh], positionZ[mesh], rotationX[mesh], rotationY[mesh], rotationZ[mesh], rotationW[mesh], (ConvexShape) shapes[convex], positionX[convex], positionY[convex], positionZ[convex], rotationX[convex], rotationY[convex], rotationZ[convex], rotationW[convex], meshContactCallback, result) > 0;
+    }
+
+    private void addMeshContact(int triangle, CollisionResult result)
+    {
+        addContact(meshBody, convexBody, result);
+    }
+
+    /**
+     * Runs the narrowphase again with one of the bodies rotated slightly around axes perpendicular
+     * to the contact normal, and adds the contacts found back in the unrotated pose.
+     */
+    private void addPerturbedContacts(CollisionContext context, int a, int b)
+    {
+        int body = inverseMass[b] > 0.0F ? b : a;
+        // The contacts found in the perturbed poses keep the normal of the real pose.
+        float nx = perturbationNormalX = collisionResult.getNormal().x;
+        float ny = perturbationNormalY = collisionResult.getNormal().y;
+        float nz = perturbationNormalZ = collisionResult.getNormal().z;
+
+        // Two directions perpendicular to the normal.
+        float t1x, t1y, t1z;
+
+        if (Math.abs(nx) > 0.57735F)
+        {
+            t1x = ny;
+            t1y = -nx;
+            t1z = 0.0F;
+        } else
+        {
+            t1x = 0.0F;
+            t1y = nz;
+            t1z = -ny;
+        }
+
+        float length = (float) Math.sqrt(t1x * t1x + t1y * t1y + t1z * t1z);
+        t1x /= length;
+        t1y /= length;
+        t1z /= length;
+        float t2x = ny * t1z - nz * t1y, t2y = nz * t1x - nx * t1z, t2z = nx * t1y - ny * t1x;
+
+        float qx = unperturbedX = rotationX[body];
+        float qy = unperturbedY = rotationY[body];
+        float qz = unperturbedZ = rotationZ[body];
+        float qw = unperturbedW = rotationW[body];
+        // StrictMath is used for the angles, since Math may give different results on different
+        // platforms, which would break lockstep simulations.
+        float sin = (float) StrictMath.sin(PERTURBATION_ANGLE * 0.5F);
+        perturbationW = (float) StrictMath.cos(PERTURBATION_ANGLE * 0.5F);
+        perturbedBody = body;
+
+        for (int i = 0; i < PERTURBATION_ITERATIONS; i++)
+        {
+            // Offset by half a step, so boxes lying flat are tilted onto their corners rather than
+            // their edges, whose witness points would be the middle of the edge.
+            double angle = 2.0 * Math.PI * (i + 0.5) / PERTURBATION_ITERATIONS;
+            float cos = (float) StrictMath.cos(angle), sinAngle = (float) StrictMath.sin(angle);
+            perturbationX = (t1x * cos + t2x * sinAngle) * sin;
+            perturbationY = (t1y * cos + t2y * sinAngle) * sin;
+            perturbationZ = (t1z * cos + t2z * sinAngle) * sin;
+
+            // Rotate the body by the perturbation around its center.
+            float dx = perturbationX, dy = perturbationY, dz = perturbationZ, dw = perturbationW;
+            rotationX[body] = dw * qx + dx * qw + dy * qz - dz * qy;
+            rotationY[body] = dw * qy + dy * qw + dz * qx - dx * qz;
+            rotationZ[body] = dw * qz + dz * qw + dx * qy - dy * qx;
+            rotationW[body] = dw * qw - dx * qx - dy * qy - dz * qz;
+
+            collide(context, a, b);
+        }
+
+        rotationX[body] = qx;
+        rotationY[body] = qy;
+        rotationZ[body] = qz;
+        rotationW[body] = qw;
+        perturbedBody = -1;
+    }
+
+    private void addContact(int a, int b, CollisionResult result)
+    {
+        float nx = result.getNormal().x, ny = result.getNormal().y, nz = result.getNormal().z;
+        float pax = result.getPointA().x, pay = result.getPointA().y, paz = result.getPointA().z;
+        float pbx = result.getPointB().x, pby = result.getPointB().y, pbz = result.getPointB().z;
+        float depth = result.getDepth();
+
+        if (perturbedBody >= 0)
+        {
+            // Rotate the point on the perturbed body back with it, and project it onto the surface
+            // of the other body, which is taken to be the plane through its contact point.
+            int body = perturbedBody;
+            nx = perturbationNormalX;
+            ny = perturbationNormalY;
+            nz = perturbationNormalZ;
+            float x = (body == b ? pbx : pax) - positionX[body];
+            float y = (body == b ? pby : pay) - positionY[body];
+            float z = (body == b ? pbz : paz) - positionZ[body];
+            float ux = positionX[body] + rotateX(-perturbationX, -perturbationY, -perturbationZ, perturbationW, x, y, z);
+            float uy = positionY[body] + rotateY(-perturbationX, -perturbationY, -perturbationZ, perturbationW, x, y, z);
+            float uz = positionZ[body] + rotateZ(-perturbationX, -perturbationY, -perturbationZ, perturbationW, x, y, z);
+
+            if (body == b)
+            {
+                depth = (pax - ux) * nx + (pay - uy) * ny + (paz - uz) * nz;
+                pbx = ux;
+                pby = uy;
+                pbz = uz;
+                pax = ux + nx * depth;
+                pay = uy + ny * depth;
+                paz = uz + nz * depth;
+            } else
+            {
+                depth = (ux - pbx) * nx + (uy - pby) * ny + (uz - pbz) * nz;
+                pax = ux;
+                pay = uy;
+                paz = uz;
+                pbx = ux - nx * depth;
+                pby = uy - ny * depth;
+                pbz = uz - nz * depth;
+            }
+        }
+
+        int manifold = contacts.findOrCreate(ContactManifolds.getKey(bodyId[a], bodyId[b]), a, b);
+        contacts.friction[manifold] = (float) Math.sqrt(friction[a] * friction[b]);
+        contacts.restitution[manifold] = Math.max(restitution[a], restitution[b]);
+
+        if (perturbedBody >= 0)
+        {
+            // The manifold stores the points in the local space of the bodies, so the point has to
+            // be added while the perturbed body is back in its real pose.
+            int body = perturbedBody;
+            float qx = rotationX[body], qy = rotationY[body], qz = rotationZ[body], qw = rotationW[body];
+            rotationX[body] = unperturbedX;
+            rotationY[body] = unperturbedY;
+            rotationZ[body] = unperturbedZ;
+            rotationW[body] = unperturbedW;
+            contacts.addPoint(this, manifold, pax, pay, paz, pbx, pby, pbz, nx, ny, nz, depth);
+            rotationX[body] = qx;
+            rotationY[body] = qy;
+            rotationZ[body] = qz;
+            rotationW[body] = qw;
+        } else
+        {
+            contacts.addPoint(this, manifold, pax, pay, paz, pbx, pby, pbz, nx, ny, nz, depth);
+        }
+    }
+
+    private void solveContacts(float dt)
+    {
+        solver.prepare(this, contacts);
+
+        int manifoldCount = islands.manifoldStart[islands.islandCount];
+
+        if (multithreaded && islands.islandCount > 1 && manifoldCount >= MIN_PARALLEL_MANIFOLDS)
+        {
+            getWorkerPool().invoke(solveTask.set(0, islands.islandCount, dt));
+        } else
+        {
+            solveIslands(0, islands.islandCount, dt);
+        }
+    }
+
+    private void solveIslands(int start, int end, float dt)
+    {
+        for (int island = start; island < end; island++)
+            solver.solveIsland(this, contacts, islands, island, dt, solverIterations);
+    }
+
+    private ForkJoinPool getWorkerPool()
+    {
+        if (workerPool == null)
+        {
+            int parallelism = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+
+            workerPool = new ForkJoinPool(parallelism, pool ->
+            {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("PHYSICS-WORKER-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+
+        return workerPool;
+    }
+
+    /**
+     * Solves a range of islands, splitting it in two halves of roughly equal numbers of manifolds
+     * until the ranges are small enough to solve directly. The islands of a range are disjoint from
+     * every other range, so the halves can run on any worker without synchronization.
+     *
+     * The tasks form a tree that is kept between steps, and every task reuses the tasks of its two
+     * halves, so solving allocates nothing once the tree has grown to fit the islands.
+     */
+    private class SolveIslandsTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int start;
+        private int end;
+        private float dt;
+        private SolveIslandsTask first;
+        private SolveIslandsTask second;
+
+        SolveIslandsTask set(int start, int end, float dt)
+        {
+            this.start = start;
+            this.end = end;
+            this.dt = dt;
+            reinitialize();
+            return this;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int manifoldStart = islands.manifoldStart[start];
+            int manifoldEnd = islands.manifoldStart[end];
+
+            if (end - start < 2 || manifoldEnd - manifoldStart < MIN_PARALLEL_MANIFOLDS)
+            {
+                solveIslands(start, end, dt);
+                return;
+            }
+
+            // The manifold starts are sorted, so the island that holds the middle manifold can be
+            // found with a binary search. One island with most of the manifolds ends up alone.
+            int middle = Arrays.binarySearch(islands.manifoldStart, start, end, (manifoldStart + manifoldEnd) >>> 1);
+            middle = middle < 0 ? -middle - 1 : middle;
+            middle = Math.max(start + 1, Math.min(end - 1, middle));
+
+            if (first == null)
+            {
+                first = new SolveIslandsTask();
+                second = new SolveIslandsTask();
+            }
+
+            invokeAll(first.set(start, middle, dt), second.set(middle, end, dt));
+        }
+    }
+
+    /**
+     * Puts the islands to sleep whose bodies have all been at rest for long enough.
+     */
+    private void updateSleeping(float dt)
+    {
+        if (!sleepingEnabled)
+            return;
+
+        float linearTolerance = LINEAR_SLEEP_TOLERANCE * LINEAR_SLEEP_TOLERANCE;
+        float angularTolerance = ANGULAR_SLEEP_TOLERANCE * ANGULAR_SLEEP_TOLERANCE;
+
+        for (int island = 0; island < islands.islandCount; island++)
+        {
+            float minSleepTime = Float.POSITIVE_INFINITY;
+
+            for (int n = islands.bodyStart[island]; n < islands.bodyStart[island + 1]; n++)
+            {
+                int i = islands.bodies[n];
+                float linear = velocityX[i] * velocityX[i] + velocityY[i] * velocityY[i] + velocityZ[i] * velocityZ[i];
+                float angular = angularVelocityX[i] * angularVelocityX[i] + angularVelocityY[i] * angularVelocityY[i] + angularVelocityZ[i] * angularVelocityZ[i];
+
+                if (linear > linearTolerance || angular > angularTolerance)
+                    sleepTime[i] = 0.0F;
+                else
+                    sleepTime[i] += dt;
+
+                minSleepTime = Math.min(minSleepTime, sleepTime[i]);
+            }
+
+            if (minSleepTime >= TIME_TO_SLEEP)
+                sleep(island);
+        }
+    }
+
+    private void writeTransformations()
+    {
+        for (int n = 0; n < awakeCount; n++)
+            writeTransformation(awakeBodies[n]);
+    }
+
+    private void writeTransformation(int i)
+    {
+        GameObject object = bodies[i].getParent();
+
+        if (object == null)
+            return;
+
+        Vector3f translation = object.getTransformation().getTranslation();
+        Quaternion rotation = object.getTransformation().getRotation();
+        GameObject parent = object.getParent();
+
+        translation.set(positionX[i], positionY[i], positionZ[i]);
+        rotation.set(-rotationX[i], -rotationY[i], -rotationZ[i], rotationW[i]);
+
+        // Move the world pose of a nested object into the space of its parent.
+        if (parent != null && Matrix4f.invert(parent.getWorldMatrix(), inverseParentMatrix) != null)
+        {
+            Matrix4f m = inverseParentMatrix;
+            float x = positionX[i], y = positionY[i], z = positionZ[i];
+            translation.set(m.m00 * x + m.m10 * y + m.m20 * z + m.m30, m.m01 * x + m.m11 * y + m.m21 * z + m.m31, m.m02 * x + m.m12 * y + m.m22 * z + m.m32);
+            parent.getWorldRotation(parentRotation).negate(parentRotation);
+            Quaternion.mul(rotation, parentRotation, rotation);
+        }
+    }
+
+    /**
+     * Copies the simulation state of this world into a full snapshot.
+     *
+     * @param dest The snapshot to overwrite.
+     */
+    public synchronized void saveSnapshot(PhysicsSnapshot dest)
+    {
+        saveSnapshot(dest, null);
+    }
+
+    /**
+     * Copies the simulation state of this world into a snapshot. If a base snapshot is given, only
+     * the bodies whose state differs from the base are written, and the base is needed to restore
+     * the snapshot.
+     *
+     * @param dest The snapshot to overwrite.
+     * @param base A full snapshot of this world to take a delta snapshot against, or null to take a
+     *             full snapshot.
+     */
+    public synchronized void saveSnapshot(PhysicsSnapshot dest, PhysicsSnapshot base)
+    {
+        ByteBuffer baseBuffer = null;
+
+        if (base != null)
+        {
+            if (base.isDelta() || base == dest)
+                throw new IllegalArgumentException("Delta snapshots must be taken against a different full snapshot");
+
+            baseBuffer = base.read();
+            checkSnapshot(baseBuffer);
+        }
+
+        int recordSize = base == null ? PhysicsSnapshot.BODY_SIZE : PhysicsSnapshot.BODY_SIZE + 4;
+        ByteBuffer buffer = dest.begin(PhysicsSnapshot.HEADER_SIZE + bodyCount * recordSize + awakeCount * 4 + contacts.getSnapshotSize(bodyCount), base);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(base == null ? 0 : 1).putLong(stepCount);
+        buffer.putInt(bodyCount).putInt(nextBodyId).putInt(awakeCount).putInt(0);
+        int records = 0;
+
+        for (int i = 0; i < bodyCount; i++)
+        {
+            if (baseBuffer != null && !isBodyChanged(baseBuffer, PhysicsSnapshot.HEADER_SIZE + i * PhysicsSnapshot.BODY_SIZE, i))
+                continue;
+
+            if (baseBuffer != null)
+                buffer.putInt(i);
+
+            writeBody(buffer, i);
+            records++;
+        }
+
+        buffer.putInt(PhysicsSnapshot.HEADER_SIZE - 4, records);
+
+        for (int n = 0; n < awakeCount; n++)
+            buffer.putInt(awakeBodies[n]);
+
+        contacts.write(dest, bodyCount);
+        dest.end();
+    }
+
+    /**
+     * Restores the simulation state of this world from a snapshot. The snapshot must have been taken
+     * from this world, with the same bodies as it has now. Only the bodies whose state changed have
+     * their broadphase proxies and game object transformations updated.
+     *
+     * @param snapshot The snapshot to restore.
+     * @throws IllegalArgumentException If the bodies of this world have changed since the snapshot
+     *                                  was taken.
+     */
+    public synchronized void restoreSnapshot(PhysicsSnapshot snapshot)
+    {
+        ByteBuffer buffer = snapshot.read();
+        checkSnapshot(buffer);
+        ByteBuffer baseBuffer = null;
+
+        if (snapshot.isDelta())
+        {
+            baseBuffer = snapshot.getBase().read();
+            checkSnapshot(baseBuffer);
+        }
+
+        stepCount = buffer.getLong(8);
+        int records = buffer.getInt(PhysicsSnapshot.HEADER_SIZE - 4);
+        int restoredCount = 0;
+
+        if (baseBuffer == null)
+        {
+            for (int i = 0; i < bodyCount; i++)
+            {
+                if (readBody(buffer, PhysicsSnapshot.HEADER_SIZE + i * PhysicsSnapshot.BODY_SIZE, i))
+                    restoredBodies[restoredCount++] = i;
+            }
+
+            buffer.position(PhysicsSnapshot.HEADER_SIZE + records * PhysicsSnapshot.BODY_SIZE);
+        } else
+        {
+            // The records of the delta are sorted by body index, so they are merged with the base.
+            int recordSize = PhysicsSnapshot.BODY_SIZE + 4;
+            int record = 0;
+            int next = records > 0 ? buffer.getInt(PhysicsSnapshot.HEADER_SIZE) : bodyCount;
+
+            for (int i = 0; i < bodyCount; i++)
+            {
+                boolean changed;
+
+                if (i == next)
+                {
+                    changed = readBody(buffer, PhysicsSnapshot.HEADER_SIZE + record * recordSize + 4, i);
+                    record++;
+                    next = record < records ? buffer.getInt(PhysicsSnapshot.HEADER_SIZE + record * recordSize) : bodyCount;
+                } else
+                {
+                    changed = readBody(baseBuffer, PhysicsSnapshot.HEADER_SIZE + i * PhysicsSnapshot.BODY_SIZE, i);
+                }
+
+                if (changed)
+                    restoredBodies[restoredCount++] = i;
+            }
+
+            buffer.position(PhysicsSnapshot.HEADER_SIZE + records * recordSize);
+        }
+
+        Arrays.fill(awakeIndex, 0, bodyCount, -1);
+        awakeCount = buffer.getInt(24);
+
+        for (int n = 0; n < awakeCount; n++)
+        {
+            awakeBodies[n] = buffer.getInt();
+            awakeIndex[awakeBodies[n]] = n;
+        }
+
+        contacts.read(buffer, bodyCount);
+
+        for (int n = 0; n < restoredCount; n++)
+        {
+            updateProxy(restoredBodies[n]);
+            writeTransformation(restoredBodies[n]);
+        }
+    }
+
+    private void checkSnapshot(ByteBuffer buffer)
+    {
+        if (buffer.limit() < PhysicsSnapshot.HEADER_SIZE || buffer.getInt(0) != SNAPSHOT_MAGIC)
+            throw new IllegalArgumentException("The snapshot is empty");
+
+        if (buffer.getInt(16) != bodyCount || buffer.getInt(20) != nextBodyId)
+            throw new IllegalArgumentException("The snapshot was taken with different bodies than this world has");
+    }
+
+    private void writeBody(ByteBuffer buffer, int i)
+    {
+        buffer.putInt(bodyId[i]).putInt(sleepNext[i]);
+        buffer.putFloat(positionX[i]).putFloat(positionY[i]).putFloat(positionZ[i]);
+        buffer.putFloat(rotationX[i]).putFloat(rotationY[i]).putFloat(rotationZ[i]).putFloat(rotationW[i]);
+        buffer.putFloat(velocityX[i]).putFloat(velocityY[i]).putFloat(velocityZ[i]);
+        buffer.putFloat(angularVelocityX[i]).putFloat(angularVelocityY[i]).putFloat(angularVelocityZ[i]);
+        buffer.putFloat(forceX[i]).putFloat(forceY[i]).putFloat(forceZ[i]);
+        buffer.putFloat(torqueX[i]).putFloat(torqueY[i]).putFloat(torqueZ[i]);
+        buffer.putFloat(sleepTime[i]);
+    }
+
+    /**
+     * Checks if the state of a body differs from the record of it at the given offset of a snapshot,
+     * comparing the bits of every value so that a restored world matches exactly.
+     */
+    private boolean isBodyChanged(ByteBuffer buffer, int offset, int i)
+    {
+        return buffer.getInt(offset) != bodyId[i] || buffer.getInt(offset + 4) != sleepNext[i]
+                || buffer.getInt(offset + 8) != Float.floatToRawIntBits(positionX[i]) || buffer.getInt(offset + 12) != Float.floatToRawIntBits(positionY[i]) || buffer.getInt(offset + 16) != Float.floatToRawIntBits(positionZ[i])
+                || buffer.getInt(offset + 20) != Float.floatToRawIntBits(rotationX[i]) || buffer.getInt(offset + 24) != Float.floatToRawIntBits(rotationY[i]) || buffer.getInt(offset + 28) != Float.floatToRawIntBits(rotationZ[i]) || buffer.getInt(offset + 32) != Float.floatToRawIntBits(rotationW[i])
+                || buffer.getInt(offset + 36) != Float.floatToRawIntBits(velocityX[i]) || buffer.getInt(offset + 40) != Float.floatToRawIntBits(velocityY[i]) || buffer.getInt(offset + 44) != Float.floatToRawIntBits(velocityZ[i])
+                || buffer.getInt(offset + 48) != Float.floatToRawIntBits(angularVelocityX[i]) || buffer.getInt(offset + 52) != Float.floatToRawIntBits(angularVelocityY[i]) || buffer.getInt(offset + 56) != Float.floatToRawIntBits(angularVelocityZ[i])
+                || buffer.getInt(offset + 60) != Float.floatToRawIntBits(forceX[i]) || buffer.getInt(offset + 64) != Float.floatToRawIntBits(forceY[i]) || buffer.getInt(offset + 68) != Float.floatToRawIntBits(forceZ[i])
+                || buffer.getInt(offset + 72) != Float.floatToRawIntBits(torqueX[i]) || buffer.getInt(offset + 76) != Float.floatToRawIntBits(torqueY[i]) || buffer.getInt(offset + 80) != Float.floatToRawIntBits(torqueZ[i])
+                || buffer.getInt(offset + 84) != Float.floatToRawIntBits(sleepTime[i]);
+    }
+
+    /**
+     * Reads the state of a body from the record at the given offset of a snapshot.
+     *
+     * @return true if the position, rotation or sleep state of the body changed, so its proxy and
+     *         transformation need to be updated.
+     */
+    private boolean readBody(ByteBuffer buffer, int offset, int i)
+    {
+        if (buffer.getInt(offset) != bodyId[i])
+            throw new IllegalArgumentException("The snapshot was taken with different bodies than this world has");
+
+        boolean moved = buffer.getInt(offset + 4) != sleepNext[i]
+                || buffer.getFloat(offset + 8) != positionX[i] || buffer.getFloat(offset + 12) != positionY[i] || buffer.getFloat(offset + 16) != positionZ[i]
+                || buffer.getFloat(offset + 20) != rotationX[i] || buffer.getFloat(offset + 24) != rotationY[i] || buffer.getFloat(offset + 28) != rotationZ[i] || buffer.getFloat(offset + 32) != rotationW[i];
+
+        sleepNext[i] = buffer.getInt(offset + 4);
+        positionX[i] = buffer.getFloat(offset + 8);
+        positionY[i] = buffer.getFloat(offset + 12);
+        positionZ[i] = buffer.getFloat(offset + 16);
+        rotationX[i] = buffer.getFloat(offset + 20);
+        rotationY[i] = buffer.getFloat(offset + 24);
+        rotationZ[i] = buffer.getFloat(offset + 28);
+        rotationW[i] = buffer.getFloat(offset + 32);
+        velocityX[i] = buffer.getFloat(offset + 36);
+        velocityY[i] = buffer.getFloat(offset + 40);
+        velocityZ[i] = buffer.getFloat(offset + 44);
+        angularVelocityX[i] = buffer.getFloat(offset + 48);
+        angularVelocityY[i] = buffer.getFloat(offset + 52);
+        angularVelocityZ[i] = buffer.getFloat(offset + 56);
+        forceX[i] = buffer.getFloat(offset + 60);
+        forceY[i] = buffer.getFloat(offset + 64);
+        forceZ[i] = buffer.getFloat(offset + 68);
+        torqueX[i] = buffer.getFloat(offset + 72);
+        torqueY[i] = buffer.getFloat(offset + 76);
+        torqueZ[i] = buffer.getFloat(offset + 80);
+        sleepTime[i] = buffer.getFloat(offset + 84);
+        return moved;
+    }
+
+    static float rotateX(float qx, float qy, float qz, float qw, float vx, float vy, float vz)
+    {
+        // v' = v + 2w(q x v) + 2(q x (q x v))
+        float cy = qz * vx - qx * vz;
+        float cz = qx * vy - qy * vx;
+        return vx + 2.0F * (qw * (qy * vz - qz * vy) + qy * cz - qz * cy);
+    }
+
+    static float rotateY(float qx, float qy, float qz, float qw, float vx, float vy, float vz)
+    {
+        float cx = qy * vz - qz * vy;
+        float cz = qx * vy - qy * vx;
+        return vy + 2.0F * (qw * (qz * vx - qx * vz) + qz * cx - qx * cz);
+    }
+
+    static float rotateZ(float qx, float qy, float qz, float qw, float vx, float vy, float vz)
+    {
+        float cx = qy * vz - qz * vy;
+        float cy = qz * vx - qx * vz;
+        return vz + 2.0F * (qw * (qx * vy - qy * vx) + qx * cy - qy * cx);
+    }
+
+    /**
+     * Casts a ray, from {@code origin} to {@code origin + direction * maxFraction}, against the
+     * collision shapes of the bodies in this world, and finds the closest hit.
+     *
+     * @param hit The hit to write the closest hit into.
+     * @return true if a body was hit.
+     */
+    public synchronized boolean raycast(Vector3f origin, Vector3f direction, float maxFraction, RaycastHit hit)
+    {
+        return WorldQuery.get().cast(this, origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, 0.0F, maxFraction, hit);
+    }
+
+    /**
+     * Sweeps a sphere, from {@code origin} to {@code origin + direction * maxFraction}, against the
+     * collision shapes of the bodies in this world, and finds the first body that it touches.
+     *
+     * @param hit The hit to write the closest hit into.
+     * @return true if a body was hit.
+     */
+    public synchronized boolean sphereCast(Vector3f origin, Vector3f direction, float radius, float maxFraction, RaycastHit hit)
+    {
+        return WorldQuery.get().cast(this, origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, radius, maxFraction, hit);
+    }
+
+    /**
+     * Casts a batch of rays against the bodies in this world. Large batches are split between the
+     * workers of the solver when the world is multithreaded.
+     *
+     * @param rays  The rays to cast, as origin xyz followed by direction xyz for each ray.
+     * @param count The number of rays to cast.
+     * @param hits  The hits to write the closest hit of each ray into, one for each ray.
+     */
+    public void raycast(float[] rays, int count, float maxFraction, RaycastHit[] hits)
+    {
+        sphereCast(rays, count, 0.0F, maxFraction, hits);
+    }
+
+    /**
+     * Sweeps a batch of spheres of the same radius against the bodies in this world. Large batches
+     * are split between the workers of the solver when the world is multithreaded.
+     *
+     * @param rays  The rays to sweep along, as origin xyz followed by direction xyz for each ray.
+     * @param count The number of rays to sweep along.
+     * @param hits  The hits to write the first hit of each sphere into, one for each ray.
+     */
+    public synchronized void sphereCast(float[] rays, int count, float radius, float maxFraction, RaycastHit[] hits)
+    {
+        if (count <= 0)
+            return;
+
+        if (rays.length < count * 6 || hits.length < count)
+            throw new IllegalArgumentException("Batch of " + count + " casts does not fit into " + rays.length / 6 + " rays and " + hits.length + " hits");
+
+        // Once the broadphase has finished any pending updates, casts only read the world.
+        broadphase.prepareQueries();
+
+        if (multithreaded && count > MIN_PARALLEL_CASTS)
+            getWorkerPool().invoke(new CastTask(rays, 0, count, radius, maxFraction, hits));
+        else
+            castRays(rays, 0, count, radius, maxFraction, hits);
+    }
+
+    private void castRays(float[] rays, int start, int end, float radius, float maxFraction, RaycastHit[] hits)
+    {
+        WorldQuery query = WorldQuery.get();
+
+        for (int i = start; i < end; i++)
+        {
+            int r = i * 6;
+            query.cast(this, rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5], radius, maxFraction, hits[i]);
+        }
+    }
+
+    /**
+     * Casts a range of a batch of rays, splitting it in halves until the ranges are small enough to
+     * cast directly. Every cast writes only its own hit, so the halves can run on any worker.
+     */
+    private class CastTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] rays;
+        private final int start;
+        private final int end;
+        private final float radius;
+        private final float maxFraction;
+        private final RaycastHit[] hits;
+
+        CastTask(float[] rays, int start, int end, float radius, float maxFraction, RaycastHit[] hits)
+        {
+            this.rays = rays;
+            this.start = start;
+            this.end = end;
+            this.radius = radius;
+            this.maxFraction = maxFraction;
+            this.hits = hits;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (end - start <= MIN_PARALLEL_CASTS)
+            {
+                castRays(rays, start, end, radius, maxFraction, hits);
+                return;
+            }
+
+            int middle = (start + end) >>> 1;
+            invokeAll(new CastTask(rays, start, middle, radius, maxFraction, hits), new CastTask(rays, middle, end, radius, maxFraction, hits));
+        }
+    }
+
+    /**
+     * Finds the bodies whose collision shapes overlap a box, and reports them to the callback in the
+     * order of their indices. The callback is called while the world is locked, and must not start
+     * another overlap query of its own.
+     *
+     * @return The number of bodies that were reported.
+     */
+    public synchronized int overlap(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, OverlapCallback callback)
+    {
+        return WorldQuery.get().overlap(this, minX, minY, minZ, maxX, maxY, maxZ, callback);
+    }
+
+    public Vector3f getGravity()
+    {
+        return gravity;
+    }
+
+    public synchronized void setGravity(Vector3f gravity)
+    {
+        this.gravity.set(gravity);
+    }
+
+    public synchronized int getBodyCount()
+    {
+        return bodyCount;
+    }
+
+    public synchronized RigidBody getBody(int index)
+    {
+        return index >= 0 && index < bodyCount ? bodies[index] : null;
+    }
+
+    public Broadphase getBroadphase()
+    {
+        return broadphase;
+    }
+
+    /**
+     * Gets the number of potentially colliding pairs found by the broadphase in the last step.
+     */
+    public synchronized int getPairCount()
+    {
+        return pairCount;
+    }
+
+    /**
+     * Gets one of the body indices of a pair found in the last step.
+     */
+    public synchronized int getPairBodyA(int pair)
+    {
+        return pairA[pair];
+    }
+
+    public synchronized int getPairBodyB(int pair)
+    {
+        return pairB[pair];
+    }
+
+    /**
+     * Gets the number of contact manifolds, which is the number of touching pairs of bodies.
+     */
+    public synchronized int getManifoldCount()
+    {
+        return contacts.count;
+    }
+
+    /**
+     * Gets the total number of contact points in the manifolds.
+     */
+    public synchronized int getContactCount()
+    {
+        int count = 0;
+
+        for (int m = 0; m < contacts.count; m++)
+            count += contacts.pointCount[m];
+
+        return count;
+    }
+
+    public synchronized int getAwakeBodyCount()
+    {
+        return awakeCount;
+    }
+
+    public synchronized int getSolverIterations()
+    {
+        return solverIterations;
+    }
+
+    /**
+     * Sets the number of times the contact impulses are iterated every step. More iterations give
+     * stiffer stacks, at a cost proportional to the number of awake contacts.
+     */
+    public synchronized void setSolverIterations(int solverIterations)
+    {
+        this.solverIterations = Math.max(1, solverIterations);
+    }
+
+    public synchronized boolean isSleepingEnabled()
+    {
+        return sleepingEnabled;
+    }
+
+    /**
+     * Enables or disables sleeping. Disabling it wakes every sleeping body.
+     */
+    public synchronized void setSleepingEnabled(boolean sleepingEnabled)
+    {
+        this.sleepingEnabled = sleepingEnabled;
+
+        if (!sleepingEnabled)
+        {
+            for (int i = 0; i < bodyCount; i++)
+                wake(i);
+        }
+    }
+
+    public synchronized boolean isMultithreaded()
+    {
+        return multithreaded;
+    }
+
+    /**
+     * Enables or disables solving islands on the worker pool. Disabling it runs every step on the
+     * calling thread, which gives the same results, but keeps the workers idle while profiling or
+     * reproducing a problem.
+     */
+    public synchronized void setMultithreaded(boolean multithreaded)
+    {
+        this.multithreaded = multithreaded;
+    }
+
+    public synchronized int getWorkerCount()
+    {
+        return workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Pins the number of worker threads that islands are solved on. Zero or less uses one worker per
+     * available processor. The pool is recreated on the next step that needs it.
+     */
+    public synchronized void setWorkerCount(int workerCount)
+    {
+        this.workerCount = Math.max(0, workerCount);
+        this.shutdownWorkerPool();
+    }
+
+    /**
+     * Stops the worker threads of this world. The world can still be stepped afterwards, in which case
+     * a new pool is started when it is needed.
+     */
+    public synchronized void dispose()
+    {
+        shutdownWorkerPool();
+    }
+
+    private void shutdownWorkerPool()
+    {
+        if (workerPool != null)
+        {
+            workerPool.shutdown();
+            workerPool = null;
+        }
+    }
+
+    public synchronized boolean isContinuousCollisionEnabled()
+    {
+        return continuousCollisionEnabled;
+    }
+
+    /**
+     * Enables or disables continuous collision detection for fast bodies.
+     */
+    public synchronized void setContinuousCollisionEnabled(boolean continuousCollisionEnabled)
+    {
+        this.continuousCollisionEnabled = continuousCollisionEnabled;
+    }
+
+    public synchronized float getContinuousCollisionThreshold()
+    {
+        return continuousCollisionThreshold;
+    }
+
+    /**
+     * Sets how far a body must move in one step, as a multiple of the radius of the largest sphere
+     * that fits inside its bounds, before it is swept. Lower values catch more tunnelling at the
+     * cost of sweeping more bodies.
+     */
+    public synchronized void setContinuousCollisionThreshold(float continuousCollisionThreshold)
+    {
+        this.continuousCollisionThreshold = Math.max(0.0F, continuousCollisionThreshold);
+    }
+
+    public synchronized long getStepCount()
+    {
+        return stepCount;
+    }
+
+    /**
+     * Computes a hash of the simulation state of every body, combined in index order. Any difference
+     * in the bits of a position, rotation or velocity changes the hash, so comparing the hashes of
+     * two lockstep simulations every tick finds the first tick that they diverge on, and comparing
+     * {@link #computeBodyStateHash(int)} on that tick finds the bodies that differ.
+     */
+    public synchronized long computeStateHash()
+    {
+        long hash = hash(FNV_OFFSET_BASIS, bodyCount);
+
+        for (int i = 0; i < bodyCount; i++)
+            hash = (hash ^ computeBodyStateHash(i)) * FNV_PRIME;
+
+        return hash;
+    }
+
+    /**
+     * Computes a hash of the position, rotation and velocities of the body at the given index.
+     */
+    public synchronized long computeBodyStateHash(int index)
+    {
+        long hash = hash(FNV_OFFSET_BASIS, bodyId[index]);
+        hash = hash(hash, Float.floatToRawIntBits(positionX[index]));
+        hash = hash(hash, Float.floatToRawIntBits(positionY[index]));
+        hash = hash(hash, Float.floatToRawIntBits(positionZ[index]));
+        hash = hash(hash, Float.floatToRawIntBits(rotationX[index]));
+        hash = hash(hash, Float.floatToRawIntBits(rotationY[index]));
+        hash = hash(hash, Float.floatToRawIntBits(rotationZ[index]));
+        hash = hash(hash, Float.floatToRawIntBits(rotationW[index]));
+        hash = hash(hash, Float.floatToRawIntBits(velocityX[index]));
+        hash = hash(hash, Float.floatToRawIntBits(velocityY[index]));
+        hash = hash(hash, Float.floatToRawIntBits(velocityZ[index]));
+        hash = hash(hash, Float.floatToRawIntBits(angularVelocityX[index]));
+        hash = hash(hash, Float.floatToRawIntBits(angularVelocityY[index]));
+        hash = hash(hash, Float.floatToRawIntBits(angularVelocityZ[index]));
+        return hash;
+    }
+
+    /**
+     * Mixes the four bytes of a value into an FNV-1a hash.
+     */
+    private static long hash(long hash, int value)
+    {
+        for (int shift = 0; shift < 32; shift += 8)
+            hash = (hash ^ ((value >>> shift) & 0xFF)) * FNV_PRIME;
+
+        return hash;
+    }
+
+    @FunctionalInterface
+    public interface OverlapCallback
+    {
+        /**
+         * Called for each body that overlaps the query box.
+         *
+         * @return false to stop the query.
+         */
+        boolean overlapCallback(RigidBody body);
+    }
+}
@@ -0,0 +1,161 @@
+package main.physics;
+
+import main.core.scene.FlatScene;
+import main.core.scene.GameObject;
+import main.core.scene.Transformation;
+import main.core.scene.boundingbox.AxisAlignedBB;
+import main.core.util.MathUtils;
+import org.lwjgl.util.vector.Matrix4f;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
+import org.lwjgl.util.vector.Vector4f;
+
+import java.util.Random;
+
+/**
+ * Checks that the bodies of a {@link PhysicsWorld} are simulated where they are drawn. Rotated boxes,
+ * some of them nested in rotated parents, are added to a world and set tumbling, and the bounding
+ * box the world computes for each collider is compared against the bounding box of the local bounds
+ * transformed by the world matrix the object is rendered with, both when the bodies are added and
+ * after they have been stepped.
+ *
+ * This needs no window, and exits with a non-zero status if the check fails.
+ *
+ * @author Kelan
+ */
+public class PhysicsWorldCheck
+{
+    private static final int BODY_COUNT = 100;
+    private static final int STEPS = 60;
+    private static final float TOLERANCE = 1e-3F;
+
+    private final PhysicsWorld world = new PhysicsWorld();
+    private final RigidBody[] bodies = new RigidBody[BODY_COUNT];
+    private final AxisAlignedBB[] bounds = new AxisAlignedBB[BODY_COUNT];
+    private final float[] colliderBounds = new float[6];
+    private final float[] renderBounds = new float[6];
+    private final FlatScene scene;
+
+    public PhysicsWorldCheck(long seed)
+    {
+        Random random = new Random(seed);
+        GameObject[] roots = new GameObject[BODY_COUNT];
+        world.setGravity(new Vector3f());
+
+        for (int i = 0; i < BODY_COUNT; i++)
+        {
+            // Bodies are spread out so that they never touch, and only move by their own velocity.
+            GameObject object = new GameObject(new Transformation(new Vector3f(i * 10.0F, 0.0F, 0.0F), randomRotation(random)));
+            roots[i] = object;
+
+            // Every other body is nested in a rotated parent.
+            if (i % 2 == 1)
+            {
+                GameObject parent = new GameObject(new Transformation(new Vector3f(0.0F, 5.0F, 0.0F), randomRotation(random)));
+                parent.addChild("body", object);
+                roots[i] = parent;
+            }
+
+            // Off-centre bounds with different extents on each axis, so any difference in rotation shows.
+            bounds[i] = new AxisAlignedBB(0.3F, -0.2F, 0.1F, 0.5F, 1.0F, 2.0F);
+            bodies[i] = new RigidBody(1.0F).setBounds(bounds[i]);
+            object.addComponent("body", bodies[i]);
+        }
+
+        // The world reads the world pose of each object when its body is added, like the scene
+        // graph, which computes the world matrices before it initialises any components.
+        this.scene = new FlatScene(roots);
+        scene.updateTransformations();
+
+        for (int i = 0; i < BODY_COUNT; i++)
+        {
+            world.addBody(bodies[i]);
+            bodies[i].setAngularVelocity(new Vector3f(random.nextFloat() * 4.0F - 2.0F, random.nextFloat() * 4.0F - 2.0F, random.nextFloat() * 4.0F - 2.0F));
+        }
+    }
+
+    private static Quaternion randomRotation(Random random)
+    {
+        Vector3f axis = new Vector3f(random.nextFloat() - 0.5F, random.nextFloat() - 0.5F, random.nextFloat() - 0.5F);
+        return MathUtils.axisAngleToQuaternion((Vector3f) axis.normalise(), random.nextFloat() * 6.0F, null);
+    }
+
+    /**
+     * Compares the collider bounds of every body against its rendered bounds.
+     *
+     * @return The number of bodies whose bounds differ.
+     */
+    private int compareBounds()
+    {
+        int mismatches = 0;
+
+        for (int i = 0; i < BODY_COUNT; i++)
+        {
+            world.computeBounds(bodies[i].index, colliderBounds);
+            getRenderBounds(bodies[i].getParent().getWorldMatrix(), bounds[i], renderBounds);
+
+            for (int axis = 0; axis < 6; axis++)
+            {
+                if (Math.abs(colliderBounds[axis] - renderBounds[axis]) > TOLERANCE)
+                {
+                    mismatches++;
+                    break;
+                }
+            }
+        }
+
+        return mismatches;
+    }
+
+    /**
+     * Transforms the corners of the local bounds by the world matrix, and finds the box around them.
+     */
+    private static void getRenderBounds(Matrix4f matrix, AxisAlignedBB bounds, float[] dest)
+    {
+        Vector3f min = bounds.getMin(null), max = bounds.getMax(null);
+        Vector4f corner = new Vector4f();
+
+        for (int axis = 0; axis < 3; axis++)
+        {
+            dest[axis] = Float.POSITIVE_INFINITY;
+            dest[axis + 3] = Float.NEGATIVE_INFINITY;
+        }
+
+        for (int n = 0; n < 8; n++)
+        {
+            corner.set((n & 1) == 0 ? min.x : max.x, (n & 2) == 0 ? min.y : max.y, (n & 4) == 0 ? min.z : max.z, 1.0F);
+            Matrix4f.transform(matrix, corner, corner);
+
+            dest[0] = Math.min(dest[0], corner.x);
+            dest[1] = Math.min(dest[1], corner.y);
+            dest[2] = Math.min(dest[2], corner.z);
+            dest[3] = Math.max(dest[3], corner.x);
+            dest[4] = Math.max(dest[4], corner.y);
+            dest[5] = Math.max(dest[5], corner.z);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        PhysicsWorldCheck check = new PhysicsWorldCheck(1234L);
+        int added = check.compareBounds();
+
+        for (int step = 0; step < STEPS; step++)
+        {
+            check.world.step(1.0F / 60.0F);
+            check.scene.updateTransformations();
+        }
+
+        int stepped = check.compareBounds();
+
+        System.out.println(String.format("%d rotated bodies: %d collider bounds differ from the rendered bounds when added, %d after %d steps", BODY_COUNT, added, stepped, STEPS));
+
+        if (added > 0 || stepped > 0)
+        {
+            System.out.println("FAILED: bodies are not simulated where they are drawn");
+            System.exit(1);
+        }
+
+        System.out.println("OK");
+    }
+}
@@ -0,0 +1,95 @@
+package main.physics;
+
+import main.core.scene.GameObject;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * The closest hit of a ray or sphere cast against the bodies of a {@link PhysicsWorld}. The fraction
+ * is the distance along the ray in units of the ray direction, so the ray hit its target at
+ * origin + direction * fraction. For a sphere cast, that is where the center of the sphere is when it
+ * touches the body, and the hit point is the point on the body that it touches.
+ *
+ * @author Kelan
+ */
+public class RaycastHit
+{
+    private final Vector3f point = new Vector3f();
+    private final Vector3f normal = new Vector3f();
+    private RigidBody body;
+    private float fraction;
+    private int triangle = -1;
+    private boolean hit;
+
+    void set(RigidBody body, float fraction, int triangle, float pointX, float pointY, float pointZ, float normalX, float normalY, float normalZ)
+    {
+        this.hit = true;
+        this.body = body;
+        this.fraction = fraction;
+        this.triangle = triangle;
+        this.point.set(pointX, pointY, pointZ);
+        this.normal.set(normalX, normalY, normalZ);
+    }
+
+    void clear()
+    {
+        this.hit = false;
+        this.body = null;
+        this.triangle = -1;
+    }
+
+    /**
+     * Gets the body that was hit, or null if nothing was hit.
+     */
+    public RigidBody getBody()
+    {
+        return body;
+    }
+
+    /**
+     * Gets the game object of the body that was hit, or null if nothing was hit.
+     */
+    public GameObject getObject()
+    {
+        return body == null ? null : body.getParent();
+    }
+
+    public Vector3f getPoint()
+    {
+        return point;
+    }
+
+    /**
+     * Gets the unit normal of the surface that was hit, in world space, facing back towards the ray
+     * origin. For a sphere cast, this points from the hit point towards the center of the sphere.
+     */
+    public Vector3f getNormal()
+    {
+        return normal;
+    }
+
+    public float getFraction()
+    {
+        return fraction;
+    }
+
+    /**
+     * Gets the index of the triangle that was hit if the body has a triangle mesh shape, or -1.
+     *
+     * @see main.physics.collision.TriangleMeshShape#getSourceTriangle(int)
+     */
+    public int getTriangle()
+    {
+        return triangle;
+    }
+
+    public boolean isHit()
+    {
+        return hit;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RaycastHit{" + "body=" + body + ", point=" + point + ", normal=" + normal + ", fraction=" + fraction + ", triangle=" + triangle + ", hit=" + hit + '}';
+    }
+}
@@ -0,0 +1,427 @@
+package main.physics;
+
+import main.client.rendering.ShaderProgram;
+import main.core.Engine;
+import main.core.scene.Component;
+import main.core.scene.boundingbox.AxisAlignedBB;
+import main.physics.collision.CollisionShape;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * A component that gives its game object rigid body dynamics. The simulation state of the body is
+ * owned by the {@link PhysicsWorld} of the physics thread, and this component only acts as a handle
+ * to it. A body with a mass of zero is static, and is never moved by the simulation.
+ *
+ * @author Kelan
+ */
+public class RigidBody extends Component
+{
+    PhysicsWorld world;
+    int index = -1;
+
+    private float mass;
+    private Vector3f inertia;
+    private float gravityScale = 1.0F;
+    private float linearDamping = 0.01F;
+    private float angularDamping = 0.05F;
+    private float friction = 0.5F;
+    private float restitution = 0.0F;
+    private AxisAlignedBB bounds = new AxisAlignedBB(0.0F, 0.0F, 0.0F, 0.5F, 0.5F, 0.5F);
+    private CollisionShape shape;
+
+    public RigidBody(float mass, Vector3f inertia)
+    {
+        this.mass = Math.max(0.0F, mass);
+        this.inertia = inertia;
+    }
+
+    public RigidBody(float mass)
+    {
+        // Default to the inertia of a solid unit cube.
+        this(mass, new Vector3f(mass / 6.0F, mass / 6.0F, mass / 6.0F));
+    }
+
+    public RigidBody()
+    {
+        this(0.0F);
+    }
+
+    /**
+     * Copies the mass properties of this body into the world arrays. Called by the world when the
+     * body is added, and whenever one of the properties changes afterwards.
+     */
+    void applyProperties()
+    {
+        if (world == null)
+            return;
+
+        boolean dynamic = !isStatic();
+
+        world.inverseMass[index] = dynamic ? 1.0F / mass : 0.0F;
+        world.inverseInertiaX[index] = dynamic && inertia.x > 0.0F ? 1.0F / inertia.x : 0.0F;
+        world.inverseInertiaY[index] = dynamic && inertia.y > 0.0F ? 1.0F / inertia.y : 0.0F;
+        world.inverseInertiaZ[index] = dynamic && inertia.z > 0.0F ? 1.0F / inertia.z : 0.0F;
+        world.gravityScale[index] = dynamic ? gravityScale : 0.0F;
+        world.linearDamping[index] = linearDamping;
+        world.angularDamping[index] = angularDamping;
+        world.shapes[index] = shape;
+        world.friction[index] = friction;
+        world.restitution[index] = restitution;
+
+        // The bounds are given in the local space of the game object, so the object scale is baked in.
+        // Shapes are already in world units, so bodies with a shape use the unscaled shape bounds.
+        AxisAlignedBB bounds = shape != null ? shape.getBounds(null) : this.bounds;
+        Vector3f scale = getParent() != null && shape == null ? getParent().getTransformation().getScale() : new Vector3f(1.0F, 1.0F, 1.0F);
+        world.boundsCenterX[index] = bounds.getPosition().x * scale.x;
+        world.boundsCenterY[index] = bounds.getPosition().y * scale.y;
+        world.boundsCenterZ[index] = bounds.getPosition().z * scale.z;
+        world.boundsHalfX[index] = bounds.getHalfExtents().x * Math.abs(scale.x);
+        world.boundsHalfY[index] = bounds.getHalfExtents().y * Math.abs(scale.y);
+        world.boundsHalfZ[index] = bounds.getHalfExtents().z * Math.abs(scale.z);
+
+        if (!dynamic)
+        {
+            world.velocityX[index] = world.velocityY[index] = world.velocityZ[index] = 0.0F;
+            world.angularVelocityX[index] = world.angularVelocityY[index] = world.angularVelocityZ[index] = 0.0F;
+        }
+    }
+
+    @Override
+    public void init()
+    {
+        Engine.getPhysicsThread().getPhysicsWorld().addBody(this);
+    }
+
+    @Override
+    public void update(double delta)
+    {
+
+    }
+
+    @Override
+    public void render(double delta)
+    {
+
+    }
+
+    @Override
+    public void render(double delta, ShaderProgram shaderProgram)
+    {
+
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (world != null)
+            world.removeBody(this);
+    }
+
+    @Override
+    public void applyUniforms(ShaderProgram shaderProgram)
+    {
+
+    }
+
+    @Override
+    public boolean doRender()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean doTick()
+    {
+        return false;
+    }
+
+    public void applyForce(Vector3f force)
+    {
+        if (world != null && !isStatic())
+        {
+            synchronized (world)
+            {
+                world.wake(index);
+                world.forceX[index] += force.x;
+                world.forceY[index] += force.y;
+                world.forceZ[index] += force.z;
+            }
+        }
+    }
+
+    public void applyTorque(Vector3f torque)
+    {
+        if (world != null && !isStatic())
+        {
+            synchronized (world)
+            {
+                world.wake(index);
+                world.torqueX[index] += torque.x;
+                world.torqueY[index] += torque.y;
+                world.torqueZ[index] += torque.z;
+            }
+        }
+    }
+
+    public void applyImpulse(Vector3f impulse)
+    {
+        if (world != null && !isStatic())
+        {
+            synchronized (world)
+            {
+                world.wake(index);
+                float inverseMass = world.inverseMass[index];
+                world.velocityX[index] += impulse.x * inverseMass;
+                world.velocityY[index] += impulse.y * inverseMass;
+                world.velocityZ[index] += impulse.z * inverseMass;
+            }
+        }
+    }
+
+    public Vector3f getVelocity(Vector3f dest)
+    {
+        if (dest == null)
+            dest = new Vector3f();
+
+        if (world != null)
+        {
+            synchronized (world)
+            {
+                dest.set(world.velocityX[index], world.velocityY[index], world.velocityZ[index]);
+            }
+        }
+
+        return dest;
+    }
+
+    public Vector3f getAngularVelocity(Vector3f dest)
+    {
+        if (dest == null)
+            dest = new Vector3f();
+
+        if (world != null)
+        {
+            synchronized (world)
+            {
+                dest.set(world.angularVelocityX[index], world.angularVelocityY[index], world.angularVelocityZ[index]);
+            }
+        }
+
+        return dest;
+    }
+
+    public void setVelocity(Vector3f velocity)
+    {
+        if (world != null && !isStatic())
+        {
+            synchronized (world)
+            {
+                world.wake(index);
+                world.velocityX[index] = velocity.x;
+                world.velocityY[index] = velocity.y;
+                world.velocityZ[index] = velocity.z;
+            }
+        }
+    }
+
+    public void setAngularVelocity(Vector3f angularVelocity)
+    {
+        if (world != null && !isStatic())
+        {
+            synchronized (world)
+            {
+                world.wake(index);
+                world.angularVelocityX[index] = angularVelocity.x;
+                world.angularVelocityY[index] = angularVelocity.y;
+                world.angularVelocityZ[index] = angularVelocity.z;
+            }
+        }
+    }
+
+    public PhysicsWorld getWorld()
+    {
+        return world;
+    }
+
+    public boolean isStatic()
+    {
+        return mass <= 0.0F;
+    }
+
+    /**
+     * Checks if this body has been put to sleep by the world after coming to rest. Sleeping bodies
+     * are not simulated until something touches them, or a force or velocity is applied to them.
+     */
+    public boolean isSleeping()
+    {
+        if (world == null)
+            return false;
+
+        synchronized (world)
+        {
+            return world.isSleeping(index);
+        }
+    }
+
+    /**
+     * Wakes up this body, along with the other bodies it fell asleep with.
+     */
+    public void wakeUp()
+    {
+        if (world != null)
+        {
+            synchronized (world)
+            {
+                world.wake(index);
+            }
+        }
+    }
+
+    public float getMass()
+    {
+        return mass;
+    }
+
+    public Vector3f getInertia()
+    {
+        return inertia;
+    }
+
+    public float getGravityScale()
+    {
+        return gravityScale;
+    }
+
+    public float getLinearDamping()
+    {
+        return linearDamping;
+    }
+
+    public float getAngularDamping()
+    {
+        return angularDamping;
+    }
+
+    public AxisAlignedBB getBounds()
+    {
+        return bounds;
+    }
+
+    public CollisionShape getShape()
+    {
+        return shape;
+    }
+
+    public float getFriction()
+    {
+        return friction;
+    }
+
+    public float getRestitution()
+    {
+        return restitution;
+    }
+
+    public RigidBody setMass(float mass)
+    {
+        this.mass = Math.max(0.0F, mass);
+        return this.updateProperties();
+    }
+
+    public RigidBody setInertia(Vector3f inertia)
+    {
+        this.inertia = inertia;
+        return this.updateProperties();
+    }
+
+    public RigidBody setGravityScale(float gravityScale)
+    {
+        this.gravityScale = gravityScale;
+        return this.updateProperties();
+    }
+
+    public RigidBody setLinearDamping(float linearDamping)
+    {
+        this.linearDamping = linearDamping;
+        return this.updateProperties();
+    }
+
+    public RigidBody setAngularDamping(float angularDamping)
+    {
+        this.angularDamping = angularDamping;
+        return this.updateProperties();
+    }
+
+    /**
+     * Sets the friction coefficient of this body. The friction of a contact is the geometric mean of
+     * the friction of the two bodies.
+     */
+    public RigidBody setFriction(float friction)
+    {
+        this.friction = Math.max(0.0F, friction);
+        return this.updateProperties();
+    }
+
+    /**
+     * Sets the restitution (bounciness) of this body, from 0 to 1. The restitution of a contact is
+     * the larger restitution of the two bodies.
+     */
+    public RigidBody setRestitution(float restitution)
+    {
+        this.restitution = Math.max(0.0F, Math.min(1.0F, restitution));
+        return this.updateProperties();
+    }
+
+    /**
+     * Sets the local space bounding box of this body, which is used by the broadphase. A null
+     * bounding box is ignored.
+     */
+    public RigidBody setBounds(AxisAlignedBB bounds)
+    {
+        boolean reshaped = bounds != null && !bounds.equals(this.bounds);
+
+        if (bounds != null)
+            this.bounds = bounds;
+
+        return this.updateProperties(reshaped);
+    }
+
+    /**
+     * Sets the collision shape of this body, which replaces the bounds set with
+     * {@link #setBounds(AxisAlignedBB)} in the broadphase. Bodies without a shape are still tracked
+     * by the broadphase, but never generate contacts. The shape is given in world units, and is not
+     * scaled by the transformation of the game object. Triangle mesh shapes should only be used for
+     * static bodies.
+     */
+    public RigidBody setShape(CollisionShape shape)
+    {
+        boolean reshaped = shape != this.shape;
+        this.shape = shape;
+
+        return this.updateProperties(reshaped);
+    }
+
+    private RigidBody updateProperties()
+    {
+        return this.updateProperties(false);
+    }
+
+    /**
+     * @param reshaped If true, the shape or bounds changed, so the broadphase proxy is recreated.
+     */
+    private RigidBody updateProperties(boolean reshaped)
+    {
+        PhysicsWorld world = this.world;
+
+        if (world != null)
+        {
+            synchronized (world)
+            {
+                applyProperties();
+                world.updateBody(index, reshaped);
+            }
+        }
+
+        return this;
+    }
+}
@@ -0,0 +1,192 @@
+package main.physics;
+
+import main.physics.broadphase.Broadphase;
+import main.physics.collision.BoxShape;
+import main.physics.collision.CollisionContext;
+import main.physics.collision.CollisionResult;
+import main.physics.collision.CollisionShape;
+import main.physics.collision.ConvexShape;
+import main.physics.collision.RaycastResult;
+import main.physics.collision.TriangleMeshShape;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * Runs ray casts, sphere casts and overlap queries against the bodies of a {@link PhysicsWorld}.
+ * Candidates are found in the broadphase, and are then tested exactly against their collision
+ * shapes, with the bounding volume hierarchy of a triangle mesh narrowing the cast down to the
+ * triangles along the ray.
+ *
+ * Every thread has its own query, which owns the scratch memory of a cast, so queries only read the
+ * world and casts can run on several threads at once. Hits at the same fraction are resolved in
+ * favour of the lower body index, so the result does not depend on the layout of the broadphase.
+ *
+ * @author Kelan
+ */
+class WorldQuery implements Broadphase.RayCastCallback
+{
+    private static final float CAST_TOLERANCE = 0.001F;
+
+    private static final ThreadLocal<WorldQuery> QUERY = ThreadLocal.withInitial(WorldQuery::new);
+
+    private final RaycastResult meshResult = new RaycastResult();
+    private final CollisionResult collisionResult = new CollisionResult();
+    private final BoxShape box = new BoxShape(0.0F, 0.0F, 0.0F);
+    private final TriangleMeshShape.ContactCallback ignoreContact = (triangle, result) -> {};
+    private final Broadphase.QueryCallback candidateCallback = this::addCandidate;
+    private int[] candidates = new int[64];
+    private int candidateCount;
+
+    private PhysicsWorld world;
+    private CollisionContext context;
+    private RaycastHit hit;
+    private float originX, originY, originZ;
+    private float directionX, directionY, directionZ;
+    private float radius;
+
+    /**
+     * Gets the query of the current thread.
+     */
+    static WorldQuery get()
+    {
+        return QUERY.get();
+    }
+
+    /**
+     * Casts a sphere along a ray against the bodies of a world, and finds the closest body it
+     * touches. A radius of zero casts a ray. Bodies without a collision shape are never hit.
+     *
+     * @return true if a body was hit.
+     */
+    boolean cast(PhysicsWorld world, float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius, float maxFraction, RaycastHit hit)
+    {
+        hit.clear();
+        this.world = world;
+        this.context = CollisionContext.get();
+        this.hit = hit;
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.directionX = directionX;
+        this.directionY = directionY;
+        this.directionZ = directionZ;
+        this.radius = radius;
+
+        world.getBroadphase().raycast(originX, originY, originZ, directionX, directionY, directionZ, radius, maxFraction, this);
+
+        this.world = null;
+        this.hit = null;
+        return hit.isHit();
+    }
+
+    @Override
+    public float rayCastCallback(int proxy, float maxFraction)
+    {
+        PhysicsWorld w = world;
+        int i = w.getBroadphase().getUserData(proxy);
+        CollisionShape shape = w.shapes[i];
+        float fraction;
+
+        if (shape instanceof TriangleMeshShape)
+        {
+            if (!context.sphereCast((TriangleMeshShape) shape, w.positionX[i], w.positionY[i], w.positionZ[i], w.rotationX[i], w.rotationY[i], w.rotationZ[i], w.rotationW[i], originX, originY, originZ, directionX, directionY, directionZ, radius, maxFraction, meshResult))
+                return -1.0F;
+
+            fraction = meshResult.getFraction();
+
+            if (isCloser(i, fraction))
+            {
+                Vector3f point = meshResult.getPoint();
+                Vector3f normal = meshResult.getNormal();
+                hit.set(w.bodies[i], fraction, meshResult.getTriangle(), point.x, point.y, point.z, normal.x, normal.y, normal.z);
+            }
+        } else if (shape instanceof ConvexShape)
+        {
+            // The sweep works in fractions of its motion, which is the ray up to the current
+            // maximum fraction.
+            float motion = context.sweepSphere((ConvexShape) shape, w.positionX[i], w.positionY[i], w.positionZ[i], w.rotationX[i], w.rotationY[i], w.rotationZ[i], w.rotationW[i], originX, originY, originZ, directionX * maxFraction, directionY * maxFraction, directionZ * maxFraction, radius, CAST_TOLERANCE, collisionResult);
+
+            if (motion < 0.0F)
+                return -1.0F;
+
+            fraction = motion * maxFraction;
+
+            if (isCloser(i, fraction))
+            {
+                Vector3f point = collisionResult.getPointA();
+                Vector3f normal = collisionResult.getNormal();
+                hit.set(w.bodies[i], fraction, -1, point.x, point.y, point.z, normal.x, normal.y, normal.z);
+            }
+        } else
+        {
+            return -1.0F;
+        }
+
+        return fraction;
+    }
+
+    private boolean isCloser(int i, float fraction)
+    {
+        return !hit.isHit() || fraction < hit.getFraction() || fraction == hit.getFraction() && i < hit.getBody().index;
+    }
+
+    /**
+     * Finds the bodies whose collision shapes overlap a box, and reports them to the callback in the
+     * order of their indices. The callback may stop the query early by returning false.
+     *
+     * @return The number of bodies that were reported.
+     */
+    int overlap(PhysicsWorld world, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, PhysicsWorld.OverlapCallback callback)
+    {
+        this.world = world;
+        candidateCount = 0;
+        world.getBroadphase().query(minX, minY, minZ, maxX, maxY, maxZ, candidateCallback);
+        this.world = null;
+
+        Arrays.sort(candidates, 0, candidateCount);
+
+        CollisionContext context = CollisionContext.get();
+        float centerX = (minX + maxX) * 0.5F, centerY = (minY + maxY) * 0.5F, centerZ = (minZ + maxZ) * 0.5F;
+        box.getHalfExtents().set((maxX - minX) * 0.5F, (maxY - minY) * 0.5F, (maxZ - minZ) * 0.5F);
+        int count = 0;
+
+        for (int c = 0; c < candidateCount; c++)
+        {
+            int i = candidates[c];
+            CollisionShape shape = world.shapes[i];
+            boolean overlapping;
+
+            if (shape instanceof TriangleMeshShape)
+                overlapping = context.collide((TriangleMeshShape) shape, world.positionX[i], world.positionY[i], world.positionZ[i], world.rotationX[i], world.rotationY[i], world.rotationZ[i], world.rotationW[i], box, centerX, centerY, centerZ, 0.0F, 0.0F, 0.0F, 1.0F, ignoreContact, collisionResult) > 0;
+            else if (shape instanceof ConvexShape)
+                overlapping = context.collide((ConvexShape) shape, world.positionX[i], world.positionY[i], world.positionZ[i], world.rotationX[i], world.rotationY[i], world.rotationZ[i], world.rotationW[i], box, centerX, centerY, centerZ, 0.0F, 0.0F, 0.0F, 1.0F, collisionResult);
+            else
+                overlapping = false;
+
+            if (!overlapping)
+                continue;
+
+            count++;
+
+            if (!callback.overlapCallback(world.bodies[i]))
+                break;
+        }
+
+        return count;
+    }
+
+    private boolean addCandidate(int proxy)
+    {
+        int i = world.getBroadphase().getUserData(proxy);
+
+        if (world.shapes[i] == null)
+            return true;
+
+        if (candidateCount == candidates.length)
+            candidates = Arrays.copyOf(candidates, candidateCount * 2);
+
+        candidates[candidateCount++] = i;
+        return true;
+    }
+}
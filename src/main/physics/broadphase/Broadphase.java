@@ -0,0 +1,101 @@
+package main.physics.broadphase;
+
+/**
+ * A broadphase keeps track of the bounding boxes of a set of proxies, and quickly finds the pairs of
+ * proxies whose bounding boxes overlap. Proxies are referred to by the integer id returned when they
+ * are created, and each proxy carries an integer of user data, which is usually the index of the
+ * body it belongs to.
+ *
+ * Static proxies are never paired with other static proxies.
+ *
+ * @author Kelan
+ */
+public interface Broadphase
+{
+    int NULL_PROXY = -1;
+
+    /**
+     * Creates a proxy for the given bounding box.
+     *
+     * @param userData The user data of the proxy.
+     * @param isStatic If true, this proxy will never be paired with other static proxies.
+     * @return The id of the new proxy.
+     */
+    int createProxy(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int userData, boolean isStatic);
+
+    void destroyProxy(int proxy);
+
+    /**
+     * Updates the bounding box of a proxy. The displacement is the distance the proxy is expected to
+     * move before the next update, which may be used to predict where the proxy will be and avoid
+     * restructuring the broadphase every tick.
+     *
+     * @return true if the broadphase structure was modified.
+     */
+    boolean moveProxy(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float displacementX, float displacementY, float displacementZ);
+
+    /**
+     * Changes whether a proxy is static, without moving it. This is cheaper than recreating the
+     * proxy, and is used when bodies fall asleep or wake up.
+     */
+    void setStatic(int proxy, boolean isStatic);
+
+    int getUserData(int proxy);
+
+    void setUserData(int proxy, int userData);
+
+    /**
+     * Reports every pair of overlapping proxies to the callback. Each pair is reported exactly once,
+     * with the smaller proxy id first, and the pairs are reported in ascending order so that the
+     * result does not depend on the internal layout of the broadphase.
+     *
+     * @param callback The callback to report the pairs to.
+     */
+    void findPairs(PairCallback callback);
+
+    /**
+     * Reports every proxy whose bounding box overlaps the given bounding box.
+     *
+     * @param callback The callback to report the proxies to. Returning false stops the query.
+     */
+    void query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, QueryCallback callback);
+
+    /**
+     * Casts a ray, from {@code origin} to {@code origin + direction * maxFraction}, against the
+     * bounding boxes of the proxies grown by a radius, so a sphere can be swept the same way. Each
+     * proxy that is hit is reported to the callback, which returns the new maximum fraction of the
+     * ray to search. Returning 0 terminates the cast, returning the fraction of an actual hit clips
+     * the ray to it, and returning a negative value continues the cast unchanged.
+     *
+     * Once {@link #prepareQueries()} has been called, this and {@link #query} only read the
+     * broadphase, so casts may run on several threads at once, as long as nothing modifies the
+     * broadphase while they run.
+     */
+    void raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius, float maxFraction, RayCastCallback callback);
+
+    /**
+     * Finishes any updates that the broadphase deferred, such as sorting new proxies in, so that
+     * the queries and casts that follow only read it.
+     */
+    void prepareQueries();
+
+    int getProxyCount();
+
+    @FunctionalInterface
+    interface PairCallback
+    {
+        void addPair(int proxyA, int proxyB);
+    }
+
+    @FunctionalInterface
+    interface QueryCallback
+    {
+        boolean queryCallback(int proxy);
+    }
+
+    @FunctionalInterface
+    interface RayCastCallback
+    {
+        float rayCastCallback(int proxy, float maxFraction);
+    }
+}
@@ -0,0 +1,150 @@
+package main.physics.broadphase;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares the broadphase implementations on a mostly static scene of randomly placed boxes, where
+ * a small fraction of the boxes move every tick. Note that the tree pairs the fattened boxes of its
+ * leaves, so it reports more pairs than sweep and prune, which pairs the exact boxes.
+ *
+ * @author Kelan
+ */
+public class BroadphaseBenchmark
+{
+    private static final float DYNAMIC_FRACTION = 0.1F;
+    private static final int WARMUP_TICKS = 20;
+    private static final int TICKS = 100;
+
+    private final int count;
+    private final float[] minX, minY, minZ, maxX, maxY, maxZ;
+    private final float[] velocityX, velocityY, velocityZ;
+    private final boolean[] isStatic;
+    private final int[] proxies;
+    private final float worldSize;
+
+    private int pairCount;
+
+    public BroadphaseBenchmark(int count, long seed)
+    {
+        this.count = count;
+        this.minX = new float[count];
+        this.minY = new float[count];
+        this.minZ = new float[count];
+        this.maxX = new float[count];
+        this.maxY = new float[count];
+        this.maxZ = new float[count];
+        this.velocityX = new float[count];
+        this.velocityY = new float[count];
+        this.velocityZ = new float[count];
+        this.isStatic = new boolean[count];
+        this.proxies = new int[count];
+
+        // Keep the density constant, so the number of pairs grows linearly with the box count.
+        this.worldSize = (float) Math.cbrt(count) * 4.0F;
+
+        Random random = new Random(seed);
+
+        for (int i = 0; i < count; i++)
+        {
+            float size = 0.5F + random.nextFloat() * 1.5F;
+            minX[i] = random.nextFloat() * worldSize;
+            minY[i] = random.nextFloat() * worldSize;
+            minZ[i] = random.nextFloat() * worldSize;
+            maxX[i] = minX[i] + size;
+            maxY[i] = minY[i] + size;
+            maxZ[i] = minZ[i] + size;
+            isStatic[i] = random.nextFloat() >= DYNAMIC_FRACTION;
+
+            if (!isStatic[i])
+            {
+                velocityX[i] = (random.nextFloat() - 0.5F) * 0.2F;
+                velocityY[i] = (random.nextFloat() - 0.5F) * 0.2F;
+                velocityZ[i] = (random.nextFloat() - 0.5F) * 0.2F;
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmark on a fresh broadphase.
+     *
+     * @return The build time and the average tick time, in milliseconds.
+     */
+    public double[] run(Broadphase broadphase)
+    {
+        long buildStart = System.nanoTime();
+
+        for (int i = 0; i < count; i++)
+            proxies[i] = broadphase.createProxy(minX[i], minY[i], minZ[i], maxX[i], maxY[i], maxZ[i], i, isStatic[i]);
+
+        findPairs(broadphase);
+        long buildTime = System.nanoTime() - buildStart;
+
+        for (int tick = 0; tick < WARMUP_TICKS; tick++)
+            tick(broadphase);
+
+        long tickStart = System.nanoTime();
+
+        for (int tick = 0; tick < TICKS; tick++)
+            tick(broadphase);
+
+        long tickTime = System.nanoTime() - tickStart;
+
+        return new double[]{buildTime / 1e6, tickTime / 1e6 / TICKS};
+    }
+
+    private void tick(Broadphase broadphase)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (isStatic[i])
+                continue;
+
+            // Bounce off the edges of the world, so the density stays the same.
+            if (minX[i] < 0.0F || maxX[i] > worldSize)
+                velocityX[i] = -velocityX[i];
+            if (minY[i] < 0.0F || maxY[i] > worldSize)
+                velocityY[i] = -velocityY[i];
+            if (minZ[i] < 0.0F || maxZ[i] > worldSize)
+                velocityZ[i] = -velocityZ[i];
+
+            minX[i] += velocityX[i];
+            minY[i] += velocityY[i];
+            minZ[i] += velocityZ[i];
+            maxX[i] += velocityX[i];
+            maxY[i] += velocityY[i];
+            maxZ[i] += velocityZ[i];
+
+            broadphase.moveProxy(proxies[i], minX[i], minY[i], minZ[i], maxX[i], maxY[i], maxZ[i], velocityX[i], velocityY[i], velocityZ[i]);
+        }
+
+        findPairs(broadphase);
+    }
+
+    private void findPairs(Broadphase broadphase)
+    {
+        pairCount = 0;
+        broadphase.findPairs((proxyA, proxyB) -> pairCount++);
+    }
+
+    public static void main(String[] args)
+    {
+        int[] counts = new int[]{10000, 25000, 50000, 100000};
+
+        System.out.println(String.format("%-16s %8s %12s %12s %8s", "Broadphase", "Boxes", "Build (ms)", "Tick (ms)", "Pairs"));
+
+        for (int count : counts)
+        {
+            run("DynamicAABBTree", count, DynamicAABBTree::new);
+            run("SweepAndPrune", count, SweepAndPrune::new);
+        }
+    }
+
+    private static void run(String name, int count, Supplier<Broadphase> broadphase)
+    {
+        BroadphaseBenchmark benchmark = new BroadphaseBenchmark(count, 1234L);
+        double[] result = benchmark.run(broadphase.get());
+
+        System.out.println(String.format("%-16s %8d %12.2f %12.3f %8d", name, count, result[0], result[1], benchmark.pairCount));
+    }
+}
@@ -0,0 +1,674 @@
+package main.physics.broadphase;
+
+import main.core.scene.boundingbox.AxisAlignedBB;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy of axis aligned bounding boxes. Leaves store fattened boxes,
+ * so a proxy that moves a small distance does not need to be reinserted. The tree is kept balanced
+ * with AVL style rotations, so inserting, removing and querying are all O(log n).
+ *
+ * All nodes live in a pool of primitive arrays, and freed nodes are recycled through a free list.
+ * The fields of a node are interleaved, so visiting a node during a traversal touches one or two
+ * cache lines rather than one per field. Once the pool has grown to fit the scene, moving proxies
+ * and finding pairs does not allocate.
+ *
+ * This is based on the dynamic tree from Box2D by Erin Catto.
+ *
+ * @author Kelan
+ */
+public class DynamicAABBTree implements Broadphase
+{
+    private static final int NULL_NODE = -1;
+
+    // Offsets of the node fields in the bounds array.
+    private static final int BOUNDS_STRIDE = 6;
+    private static final int MIN_X = 0;
+    private static final int MIN_Y = 1;
+    private static final int MIN_Z = 2;
+    private static final int MAX_X = 3;
+    private static final int MAX_Y = 4;
+    private static final int MAX_Z = 5;
+
+    // Offsets of the node fields in the links array.
+    private static final int LINKS_STRIDE = 4;
+    private static final int PARENT = 0; // The next free node when the node is in the free list.
+    private static final int CHILD1 = 1;
+    private static final int CHILD2 = 2;
+    private static final int HEIGHT = 3; // -1 for free nodes, 0 for leaves.
+
+    private float margin = 0.1F;
+    private float displacementMultiplier = 2.0F;
+
+    private int root = NULL_NODE;
+    private int nodeCapacity;
+    private int nodeCount;
+    private int freeList;
+    private int proxyCount;
+
+    private float[] bounds;
+    private int[] links;
+    private int[] userData;
+    private boolean[] isStatic;
+
+    /**
+     * The node stack of the queries and casts of the current thread. They may run on several threads
+     * at once, and a query may be nested inside the callback of another, so every traversal pushes
+     * its nodes above those of the traversal it is nested in.
+     */
+    private static final ThreadLocal<NodeStack> NODE_STACK = ThreadLocal.withInitial(NodeStack::new);
+
+    private int[] stack = new int[64];
+    private long[] pairBuffer = new long[64];
+    private int pairCount;
+
+    public DynamicAABBTree(int initialCapacity)
+    {
+        this.nodeCapacity = Math.max(16, initialCapacity);
+        this.bounds = new float[nodeCapacity * BOUNDS_STRIDE];
+        this.links = new int[nodeCapacity * LINKS_STRIDE];
+        this.userData = new int[nodeCapacity];
+        this.isStatic = new boolean[nodeCapacity];
+        this.linkFreeNodes(0);
+    }
+
+    public DynamicAABBTree()
+    {
+        this(16);
+    }
+
+    private void linkFreeNodes(int start)
+    {
+        for (int i = start; i < nodeCapacity; i++)
+        {
+            links[i * LINKS_STRIDE + PARENT] = i + 1 < nodeCapacity ? i + 1 : NULL_NODE;
+            links[i * LINKS_STRIDE + HEIGHT] = -1;
+        }
+
+        freeList = start;
+    }
+
+    private int allocateNode()
+    {
+        if (freeList == NULL_NODE)
+        {
+            int oldCapacity = nodeCapacity;
+            nodeCapacity *= 2;
+            bounds = Arrays.copyOf(bounds, nodeCapacity * BOUNDS_STRIDE);
+            links = Arrays.copyOf(links, nodeCapacity * LINKS_STRIDE);
+            userData = Arrays.copyOf(userData, nodeCapacity);
+            isStatic = Arrays.copyOf(isStatic, nodeCapacity);
+            linkFreeNodes(oldCapacity);
+        }
+
+        int node = freeList;
+        int l = node * LINKS_STRIDE;
+        freeList = links[l + PARENT];
+        links[l + PARENT] = NULL_NODE;
+        links[l + CHILD1] = NULL_NODE;
+        links[l + CHILD2] = NULL_NODE;
+        links[l + HEIGHT] = 0;
+        userData[node] = -1;
+        isStatic[node] = false;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node)
+    {
+        links[node * LINKS_STRIDE + PARENT] = freeList;
+        links[node * LINKS_STRIDE + HEIGHT] = -1;
+        freeList = node;
+        nodeCount--;
+    }
+
+    private int parent(int node)
+    {
+        return links[node * LINKS_STRIDE + PARENT];
+    }
+
+    private int child1(int node)
+    {
+        return links[node * LINKS_STRIDE + CHILD1];
+    }
+
+    private int child2(int node)
+    {
+        return links[node * LINKS_STRIDE + CHILD2];
+    }
+
+    private int height(int node)
+    {
+        return links[node * LINKS_STRIDE + HEIGHT];
+    }
+
+    private void setBounds(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        int b = node * BOUNDS_STRIDE;
+        bounds[b + MIN_X] = minX;
+        bounds[b + MIN_Y] = minY;
+        bounds[b + MIN_Z] = minZ;
+        bounds[b + MAX_X] = maxX;
+        bounds[b + MAX_Y] = maxY;
+        bounds[b + MAX_Z] = maxZ;
+    }
+
+    @Override
+    public int createProxy(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int userData, boolean isStatic)
+    {
+        int proxy = allocateNode();
+
+        // Static proxies never move, so there is no point in fattening them.
+        float margin = isStatic ? 0.0F : this.margin;
+        setBounds(proxy, minX - margin, minY - margin, minZ - margin, maxX + margin, maxY + margin, maxZ + margin);
+        this.userData[proxy] = userData;
+        this.isStatic[proxy] = isStatic;
+
+        insertLeaf(proxy);
+        proxyCount++;
+        return proxy;
+    }
+
+    public int createProxy(AxisAlignedBB aabb, int userData, boolean isStatic)
+    {
+        Vector3f p = aabb.getPosition();
+        Vector3f h = aabb.getHalfExtents();
+        return createProxy(p.x - h.x, p.y - h.y, p.z - h.z, p.x + h.x, p.y + h.y, p.z + h.z, userData, isStatic);
+    }
+
+    @Override
+    public void destroyProxy(int proxy)
+    {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        proxyCount--;
+    }
+
+    @Override
+    public boolean moveProxy(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float displacementX, float displacementY, float displacementZ)
+    {
+        int b = proxy * BOUNDS_STRIDE;
+
+        if (bounds[b + MIN_X] <= minX && bounds[b + MIN_Y] <= minY && bounds[b + MIN_Z] <= minZ && bounds[b + MAX_X] >= maxX && bounds[b + MAX_Y] >= maxY && bounds[b + MAX_Z] >= maxZ)
+            return false; // The fat box still contains the new box.
+
+        removeLeaf(proxy);
+
+        float margin = this.isStatic[proxy] ? 0.0F : this.margin;
+        float dx = displacementMultiplier * displacementX;
+        float dy = displacementMultiplier * displacementY;
+        float dz = displacementMultiplier * displacementZ;
+
+        // Extend the fat box in the direction of motion, so that the proxy can keep moving that way
+        // for a while before it has to be reinserted again.
+        setBounds(proxy, minX - margin + Math.min(dx, 0.0F), minY - margin + Math.min(dy, 0.0F), minZ - margin + Math.min(dz, 0.0F), maxX + margin + Math.max(dx, 0.0F), maxY + margin + Math.max(dy, 0.0F), maxZ + margin + Math.max(dz, 0.0F));
+
+        insertLeaf(proxy);
+        return true;
+    }
+
+    public boolean moveProxy(int proxy, AxisAlignedBB aabb, Vector3f displacement)
+    {
+        Vector3f p = aabb.getPosition();
+        Vector3f h = aabb.getHalfExtents();
+        return moveProxy(proxy, p.x - h.x, p.y - h.y, p.z - h.z, p.x + h.x, p.y + h.y, p.z + h.z, displacement.x, displacement.y, displacement.z);
+    }
+
+    /**
+     * Pairs are found from scratch every tick, so changing the flag is all that is needed. A proxy
+     * that becomes dynamic keeps its tight bounding box until it first moves out of it.
+     */
+    @Override
+    public void setStatic(int proxy, boolean isStatic)
+    {
+        this.isStatic[proxy] = isStatic;
+    }
+
+    @Override
+    public int getUserData(int proxy)
+    {
+        return userData[proxy];
+    }
+
+    @Override
+    public void setUserData(int proxy, int userData)
+    {
+        this.userData[proxy] = userData;
+    }
+
+    public boolean isStatic(int proxy)
+    {
+        return isStatic[proxy];
+    }
+
+    /**
+     * Gets the fattened bounding box stored for a proxy.
+     */
+    public AxisAlignedBB getFatAABB(int proxy, AxisAlignedBB dest)
+    {
+        if (dest == null)
+            dest = new AxisAlignedBB(new Vector3f(), new Vector3f());
+
+        int b = proxy * BOUNDS_STRIDE;
+        dest.getPosition().set((bounds[b + MIN_X] + bounds[b + MAX_X]) * 0.5F, (bounds[b + MIN_Y] + bounds[b + MAX_Y]) * 0.5F, (bounds[b + MIN_Z] + bounds[b + MAX_Z]) * 0.5F);
+        dest.getHalfExtents().set((bounds[b + MAX_X] - bounds[b + MIN_X]) * 0.5F, (bounds[b + MAX_Y] - bounds[b + MIN_Y]) * 0.5F, (bounds[b + MAX_Z] - bounds[b + MIN_Z]) * 0.5F);
+        return dest;
+    }
+
+    @Override
+    public void findPairs(PairCallback callback)
+    {
+        pairCount = 0;
+
+        for (int proxy = 0; proxy < nodeCapacity; proxy++)
+        {
+            // Only leaves query, and static leaves are only ever found by dynamic ones.
+            if (height(proxy) != 0 || isStatic[proxy])
+                continue;
+
+            findPairs(proxy);
+        }
+
+        // Sort the pairs, so they are reported in an order that does not depend on the tree layout.
+        Arrays.sort(pairBuffer, 0, pairCount);
+
+        for (int i = 0; i < pairCount; i++)
+        {
+            long pair = pairBuffer[i];
+            callback.addPair((int) (pair >>> 32), (int) pair);
+        }
+    }
+
+    private void findPairs(int proxy)
+    {
+        int b = proxy * BOUNDS_STRIDE;
+        float minX = bounds[b + MIN_X], minY = bounds[b + MIN_Y], minZ = bounds[b + MIN_Z];
+        float maxX = bounds[b + MAX_X], maxY = bounds[b + MAX_Y], maxZ = bounds[b + MAX_Z];
+
+        int count = 0;
+        stack[count++] = root;
+
+        while (count > 0)
+        {
+            int node = stack[--count];
+
+            if (node == NULL_NODE || !overlaps(node, minX, minY, minZ, maxX, maxY, maxZ))
+                continue;
+
+            if (height(node) == 0)
+            {
+                // Dynamic pairs are found from both sides, so only keep the one found by the
+                // smaller proxy. Static proxies never query, so their pairs are only found once.
+                if (node != proxy && (isStatic[node] || proxy < node))
+                    addPair(Math.min(proxy, node), Math.max(proxy, node));
+            } else
+            {
+                if (count + 2 > stack.length)
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+
+                stack[count++] = child1(node);
+                stack[count++] = child2(node);
+            }
+        }
+    }
+
+    private boolean overlaps(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        int b = node * BOUNDS_STRIDE;
+        return bounds[b + MIN_X] <= maxX && bounds[b + MAX_X] >= minX && bounds[b + MIN_Y] <= maxY && bounds[b + MAX_Y] >= minY && bounds[b + MIN_Z] <= maxZ && bounds[b + MAX_Z] >= minZ;
+    }
+
+    private void addPair(int proxyA, int proxyB)
+    {
+        if (pairCount == pairBuffer.length)
+            pairBuffer = Arrays.copyOf(pairBuffer, pairCount * 2);
+
+        pairBuffer[pairCount++] = ((long) proxyA << 32) | (proxyB & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, QueryCallback callback)
+    {
+        NodeStack stack = NODE_STACK.get();
+        int base = stack.size;
+        stack.push(root);
+
+        try
+        {
+            while (stack.size > base)
+            {
+                int node = stack.pop();
+
+                if (node == NULL_NODE || !overlaps(node, minX, minY, minZ, maxX, maxY, maxZ))
+                    continue;
+
+                if (height(node) == 0)
+                {
+                    if (!callback.queryCallback(node))
+                        return;
+                } else
+                {
+                    stack.push(child1(node));
+                    stack.push(child2(node));
+                }
+            }
+        } finally
+        {
+            stack.size = base;
+        }
+    }
+
+    public void query(AxisAlignedBB aabb, QueryCallback callback)
+    {
+        Vector3f p = aabb.getPosition();
+        Vector3f h = aabb.getHalfExtents();
+        query(p.x - h.x, p.y - h.y, p.z - h.z, p.x + h.x, p.y + h.y, p.z + h.z, callback);
+    }
+
+    public void raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxFraction, RayCastCallback callback)
+    {
+        raycast(originX, originY, originZ, directionX, directionY, directionZ, 0.0F, maxFraction, callback);
+    }
+
+    @Override
+    public void raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius, float maxFraction, RayCastCallback callback)
+    {
+        float invX = 1.0F / directionX;
+        float invY = 1.0F / directionY;
+        float invZ = 1.0F / directionZ;
+
+        NodeStack stack = NODE_STACK.get();
+        int base = stack.size;
+        stack.push(root);
+
+        try
+        {
+            while (stack.size > base)
+            {
+                int node = stack.pop();
+
+                if (node == NULL_NODE)
+                    continue;
+
+                // Slab test against the node box.
+                int b = node * BOUNDS_STRIDE;
+                float t0 = (bounds[b + MIN_X] - radius - originX) * invX, t1 = (bounds[b + MAX_X] + radius - originX) * invX;
+                float tMin = Math.min(t0, t1), tMax = Math.max(t0, t1);
+                t0 = (bounds[b + MIN_Y] - radius - originY) * invY;
+                t1 = (bounds[b + MAX_Y] + radius - originY) * invY;
+                tMin = Math.max(tMin, Math.min(t0, t1));
+                tMax = Math.min(tMax, Math.max(t0, t1));
+                t0 = (bounds[b + MIN_Z] - radius - originZ) * invZ;
+                t1 = (bounds[b + MAX_Z] + radius - originZ) * invZ;
+                tMin = Math.max(tMin, Math.min(t0, t1));
+                tMax = Math.min(tMax, Math.max(t0, t1));
+
+                if (tMax < Math.max(tMin, 0.0F) || tMin > maxFraction)
+                    continue;
+
+                if (height(node) == 0)
+                {
+                    float fraction = callback.rayCastCallback(node, maxFraction);
+
+                    if (fraction == 0.0F)
+                        return;
+
+                    if (fraction > 0.0F)
+                        maxFraction = Math.min(maxFraction, fraction);
+                } else
+                {
+                    stack.push(child1(node));
+                    stack.push(child2(node));
+                }
+            }
+        } finally
+        {
+            stack.size = base;
+        }
+    }
+
+    private void insertLeaf(int leaf)
+    {
+        if (root == NULL_NODE)
+        {
+            root = leaf;
+            links[root * LINKS_STRIDE + PARENT] = NULL_NODE;
+            return;
+        }
+
+        // Find the best sibling for the new leaf, using the surface area heuristic.
+        int index = root;
+
+        while (height(index) > 0)
+        {
+            int c1 = child1(index);
+            int c2 = child2(index);
+
+            float area = area(index);
+            float combinedArea = combinedArea(index, leaf);
+
+            // Cost of creating a new parent for this node and the new leaf.
+            float cost = 2.0F * combinedArea;
+
+            // Minimum cost of pushing the leaf further down the tree.
+            float inheritanceCost = 2.0F * (combinedArea - area);
+
+            float cost1 = combinedArea(c1, leaf) + inheritanceCost - (height(c1) == 0 ? 0.0F : area(c1));
+            float cost2 = combinedArea(c2, leaf) + inheritanceCost - (height(c2) == 0 ? 0.0F : area(c2));
+
+            if (cost < cost1 && cost < cost2)
+                break;
+
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = parent(sibling);
+        int newParent = allocateNode();
+        int l = newParent * LINKS_STRIDE;
+        links[l + PARENT] = oldParent;
+        links[l + CHILD1] = sibling;
+        links[l + CHILD2] = leaf;
+        links[l + HEIGHT] = height(sibling) + 1;
+        setCombined(newParent, sibling, leaf);
+        replaceChild(oldParent, sibling, newParent);
+
+        links[sibling * LINKS_STRIDE + PARENT] = newParent;
+        links[leaf * LINKS_STRIDE + PARENT] = newParent;
+
+        refit(newParent);
+    }
+
+    private void removeLeaf(int leaf)
+    {
+        if (leaf == root)
+        {
+            root = NULL_NODE;
+            return;
+        }
+
+        int leafParent = parent(leaf);
+        int grandParent = parent(leafParent);
+        int sibling = child1(leafParent) == leaf ? child2(leafParent) : child1(leafParent);
+
+        // Destroy the parent and connect the sibling to the grandparent.
+        replaceChild(grandParent, leafParent, sibling);
+        links[sibling * LINKS_STRIDE + PARENT] = grandParent;
+        freeNode(leafParent);
+
+        if (grandParent != NULL_NODE)
+            refit(grandParent);
+    }
+
+    /**
+     * Walks from the given node to the root, rebalancing and recomputing the bounds and height of
+     * every node on the way.
+     */
+    private void refit(int index)
+    {
+        while (index != NULL_NODE)
+        {
+            index = balance(index);
+
+            int c1 = child1(index);
+            int c2 = child2(index);
+            links[index * LINKS_STRIDE + HEIGHT] = 1 + Math.max(height(c1), height(c2));
+            setCombined(index, c1, c2);
+
+            index = parent(index);
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if node A is imbalanced.
+     *
+     * @return The new root of the subtree that A was the root of.
+     */
+    private int balance(int iA)
+    {
+        if (height(iA) < 2)
+            return iA;
+
+        int iB = child1(iA);
+        int iC = child2(iA);
+        int balance = height(iC) - height(iB);
+
+        if (balance > 1)
+            return rotate(iA, iC, iB, CHILD2);
+
+        if (balance < -1)
+            return rotate(iA, iB, iC, CHILD1);
+
+        return iA;
+    }
+
+    /**
+     * Rotates the taller child of A up to take the place of A. The taller grandchild stays below the
+     * rotated child, and the shorter grandchild moves over to A.
+     *
+     * @param iA    The imbalanced node.
+     * @param iUp   The taller child of A, which becomes the new root of the subtree.
+     * @param iKeep The shorter child of A, which stays below A.
+     * @param side  The child slot of A that iUp occupied.
+     * @return The new root of the subtree.
+     */
+    private int rotate(int iA, int iUp, int iKeep, int side)
+    {
+        int iF = child1(iUp);
+        int iG = child2(iUp);
+
+        links[iUp * LINKS_STRIDE + CHILD1] = iA;
+        links[iUp * LINKS_STRIDE + PARENT] = parent(iA);
+        links[iA * LINKS_STRIDE + PARENT] = iUp;
+        replaceChild(parent(iUp), iA, iUp);
+
+        int taller = height(iF) > height(iG) ? iF : iG;
+        int shorter = taller == iF ? iG : iF;
+
+        links[iUp * LINKS_STRIDE + CHILD2] = taller;
+        links[iA * LINKS_STRIDE + side] = shorter;
+        links[shorter * LINKS_STRIDE + PARENT] = iA;
+
+        setCombined(iA, iKeep, shorter);
+        setCombined(iUp, iA, taller);
+        links[iA * LINKS_STRIDE + HEIGHT] = 1 + Math.max(height(iKeep), height(shorter));
+        links[iUp * LINKS_STRIDE + HEIGHT] = 1 + Math.max(height(iA), height(taller));
+
+        return iUp;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild)
+    {
+        if (node == NULL_NODE)
+            root = newChild;
+        else if (child1(node) == oldChild)
+            links[node * LINKS_STRIDE + CHILD1] = newChild;
+        else
+            links[node * LINKS_STRIDE + CHILD2] = newChild;
+    }
+
+    private void setCombined(int dest, int a, int b)
+    {
+        int ia = a * BOUNDS_STRIDE, ib = b * BOUNDS_STRIDE;
+        setBounds(dest, Math.min(bounds[ia + MIN_X], bounds[ib + MIN_X]), Math.min(bounds[ia + MIN_Y], bounds[ib + MIN_Y]), Math.min(bounds[ia + MIN_Z], bounds[ib + MIN_Z]), Math.max(bounds[ia + MAX_X], bounds[ib + MAX_X]), Math.max(bounds[ia + MAX_Y], bounds[ib + MAX_Y]), Math.max(bounds[ia + MAX_Z], bounds[ib + MAX_Z]));
+    }
+
+    private float area(int node)
+    {
+        int b = node * BOUNDS_STRIDE;
+        float x = bounds[b + MAX_X] - bounds[b + MIN_X];
+        float y = bounds[b + MAX_Y] - bounds[b + MIN_Y];
+        float z = bounds[b + MAX_Z] - bounds[b + MIN_Z];
+        return 2.0F * (x * y + y * z + z * x);
+    }
+
+    private float combinedArea(int a, int b)
+    {
+        int ia = a * BOUNDS_STRIDE, ib = b * BOUNDS_STRIDE;
+        float x = Math.max(bounds[ia + MAX_X], bounds[ib + MAX_X]) - Math.min(bounds[ia + MIN_X], bounds[ib + MIN_X]);
+        float y = Math.max(bounds[ia + MAX_Y], bounds[ib + MAX_Y]) - Math.min(bounds[ia + MIN_Y], bounds[ib + MIN_Y]);
+        float z = Math.max(bounds[ia + MAX_Z], bounds[ib + MAX_Z]) - Math.min(bounds[ia + MIN_Z], bounds[ib + MIN_Z]);
+        return 2.0F * (x * y + y * z + z * x);
+    }
+
+    public int getHeight()
+    {
+        return root == NULL_NODE ? 0 : height(root);
+    }
+
+    /**
+     * The tree is always up to date, so there is nothing to prepare.
+     */
+    @Override
+    public void prepareQueries()
+    {
+
+    }
+
+    @Override
+    public int getProxyCount()
+    {
+        return proxyCount;
+    }
+
+    public float getMargin()
+    {
+        return margin;
+    }
+
+    public void setMargin(float margin)
+    {
+        this.margin = margin;
+    }
+
+    public float getDisplacementMultiplier()
+    {
+        return displacementMultiplier;
+    }
+
+    public void setDisplacementMultiplier(float displacementMultiplier)
+    {
+        this.displacementMultiplier = displacementMultiplier;
+    }
+
+    private static class NodeStack
+    {
+        private int[] nodes = new int[64];
+        private int size;
+
+        void push(int node)
+        {
+            if (size == nodes.length)
+                nodes = Arrays.copyOf(nodes, size * 2);
+
+            nodes[size++] = node;
+        }
+
+        int pop()
+        {
+            return nodes[--size];
+        }
+    }
+}
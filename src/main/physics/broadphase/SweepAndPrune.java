@@ -0,0 +1,914 @@
+package main.physics.broadphase;
+
+import java.util.Arrays;
+
+/**
+ * A sort and sweep broadphase. The minimum and maximum endpoints of every proxy are kept in one
+ * sorted array per axis, and the arrays persist between ticks. When a proxy moves, its endpoints
+ * are moved to their new place with an insertion sort, and every time two endpoints of different
+ * proxies swap, the overlap of those two proxies starts or stops on that axis. The set of
+ * overlapping pairs is therefore maintained incrementally, and costs nothing for proxies that do
+ * not move, which makes this a good fit for mostly static scenes.
+ *
+ * Proxies that are created in bulk are sorted together the next time the pairs are needed, rather
+ * than inserted one at a time.
+ *
+ * This is based on the axis sweep from Bullet by Erwin Coumans.
+ *
+ * @author Kelan
+ */
+public class SweepAndPrune implements Broadphase
+{
+    private static final int AXES = 3;
+
+    private PairListener pairListener;
+
+    private int proxyCapacity;
+    private int freeList;
+    private int proxyCount;
+
+    private float[][] min = new float[AXES][];
+    private float[][] max = new float[AXES][];
+    private int[][] minEndpoint = new int[AXES][]; // The index of the minimum endpoint of a proxy on each axis.
+    private int[][] maxEndpoint = new int[AXES][];
+    private int[] userData;
+    private boolean[] isStatic;
+    private int[] state;
+
+    /**
+     * The endpoints of each axis. The handle of an endpoint is its proxy shifted left by one, with the
+     * lowest bit set for maximum endpoints.
+     */
+    private float[][] endpointValue = new float[AXES][];
+    private int[][] endpointHandle = new int[AXES][];
+    private int endpointCount;
+
+    private int[] pending = new int[64]; // Proxies that have been created but not yet sorted.
+    private int pendingCount;
+
+    private final PairSet pairs = new PairSet();
+    private long[] pairBuffer = new long[64];
+    private long[] sortBuffer = new long[0];
+    private int[] active = new int[64];
+
+    private static final int FREE = -2;
+    private static final int PENDING = -1;
+    private static final int SORTED = 0;
+
+    public SweepAndPrune(int initialCapacity)
+    {
+        this.proxyCapacity = Math.max(16, initialCapacity);
+
+        for (int axis = 0; axis < AXES; axis++)
+        {
+            this.min[axis] = new float[proxyCapacity];
+            this.max[axis] = new float[proxyCapacity];
+            this.minEndpoint[axis] = new int[proxyCapacity];
+            this.maxEndpoint[axis] = new int[proxyCapacity];
+            this.endpointValue[axis] = new float[proxyCapacity * 2];
+            this.endpointHandle[axis] = new int[proxyCapacity * 2];
+        }
+
+        this.userData = new int[proxyCapacity];
+        this.isStatic = new boolean[proxyCapacity];
+        this.state = new int[proxyCapacity];
+        this.linkFreeProxies(0);
+    }
+
+    public SweepAndPrune()
+    {
+        this(16);
+    }
+
+    private void linkFreeProxies(int start)
+    {
+        // Free proxies have no endpoints, so the free list is linked through their first minimum endpoint.
+        for (int i = start; i < proxyCapacity; i++)
+        {
+            state[i] = FREE;
+            minEndpoint[0][i] = i + 1 < proxyCapacity ? i + 1 : NULL_PROXY;
+        }
+
+        freeList = start;
+    }
+
+    private int allocateProxy()
+    {
+        if (freeList == NULL_PROXY)
+        {
+            int oldCapacity = proxyCapacity;
+            proxyCapacity *= 2;
+
+            for (int axis = 0; axis < AXES; axis++)
+            {
+                min[axis] = Arrays.copyOf(min[axis], proxyCapacity);
+                max[axis] = Arrays.copyOf(max[axis], proxyCapacity);
+                minEndpoint[axis] = Arrays.copyOf(minEndpoint[axis], proxyCapacity);
+                maxEndpoint[axis] = Arrays.copyOf(maxEndpoint[axis], proxyCapacity);
+                endpointValue[axis] = Arrays.copyOf(endpointValue[axis], proxyCapacity * 2);
+                endpointHandle[axis] = Arrays.copyOf(endpointHandle[axis], proxyCapacity * 2);
+            }
+
+            userData = Arrays.copyOf(userData, proxyCapacity);
+            isStatic = Arrays.copyOf(isStatic, proxyCapacity);
+            state = Arrays.copyOf(state, proxyCapacity);
+            linkFreeProxies(oldCapacity);
+        }
+
+        int proxy = freeList;
+        freeList = minEndpoint[0][proxy];
+        return proxy;
+    }
+
+    @Override
+    public int createProxy(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int userData, boolean isStatic)
+    {
+        int proxy = allocateProxy();
+
+        this.min[0][proxy] = minX;
+        this.min[1][proxy] = minY;
+        this.min[2][proxy] = minZ;
+        this.max[0][proxy] = maxX;
+        this.max[1][proxy] = maxY;
+        this.max[2][proxy] = maxZ;
+        this.userData[proxy] = userData;
+        this.isStatic[proxy] = isStatic;
+        this.state[proxy] = PENDING;
+
+        if (pendingCount == pending.length)
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+
+        pending[pendingCount++] = proxy;
+        proxyCount++;
+        return proxy;
+    }
+
+    @Override
+    public void destroyProxy(int proxy)
+    {
+        if (state[proxy] == PENDING)
+        {
+            for (int i = 0; i < pendingCount; i++)
+            {
+                if (pending[i] == proxy)
+                {
+                    pending[i] = pending[--pendingCount];
+                    break;
+                }
+            }
+        } else
+        {
+            removePairs(proxy);
+
+            for (int axis = 0; axis < AXES; axis++)
+            {
+                // Remove the maximum endpoint first, so the index of the minimum endpoint stays valid.
+                removeEndpoint(axis, maxEndpoint[axis][proxy], endpointCount);
+                removeEndpoint(axis, minEndpoint[axis][proxy], endpointCount - 1);
+            }
+
+            endpointCount -= 2;
+        }
+
+        state[proxy] = FREE;
+        minEndpoint[0][proxy] = freeList;
+        freeList = proxy;
+        proxyCount--;
+    }
+
+    private void removeEndpoint(int axis, int e, int count)
+    {
+        float[] value = endpointValue[axis];
+        int[] handle = endpointHandle[axis];
+
+        System.arraycopy(value, e + 1, value, e, count - e - 1);
+        System.arraycopy(handle, e + 1, handle, e, count - e - 1);
+
+        for (int i = e; i < count - 1; i++)
+            setEndpoint(axis, handle[i], i);
+    }
+
+    /**
+     * Removes every pair that contains the given proxy.
+     */
+    private void removePairs(int proxy)
+    {
+        int count = 0;
+        long[] keys = pairs.keys;
+
+        for (int i = 0; i < keys.length; i++)
+        {
+            long key = keys[i];
+
+            if (key != PairSet.EMPTY && ((int) (key >>> 32) == proxy || (int) key == proxy))
+            {
+                if (count == pairBuffer.length)
+                    pairBuffer = Arrays.copyOf(pairBuffer, count * 2);
+
+                pairBuffer[count++] = key;
+            }
+        }
+
+        for (int i = 0; i < count; i++)
+            removePair((int) (pairBuffer[i] >>> 32), (int) pairBuffer[i]);
+    }
+
+    @Override
+    public boolean moveProxy(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float displacementX, float displacementY, float displacementZ)
+    {
+        if (state[proxy] == PENDING)
+        {
+            setBounds(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+            return false;
+        }
+
+        float oldMinX = min[0][proxy], oldMinY = min[1][proxy], oldMinZ = min[2][proxy];
+        float oldMaxX = max[0][proxy], oldMaxY = max[1][proxy], oldMaxZ = max[2][proxy];
+
+        if (oldMinX == minX && oldMinY == minY && oldMinZ == minZ && oldMaxX == maxX && oldMaxY == maxY && oldMaxZ == maxZ)
+            return false;
+
+        setBounds(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+
+        for (int axis = 0; axis < AXES; axis++)
+        {
+            endpointValue[axis][minEndpoint[axis][proxy]] = min[axis][proxy];
+            endpointValue[axis][maxEndpoint[axis][proxy]] = max[axis][proxy];
+        }
+
+        boolean moved = false;
+
+        moved |= moveEndpoints(proxy, 0, minX - oldMinX, maxX - oldMaxX);
+        moved |= moveEndpoints(proxy, 1, minY - oldMinY, maxY - oldMaxY);
+        moved |= moveEndpoints(proxy, 2, minZ - oldMinZ, maxZ - oldMaxZ);
+
+        return moved;
+    }
+
+    private boolean moveEndpoints(int proxy, int axis, float deltaMin, float deltaMax)
+    {
+        boolean moved = false;
+
+        // Grow the interval before shrinking it, so the endpoints never cross each other.
+        if (deltaMin < 0.0F)
+            moved |= sortMinDown(axis, minEndpoint[axis][proxy], true);
+
+        if (deltaMax > 0.0F)
+            moved |= sortMaxUp(axis, maxEndpoint[axis][proxy], true);
+
+        if (deltaMin > 0.0F)
+            moved |= sortMinUp(axis, minEndpoint[axis][proxy], true);
+
+        if (deltaMax < 0.0F)
+            moved |= sortMaxDown(axis, maxEndpoint[axis][proxy], true);
+
+        return moved;
+    }
+
+    private void setBounds(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        min[0][proxy] = minX;
+        min[1][proxy] = minY;
+        min[2][proxy] = minZ;
+        max[0][proxy] = maxX;
+        max[1][proxy] = maxY;
+        max[2][proxy] = maxZ;
+    }
+
+    private void setEndpoint(int axis, int handle, int e)
+    {
+        if ((handle & 1) == 0)
+            minEndpoint[axis][handle >>> 1] = e;
+        else
+            maxEndpoint[axis][handle >>> 1] = e;
+    }
+
+    private boolean sortMinDown(int axis, int e, boolean updatePairs)
+    {
+        float[] value = endpointValue[axis];
+        int[] handle = endpointHandle[axis];
+        int h = handle[e];
+        float v = value[e];
+        int proxy = h >>> 1;
+        int start = e;
+
+        while (e > 0 && value[e - 1] > v)
+        {
+            int prev = handle[e - 1];
+
+            // Moving a minimum below the maximum of another proxy starts an overlap on this axis.
+            if ((prev & 1) != 0 && updatePairs && overlaps(proxy, prev >>> 1, axis))
+                addPair(proxy, prev >>> 1);
+
+            handle[e] = prev;
+            value[e] = value[e - 1];
+            setEndpoint(axis, prev, e);
+            e--;
+        }
+
+        handle[e] = h;
+        value[e] = v;
+        minEndpoint[axis][proxy] = e;
+        return e != start;
+    }
+
+    private boolean sortMinUp(int axis, int e, boolean updatePairs)
+    {
+        float[] value = endpointValue[axis];
+        int[] handle = endpointHandle[axis];
+        int h = handle[e];
+        float v = value[e];
+        int proxy = h >>> 1;
+        int start = e;
+
+        while (e < endpointCount - 1 && value[e + 1] < v)
+        {
+            int next = handle[e + 1];
+
+            // Moving a minimum above the maximum of another proxy ends the overlap.
+            if ((next & 1) != 0 && updatePairs)
+                removePair(proxy, next >>> 1);
+
+            handle[e] = next;
+            value[e] = value[e + 1];
+            setEndpoint(axis, next, e);
+            e++;
+        }
+
+        handle[e] = h;
+        value[e] = v;
+        minEndpoint[axis][proxy] = e;
+        return e != start;
+    }
+
+    private boolean sortMaxDown(int axis, int e, boolean updatePairs)
+    {
+        float[] value = endpointValue[axis];
+        int[] handle = endpointHandle[axis];
+        int h = handle[e];
+        float v = value[e];
+        int proxy = h >>> 1;
+        int start = e;
+
+        while (e > 0 && value[e - 1] > v)
+        {
+            int prev = handle[e - 1];
+
+            // Moving a maximum below the minimum of another proxy ends the overlap.
+            if ((prev & 1) == 0 && updatePairs)
+                removePair(proxy, prev >>> 1);
+
+            handle[e] = prev;
+            value[e] = value[e - 1];
+            setEndpoint(axis, prev, e);
+            e--;
+        }
+
+        handle[e] = h;
+        value[e] = v;
+        maxEndpoint[axis][proxy] = e;
+        return e != start;
+    }
+
+    private boolean sortMaxUp(int axis, int e, boolean updatePairs)
+    {
+        float[] value = endpointValue[axis];
+        int[] handle = endpointHandle[axis];
+        int h = handle[e];
+        float v = value[e];
+        int proxy = h >>> 1;
+        int start = e;
+
+        while (e < endpointCount - 1 && value[e + 1] < v)
+        {
+            int next = handle[e + 1];
+
+            // Moving a maximum above the minimum of another proxy starts an overlap on this axis.
+            if ((next & 1) == 0 && updatePairs && overlaps(proxy, next >>> 1, axis))
+                addPair(proxy, next >>> 1);
+
+            handle[e] = next;
+            value[e] = value[e + 1];
+            setEndpoint(axis, next, e);
+            e++;
+        }
+
+        handle[e] = h;
+        value[e] = v;
+        maxEndpoint[axis][proxy] = e;
+        return e != start;
+    }
+
+    /**
+     * Checks if two proxies overlap on the two axes other than the given one, by comparing the
+     * order of their endpoints.
+     */
+    private boolean overlaps(int a, int b, int axis)
+    {
+        for (int i = 0; i < AXES; i++)
+        {
+            if (i == axis)
+                continue;
+
+            if (maxEndpoint[i][a] < minEndpoint[i][b] || maxEndpoint[i][b] < minEndpoint[i][a])
+                return false;
+        }
+
+        return true;
+    }
+
+    private void addPair(int a, int b)
+    {
+        if (isStatic[a] && isStatic[b])
+            return;
+
+        int proxyA = Math.min(a, b);
+        int proxyB = Math.max(a, b);
+
+        if (pairs.add(key(proxyA, proxyB)) && pairListener != null)
+            pairListener.pairAdded(proxyA, proxyB);
+    }
+
+    private void removePair(int a, int b)
+    {
+        int proxyA = Math.min(a, b);
+        int proxyB = Math.max(a, b);
+
+        if (pairs.remove(key(proxyA, proxyB)) && pairListener != null)
+            pairListener.pairRemoved(proxyA, proxyB);
+    }
+
+    private static long key(int proxyA, int proxyB)
+    {
+        return ((long) proxyA << 32) | (proxyB & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sorts the pending proxies into the endpoint arrays. A few proxies are inserted one at a time,
+     * but if many proxies are pending, all endpoints are sorted at once and the pairs are rebuilt
+     * with a single sweep.
+     */
+    private void flush()
+    {
+        if (pendingCount == 0)
+            return;
+
+        if (pendingCount * 8 < endpointCount / 2)
+        {
+            for (int i = 0; i < pendingCount; i++)
+                insert(pending[i]);
+        } else
+        {
+            rebuild();
+        }
+
+        pendingCount = 0;
+    }
+
+    private void insert(int proxy)
+    {
+        int e = endpointCount;
+        endpointCount += 2;
+
+        for (int axis = 0; axis < AXES; axis++)
+        {
+            endpointValue[axis][e] = min[axis][proxy];
+            endpointHandle[axis][e] = proxy << 1;
+            endpointValue[axis][e + 1] = max[axis][proxy];
+            endpointHandle[axis][e + 1] = (proxy << 1) | 1;
+            minEndpoint[axis][proxy] = e;
+            maxEndpoint[axis][proxy] = e + 1;
+        }
+
+        state[proxy] = SORTED;
+
+        // Only the last axis updates the pairs, once the endpoints on the other axes are in place.
+        // The minimum passes the maximum of every proxy that overlaps it, and the maximum then
+        // passes back over the minimum of every proxy that lies entirely above it.
+        for (int axis = 0; axis < AXES; axis++)
+        {
+            boolean updatePairs = axis == AXES - 1;
+            sortMinDown(axis, minEndpoint[axis][proxy], updatePairs);
+            sortMaxDown(axis, maxEndpoint[axis][proxy], updatePairs);
+        }
+    }
+
+    private void rebuild()
+    {
+        for (int i = 0; i < pendingCount; i++)
+            state[pending[i]] = SORTED;
+
+        endpointCount = 0;
+
+        for (int proxy = 0; proxy < proxyCapacity; proxy++)
+            if (state[proxy] == SORTED)
+                endpointCount += 2;
+
+        if (sortBuffer.length < endpointCount)
+            sortBuffer = new long[endpointCount];
+
+        for (int axis = 0; axis < AXES; axis++)
+        {
+            int count = 0;
+
+            for (int proxy = 0; proxy < proxyCapacity; proxy++)
+            {
+                if (state[proxy] == SORTED)
+                {
+                    sortBuffer[count++] = ((long) sortableBits(min[axis][proxy]) << 32) | (proxy << 1);
+                    sortBuffer[count++] = ((long) sortableBits(max[axis][proxy]) << 32) | ((proxy << 1) | 1);
+                }
+            }
+
+            Arrays.sort(sortBuffer, 0, count);
+
+            for (int e = 0; e < count; e++)
+            {
+                int handle = (int) sortBuffer[e];
+                endpointHandle[axis][e] = handle;
+                endpointValue[axis][e] = (handle & 1) == 0 ? min[axis][handle >>> 1] : max[axis][handle >>> 1];
+                setEndpoint(axis, handle, e);
+            }
+        }
+
+        // Sweep along the first axis, keeping a list of the proxies whose interval is open.
+        PairSet previous = pairListener != null ? pairs.copy() : null;
+        pairs.clear();
+
+        int activeCount = 0;
+
+        for (int e = 0; e < endpointCount; e++)
+        {
+            int handle = endpointHandle[0][e];
+            int proxy = handle >>> 1;
+
+            if ((handle & 1) == 0)
+            {
+                for (int i = 0; i < activeCount; i++)
+                {
+                    int other = active[i];
+
+                    if ((!isStatic[proxy] || !isStatic[other]) && overlaps(proxy, other, 0))
+                        pairs.add(key(Math.min(proxy, other), Math.max(proxy, other)));
+                }
+
+                if (activeCount == active.length)
+                    active = Arrays.copyOf(active, activeCount * 2);
+
+                active[activeCount++] = proxy;
+            } else
+            {
+                for (int i = 0; i < activeCount; i++)
+                {
+                    if (active[i] == proxy)
+                    {
+                        active[i] = active[--activeCount];
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (previous != null)
+        {
+            for (long key : previous.keys)
+                if (key != PairSet.EMPTY && !pairs.contains(key))
+                    pairListener.pairRemoved((int) (key >>> 32), (int) key);
+
+            for (long key : pairs.keys)
+                if (key != PairSet.EMPTY && !previous.contains(key))
+                    pairListener.pairAdded((int) (key >>> 32), (int) key);
+        }
+    }
+
+    /**
+     * Maps a float to an int whose signed ordering matches the ordering of the floats.
+     */
+    private static int sortableBits(float value)
+    {
+        int bits = Float.floatToIntBits(value);
+        return bits < 0 ? bits ^ 0x7FFFFFFF : bits;
+    }
+
+    /**
+     * The endpoints stay where they are. Only the pairs with other static proxies change, as those
+     * are not tracked between two static proxies, so they are added or removed by sweeping the
+     * endpoints that overlap the proxy on the first axis.
+     */
+    @Override
+    public void setStatic(int proxy, boolean isStatic)
+    {
+        if (this.isStatic[proxy] == isStatic)
+            return;
+
+        if (state[proxy] == PENDING)
+        {
+            this.isStatic[proxy] = isStatic;
+            return;
+        }
+
+        // Pairs are only added once the proxy is dynamic, and only removed while it still is.
+        if (!isStatic)
+            this.isStatic[proxy] = false;
+
+        int[] handle = endpointHandle[0];
+        int proxyMin = minEndpoint[0][proxy], proxyMax = maxEndpoint[0][proxy];
+
+        for (int e = 0; e < proxyMax; e++)
+        {
+            if ((handle[e] & 1) != 0)
+                continue;
+
+            int other = handle[e] >>> 1;
+
+            if (other == proxy || !this.isStatic[other] || maxEndpoint[0][other] < proxyMin || !overlaps(proxy, other, 0))
+                continue;
+
+            if (isStatic)
+                removePair(proxy, other);
+            else
+                addPair(proxy, other);
+        }
+
+        this.isStatic[proxy] = isStatic;
+    }
+
+    @Override
+    public int getUserData(int proxy)
+    {
+        return userData[proxy];
+    }
+
+    @Override
+    public void setUserData(int proxy, int userData)
+    {
+        this.userData[proxy] = userData;
+    }
+
+    @Override
+    public void findPairs(PairCallback callback)
+    {
+        flush();
+
+        int count = 0;
+        long[] keys = pairs.keys;
+
+        if (pairBuffer.length < pairs.size)
+            pairBuffer = new long[Math.max(pairs.size, pairBuffer.length * 2)];
+
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != PairSet.EMPTY)
+                pairBuffer[count++] = keys[i];
+
+        Arrays.sort(pairBuffer, 0, count);
+
+        for (int i = 0; i < count; i++)
+            callback.addPair((int) (pairBuffer[i] >>> 32), (int) pairBuffer[i]);
+    }
+
+    @Override
+    public void query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, QueryCallback callback)
+    {
+        flush();
+
+        float[] value = endpointValue[0];
+        int[] handle = endpointHandle[0];
+
+        for (int e = 0; e < endpointCount && value[e] <= maxX; e++)
+        {
+            if ((handle[e] & 1) != 0)
+                continue;
+
+            int proxy = handle[e] >>> 1;
+
+            if (max[0][proxy] < minX || max[1][proxy] < minY || min[1][proxy] > maxY || max[2][proxy] < minZ || min[2][proxy] > maxZ)
+                continue;
+
+            if (!callback.queryCallback(proxy))
+                return;
+        }
+    }
+
+    @Override
+    public void raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius, float maxFraction, RayCastCallback callback)
+    {
+        flush();
+
+        float endX = originX + directionX * maxFraction;
+        float minX = Math.min(originX, endX) - radius;
+        float maxX = Math.max(originX, endX) + radius;
+        float invX = 1.0F / directionX;
+        float invY = 1.0F / directionY;
+        float invZ = 1.0F / directionZ;
+
+        float[] value = endpointValue[0];
+        int[] handle = endpointHandle[0];
+
+        // Only the proxies that overlap the ray on the sorted axis are tested against the ray.
+        for (int e = 0; e < endpointCount && value[e] <= maxX; e++)
+        {
+            if ((handle[e] & 1) != 0)
+                continue;
+
+            int proxy = handle[e] >>> 1;
+
+            if (max[0][proxy] + radius < minX)
+                continue;
+
+            float t0 = (min[0][proxy] - radius - originX) * invX, t1 = (max[0][proxy] + radius - originX) * invX;
+            float tMin = Math.min(t0, t1), tMax = Math.max(t0, t1);
+            t0 = (min[1][proxy] - radius - originY) * invY;
+            t1 = (max[1][proxy] + radius - originY) * invY;
+            tMin = Math.max(tMin, Math.min(t0, t1));
+            tMax = Math.min(tMax, Math.max(t0, t1));
+            t0 = (min[2][proxy] - radius - originZ) * invZ;
+            t1 = (max[2][proxy] + radius - originZ) * invZ;
+            tMin = Math.max(tMin, Math.min(t0, t1));
+            tMax = Math.min(tMax, Math.max(t0, t1));
+
+            if (tMax < Math.max(tMin, 0.0F) || tMin > maxFraction)
+                continue;
+
+            float fraction = callback.rayCastCallback(proxy, maxFraction);
+
+            if (fraction == 0.0F)
+                return;
+
+            if (fraction > 0.0F && fraction < maxFraction)
+            {
+                maxFraction = fraction;
+                endX = originX + directionX * maxFraction;
+                minX = Math.min(originX, endX) - radius;
+                maxX = Math.max(originX, endX) + radius;
+            }
+        }
+    }
+
+    @Override
+    public void prepareQueries()
+    {
+        flush();
+    }
+
+    @Override
+    public int getProxyCount()
+    {
+        return proxyCount;
+    }
+
+    /**
+     * Gets the number of overlapping pairs currently tracked.
+     */
+    public int getPairCount()
+    {
+        flush();
+        return pairs.size;
+    }
+
+    public PairListener getPairListener()
+    {
+        return pairListener;
+    }
+
+    /**
+     * Sets the listener that is notified whenever a pair starts or stops overlapping. Pair events are
+     * reported as soon as the endpoints cross, in the middle of {@link #moveProxy}, so the listener
+     * must not modify this broadphase.
+     */
+    public SweepAndPrune setPairListener(PairListener pairListener)
+    {
+        this.pairListener = pairListener;
+        return this;
+    }
+
+    public interface PairListener
+    {
+        void pairAdded(int proxyA, int proxyB);
+
+        void pairRemoved(int proxyA, int proxyB);
+    }
+
+    /**
+     * An open addressing hash set of pair keys with linear probing. Keys are never negative, so -1
+     * marks an empty slot.
+     */
+    private static final class PairSet
+    {
+        static final long EMPTY = -1L;
+
+        long[] keys = newTable(64);
+        int size;
+
+        private static long[] newTable(int capacity)
+        {
+            long[] table = new long[capacity];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+
+        private static int hash(long key, int mask)
+        {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+
+        boolean add(long key)
+        {
+            if ((size + 1) * 2 > keys.length)
+                resize(keys.length * 2);
+
+            int mask = keys.length - 1;
+            int i = hash(key, mask);
+
+            while (keys[i] != EMPTY)
+            {
+                if (keys[i] == key)
+                    return false;
+
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = key;
+            size++;
+            return true;
+        }
+
+        boolean contains(long key)
+        {
+            int mask = keys.length - 1;
+            int i = hash(key, mask);
+
+            while (keys[i] != EMPTY)
+            {
+                if (keys[i] == key)
+                    return true;
+
+                i = (i + 1) & mask;
+            }
+
+            return false;
+        }
+
+        boolean remove(long key)
+        {
+            int mask = keys.length - 1;
+            int i = hash(key, mask);
+
+            while (keys[i] != key)
+            {
+                if (keys[i] == EMPTY)
+                    return false;
+
+                i = (i + 1) & mask;
+            }
+
+            // Shift the following entries of the cluster back, so no probe sequence is broken.
+            int j = i;
+
+            while (true)
+            {
+                j = (j + 1) & mask;
+
+                if (keys[j] == EMPTY)
+                    break;
+
+                int home = hash(keys[j], mask);
+
+                if (((j - home) & mask) >= ((j - i) & mask))
+                {
+                    keys[i] = keys[j];
+                    i = j;
+                }
+            }
+
+            keys[i] = EMPTY;
+            size--;
+            return true;
+        }
+
+        void clear()
+        {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+
+        PairSet copy()
+        {
+            PairSet copy = new PairSet();
+            copy.keys = keys.clone();
+            copy.size = size;
+            return copy;
+        }
+
+        private void resize(int capacity)
+        {
+            long[] old = keys;
+            keys = newTable(capacity);
+            size = 0;
+
+            for (long key : old)
+                if (key != EMPTY)
+                    add(key);
+        }
+    }
+}
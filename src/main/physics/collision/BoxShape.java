@@ -0,0 +1,55 @@
+package main.physics.collision;
+
+import main.core.scene.boundingbox.AxisAlignedBB;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * A box centered on the origin. The support mapping is the same as
+ * {@link AxisAlignedBB#getFurthestPoint(AxisAlignedBB, Vector3f)}, without the allocations.
+ *
+ * @author Kelan
+ */
+public class BoxShape implements ConvexShape
+{
+    private final Vector3f halfExtents;
+
+    public BoxShape(Vector3f halfExtents)
+    {
+        this.halfExtents = new Vector3f(halfExtents);
+    }
+
+    public BoxShape(float halfExtentX, float halfExtentY, float halfExtentZ)
+    {
+        this.halfExtents = new Vector3f(halfExtentX, halfExtentY, halfExtentZ);
+    }
+
+    @Override
+    public void getSupport(float directionX, float directionY, float directionZ, Vector3f dest)
+    {
+        dest.x = directionX < 0.0F ? -halfExtents.x : halfExtents.x;
+        dest.y = directionY < 0.0F ? -halfExtents.y : halfExtents.y;
+        dest.z = directionZ < 0.0F ? -halfExtents.z : halfExtents.z;
+    }
+
+    @Override
+    public float getRadius()
+    {
+        return 0.0F;
+    }
+
+    public Vector3f getHalfExtents()
+    {
+        return halfExtents;
+    }
+
+    @Override
+    public AxisAlignedBB getBounds(AxisAlignedBB dest)
+    {
+        if (dest == null)
+            return new AxisAlignedBB(new Vector3f(), halfExtents);
+
+        dest.getPosition().set(0.0F, 0.0F, 0.0F);
+        dest.getHalfExtents().set(halfExtents);
+        return dest;
+    }
+}
@@ -0,0 +1,66 @@
+package main.physics.collision;
+
+import main.core.scene.boundingbox.AxisAlignedBB;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * A capsule centered on the origin and aligned with the y axis. The core of the capsule is the line
+ * segment between the centers of its two hemispherical caps.
+ *
+ * @author Kelan
+ */
+public class CapsuleShape implements ConvexShape
+{
+    private float radius;
+    private float halfHeight;
+
+    /**
+     * @param radius     The radius of the capsule.
+     * @param halfHeight Half the distance between the centers of the two caps.
+     */
+    public CapsuleShape(float radius, float halfHeight)
+    {
+        this.radius = radius;
+        this.halfHeight = halfHeight;
+    }
+
+    @Override
+    public void getSupport(float directionX, float directionY, float directionZ, Vector3f dest)
+    {
+        dest.set(0.0F, directionY < 0.0F ? -halfHeight : halfHeight, 0.0F);
+    }
+
+    @Override
+    public float getRadius()
+    {
+        return radius;
+    }
+
+    public float getHalfHeight()
+    {
+        return halfHeight;
+    }
+
+    @Override
+    public AxisAlignedBB getBounds(AxisAlignedBB dest)
+    {
+        if (dest == null)
+            return new AxisAlignedBB(0.0F, 0.0F, 0.0F, radius, halfHeight + radius, radius);
+
+        dest.getPosition().set(0.0F, 0.0F, 0.0F);
+        dest.getHalfExtents().set(radius, halfHeight + radius, radius);
+        return dest;
+    }
+
+    public CapsuleShape setRadius(float radius)
+    {
+        this.radius = radius;
+        return this;
+    }
+
+    public CapsuleShape setHalfHeight(float halfHeight)
+    {
+        this.halfHeight = halfHeight;
+        return this;
+    }
+}
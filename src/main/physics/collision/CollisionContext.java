@@ -0,0 +1,414 @@
+package main.physics.collision;
+
+import main.core.scene.boundingbox.AxisAlignedBB;
+import main.core.util.MathUtils;
+import org.lwjgl.util.vector.Quaternion;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * The narrowphase for pairs of convex shapes. Distances and shallow contacts between rounded shapes
+ * are found with {@link GJK} on the cores of the shapes, and deeper penetrations are resolved with
+ * {@link EPA} on the full shapes.
+ *
+ * Every thread has its own context, which owns all of the scratch memory used by the algorithms,
+ * so collision tests do not allocate and contexts never need to be shared between threads.
+ *
+ * @author Kelan
+ */
+public class CollisionContext
+{
+    private static final int MAX_SWEEP_ITERATIONS = 32;
+
+    private static final ThreadLocal<CollisionContext> CONTEXT = ThreadLocal.withInitial(CollisionContext::new);
+
+    private final MinkowskiDifference difference = new MinkowskiDifference();
+    private final GJK gjk = new GJK();
+    private final EPA epa = new EPA();
+    private final float[] witness = new float[6];
+
+    private final SphereShape sphere = new SphereShape(0.0F);
+    private final TriangleShape triangle = new TriangleShape();
+    private final AxisAlignedBB bounds = new AxisAlignedBB(0.0F, 0.0F, 0.0F, 0.0F, 0.0F, 0.0F);
+    final Vector3f v0 = new Vector3f();
+    final Vector3f v1 = new Vector3f();
+    final Vector3f v2 = new Vector3f();
+    final Vector3f center = new Vector3f();
+    final Vector3f closest = new Vector3f();
+    final Vector3f scratch = new Vector3f();
+
+    private int[] candidates = new int[64];
+    private int candidateCount;
+    private final TriangleMeshShape.TriangleCallback candidateCallback = this::addCandidate;
+
+    // Traversal stacks, one for each level of nested queries on this thread.
+    private int[][] stacks = new int[4][];
+    private int stackLevel;
+
+    /**
+     * Gets the collision context of the current thread.
+     */
+    public static CollisionContext get()
+    {
+        return CONTEXT.get();
+    }
+
+    /**
+     * Tests two posed convex shapes for intersection.
+     *
+     * @param result The result to write the contact, or the separation, into.
+     * @return true if the shapes intersect.
+     */
+    public boolean collide(ConvexShape shapeA, float positionAX, float positionAY, float positionAZ, float rotationAX, float rotationAY, float rotationAZ, float rotationAW, ConvexShape shapeB, float positionBX, float positionBY, float positionBZ, float rotationBX, float rotationBY, float rotationBZ, float rotationBW, CollisionResult result)
+    {
+        difference.setShapeA(shapeA, positionAX, positionAY, positionAZ, rotationAX, rotationAY, rotationAZ, rotationAW);
+        difference.setShapeB(shapeB, positionBX, positionBY, positionBZ, rotationBX, rotationBY, rotationBZ, rotationBW);
+
+        float radiusA = shapeA.getRadius();
+        float radiusB = shapeB.getRadius();
+
+        difference.includeRadius = false;
+
+        if (!gjk.evaluate(difference))
+        {
+            // The cores are separated, so the contact is found from the closest points of the cores.
+            gjk.getWitnessPoints(witness);
+            float nx = witness[3] - witness[0];
+            float ny = witness[4] - witness[1];
+            float nz = witness[5] - witness[2];
+            float distance = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+            if (distance > 0.0F)
+            {
+                nx /= distance;
+                ny /= distance;
+                nz /= distance;
+            }
+
+            float depth = radiusA + radiusB - distance;
+            result.set(depth > 0.0F, depth, nx, ny, nz, witness[0] + nx * radiusA, witness[1] + ny * radiusA, witness[2] + nz * radiusA, witness[3] - nx * radiusB, witness[4] - ny * radiusB, witness[5] - nz * radiusB);
+            return result.isIntersecting();
+        }
+
+        // The cores overlap, so find the penetration of the full shapes.
+        difference.includeRadius = radiusA > 0.0F || radiusB > 0.0F;
+
+        if (difference.includeRadius)
+            gjk.evaluate(difference);
+
+        if (!epa.evaluate(difference, gjk))
+        {
+            // The shapes are touching, without a well defined penetration direction.
+            gjk.getWitnessPoints(witness);
+            result.set(true, 0.0F, 0.0F, 1.0F, 0.0F, witness[0], witness[1], witness[2], witness[3], witness[4], witness[5]);
+            return true;
+        }
+
+        float[] w = epa.witness;
+        result.set(true, epa.depth, epa.normalX, epa.normalY, epa.normalZ, w[0], w[1], w[2], w[3], w[4], w[5]);
+        return true;
+    }
+
+    /**
+     * Finds the contacts between a triangle mesh and a posed convex shape. Every triangle that the
+     * shape touches produces its own contact, with the mesh as shape A.
+     *
+     * @param result The result to write each contact into, before it is passed to the callback.
+     * @return The number of contacts found.
+     */
+    public int collide(TriangleMeshShape mesh, float meshPositionX, float meshPositionY, float meshPositionZ, float meshRotationX, float meshRotationY, float meshRotationZ, float meshRotationW, ConvexShape shape, float positionX, float positionY, float positionZ, float rotationX, float rotationY, float rotationZ, float rotationW, TriangleMeshShape.ContactCallback callback, CollisionResult result)
+    {
+        // Move the shape into the local space of the mesh, so the hierarchy can be used directly.
+        MinkowskiDifference.rotate(-meshRotationX, -meshRotationY, -meshRotationZ, meshRotationW, positionX - meshPositionX, positionY - meshPositionY, positionZ - meshPositionZ, center);
+        float localX = center.x, localY = center.y, localZ = center.z;
+
+        // The local rotation is the inverse mesh rotation followed by the shape rotation.
+        float qx = meshRotationW * rotationX - meshRotationX * rotationW - meshRotationY * rotationZ + meshRotationZ * rotationY;
+        float qy = meshRotationW * rotationY - meshRotationY * rotationW - meshRotationZ * rotationX + meshRotationX * rotationZ;
+        float qz = meshRotationW * rotationZ - meshRotationZ * rotationW - meshRotationX * rotationY + meshRotationY * rotationX;
+        float qw = meshRotationW * rotationW + meshRotationX * rotationX + meshRotationY * rotationY + meshRotationZ * rotationZ;
+
+        shape.getBounds(bounds);
+        Vector3f position = bounds.getPosition();
+        Vector3f halfExtents = bounds.getHalfExtents();
+        MinkowskiDifference.rotate(qx, qy, qz, qw, position.x, position.y, position.z, center);
+        float centerX = localX + center.x, centerY = localY + center.y, centerZ = localZ + center.z;
+
+        // The extent of the rotated box on each axis is the sum of the absolute rotated half extents.
+        float extentX = 0.0F, extentY = 0.0F, extentZ = 0.0F;
+
+        for (int axis = 0; axis < 3; axis++)
+        {
+            float half = axis == 0 ? halfExtents.x : axis == 1 ? halfExtents.y : halfExtents.z;
+            MinkowskiDifference.rotate(qx, qy, qz, qw, axis == 0 ? half : 0.0F, axis == 1 ? half : 0.0F, axis == 2 ? half : 0.0F, center);
+            extentX += Math.abs(center.x);
+            extentY += Math.abs(center.y);
+            extentZ += Math.abs(center.z);
+        }
+
+        candidateCount = 0;
+        mesh.query(centerX - extentX, centerY - extentY, centerZ - extentZ, centerX + extentX, centerY + extentY, centerZ + extentZ, candidateCallback);
+
+        boolean sphere = shape instanceof SphereShape;
+        float radius = shape.getRadius();
+        int contacts = 0;
+
+        for (int i = 0; i < candidateCount; i++)
+        {
+            int index = candidates[i];
+            boolean intersecting;
+
+            if (sphere)
+                intersecting = collideSphere(mesh, index, localX, localY, localZ, radius, result);
+            else
+            {
+                mesh.getTriangle(index, triangle);
+                intersecting = collide(triangle, 0.0F, 0.0F, 0.0F, 0.0F, 0.0F, 0.0F, 1.0F, shape, localX, localY, localZ, qx, qy, qz, qw, result);
+            }
+
+            if (!intersecting)
+                continue;
+
+            // Move the contact back into world space.
+            Vector3f normal = result.getNormal();
+            Vector3f pointA = result.getPointA();
+            Vector3f pointB = result.getPointB();
+            MinkowskiDifference.rotate(meshRotationX, meshRotationY, meshRotationZ, meshRotationW, normal.x, normal.y, normal.z, normal);
+            MinkowskiDifference.rotate(meshRotationX, meshRotationY, meshRotationZ, meshRotationW, pointA.x, pointA.y, pointA.z, pointA);
+            MinkowskiDifference.rotate(meshRotationX, meshRotationY, meshRotationZ, meshRotationW, pointB.x, pointB.y, pointB.z, pointB);
+            pointA.translate(meshPositionX, meshPositionY, meshPositionZ);
+            pointB.translate(meshPositionX, meshPositionY, meshPositionZ);
+
+            callback.addContact(index, result);
+            contacts++;
+        }
+
+        return contacts;
+    }
+
+    /**
+     * Sweeps a sphere along a straight line against a triangle mesh, and finds the first time that it
+     * touches a triangle by conservative advancement. Every step moves the sphere forward by its
+     * distance to the closest triangle, which can never carry it through a triangle, so this is safe
+     * against walls that are much thinner than the sphere moves in one step.
+     *
+     * @param result The result to write the contact at the time of impact into, with the mesh as
+     *               shape A.
+     * @return The fraction of the motion at which the sphere first touches the mesh, or -1 if it
+     *         does not touch the mesh along the whole motion.
+     */
+    public float sweepSphere(TriangleMeshShape mesh, float meshPositionX, float meshPositionY, float meshPositionZ, float meshRotationX, float meshRotationY, float meshRotationZ, float meshRotationW, float startX, float startY, float startZ, float motionX, float motionY, float motionZ, float radius, float tolerance, CollisionResult result)
+    {
+        MinkowskiDifference.rotate(-meshRotationX, -meshRotationY, -meshRotationZ, meshRotationW, startX - meshPositionX, startY - meshPositionY, startZ - meshPositionZ, center);
+        float localX = center.x, localY = center.y, localZ = center.z;
+        MinkowskiDifference.rotate(-meshRotationX, -meshRotationY, -meshRotationZ, meshRotationW, motionX, motionY, motionZ, center);
+        float dx = center.x, dy = center.y, dz = center.z;
+        float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+        candidateCount = 0;
+        mesh.query(Math.min(localX, localX + dx) - radius, Math.min(localY, localY + dy) - radius, Math.min(localZ, localZ + dz) - radius, Math.max(localX, localX + dx) + radius, Math.max(localY, localY + dy) + radius, Math.max(localZ, localZ + dz) + radius, candidateCallback);
+
+        if (candidateCount == 0)
+            return -1.0F;
+
+        float fraction = 0.0F;
+
+        for (int iteration = 0; iteration < MAX_SWEEP_ITERATIONS; iteration++)
+        {
+            float x = localX + dx * fraction, y = localY + dy * fraction, z = localZ + dz * fraction;
+            float distance = Float.POSITIVE_INFINITY;
+            int nearest = -1;
+
+            for (int i = 0; i < candidateCount; i++)
+            {
+                mesh.getTriangle(candidates[i], v0, v1, v2);
+                center.set(x, y, z);
+                MathUtils.closestPointOnTriangle(v0, v1, v2, center, closest);
+                float cx = x - closest.x, cy = y - closest.y, cz = z - closest.z;
+
+                // The distance to a triangle is convex along the motion, so a triangle that the
+                // sphere is not closing in on can never be hit later on. This keeps resting and
+                // sliding contacts from stopping the sweep.
+                if (cx * dx + cy * dy + cz * dz >= 0.0F)
+                    continue;
+
+                float candidateDistance = (float) Math.sqrt(cx * cx + cy * cy + cz * cz);
+
+                if (candidateDistance < distance)
+                {
+                    distance = candidateDistance;
+                    nearest = candidates[i];
+                }
+            }
+
+            if (nearest < 0)
+                return -1.0F;
+
+            float gap = distance - radius;
+
+            // Running out of iterations on a grazing approach stops the sphere early, which is the
+            // safe direction to be wrong in.
+            if (gap <= tolerance || iteration == MAX_SWEEP_ITERATIONS - 1)
+            {
+                collideSphere(mesh, nearest, x, y, z, radius + Math.max(gap, 0.0F) + tolerance, result);
+                Vector3f normal = result.getNormal();
+                Vector3f pointA = result.getPointA();
+                Vector3f pointB = result.getPointB();
+                MinkowskiDifference.rotate(meshRotationX, meshRotationY, meshRotationZ, meshRotationW, normal.x, normal.y, normal.z, normal);
+                MinkowskiDifference.rotate(meshRotationX, meshRotationY, meshRotationZ, meshRotationW, pointA.x, pointA.y, pointA.z, pointA);
+                MinkowskiDifference.rotate(meshRotationX, meshRotationY, meshRotationZ, meshRotationW, pointB.x, pointB.y, pointB.z, pointB);
+                pointA.translate(meshPositionX, meshPositionY, meshPositionZ);
+                pointB.translate(meshPositionX, meshPositionY, meshPositionZ);
+                return fraction;
+            }
+
+            fraction += gap / length;
+
+            if (fraction > 1.0F)
+                return -1.0F;
+        }
+
+        return -1.0F;
+    }
+
+    /**
+     * Casts a sphere along a ray against a posed triangle mesh. The ray is cast in the local space
+     * of the mesh, and the hit is transformed back into world space. A radius of zero casts a ray.
+     *
+     * @param result The result to write the closest hit into.
+     * @return true if a triangle was hit.
+     * @see TriangleMeshShape#sphereCast
+     */
+    public boolean sphereCast(TriangleMeshShape mesh, float meshPositionX, float meshPositionY, float meshPositionZ, float meshRotationX, float meshRotationY, float meshRotationZ, float meshRotationW, float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius, float maxFraction, RaycastResult result)
+    {
+        MinkowskiDifference.rotate(-meshRotationX, -meshRotationY, -meshRotationZ, meshRotationW, originX - meshPositionX, originY - meshPositionY, originZ - meshPositionZ, center);
+        float localX = center.x, localY = center.y, localZ = center.z;
+        MinkowskiDifference.rotate(-meshRotationX, -meshRotationY, -meshRotationZ, meshRotationW, directionX, directionY, directionZ, center);
+
+        if (!mesh.sphereCast(localX, localY, localZ, center.x, center.y, center.z, radius, maxFraction, result))
+            return false;
+
+        Vector3f point = result.getPoint();
+        Vector3f normal = result.getNormal();
+        MinkowskiDifference.rotate(meshRotationX, meshRotationY, meshRotationZ, meshRotationW, point.x, point.y, point.z, point);
+        MinkowskiDifference.rotate(meshRotationX, meshRotationY, meshRotationZ, meshRotationW, normal.x, normal.y, normal.z, normal);
+        point.translate(meshPositionX, meshPositionY, meshPositionZ);
+        return true;
+    }
+
+    /**
+     * Sweeps a sphere along a straight line against a posed convex shape, and finds the first time
+     * that it touches the shape by conservative advancement. The distance from the moving sphere to
+     * the shape is convex in time, so stepping by the distance over the closing speed along the
+     * current normal can never step past the impact, and once the sphere stops closing in it never
+     * will again. A radius of zero casts a ray.
+     *
+     * @param result The result to write the contact at the time of impact into, with the convex
+     *               shape as shape A, so the normal points from the shape towards the sphere.
+     * @return The fraction of the motion at which the sphere first touches the shape, or -1 if it
+     *         does not touch the shape along the whole motion.
+     */
+    public float sweepSphere(ConvexShape shape, float positionX, float positionY, float positionZ, float rotationX, float rotationY, float rotationZ, float rotationW, float startX, float startY, float startZ, float motionX, float motionY, float motionZ, float radius, float tolerance, CollisionResult result)
+    {
+        sphere.setRadius(radius);
+        float fraction = 0.0F;
+
+        for (int iteration = 0; iteration < MAX_SWEEP_ITERATIONS; iteration++)
+        {
+            collide(shape, positionX, positionY, positionZ, rotationX, rotationY, rotationZ, rotationW, sphere, startX + motionX * fraction, startY + motionY * fraction, startZ + motionZ * fraction, 0.0F, 0.0F, 0.0F, 1.0F, result);
+            Vector3f normal = result.getNormal();
+            float closing = -(motionX * normal.x + motionY * normal.y + motionZ * normal.z);
+
+            if (closing <= 0.0F)
+                return -1.0F;
+
+            float separation = -result.getDepth();
+
+            if (separation <= tolerance)
+                return fraction;
+
+            fraction += separation / closing;
+
+            if (fraction > 1.0F)
+                return -1.0F;
+        }
+
+        return -1.0F;
+    }
+
+    /**
+     * Tests a sphere against a single triangle, from the closest point on the triangle to the
+     * center of the sphere.
+     */
+    private boolean collideSphere(TriangleMeshShape mesh, int index, float centerX, float centerY, float centerZ, float radius, CollisionResult result)
+    {
+        mesh.getTriangle(index, v0, v1, v2);
+        center.set(centerX, centerY, centerZ);
+        MathUtils.closestPointOnTriangle(v0, v1, v2, center, closest);
+
+        float nx = centerX - closest.x;
+        float ny = centerY - closest.y;
+        float nz = centerZ - closest.z;
+        float distanceSquared = nx * nx + ny * ny + nz * nz;
+
+        if (distanceSquared >= radius * radius)
+            return false;
+
+        float distance = (float) Math.sqrt(distanceSquared);
+
+        if (distance > 1e-6F)
+        {
+            nx /= distance;
+            ny /= distance;
+            nz /= distance;
+        } else
+        {
+            // The center is on the triangle, so push the sphere out of the front face.
+            mesh.getNormal(index, scratch);
+            nx = scratch.x;
+            ny = scratch.y;
+            nz = scratch.z;
+        }
+
+        result.set(true, radius - distance, nx, ny, nz, closest.x, closest.y, closest.z, centerX - nx * radius, centerY - ny * radius, centerZ - nz * radius);
+        return true;
+    }
+
+    private boolean addCandidate(int triangle)
+    {
+        if (candidateCount == candidates.length)
+            candidates = Arrays.copyOf(candidates, candidates.length * 2);
+
+        candidates[candidateCount++] = triangle;
+        return true;
+    }
+
+    /**
+     * Gets a traversal stack of at least the given size for a query. Queries may be nested, so every
+     * level of nesting gets its own stack, which must be released when the query ends.
+     */
+    int[] acquireStack(int size)
+    {
+        if (stackLevel == stacks.length)
+            stacks = Arrays.copyOf(stacks, stacks.length * 2);
+
+        int[] stack = stacks[stackLevel];
+
+        if (stack == null || stack.length < size * 2)
+            stacks[stackLevel] = stack = new int[size * 2];
+
+        stackLevel++;
+        return stack;
+    }
+
+    void releaseStack()
+    {
+        stackLevel--;
+    }
+
+    public boolean collide(ConvexShape shapeA, Vector3f positionA, Quaternion rotationA, ConvexShape shapeB, Vector3f positionB, Quaternion rotationB, CollisionResult result)
+    {
+        return collide(shapeA, positionA.x, positionA.y, positionA.z, rotationA.x, rotationA.y, rotationA.z, rotationA.w, shapeB, positionB.x, positionB.y, positionB.z, rotationB.x, rotationB.y, rotationB.z, rotationB.w, result);
+    }
+}
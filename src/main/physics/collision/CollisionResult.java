@@ -0,0 +1,68 @@
+package main.physics.collision;
+
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * The result of a narrowphase test between two convex shapes A and B. The normal always points
+ * from A towards B, and the witness points are the deepest (or closest) points of each shape in
+ * world space. Results are reused from one test to the next, so they should be copied if they need
+ * to be kept.
+ *
+ * @author Kelan
+ */
+public class CollisionResult
+{
+    private final Vector3f normal = new Vector3f();
+    private final Vector3f pointA = new Vector3f();
+    private final Vector3f pointB = new Vector3f();
+    private float depth;
+    private boolean intersecting;
+
+    void set(boolean intersecting, float depth, float normalX, float normalY, float normalZ, float pointAX, float pointAY, float pointAZ, float pointBX, float pointBY, float pointBZ)
+    {
+        this.intersecting = intersecting;
+        this.depth = depth;
+        this.normal.set(normalX, normalY, normalZ);
+        this.pointA.set(pointAX, pointAY, pointAZ);
+        this.pointB.set(pointBX, pointBY, pointBZ);
+    }
+
+    /**
+     * Gets the unit vector pointing from shape A towards shape B, along which the shapes should be
+     * pushed apart to resolve the penetration.
+     */
+    public Vector3f getNormal()
+    {
+        return normal;
+    }
+
+    public Vector3f getPointA()
+    {
+        return pointA;
+    }
+
+    public Vector3f getPointB()
+    {
+        return pointB;
+    }
+
+    /**
+     * Gets the penetration depth of the shapes. This is negative when the shapes are separated, in
+     * which case it is the distance between them.
+     */
+    public float getDepth()
+    {
+        return depth;
+    }
+
+    public boolean isIntersecting()
+    {
+        return intersecting;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CollisionResult{" + "normal=" + normal + ", pointA=" + pointA + ", pointB=" + pointB + ", depth=" + depth + ", intersecting=" + intersecting + '}';
+    }
+}
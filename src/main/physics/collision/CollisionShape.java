@@ -0,0 +1,17 @@
+package main.physics.collision;
+
+import main.core.scene.boundingbox.AxisAlignedBB;
+
+/**
+ * A shape that a rigid body can collide with. Convex shapes can collide with any other shape, while
+ * triangle meshes are only used for static geometry, and only collide with convex shapes.
+ *
+ * @author Kelan
+ */
+public interface CollisionShape
+{
+    /**
+     * Gets the local space bounding box of the full shape, including any radius.
+     */
+    AxisAlignedBB getBounds(AxisAlignedBB dest);
+}
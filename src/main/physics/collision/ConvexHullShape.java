@@ -0,0 +1,114 @@
+package main.physics.collision;
+
+import main.client.rendering.geometry.MeshData;
+import main.client.rendering.geometry.Vertex;
+import main.core.scene.boundingbox.AxisAlignedBB;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.List;
+
+/**
+ * The convex hull of a set of points. The hull itself is never built, since the support point of a
+ * point cloud is always a vertex of its hull, so any set of points can be used directly.
+ *
+ * @author Kelan
+ */
+public class ConvexHullShape implements ConvexShape
+{
+    private final float[] points; // Packed xyz.
+    private final int pointCount;
+
+    public ConvexHullShape(float[] points)
+    {
+        this.points = points.clone();
+        this.pointCount = points.length / 3;
+    }
+
+    public ConvexHullShape(List<Vector3f> points)
+    {
+        this.pointCount = points.size();
+        this.points = new float[pointCount * 3];
+
+        for (int i = 0; i < pointCount; i++)
+        {
+            Vector3f point = points.get(i);
+            this.points[i * 3] = point.x;
+            this.points[i * 3 + 1] = point.y;
+            this.points[i * 3 + 2] = point.z;
+        }
+    }
+
+    public ConvexHullShape(MeshData mesh)
+    {
+        List<Vertex> vertices = mesh.getVertices();
+
+        synchronized (vertices)
+        {
+            this.pointCount = vertices.size();
+            this.points = new float[pointCount * 3];
+
+            for (int i = 0; i < pointCount; i++)
+            {
+                Vector3f position = vertices.get(i).getPosition();
+                this.points[i * 3] = position.x;
+                this.points[i * 3 + 1] = position.y;
+                this.points[i * 3 + 2] = position.z;
+            }
+        }
+    }
+
+    @Override
+    public void getSupport(float directionX, float directionY, float directionZ, Vector3f dest)
+    {
+        int best = 0;
+        float bestDot = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < pointCount * 3; i += 3)
+        {
+            float dot = points[i] * directionX + points[i + 1] * directionY + points[i + 2] * directionZ;
+
+            if (dot > bestDot)
+            {
+                bestDot = dot;
+                best = i;
+            }
+        }
+
+        dest.set(points[best], points[best + 1], points[best + 2]);
+    }
+
+    @Override
+    public float getRadius()
+    {
+        return 0.0F;
+    }
+
+    public int getPointCount()
+    {
+        return pointCount;
+    }
+
+    @Override
+    public AxisAlignedBB getBounds(AxisAlignedBB dest)
+    {
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < pointCount * 3; i += 3)
+        {
+            minX = Math.min(minX, points[i]);
+            minY = Math.min(minY, points[i + 1]);
+            minZ = Math.min(minZ, points[i + 2]);
+            maxX = Math.max(maxX, points[i]);
+            maxY = Math.max(maxY, points[i + 1]);
+            maxZ = Math.max(maxZ, points[i + 2]);
+        }
+
+        if (dest == null)
+            return new AxisAlignedBB(minX, minY, minZ, maxX, maxY, maxZ, true);
+
+        dest.getPosition().set((minX + maxX) * 0.5F, (minY + maxY) * 0.5F, (minZ + maxZ) * 0.5F);
+        dest.getHalfExtents().set((maxX - minX) * 0.5F, (maxY - minY) * 0.5F, (maxZ - minZ) * 0.5F);
+        return dest;
+    }
+}
@@ -0,0 +1,29 @@
+package main.physics.collision;
+
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * A convex collision shape, described by its support mapping. Shapes with rounded surfaces are
+ * split into a core shape and a radius, so a sphere is a point with a radius and a capsule is a
+ * line segment with a radius. The narrowphase runs on the cores where it can, which keeps contacts
+ * between rounded shapes exact and cheap.
+ *
+ * All coordinates are in the local space of the shape.
+ *
+ * @author Kelan
+ */
+public interface ConvexShape extends CollisionShape
+{
+    /**
+     * Gets the point of the core shape that is furthest in the given direction. The direction does
+     * not need to be normalized.
+     *
+     * @param dest The vector to write the support point into.
+     */
+    void getSupport(float directionX, float directionY, float directionZ, Vector3f dest);
+
+    /**
+     * Gets the radius that the core shape is rounded by.
+     */
+    float getRadius();
+}
@@ -0,0 +1,332 @@
+package main.physics.collision;
+
+/**
+ * The expanding polytope algorithm, which finds the penetration depth and direction of two
+ * intersecting shapes. Starting from the final GJK simplex, a polytope inside the Minkowski
+ * difference is repeatedly expanded towards the face closest to the origin, until that face lies on
+ * the surface of the difference.
+ *
+ * The polytope vertices, faces and horizon edges are stored in fixed size primitive arrays.
+ *
+ * @author Kelan
+ */
+class EPA
+{
+    private static final int MAX_VERTICES = 128;
+    private static final int MAX_FACES = 256;
+    private static final int MAX_ITERATIONS = 64;
+    private static final float TOLERANCE = 1e-4F;
+
+    private final float[] w = new float[MAX_VERTICES * 3];
+    private final float[] wa = new float[MAX_VERTICES * 3];
+    private final float[] wb = new float[MAX_VERTICES * 3];
+    private int vertexCount;
+
+    private final int[] faces = new int[MAX_FACES * 3];
+    private final float[] faceNormal = new float[MAX_FACES * 3];
+    private final float[] faceDistance = new float[MAX_FACES];
+    private int faceCount;
+
+    private final int[] edges = new int[MAX_FACES * 3 * 2];
+    private int edgeCount;
+
+    // The result of the last evaluation.
+    float normalX, normalY, normalZ, depth;
+    final float[] witness = new float[6];
+
+    /**
+     * Runs EPA, starting from the simplex of a GJK evaluation that found an intersection.
+     *
+     * @return false if the polytope was degenerate, meaning the shapes are only touching.
+     */
+    boolean evaluate(MinkowskiDifference difference, GJK gjk)
+    {
+        vertexCount = gjk.count;
+        System.arraycopy(gjk.w, 0, w, 0, vertexCount * 3);
+        System.arraycopy(gjk.wa, 0, wa, 0, vertexCount * 3);
+        System.arraycopy(gjk.wb, 0, wb, 0, vertexCount * 3);
+
+        if (!buildTetrahedron(difference))
+            return false;
+
+        faceCount = 0;
+        addFace(0, 1, 2, 3);
+        addFace(0, 2, 3, 1);
+        addFace(0, 3, 1, 2);
+        addFace(1, 3, 2, 0);
+
+        int closest = 0;
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++)
+        {
+            closest = findClosestFace();
+
+            if (vertexCount == MAX_VERTICES)
+                break;
+
+            int f = closest * 3;
+            int index = vertexCount;
+            difference.support(faceNormal[f], faceNormal[f + 1], faceNormal[f + 2], w, wa, wb, index);
+
+            int j = index * 3;
+            float distance = faceNormal[f] * w[j] + faceNormal[f + 1] * w[j + 1] + faceNormal[f + 2] * w[j + 2];
+
+            // The closest face is on the surface of the difference.
+            if (distance - faceDistance[closest] < TOLERANCE)
+                break;
+
+            vertexCount++;
+
+            if (!expand(index))
+                break;
+        }
+
+        computeResult(closest);
+        return true;
+    }
+
+    /**
+     * Adds support points until the simplex is a tetrahedron with a non zero volume.
+     */
+    private boolean buildTetrahedron(MinkowskiDifference difference)
+    {
+        if (vertexCount == 1)
+        {
+            for (int axis = 0; axis < 6 && vertexCount == 1; axis++)
+            {
+                float sign = axis < 3 ? 1.0F : -1.0F;
+                difference.support(axis % 3 == 0 ? sign : 0.0F, axis % 3 == 1 ? sign : 0.0F, axis % 3 == 2 ? sign : 0.0F, w, wa, wb, 1);
+
+                if (distanceSquared(0, 1) > 1e-12F)
+                    vertexCount = 2;
+            }
+        }
+
+        if (vertexCount == 2)
+        {
+            float dx = w[3] - w[0], dy = w[4] - w[1], dz = w[5] - w[2];
+
+            // Pick the axis least aligned with the segment, and search perpendicular to both.
+            float ax = Math.abs(dx), ay = Math.abs(dy), az = Math.abs(dz);
+            float ex = ax <= ay && ax <= az ? 1.0F : 0.0F;
+            float ey = ex == 0.0F && ay <= az ? 1.0F : 0.0F;
+            float ez = ex == 0.0F && ey == 0.0F ? 1.0F : 0.0F;
+            float p1x = dy * ez - dz * ey, p1y = dz * ex - dx * ez, p1z = dx * ey - dy * ex;
+            float p2x = dy * p1z - dz * p1y, p2y = dz * p1x - dx * p1z, p2z = dx * p1y - dy * p1x;
+
+            for (int i = 0; i < 4 && vertexCount == 2; i++)
+            {
+                float sign = i < 2 ? 1.0F : -1.0F;
+                float sx = ((i & 1) == 0 ? p1x : p2x) * sign;
+                float sy = ((i & 1) == 0 ? p1y : p2y) * sign;
+                float sz = ((i & 1) == 0 ? p1z : p2z) * sign;
+                difference.support(sx, sy, sz, w, wa, wb, 2);
+
+                if (triangleAreaSquared(0, 1, 2) > 1e-12F)
+                    vertexCount = 3;
+            }
+        }
+
+        if (vertexCount == 3)
+        {
+            float abx = w[3] - w[0], aby = w[4] - w[1], abz = w[5] - w[2];
+            float acx = w[6] - w[0], acy = w[7] - w[1], acz = w[8] - w[2];
+            float nx = aby * acz - abz * acy, ny = abz * acx - abx * acz, nz = abx * acy - aby * acx;
+
+            for (int i = 0; i < 2 && vertexCount == 3; i++)
+            {
+                float sign = i == 0 ? 1.0F : -1.0F;
+                difference.support(nx * sign, ny * sign, nz * sign, w, wa, wb, 3);
+
+                if (Math.abs(volume()) > 1e-12F)
+                    vertexCount = 4;
+            }
+        }
+
+        return vertexCount == 4 && Math.abs(volume()) > 1e-12F;
+    }
+
+    private float distanceSquared(int a, int b)
+    {
+        float dx = w[b * 3] - w[a * 3], dy = w[b * 3 + 1] - w[a * 3 + 1], dz = w[b * 3 + 2] - w[a * 3 + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private float triangleAreaSquared(int a, int b, int c)
+    {
+        int ia = a * 3, ib = b * 3, ic = c * 3;
+        float abx = w[ib] - w[ia], aby = w[ib + 1] - w[ia + 1], abz = w[ib + 2] - w[ia + 2];
+        float acx = w[ic] - w[ia], acy = w[ic + 1] - w[ia + 1], acz = w[ic + 2] - w[ia + 2];
+        float nx = aby * acz - abz * acy, ny = abz * acx - abx * acz, nz = abx * acy - aby * acx;
+        return nx * nx + ny * ny + nz * nz;
+    }
+
+    private float volume()
+    {
+        float abx = w[3] - w[0], aby = w[4] - w[1], abz = w[5] - w[2];
+        float acx = w[6] - w[0], acy = w[7] - w[1], acz = w[8] - w[2];
+        float adx = w[9] - w[0], ady = w[10] - w[1], adz = w[11] - w[2];
+        return abx * (acy * adz - acz * ady) + aby * (acz * adx - acx * adz) + abz * (acx * ady - acy * adx);
+    }
+
+    /**
+     * Adds the face abc, wound so that its normal points away from the given interior vertex.
+     */
+    private void addFace(int a, int b, int c, int interior)
+    {
+        int ia = a * 3, ib = b * 3, ic = c * 3, id = interior * 3;
+        float abx = w[ib] - w[ia], aby = w[ib + 1] - w[ia + 1], abz = w[ib + 2] - w[ia + 2];
+        float acx = w[ic] - w[ia], acy = w[ic + 1] - w[ia + 1], acz = w[ic + 2] - w[ia + 2];
+        float nx = aby * acz - abz * acy, ny = abz * acx - abx * acz, nz = abx * acy - aby * acx;
+
+        if (nx * (w[id] - w[ia]) + ny * (w[id + 1] - w[ia + 1]) + nz * (w[id + 2] - w[ia + 2]) > 0.0F)
+            addFace(a, c, b);
+        else
+            addFace(a, b, c);
+    }
+
+    /**
+     * Adds the face abc, whose vertices are in counter clockwise order seen from outside.
+     *
+     * @return false if there is no room for the face.
+     */
+    private boolean addFace(int a, int b, int c)
+    {
+        if (faceCount == MAX_FACES)
+            return false;
+
+        int ia = a * 3, ib = b * 3, ic = c * 3;
+        float abx = w[ib] - w[ia], aby = w[ib + 1] - w[ia + 1], abz = w[ib + 2] - w[ia + 2];
+        float acx = w[ic] - w[ia], acy = w[ic + 1] - w[ia + 1], acz = w[ic + 2] - w[ia + 2];
+        float nx = aby * acz - abz * acy, ny = abz * acx - abx * acz, nz = abx * acy - aby * acx;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        int f = faceCount * 3;
+        faces[f] = a;
+        faces[f + 1] = b;
+        faces[f + 2] = c;
+
+        if (length > 1e-12F)
+        {
+            faceNormal[f] = nx / length;
+            faceNormal[f + 1] = ny / length;
+            faceNormal[f + 2] = nz / length;
+            faceDistance[faceCount] = faceNormal[f] * w[ia] + faceNormal[f + 1] * w[ia + 1] + faceNormal[f + 2] * w[ia + 2];
+        } else
+        {
+            // A degenerate face is never the closest, and is never visible.
+            faceNormal[f] = faceNormal[f + 1] = faceNormal[f + 2] = 0.0F;
+            faceDistance[faceCount] = Float.POSITIVE_INFINITY;
+        }
+
+        faceCount++;
+        return true;
+    }
+
+    private int findClosestFace()
+    {
+        int closest = 0;
+
+        for (int i = 1; i < faceCount; i++)
+            if (faceDistance[i] < faceDistance[closest])
+                closest = i;
+
+        return closest;
+    }
+
+    /**
+     * Removes every face that can be seen from the new vertex, and fills the hole by connecting
+     * the horizon to the new vertex.
+     *
+     * @return false if the polytope could not be expanded.
+     */
+    private boolean expand(int index)
+    {
+        int j = index * 3;
+        edgeCount = 0;
+
+        for (int i = 0; i < faceCount; i++)
+        {
+            int f = i * 3;
+            int ia = faces[f] * 3;
+            float visibility = faceNormal[f] * (w[j] - w[ia]) + faceNormal[f + 1] * (w[j + 1] - w[ia + 1]) + faceNormal[f + 2] * (w[j + 2] - w[ia + 2]);
+
+            if (visibility <= 0.0F)
+                continue;
+
+            addEdge(faces[f], faces[f + 1]);
+            addEdge(faces[f + 1], faces[f + 2]);
+            addEdge(faces[f + 2], faces[f]);
+
+            // Remove the face by moving the last face into its place.
+            int last = --faceCount;
+            System.arraycopy(faces, last * 3, faces, f, 3);
+            System.arraycopy(faceNormal, last * 3, faceNormal, f, 3);
+            faceDistance[i] = faceDistance[last];
+            i--;
+        }
+
+        if (edgeCount == 0)
+            return false;
+
+        for (int i = 0; i < edgeCount; i++)
+            if (!addFace(edges[i * 2], edges[i * 2 + 1], index))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Adds an edge to the horizon. An edge shared by two removed faces appears once in each
+     * direction, and is not part of the horizon, so the two cancel out.
+     */
+    private void addEdge(int a, int b)
+    {
+        for (int i = 0; i < edgeCount; i++)
+        {
+            if (edges[i * 2] == b && edges[i * 2 + 1] == a)
+            {
+                edgeCount--;
+                edges[i * 2] = edges[edgeCount * 2];
+                edges[i * 2 + 1] = edges[edgeCount * 2 + 1];
+                return;
+            }
+        }
+
+        edges[edgeCount * 2] = a;
+        edges[edgeCount * 2 + 1] = b;
+        edgeCount++;
+    }
+
+    private void computeResult(int face)
+    {
+        int f = face * 3;
+        normalX = faceNormal[f];
+        normalY = faceNormal[f + 1];
+        normalZ = faceNormal[f + 2];
+        depth = Math.max(0.0F, faceDistance[face]);
+
+        // Barycentric coordinates of the projection of the origin onto the face.
+        int ia = faces[f] * 3, ib = faces[f + 1] * 3, ic = faces[f + 2] * 3;
+        float px = normalX * depth, py = normalY * depth, pz = normalZ * depth;
+        float v0x = w[ib] - w[ia], v0y = w[ib + 1] - w[ia + 1], v0z = w[ib + 2] - w[ia + 2];
+        float v1x = w[ic] - w[ia], v1y = w[ic + 1] - w[ia + 1], v1z = w[ic + 2] - w[ia + 2];
+        float v2x = px - w[ia], v2y = py - w[ia + 1], v2z = pz - w[ia + 2];
+        float d00 = v0x * v0x + v0y * v0y + v0z * v0z;
+        float d01 = v0x * v1x + v0y * v1y + v0z * v1z;
+        float d11 = v1x * v1x + v1y * v1y + v1z * v1z;
+        float d20 = v2x * v0x + v2y * v0y + v2z * v0z;
+        float d21 = v2x * v1x + v2y * v1y + v2z * v1z;
+        float denominator = d00 * d11 - d01 * d01;
+
+        float v = denominator != 0.0F ? (d11 * d20 - d01 * d21) / denominator : 0.0F;
+        float t = denominator != 0.0F ? (d00 * d21 - d01 * d20) / denominator : 0.0F;
+        float u = 1.0F - v - t;
+
+        for (int i = 0; i < 3; i++)
+        {
+            witness[i] = wa[ia + i] * u + wa[ib + i] * v + wa[ic + i] * t;
+            witness[i + 3] = wb[ia + i] * u + wb[ib + i] * v + wb[ic + i] * t;
+        }
+    }
+}
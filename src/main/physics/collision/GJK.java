@@ -0,0 +1,359 @@
+package main.physics.collision;
+
+/**
+ * The Gilbert-Johnson-Keerthi algorithm, which finds the point of the Minkowski difference A - B
+ * that is closest to the origin. If the origin is inside the difference, the shapes intersect, and
+ * otherwise the closest point gives the distance and the closest points of the two shapes.
+ *
+ * The simplex is stored in packed primitive arrays, and the closest point on each simplex is found
+ * with the region tests from Real-Time Collision Detection by Christer Ericson.
+ *
+ * @author Kelan
+ */
+class GJK
+{
+    private static final int MAX_ITERATIONS = 64;
+    private static final float RELATIVE_TOLERANCE = 1e-6F;
+    private static final float INTERSECTION_TOLERANCE = 1e-12F;
+    private static final float SIMPLEX_TOLERANCE = 1e-10F;
+
+    final float[] w = new float[12];
+    final float[] wa = new float[12];
+    final float[] wb = new float[12];
+    final float[] lambda = new float[4];
+    int count;
+
+    // The closest point of the simplex to the origin.
+    float vx, vy, vz;
+
+    private final float[] bary = new float[3];
+
+    /**
+     * Runs GJK on the given Minkowski difference.
+     *
+     * @return true if the origin is contained in the difference, meaning the shapes intersect.
+     */
+    boolean evaluate(MinkowskiDifference difference)
+    {
+        // Start searching from the direction between the shapes.
+        float dx = difference.positionAX - difference.positionBX;
+        float dy = difference.positionAY - difference.positionBY;
+        float dz = difference.positionAZ - difference.positionBZ;
+
+        if (dx * dx + dy * dy + dz * dz < INTERSECTION_TOLERANCE)
+            dx = 1.0F;
+
+        difference.support(-dx, -dy, -dz, w, wa, wb, 0);
+        lambda[0] = 1.0F;
+        count = 1;
+        vx = w[0];
+        vy = w[1];
+        vz = w[2];
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++)
+        {
+            float vv = vx * vx + vy * vy + vz * vz;
+
+            // The closest point carries a rounding error relative to the size of the simplex, so
+            // with a large shape, a point this close to the origin is as good as touching it.
+            if (vv < INTERSECTION_TOLERANCE || vv <= SIMPLEX_TOLERANCE * getMaxLengthSquared())
+                return true;
+
+            int j = count * 3;
+            difference.support(-vx, -vy, -vz, w, wa, wb, count);
+
+            // Stop once the new support point makes no progress towards the origin.
+            if (vv - (vx * w[j] + vy * w[j + 1] + vz * w[j + 2]) <= RELATIVE_TOLERANCE * vv)
+                return false;
+
+            if (contains(count))
+                return false;
+
+            count++;
+
+            if (!solve())
+                return true;
+
+            if (vx * vx + vy * vy + vz * vz >= vv)
+                return false; // No longer converging, due to numerical error.
+        }
+
+        return false;
+    }
+
+    private float getMaxLengthSquared()
+    {
+        float max = 0.0F;
+
+        for (int i = 0; i < count * 3; i += 3)
+            max = Math.max(max, w[i] * w[i] + w[i + 1] * w[i + 1] + w[i + 2] * w[i + 2]);
+
+        return max;
+    }
+
+    /**
+     * Checks if the vertex at the given index duplicates one of the other simplex vertices.
+     */
+    private boolean contains(int index)
+    {
+        int j = index * 3;
+
+        for (int i = 0; i < index * 3; i += 3)
+            if (w[i] == w[j] && w[i + 1] == w[j + 1] && w[i + 2] == w[j + 2])
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Replaces the simplex with the smallest sub-simplex that contains the point closest to the
+     * origin, and updates the closest point.
+     *
+     * @return false if the origin is inside the simplex.
+     */
+    private boolean solve()
+    {
+        switch (count)
+        {
+            case 2:
+                closestOnSegment(0, 1);
+                lambda[0] = bary[0];
+                lambda[1] = bary[1];
+                break;
+            case 3:
+                closestOnTriangle(0, 1, 2);
+                lambda[0] = bary[0];
+                lambda[1] = bary[1];
+                lambda[2] = bary[2];
+                break;
+            case 4:
+                if (!solveTetrahedron())
+                    return false;
+                break;
+        }
+
+        reduce();
+        return true;
+    }
+
+    private boolean solveTetrahedron()
+    {
+        float best = Float.POSITIVE_INFINITY;
+        boolean outside = false;
+
+        // Each face, with the vertex opposite to it.
+        for (int face = 0; face < 4; face++)
+        {
+            int a = FACES[face * 4];
+            int b = FACES[face * 4 + 1];
+            int c = FACES[face * 4 + 2];
+            int d = FACES[face * 4 + 3];
+
+            if (!isOriginOutside(a, b, c, d))
+                continue;
+
+            outside = true;
+            float distanceSquared = closestOnTriangle(a, b, c);
+
+            if (distanceSquared < best)
+            {
+                best = distanceSquared;
+                lambda[0] = lambda[1] = lambda[2] = lambda[3] = 0.0F;
+                lambda[a] = bary[0];
+                lambda[b] = bary[1];
+                lambda[c] = bary[2];
+            }
+        }
+
+        return outside;
+    }
+
+    private static final int[] FACES = new int[]{
+            0, 1, 2, 3,
+            0, 2, 3, 1,
+            0, 3, 1, 2,
+            1, 3, 2, 0
+    };
+
+    /**
+     * Checks if the origin is on the other side of the plane through a, b and c from d. Degenerate
+     * tetrahedra count as outside, so that the closest point is still found on the face.
+     */
+    private boolean isOriginOutside(int a, int b, int c, int d)
+    {
+        int ia = a * 3, ib = b * 3, ic = c * 3, id = d * 3;
+        float abx = w[ib] - w[ia], aby = w[ib + 1] - w[ia + 1], abz = w[ib + 2] - w[ia + 2];
+        float acx = w[ic] - w[ia], acy = w[ic + 1] - w[ia + 1], acz = w[ic + 2] - w[ia + 2];
+        float nx = aby * acz - abz * acy;
+        float ny = abz * acx - abx * acz;
+        float nz = abx * acy - aby * acx;
+
+        float signOrigin = -(w[ia] * nx + w[ia + 1] * ny + w[ia + 2] * nz);
+        float signOpposite = (w[id] - w[ia]) * nx + (w[id + 1] - w[ia + 1]) * ny + (w[id + 2] - w[ia + 2]) * nz;
+
+        if (signOpposite * signOpposite < 1e-12F)
+            return true;
+
+        return signOrigin * signOpposite < 0.0F;
+    }
+
+    /**
+     * Computes the barycentric coordinates of the point on segment ab closest to the origin.
+     *
+     * @return The squared distance from the origin to the segment.
+     */
+    private float closestOnSegment(int a, int b)
+    {
+        int ia = a * 3, ib = b * 3;
+        float abx = w[ib] - w[ia], aby = w[ib + 1] - w[ia + 1], abz = w[ib + 2] - w[ia + 2];
+        float lengthSquared = abx * abx + aby * aby + abz * abz;
+        float t = lengthSquared > 0.0F ? -(w[ia] * abx + w[ia + 1] * aby + w[ia + 2] * abz) / lengthSquared : 0.0F;
+        t = Math.max(0.0F, Math.min(1.0F, t));
+
+        bary[0] = 1.0F - t;
+        bary[1] = t;
+        bary[2] = 0.0F;
+
+        float px = w[ia] + abx * t, py = w[ia + 1] + aby * t, pz = w[ia + 2] + abz * t;
+        return px * px + py * py + pz * pz;
+    }
+
+    /**
+     * Computes the barycentric coordinates of the point on triangle abc closest to the origin.
+     *
+     * @return The squared distance from the origin to the triangle.
+     */
+    private float closestOnTriangle(int a, int b, int c)
+    {
+        int ia = a * 3, ib = b * 3, ic = c * 3;
+        float ax = w[ia], ay = w[ia + 1], az = w[ia + 2];
+        float abx = w[ib] - ax, aby = w[ib + 1] - ay, abz = w[ib + 2] - az;
+        float acx = w[ic] - ax, acy = w[ic + 1] - ay, acz = w[ic + 2] - az;
+
+        float d1 = -(abx * ax + aby * ay + abz * az);
+        float d2 = -(acx * ax + acy * ay + acz * az);
+
+        if (d1 <= 0.0F && d2 <= 0.0F)
+            return setTriangle(a, b, c, 1.0F, 0.0F, 0.0F); // Vertex a
+
+        float d3 = -(abx * w[ib] + aby * w[ib + 1] + abz * w[ib + 2]);
+        float d4 = -(acx * w[ib] + acy * w[ib + 1] + acz * w[ib + 2]);
+
+        if (d3 >= 0.0F && d4 <= d3)
+            return setTriangle(a, b, c, 0.0F, 1.0F, 0.0F); // Vertex b
+
+        float vc = d1 * d4 - d3 * d2;
+
+        if (vc <= 0.0F && d1 >= 0.0F && d3 <= 0.0F)
+        {
+            float v = d1 / (d1 - d3);
+            return setTriangle(a, b, c, 1.0F - v, v, 0.0F); // Edge ab
+        }
+
+        float d5 = -(abx * w[ic] + aby * w[ic + 1] + abz * w[ic + 2]);
+        float d6 = -(acx * w[ic] + acy * w[ic + 1] + acz * w[ic + 2]);
+
+        if (d6 >= 0.0F && d5 <= d6)
+            return setTriangle(a, b, c, 0.0F, 0.0F, 1.0F); // Vertex c
+
+        float vb = d5 * d2 - d1 * d6;
+
+        if (vb <= 0.0F && d2 >= 0.0F && d6 <= 0.0F)
+        {
+            float v = d2 / (d2 - d6);
+            return setTriangle(a, b, c, 1.0F - v, 0.0F, v); // Edge ac
+        }
+
+        float va = d3 * d6 - d5 * d4;
+
+        if (va <= 0.0F && d4 - d3 >= 0.0F && d5 - d6 >= 0.0F)
+        {
+            float v = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            return setTriangle(a, b, c, 0.0F, 1.0F - v, v); // Edge bc
+        }
+
+        float denominator = va + vb + vc;
+
+        if (denominator <= 1e-20F)
+        {
+            // The triangle is degenerate, so the closest point is on one of its edges.
+            float ab = closestOnSegment(a, b);
+            float abU = bary[0], abV = bary[1];
+            float ac = closestOnSegment(a, c);
+            float acU = bary[0], acV = bary[1];
+            float bc = closestOnSegment(b, c);
+
+            if (ab <= ac && ab <= bc)
+                return setTriangle(a, b, c, abU, abV, 0.0F);
+            if (ac <= bc)
+                return setTriangle(a, b, c, acU, 0.0F, acV);
+
+            return setTriangle(a, b, c, 0.0F, bary[0], bary[1]);
+        }
+
+        float v = vb / denominator;
+        float u = vc / denominator;
+        return setTriangle(a, b, c, 1.0F - v - u, v, u); // Face
+    }
+
+    private float setTriangle(int a, int b, int c, float u, float v, float t)
+    {
+        bary[0] = u;
+        bary[1] = v;
+        bary[2] = t;
+
+        int ia = a * 3, ib = b * 3, ic = c * 3;
+        float px = w[ia] * u + w[ib] * v + w[ic] * t;
+        float py = w[ia + 1] * u + w[ib + 1] * v + w[ic + 1] * t;
+        float pz = w[ia + 2] * u + w[ib + 2] * v + w[ic + 2] * t;
+        return px * px + py * py + pz * pz;
+    }
+
+    /**
+     * Removes the vertices with zero weight from the simplex, and recomputes the closest point.
+     */
+    private void reduce()
+    {
+        int kept = 0;
+        vx = vy = vz = 0.0F;
+
+        for (int i = 0; i < count; i++)
+        {
+            if (lambda[i] <= 0.0F)
+                continue;
+
+            int from = i * 3, to = kept * 3;
+            System.arraycopy(w, from, w, to, 3);
+            System.arraycopy(wa, from, wa, to, 3);
+            System.arraycopy(wb, from, wb, to, 3);
+            lambda[kept] = lambda[i];
+
+            vx += w[to] * lambda[kept];
+            vy += w[to + 1] * lambda[kept];
+            vz += w[to + 2] * lambda[kept];
+            kept++;
+        }
+
+        count = kept;
+    }
+
+    /**
+     * Computes the closest points of the two shapes from the current simplex, and writes them as
+     * packed xyz of A followed by xyz of B.
+     */
+    void getWitnessPoints(float[] dest)
+    {
+        dest[0] = dest[1] = dest[2] = dest[3] = dest[4] = dest[5] = 0.0F;
+
+        for (int i = 0; i < count; i++)
+        {
+            int j = i * 3;
+            dest[0] += wa[j] * lambda[i];
+            dest[1] += wa[j + 1] * lambda[i];
+            dest[2] += wa[j + 2] * lambda[i];
+            dest[3] += wb[j] * lambda[i];
+            dest[4] += wb[j + 1] * lambda[i];
+            dest[5] += wb[j + 2] * lambda[i];
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package main.physics.collision;
+
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * The support mapping of the Minkowski difference A - B of two posed convex shapes. The witness
+ * points on each shape are recorded with every support point, so that the closest or deepest points
+ * can be recovered from the barycentric coordinates of a simplex.
+ *
+ * @author Kelan
+ */
+class MinkowskiDifference
+{
+    ConvexShape shapeA;
+    ConvexShape shapeB;
+    float positionAX, positionAY, positionAZ;
+    float rotationAX, rotationAY, rotationAZ, rotationAW;
+    float positionBX, positionBY, positionBZ;
+    float rotationBX, rotationBY, rotationBZ, rotationBW;
+
+    /**
+     * If false, only the cores of the shapes are used, and their radii are ignored.
+     */
+    boolean includeRadius;
+
+    private final Vector3f local = new Vector3f();
+    private final Vector3f world = new Vector3f();
+
+    void setShapeA(ConvexShape shape, float positionX, float positionY, float positionZ, float rotationX, float rotationY, float rotationZ, float rotationW)
+    {
+        this.shapeA = shape;
+        this.positionAX = positionX;
+        this.positionAY = positionY;
+        this.positionAZ = positionZ;
+        this.rotationAX = rotationX;
+        this.rotationAY = rotationY;
+        this.rotationAZ = rotationZ;
+        this.rotationAW = rotationW;
+    }
+
+    void setShapeB(ConvexShape shape, float positionX, float positionY, float positionZ, float rotationX, float rotationY, float rotationZ, float rotationW)
+    {
+        this.shapeB = shape;
+        this.positionBX = positionX;
+        this.positionBY = positionY;
+        this.positionBZ = positionZ;
+        this.rotationBX = rotationX;
+        this.rotationBY = rotationY;
+        this.rotationBZ = rotationZ;
+        this.rotationBW = rotationW;
+    }
+
+    /**
+     * Computes the support point of A - B in the given world space direction, and writes it into
+     * the vertex at index i of the given packed xyz arrays.
+     */
+    void support(float directionX, float directionY, float directionZ, float[] w, float[] wa, float[] wb, int i)
+    {
+        int j = i * 3;
+        float radiusScale = 0.0F;
+
+        if (includeRadius)
+        {
+            float lengthSquared = directionX * directionX + directionY * directionY + directionZ * directionZ;
+            radiusScale = lengthSquared > 1e-12F ? (float) (1.0 / Math.sqrt(lengthSquared)) : 0.0F;
+        }
+
+        // Support of A in the direction.
+        rotate(-rotationAX, -rotationAY, -rotationAZ, rotationAW, directionX, directionY, directionZ, local);
+        shapeA.getSupport(local.x, local.y, local.z, local);
+        rotate(rotationAX, rotationAY, rotationAZ, rotationAW, local.x, local.y, local.z, world);
+        float radiusA = shapeA.getRadius() * radiusScale;
+        wa[j] = world.x + positionAX + directionX * radiusA;
+        wa[j + 1] = world.y + positionAY + directionY * radiusA;
+        wa[j + 2] = world.z + positionAZ + directionZ * radiusA;
+
+        // Support of B in the opposite direction.
+        rotate(-rotationBX, -rotationBY, -rotationBZ, rotationBW, -directionX, -directionY, -directionZ, local);
+        shapeB.getSupport(local.x, local.y, local.z, local);
+        rotate(rotationBX, rotationBY, rotationBZ, rotationBW, local.x, local.y, local.z, world);
+        float radiusB = shapeB.getRadius() * radiusScale;
+        wb[j] = world.x + positionBX - directionX * radiusB;
+        wb[j + 1] = world.y + positionBY - directionY * radiusB;
+        wb[j + 2] = world.z + positionBZ - directionZ * radiusB;
+
+        w[j] = wa[j] - wb[j];
+        w[j + 1] = wa[j + 1] - wb[j + 1];
+        w[j + 2] = wa[j + 2] - wb[j + 2];
+    }
+
+    /**
+     * Rotates the vector v by the unit quaternion q.
+     */
+    static void rotate(float qx, float qy, float qz, float qw, float vx, float vy, float vz, Vector3f dest)
+    {
+        // v' = v + 2w(q x v) + 2(q x (q x v))
+        float cx = qy * vz - qz * vy;
+        float cy = qz * vx - qx * vz;
+        float cz = qx * vy - qy * vx;
+        dest.x = vx + 2.0F * (qw * cx + qy * cz - qz * cy);
+        dest.y = vy + 2.0F * (qw * cy + qz * cx - qx * cz);
+        dest.z = vz + 2.0F * (qw * cz + qx * cy - qy * cx);
+    }
+}
@@ -0,0 +1,75 @@
+package main.physics.collision;
+
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * The closest hit of a ray cast against a triangle mesh. The fraction is the distance along the ray
+ * in units of the ray direction, so the hit point is origin + direction * fraction. For a sphere
+ * cast, that is where the center of the sphere is when it touches the mesh, and the hit point is the
+ * point on the mesh that it touches.
+ *
+ * @author Kelan
+ */
+public class RaycastResult
+{
+    private final Vector3f point = new Vector3f();
+    private final Vector3f normal = new Vector3f();
+    private float fraction;
+    private int triangle = -1;
+    private boolean hit;
+
+    void set(float fraction, int triangle, float pointX, float pointY, float pointZ, float normalX, float normalY, float normalZ)
+    {
+        this.hit = true;
+        this.fraction = fraction;
+        this.triangle = triangle;
+        this.point.set(pointX, pointY, pointZ);
+        this.normal.set(normalX, normalY, normalZ);
+    }
+
+    void clear()
+    {
+        this.hit = false;
+        this.triangle = -1;
+    }
+
+    public Vector3f getPoint()
+    {
+        return point;
+    }
+
+    /**
+     * Gets the unit normal of the triangle that was hit, facing back towards the ray origin. For a
+     * sphere cast, this points from the hit point towards the center of the sphere.
+     */
+    public Vector3f getNormal()
+    {
+        return normal;
+    }
+
+    public float getFraction()
+    {
+        return fraction;
+    }
+
+    /**
+     * Gets the index of the triangle that was hit, in the order of the collider.
+     *
+     * @see TriangleMeshShape#getSourceTriangle(int)
+     */
+    public int getTriangle()
+    {
+        return triangle;
+    }
+
+    public boolean isHit()
+    {
+        return hit;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RaycastResult{" + "point=" + point + ", normal=" + normal + ", fraction=" + fraction + ", triangle=" + triangle + ", hit=" + hit + '}';
+    }
+}
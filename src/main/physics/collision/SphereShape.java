@@ -0,0 +1,48 @@
+package main.physics.collision;
+
+import main.core.scene.boundingbox.AxisAlignedBB;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * A sphere centered on the origin.
+ *
+ * @author Kelan
+ */
+public class SphereShape implements ConvexShape
+{
+    private float radius;
+
+    public SphereShape(float radius)
+    {
+        this.radius = radius;
+    }
+
+    @Override
+    public void getSupport(float directionX, float directionY, float directionZ, Vector3f dest)
+    {
+        dest.set(0.0F, 0.0F, 0.0F);
+    }
+
+    @Override
+    public float getRadius()
+    {
+        return radius;
+    }
+
+    @Override
+    public AxisAlignedBB getBounds(AxisAlignedBB dest)
+    {
+        if (dest == null)
+            return new AxisAlignedBB(0.0F, 0.0F, 0.0F, radius, radius, radius);
+
+        dest.getPosition().set(0.0F, 0.0F, 0.0F);
+        dest.getHalfExtents().set(radius, radius, radius);
+        return dest;
+    }
+
+    public SphereShape setRadius(float radius)
+    {
+        this.radius = radius;
+        return this;
+    }
+}
@@ -0,0 +1,900 @@
+package main.physics.collision;
+
+import main.client.rendering.geometry.MeshData;
+import main.client.rendering.geometry.Vertex;
+import main.core.scene.boundingbox.AxisAlignedBB;
+import main.core.util.MathUtils;
+import org.lwjgl.util.vector.Vector3f;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A static triangle mesh collider, for level geometry that is loaded as {@link MeshData}. A bounding
+ * volume hierarchy is built over the triangles once, splitting each node with the surface area
+ * heuristic over a fixed number of centroid bins, so that contact and ray queries only visit the
+ * triangles near them instead of scanning the whole mesh.
+ *
+ * The nodes are stored depth first in flat arrays, so the first child of an internal node always
+ * directly follows it, and the triangles are reordered so that every leaf references a contiguous
+ * range of them. Triangle indices used by the collider are in this order, and can be mapped back to
+ * the source mesh with {@link #getSourceTriangle(int)}.
+ *
+ * @author Kelan
+ */
+public class TriangleMeshShape implements CollisionShape
+{
+    private static final int BIN_COUNT = 16;
+    private static final int MAX_LEAF_TRIANGLES = 8;
+    private static final int MIN_LEAF_TRIANGLES = 2;
+    private static final int MAX_DEPTH = 64;
+    private static final float TRAVERSAL_COST = 1.0F;
+
+    private static final int BOUNDS_STRIDE = 6;
+    private static final int NODE_STRIDE = 2;
+    private static final int OFFSET = 0; // The first triangle of a leaf, or the second child of an internal node.
+    private static final int COUNT = 1; // The number of triangles of a leaf, or 0 for an internal node.
+
+    private final float[] vertices;
+    private final int[] indices;
+    private final int[] sourceTriangles;
+    private final int triangleCount;
+
+    private float[] nodeBounds;
+    private int[] nodes;
+    private int nodeCount;
+    private int depth;
+
+    /**
+     * Creates a collider from the vertex positions of a mesh, with every three indices forming a
+     * triangle. If the mesh has no indices, every three vertices form a triangle.
+     */
+    public TriangleMeshShape(MeshData mesh)
+    {
+        this(mesh, null);
+    }
+
+    /**
+     * Creates a collider from the vertex positions of a mesh, scaled by the given scale.
+     */
+    public TriangleMeshShape(MeshData mesh, Vector3f scale)
+    {
+        this(getPositions(mesh.getVertices(), scale), getIndices(mesh.getIndices(), mesh.getVertices().size()));
+    }
+
+    /**
+     * Creates a single collider from several meshes, such as the per material meshes of a model,
+     * scaled by the given scale.
+     */
+    public TriangleMeshShape(Collection<MeshData> meshes, Vector3f scale)
+    {
+        this(getPositions(meshes, scale), getIndices(meshes));
+    }
+
+    /**
+     * Creates a collider from packed xyz vertex positions, and packed triangle vertex indices.
+     */
+    public TriangleMeshShape(float[] vertices, int[] indices)
+    {
+        this.vertices = vertices;
+        this.triangleCount = indices.length / 3;
+        this.indices = new int[triangleCount * 3];
+        this.sourceTriangles = new int[triangleCount];
+
+        new Builder(indices).build();
+    }
+
+    private static float[] getPositions(List<Vertex> vertices, Vector3f scale)
+    {
+        synchronized (vertices)
+        {
+            float[] positions = new float[vertices.size() * 3];
+
+            for (int i = 0; i < vertices.size(); i++)
+            {
+                Vector3f position = vertices.get(i).getPosition();
+                positions[i * 3] = scale != null ? position.x * scale.x : position.x;
+                positions[i * 3 + 1] = scale != null ? position.y * scale.y : position.y;
+                positions[i * 3 + 2] = scale != null ? position.z * scale.z : position.z;
+            }
+
+            return positions;
+        }
+    }
+
+    private static float[] getPositions(Collection<MeshData> meshes, Vector3f scale)
+    {
+        float[][] positions = new float[meshes.size()][];
+        int length = 0;
+        int i = 0;
+
+        for (MeshData mesh : meshes)
+            length += (positions[i++] = getPositions(mesh.getVertices(), scale)).length;
+
+        float[] combined = new float[length];
+        int offset = 0;
+
+        for (float[] meshPositions : positions)
+        {
+            System.arraycopy(meshPositions, 0, combined, offset, meshPositions.length);
+            offset += meshPositions.length;
+        }
+
+        return combined;
+    }
+
+    private static int[] getIndices(Collection<MeshData> meshes)
+    {
+        int[][] indices = new int[meshes.size()][];
+        int[] vertexOffsets = new int[meshes.size()];
+        int length = 0;
+        int vertexCount = 0;
+        int i = 0;
+
+        for (MeshData mesh : meshes)
+        {
+            vertexOffsets[i] = vertexCount;
+            vertexCount += mesh.getVertices().size();
+            length += (indices[i++] = getIndices(mesh.getIndices(), mesh.getVertices().size())).length;
+        }
+
+        int[] combined = new int[length];
+        int offset = 0;
+
+        for (i = 0; i < indices.length; i++)
+        {
+            for (int index : indices[i])
+                combined[offset++] = index + vertexOffsets[i];
+        }
+
+        return combined;
+    }
+
+    private static int[] getIndices(List<Integer> indices, int vertexCount)
+    {
+        synchronized (indices)
+        {
+            if (indices.isEmpty())
+            {
+                int[] sequential = new int[vertexCount - vertexCount % 3];
+
+                for (int i = 0; i < sequential.length; i++)
+                    sequential[i] = i;
+
+                return sequential;
+            }
+
+            int[] array = new int[indices.size()];
+
+            for (int i = 0; i < array.length; i++)
+                array[i] = indices.get(i);
+
+            return array;
+        }
+    }
+
+    /**
+     * Visits every triangle whose bounding box overlaps the given box, in the local space of the
+     * mesh.
+     */
+    public void query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, TriangleCallback callback)
+    {
+        if (nodeCount == 0)
+            return;
+
+        CollisionContext context = CollisionContext.get();
+        int[] stack = context.acquireStack(depth + 1);
+        int top = 0;
+        stack[top++] = 0;
+
+        try
+        {
+            while (top > 0)
+            {
+                int node = stack[--top];
+                int b = node * BOUNDS_STRIDE;
+
+                if (minX > nodeBounds[b + 3] || maxX < nodeBounds[b] || minY > nodeBounds[b + 4] || maxY < nodeBounds[b + 1] || minZ > nodeBounds[b + 5] || maxZ < nodeBounds[b + 2])
+                    continue;
+
+                int count = nodes[node * NODE_STRIDE + COUNT];
+                int offset = nodes[node * NODE_STRIDE + OFFSET];
+
+                if (count == 0)
+                {
+                    stack[top++] = offset;
+                    stack[top++] = node + 1;
+                    continue;
+                }
+
+                for (int triangle = offset; triangle < offset + count; triangle++)
+                {
+                    if (!overlapsTriangle(triangle, minX, minY, minZ, maxX, maxY, maxZ))
+                        continue;
+
+                    if (!callback.processTriangle(triangle))
+                        return;
+                }
+            }
+        } finally
+        {
+            context.releaseStack();
+        }
+    }
+
+    public void query(AxisAlignedBB bounds, TriangleCallback callback)
+    {
+        Vector3f position = bounds.getPosition();
+        Vector3f halfExtents = bounds.getHalfExtents();
+        query(position.x - halfExtents.x, position.y - halfExtents.y, position.z - halfExtents.z, position.x + halfExtents.x, position.y + halfExtents.y, position.z + halfExtents.z, callback);
+    }
+
+    private boolean overlapsTriangle(int triangle, float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        int i0 = indices[triangle * 3] * 3;
+        int i1 = indices[triangle * 3 + 1] * 3;
+        int i2 = indices[triangle * 3 + 2] * 3;
+
+        return !(minX > Math.max(vertices[i0], Math.max(vertices[i1], vertices[i2])) || maxX < Math.min(vertices[i0], Math.min(vertices[i1], vertices[i2]))
+                || minY > Math.max(vertices[i0 + 1], Math.max(vertices[i1 + 1], vertices[i2 + 1])) || maxY < Math.min(vertices[i0 + 1], Math.min(vertices[i1 + 1], vertices[i2 + 1]))
+                || minZ > Math.max(vertices[i0 + 2], Math.max(vertices[i1 + 2], vertices[i2 + 2])) || maxZ < Math.min(vertices[i0 + 2], Math.min(vertices[i1 + 2], vertices[i2 + 2])));
+    }
+
+    /**
+     * Finds the closest triangle hit by a ray in the local space of the mesh. Triangles are hit from
+     * both sides.
+     *
+     * @param maxFraction The maximum distance along the ray, in units of the direction.
+     * @param result      The result to write the closest hit into.
+     * @return true if a triangle was hit.
+     */
+    public boolean raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxFraction, RaycastResult result)
+    {
+        return cast(originX, originY, originZ, directionX, directionY, directionZ, 0.0F, maxFraction, result);
+    }
+
+    public boolean raycast(Vector3f origin, Vector3f direction, float maxFraction, RaycastResult result)
+    {
+        return raycast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxFraction, result);
+    }
+
+    /**
+     * Finds the first triangle touched by a sphere swept along a ray in the local space of the mesh.
+     * The hit point is the point on the triangle that the sphere touches, and the normal points from
+     * it towards the center of the sphere.
+     *
+     * @param maxFraction The maximum distance along the ray, in units of the direction.
+     * @param result      The result to write the closest hit into.
+     * @return true if a triangle was hit.
+     */
+    public boolean sphereCast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius, float maxFraction, RaycastResult result)
+    {
+        return cast(originX, originY, originZ, directionX, directionY, directionZ, radius, maxFraction, result);
+    }
+
+    private boolean cast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius, float maxFraction, RaycastResult result)
+    {
+        result.clear();
+
+        if (nodeCount == 0)
+            return false;
+
+        float inverseX = 1.0F / directionX;
+        float inverseY = 1.0F / directionY;
+        float inverseZ = 1.0F / directionZ;
+        float closest = maxFraction;
+        int closestTriangle = -1;
+
+        CollisionContext context = CollisionContext.get();
+        int[] stack = context.acquireStack(depth + 1);
+        int top = 0;
+
+        try
+        {
+            stack[top++] = 0;
+
+            while (top > 0)
+            {
+                int node = stack[--top];
+
+                // Nodes on the stack may be further away than a hit found since they were pushed.
+                if (intersectNode(node, originX, originY, originZ, inverseX, inverseY, inverseZ, radius, closest) == Float.POSITIVE_INFINITY)
+                    continue;
+
+                int count = nodes[node * NODE_STRIDE + COUNT];
+                int offset = nodes[node * NODE_STRIDE + OFFSET];
+
+                if (count == 0)
+                {
+                    // Visit the nearer child first, so that the further child can often be skipped.
+                    int near = node + 1;
+                    int far = offset;
+                    float nearFraction = intersectNode(near, originX, originY, originZ, inverseX, inverseY, inverseZ, radius, closest);
+                    float farFraction = intersectNode(far, originX, originY, originZ, inverseX, inverseY, inverseZ, radius, closest);
+
+                    if (farFraction < nearFraction)
+                    {
+                        int swap = near;
+                        near = far;
+                        far = swap;
+                        float swapFraction = nearFraction;
+                        nearFraction = farFraction;
+                        farFraction = swapFraction;
+                    }
+
+                    if (farFraction < Float.POSITIVE_INFINITY)
+                        stack[top++] = far;
+                    if (nearFraction < Float.POSITIVE_INFINITY)
+                        stack[top++] = near;
+
+                    continue;
+                }
+
+                for (int triangle = offset; triangle < offset + count; triangle++)
+                {
+                    float fraction = radius > 0.0F ? sweepTriangle(triangle, originX, originY, originZ, directionX, directionY, directionZ, radius) : intersectTriangle(triangle, originX, originY, originZ, directionX, directionY, directionZ);
+
+                    if (fraction >= 0.0F && fraction < closest)
+                    {
+                        closest = fraction;
+                        closestTriangle = triangle;
+                    }
+                }
+            }
+        } finally
+        {
+            context.releaseStack();
+        }
+
+        if (closestTriangle < 0)
+            return false;
+
+        float centerX = originX + directionX * closest, centerY = originY + directionY * closest, centerZ = originZ + directionZ * closest;
+        Vector3f normal = getNormal(closestTriangle, context.scratch);
+
+        if (normal.x * directionX + normal.y * directionY + normal.z * directionZ > 0.0F)
+            normal.negate();
+
+        if (radius > 0.0F)
+        {
+            // The sphere touches the triangle at the closest point to its center, which is on an
+            // edge or a vertex rather than the face when it hits the triangle side on.
+            getTriangle(closestTriangle, context.v0, context.v1, context.v2);
+            context.center.set(centerX, centerY, centerZ);
+            Vector3f point = MathUtils.closestPointOnTriangle(context.v0, context.v1, context.v2, context.center, context.closest);
+            float nx = centerX - point.x, ny = centerY - point.y, nz = centerZ - point.z;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+            if (length > 1e-6F)
+                normal.set(nx / length, ny / length, nz / length);
+
+            result.set(closest, closestTriangle, point.x, point.y, point.z, normal.x, normal.y, normal.z);
+            return true;
+        }
+
+        result.set(closest, closestTriangle, centerX, centerY, centerZ, normal.x, normal.y, normal.z);
+        return true;
+    }
+
+    /**
+     * Gets the fraction along the ray where it enters the bounds of a node grown by a radius, or
+     * positive infinity if it misses the node or enters it after the maximum fraction.
+     */
+    private float intersectNode(int node, float originX, float originY, float originZ, float inverseX, float inverseY, float inverseZ, float radius, float maxFraction)
+    {
+        int b = node * BOUNDS_STRIDE;
+        float x0 = (nodeBounds[b] - radius - originX) * inverseX, x1 = (nodeBounds[b + 3] + radius - originX) * inverseX;
+        float y0 = (nodeBounds[b + 1] - radius - originY) * inverseY, y1 = (nodeBounds[b + 4] + radius - originY) * inverseY;
+        float z0 = (nodeBounds[b + 2] - radius - originZ) * inverseZ, z1 = (nodeBounds[b + 5] + radius - originZ) * inverseZ;
+
+        float near = Math.max(Math.max(Math.min(x0, x1), Math.min(y0, y1)), Math.max(Math.min(z0, z1), 0.0F));
+        float far = Math.min(Math.min(Math.max(x0, x1), Math.max(y0, y1)), Math.min(Math.max(z0, z1), maxFraction));
+
+        return near <= far ? near : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Intersects a ray with a triangle, using the Moller-Trumbore algorithm.
+     *
+     * @return The fraction along the ray of the hit, or -1 if the ray misses.
+     */
+    private float intersectTriangle(int triangle, float originX, float originY, float originZ, float directionX, float directionY, float directionZ)
+    {
+        int i0 = indices[triangle * 3] * 3;
+        int i1 = indices[triangle * 3 + 1] * 3;
+        int i2 = indices[triangle * 3 + 2] * 3;
+
+        float e1x = vertices[i1] - vertices[i0], e1y = vertices[i1 + 1] - vertices[i0 + 1], e1z = vertices[i1 + 2] - vertices[i0 + 2];
+        float e2x = vertices[i2] - vertices[i0], e2y = vertices[i2 + 1] - vertices[i0 + 1], e2z = vertices[i2 + 2] - vertices[i0 + 2];
+
+        float px = directionY * e2z - directionZ * e2y;
+        float py = directionZ * e2x - directionX * e2z;
+        float pz = directionX * e2y - directionY * e2x;
+        float determinant = e1x * px + e1y * py + e1z * pz;
+
+        if (determinant > -1e-12F && determinant < 1e-12F)
+            return -1.0F;
+
+        float inverseDeterminant = 1.0F / determinant;
+        float tx = originX - vertices[i0], ty = originY - vertices[i0 + 1], tz = originZ - vertices[i0 + 2];
+        float u = (tx * px + ty * py + tz * pz) * inverseDeterminant;
+
+        if (u < 0.0F || u > 1.0F)
+            return -1.0F;
+
+        float qx = ty * e1z - tz * e1y;
+        float qy = tz * e1x - tx * e1z;
+        float qz = tx * e1y - ty * e1x;
+        float v = (directionX * qx + directionY * qy + directionZ * qz) * inverseDeterminant;
+
+        if (v < 0.0F || u + v > 1.0F)
+            return -1.0F;
+
+        return (e2x * qx + e2y * qy + e2z * qz) * inverseDeterminant;
+    }
+
+    /**
+     * Sweeps a sphere along a ray against a triangle, from both sides. The sphere first touches the
+     * face if the point where it reaches the plane of the triangle lies inside the triangle, and
+     * otherwise it can only touch one of the edges or vertices first.
+     *
+     * @return The fraction along the ray where the sphere first touches the triangle, or -1 if it
+     *         never does.
+     */
+    private float sweepTriangle(int triangle, float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius)
+    {
+        int i0 = indices[triangle * 3] * 3;
+        int i1 = indices[triangle * 3 + 1] * 3;
+        int i2 = indices[triangle * 3 + 2] * 3;
+
+        float e1x = vertices[i1] - vertices[i0], e1y = vertices[i1 + 1] - vertices[i0 + 1], e1z = vertices[i1 + 2] - vertices[i0 + 2];
+        float e2x = vertices[i2] - vertices[i0], e2y = vertices[i2 + 1] - vertices[i0 + 1], e2z = vertices[i2 + 2] - vertices[i0 + 2];
+        float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        if (length > 0.0F)
+        {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+
+            float distance = (originX - vertices[i0]) * nx + (originY - vertices[i0 + 1]) * ny + (originZ - vertices[i0 + 2]) * nz;
+            float speed = directionX * nx + directionY * ny + directionZ * nz;
+            float side = distance < 0.0F ? -1.0F : 1.0F;
+            float fraction = -1.0F;
+
+            if (Math.abs(distance) <= radius)
+                fraction = 0.0F;
+            else if (speed * side < 0.0F)
+                fraction = (Math.abs(distance) - radius) / -(speed * side);
+
+            if (fraction >= 0.0F)
+            {
+                // Project the center of the sphere onto the plane, and check it is inside the triangle
+                // with its barycentric coordinates.
+                float offset = distance + speed * fraction;
+                float px = originX + directionX * fraction - nx * offset;
+                float py = originY + directionY * fraction - ny * offset;
+                float pz = originZ + directionZ * fraction - nz * offset;
+                float qx = px - vertices[i0], qy = py - vertices[i0 + 1], qz = pz - vertices[i0 + 2];
+                float d11 = e1x * e1x + e1y * e1y + e1z * e1z, d12 = e1x * e2x + e1y * e2y + e1z * e2z, d22 = e2x * e2x + e2y * e2y + e2z * e2z;
+                float dq1 = qx * e1x + qy * e1y + qz * e1z, dq2 = qx * e2x + qy * e2y + qz * e2z;
+                float denominator = d11 * d22 - d12 * d12;
+                float u = (d22 * dq1 - d12 * dq2) / denominator;
+                float v = (d11 * dq2 - d12 * dq1) / denominator;
+
+                if (u >= 0.0F && v >= 0.0F && u + v <= 1.0F)
+                    return fraction;
+            }
+        }
+
+        float closest = Float.POSITIVE_INFINITY;
+        closest = Math.min(closest, sweepEdge(i0, i1, originX, originY, originZ, directionX, directionY, directionZ, radius));
+        closest = Math.min(closest, sweepEdge(i1, i2, originX, originY, originZ, directionX, directionY, directionZ, radius));
+        closest = Math.min(closest, sweepEdge(i2, i0, originX, originY, originZ, directionX, directionY, directionZ, radius));
+        return closest < Float.POSITIVE_INFINITY ? closest : -1.0F;
+    }
+
+    /**
+     * Sweeps a sphere along a ray against the edge between two vertices, which is a capsule of the
+     * radius of the sphere around the edge.
+     *
+     * @return The fraction along the ray where the sphere first touches the edge, or positive
+     *         infinity if it never does.
+     */
+    private float sweepEdge(int i0, int i1, float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius)
+    {
+        float ex = vertices[i1] - vertices[i0], ey = vertices[i1 + 1] - vertices[i0 + 1], ez = vertices[i1 + 2] - vertices[i0 + 2];
+        float mx = originX - vertices[i0], my = originY - vertices[i0 + 1], mz = originZ - vertices[i0 + 2];
+        float ee = ex * ex + ey * ey + ez * ez;
+        float md = mx * ex + my * ey + mz * ez;
+        float nd = directionX * ex + directionY * ey + directionZ * ez;
+        float dd = directionX * directionX + directionY * directionY + directionZ * directionZ;
+        float mn = mx * directionX + my * directionY + mz * directionZ;
+        float mm = mx * mx + my * my + mz * mz;
+
+        // Intersect the ray with the infinite cylinder around the edge, and keep the hit if it is
+        // between the two vertices.
+        float a = ee * dd - nd * nd;
+        float b = ee * mn - nd * md;
+        float c = ee * (mm - radius * radius) - md * md;
+
+        if (a > 1e-12F)
+        {
+            float discriminant = b * b - a * c;
+
+            if (discriminant >= 0.0F)
+            {
+                float fraction = Math.max((-b - (float) Math.sqrt(discriminant)) / a, 0.0F);
+                float s = md + fraction * nd;
+
+                if (s >= 0.0F && s <= ee && (fraction > 0.0F || c <= 0.0F))
+                    return fraction;
+            }
+        }
+
+        return Math.min(sweepVertex(i0, originX, originY, originZ, directionX, directionY, directionZ, radius), sweepVertex(i1, originX, originY, originZ, directionX, directionY, directionZ, radius));
+    }
+
+    private float sweepVertex(int i, float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float radius)
+    {
+        float mx = originX - vertices[i], my = originY - vertices[i + 1], mz = originZ - vertices[i + 2];
+        float a = directionX * directionX + directionY * directionY + directionZ * directionZ;
+        float b = mx * directionX + my * directionY + mz * directionZ;
+        float c = mx * mx + my * my + mz * mz - radius * radius;
+
+        if (c <= 0.0F)
+            return 0.0F;
+
+        float discriminant = b * b - a * c;
+
+        if (b > 0.0F || discriminant < 0.0F)
+            return Float.POSITIVE_INFINITY;
+
+        return (-b - (float) Math.sqrt(discriminant)) / a;
+    }
+
+    /**
+     * Gets the vertices of a triangle, in the local space of the mesh.
+     */
+    public void getTriangle(int triangle, Vector3f v0, Vector3f v1, Vector3f v2)
+    {
+        int i0 = indices[triangle * 3] * 3;
+        int i1 = indices[triangle * 3 + 1] * 3;
+        int i2 = indices[triangle * 3 + 2] * 3;
+
+        v0.set(vertices[i0], vertices[i0 + 1], vertices[i0 + 2]);
+        v1.set(vertices[i1], vertices[i1 + 1], vertices[i1 + 2]);
+        v2.set(vertices[i2], vertices[i2 + 1], vertices[i2 + 2]);
+    }
+
+    void getTriangle(int triangle, TriangleShape dest)
+    {
+        dest.set(vertices, indices[triangle * 3], indices[triangle * 3 + 1], indices[triangle * 3 + 2]);
+    }
+
+    /**
+     * Gets the unit normal of a triangle, following the winding of its vertices.
+     */
+    public Vector3f getNormal(int triangle, Vector3f dest)
+    {
+        if (dest == null)
+            dest = new Vector3f();
+
+        int i0 = indices[triangle * 3] * 3;
+        int i1 = indices[triangle * 3 + 1] * 3;
+        int i2 = indices[triangle * 3 + 2] * 3;
+
+        float e1x = vertices[i1] - vertices[i0], e1y = vertices[i1 + 1] - vertices[i0 + 1], e1z = vertices[i1 + 2] - vertices[i0 + 2];
+        float e2x = vertices[i2] - vertices[i0], e2y = vertices[i2 + 1] - vertices[i0 + 1], e2z = vertices[i2 + 2] - vertices[i0 + 2];
+        float nx = e1y * e2z - e1z * e2y;
+        float ny = e1z * e2x - e1x * e2z;
+        float nz = e1x * e2y - e1y * e2x;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        if (length > 0.0F)
+            dest.set(nx / length, ny / length, nz / length);
+        else
+            dest.set(0.0F, 1.0F, 0.0F);
+
+        return dest;
+    }
+
+    /**
+     * Gets the index that a triangle of this collider had in the source mesh.
+     */
+    public int getSourceTriangle(int triangle)
+    {
+        return sourceTriangles[triangle];
+    }
+
+    public int getTriangleCount()
+    {
+        return triangleCount;
+    }
+
+    public int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * Gets the depth of the hierarchy, which is 1 for a hierarchy with only a root node.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    @Override
+    public AxisAlignedBB getBounds(AxisAlignedBB dest)
+    {
+        if (dest == null)
+            dest = new AxisAlignedBB(0.0F, 0.0F, 0.0F, 0.0F, 0.0F, 0.0F);
+
+        if (nodeCount == 0)
+        {
+            dest.getPosition().set(0.0F, 0.0F, 0.0F);
+            dest.getHalfExtents().set(0.0F, 0.0F, 0.0F);
+            return dest;
+        }
+
+        dest.getPosition().set((nodeBounds[0] + nodeBounds[3]) * 0.5F, (nodeBounds[1] + nodeBounds[4]) * 0.5F, (nodeBounds[2] + nodeBounds[5]) * 0.5F);
+        dest.getHalfExtents().set((nodeBounds[3] - nodeBounds[0]) * 0.5F, (nodeBounds[4] - nodeBounds[1]) * 0.5F, (nodeBounds[5] - nodeBounds[2]) * 0.5F);
+        return dest;
+    }
+
+    /**
+     * Builds the hierarchy top down. The scratch memory is only needed while building, so it is
+     * kept here rather than in the shape.
+     */
+    private class Builder
+    {
+        private final int[] sourceIndices;
+        private final int[] order;
+        private final float[] triangleBounds;
+        private final float[] centroids;
+
+        private final int[] binCount = new int[BIN_COUNT];
+        private final float[] binBounds = new float[BIN_COUNT * BOUNDS_STRIDE];
+        private final float[] rightArea = new float[BIN_COUNT];
+        private final int[] rightCount = new int[BIN_COUNT];
+        private final float[] box = new float[BOUNDS_STRIDE];
+
+        Builder(int[] sourceIndices)
+        {
+            this.sourceIndices = sourceIndices;
+            this.order = new int[triangleCount];
+            this.triangleBounds = new float[triangleCount * BOUNDS_STRIDE];
+            this.centroids = new float[triangleCount * 3];
+
+            for (int i = 0; i < triangleCount; i++)
+            {
+                int i0 = sourceIndices[i * 3] * 3;
+                int i1 = sourceIndices[i * 3 + 1] * 3;
+                int i2 = sourceIndices[i * 3 + 2] * 3;
+                int b = i * BOUNDS_STRIDE;
+
+                for (int axis = 0; axis < 3; axis++)
+                {
+                    triangleBounds[b + axis] = Math.min(vertices[i0 + axis], Math.min(vertices[i1 + axis], vertices[i2 + axis]));
+                    triangleBounds[b + 3 + axis] = Math.max(vertices[i0 + axis], Math.max(vertices[i1 + axis], vertices[i2 + axis]));
+                    centroids[i * 3 + axis] = (triangleBounds[b + axis] + triangleBounds[b + 3 + axis]) * 0.5F;
+                }
+
+                order[i] = i;
+            }
+        }
+
+        void build()
+        {
+            int capacity = Math.max(1, triangleCount * 2 - 1);
+            nodeBounds = new float[capacity * BOUNDS_STRIDE];
+            nodes = new int[capacity * NODE_STRIDE];
+            nodeCount = 0;
+            depth = 0;
+
+            if (triangleCount > 0)
+                buildNode(0, triangleCount, 1);
+
+            for (int i = 0; i < triangleCount; i++)
+            {
+                int source = order[i];
+                indices[i * 3] = sourceIndices[source * 3];
+                indices[i * 3 + 1] = sourceIndices[source * 3 + 1];
+                indices[i * 3 + 2] = sourceIndices[source * 3 + 2];
+                sourceTriangles[i] = source;
+            }
+        }
+
+        private int buildNode(int start, int end, int level)
+        {
+            int node = nodeCount++;
+            int b = node * BOUNDS_STRIDE;
+            depth = Math.max(depth, level);
+
+            float centroidMinX = Float.POSITIVE_INFINITY, centroidMinY = Float.POSITIVE_INFINITY, centroidMinZ = Float.POSITIVE_INFINITY;
+            float centroidMaxX = Float.NEGATIVE_INFINITY, centroidMaxY = Float.NEGATIVE_INFINITY, centroidMaxZ = Float.NEGATIVE_INFINITY;
+            clear(nodeBounds, b);
+
+            for (int i = start; i < end; i++)
+            {
+                int triangle = order[i];
+                include(nodeBounds, b, triangleBounds, triangle * BOUNDS_STRIDE);
+                centroidMinX = Math.min(centroidMinX, centroids[triangle * 3]);
+                centroidMinY = Math.min(centroidMinY, centroids[triangle * 3 + 1]);
+                centroidMinZ = Math.min(centroidMinZ, centroids[triangle * 3 + 2]);
+                centroidMaxX = Math.max(centroidMaxX, centroids[triangle * 3]);
+                centroidMaxY = Math.max(centroidMaxY, centroids[triangle * 3 + 1]);
+                centroidMaxZ = Math.max(centroidMaxZ, centroids[triangle * 3 + 2]);
+            }
+
+            int count = end - start;
+
+            if (count <= MIN_LEAF_TRIANGLES || level >= MAX_DEPTH)
+                return makeLeaf(node, start, count);
+
+            // Find the cheapest split between the centroid bins on each axis.
+            float area = area(nodeBounds, b);
+            float bestCost = Float.POSITIVE_INFINITY;
+            int bestAxis = -1;
+            int bestSplit = -1;
+
+            for (int axis = 0; axis < 3; axis++)
+            {
+                float min = axis == 0 ? centroidMinX : axis == 1 ? centroidMinY : centroidMinZ;
+                float max = axis == 0 ? centroidMaxX : axis == 1 ? centroidMaxY : centroidMaxZ;
+
+                if (max - min <= 1e-12F)
+                    continue;
+
+                float scale = BIN_COUNT / (max - min);
+
+                for (int bin = 0; bin < BIN_COUNT; bin++)
+                {
+                    binCount[bin] = 0;
+                    clear(binBounds, bin * BOUNDS_STRIDE);
+                }
+
+                for (int i = start; i < end; i++)
+                {
+                    int triangle = order[i];
+                    int bin = getBin(centroids[triangle * 3 + axis], min, scale);
+                    binCount[bin]++;
+                    include(binBounds, bin * BOUNDS_STRIDE, triangleBounds, triangle * BOUNDS_STRIDE);
+                }
+
+                clear(box, 0);
+                int accumulated = 0;
+
+                for (int bin = BIN_COUNT - 1; bin > 0; bin--)
+                {
+                    include(box, 0, binBounds, bin * BOUNDS_STRIDE);
+                    accumulated += binCount[bin];
+                    rightArea[bin] = area(box, 0);
+                    rightCount[bin] = accumulated;
+                }
+
+                clear(box, 0);
+                accumulated = 0;
+
+                for (int split = 1; split < BIN_COUNT; split++)
+                {
+                    include(box, 0, binBounds, (split - 1) * BOUNDS_STRIDE);
+                    accumulated += binCount[split - 1];
+
+                    if (accumulated == 0 || rightCount[split] == 0)
+                        continue;
+
+                    float cost = TRAVERSAL_COST * area + area(box, 0) * accumulated + rightArea[split] * rightCount[split];
+
+                    if (cost < bestCost)
+                    {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestSplit = split;
+                    }
+                }
+            }
+
+            if (count <= MAX_LEAF_TRIANGLES && area * count <= bestCost)
+                return makeLeaf(node, start, count);
+
+            int middle;
+
+            if (bestAxis < 0)
+            {
+                // All of the centroids are in the same place, so any split is as good as another.
+                middle = (start + end) >>> 1;
+            } else
+            {
+                float min = bestAxis == 0 ? centroidMinX : bestAxis == 1 ? centroidMinY : centroidMinZ;
+                float max = bestAxis == 0 ? centroidMaxX : bestAxis == 1 ? centroidMaxY : centroidMaxZ;
+                middle = partition(start, end, bestAxis, bestSplit, min, BIN_COUNT / (max - min));
+            }
+
+            buildNode(start, middle, level + 1);
+            int second = buildNode(middle, end, level + 1);
+
+            nodes[node * NODE_STRIDE + OFFSET] = second;
+            nodes[node * NODE_STRIDE + COUNT] = 0;
+            return node;
+        }
+
+        private int makeLeaf(int node, int start, int count)
+        {
+            nodes[node * NODE_STRIDE + OFFSET] = start;
+            nodes[node * NODE_STRIDE + COUNT] = count;
+            return node;
+        }
+
+        private int partition(int start, int end, int axis, int split, float min, float scale)
+        {
+            int i = start;
+            int j = end - 1;
+
+            while (i <= j)
+            {
+                if (getBin(centroids[order[i] * 3 + axis], min, scale) < split)
+                {
+                    i++;
+                } else
+                {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j--] = swap;
+                }
+            }
+
+            return i;
+        }
+
+        private int getBin(float centroid, float min, float scale)
+        {
+            return Math.min(BIN_COUNT - 1, (int) ((centroid - min) * scale));
+        }
+
+        private void clear(float[] bounds, int b)
+        {
+            bounds[b] = bounds[b + 1] = bounds[b + 2] = Float.POSITIVE_INFINITY;
+            bounds[b + 3] = bounds[b + 4] = bounds[b + 5] = Float.NEGATIVE_INFINITY;
+        }
+
+        private void include(float[] bounds, int b, float[] other, int o)
+        {
+            bounds[b] = Math.min(bounds[b], other[o]);
+            bounds[b + 1] = Math.min(bounds[b + 1], other[o + 1]);
+            bounds[b + 2] = Math.min(bounds[b + 2], other[o + 2]);
+            bounds[b + 3] = Math.max(bounds[b + 3], other[o + 3]);
+            bounds[b + 4] = Math.max(bounds[b + 4], other[o + 4]);
+            bounds[b + 5] = Math.max(bounds[b + 5], other[o + 5]);
+        }
+
+        private float area(float[] bounds, int b)
+        {
+            float x = bounds[b + 3] - bounds[b];
+            float y = bounds[b + 4] - bounds[b + 1];
+            float z = bounds[b + 5] - bounds[b + 2];
+            return x * y + y * z + z * x;
+        }
+    }
+
+    public interface TriangleCallback
+    {
+        /**
+         * Called for each triangle found by a query.
+         *
+         * @return false to stop the query.
+         */
+        boolean processTriangle(int triangle);
+    }
+
+    public interface ContactCallback
+    {
+        /**
+         * Called for each triangle of the mesh that a shape is in contact with. The mesh is shape A
+         * of the result, so the normal points out of the mesh towards the other shape.
+         */
+        void addContact(int triangle, CollisionResult result);
+    }
+}
@@ -0,0 +1,58 @@
+package main.physics.collision;
+
+import main.core.scene.boundingbox.AxisAlignedBB;
+import org.lwjgl.util.vector.Vector3f;
+
+/**
+ * A single triangle of a triangle mesh, used to run the convex narrowphase against the triangles
+ * of a mesh one at a time. The triangle is reused for every test, so it is never shared between
+ * threads.
+ *
+ * @author Kelan
+ */
+class TriangleShape implements ConvexShape
+{
+    final float[] vertices = new float[9];
+
+    void set(float[] meshVertices, int v0, int v1, int v2)
+    {
+        System.arraycopy(meshVertices, v0 * 3, vertices, 0, 3);
+        System.arraycopy(meshVertices, v1 * 3, vertices, 3, 3);
+        System.arraycopy(meshVertices, v2 * 3, vertices, 6, 3);
+    }
+
+    @Override
+    public void getSupport(float directionX, float directionY, float directionZ, Vector3f dest)
+    {
+        float d0 = vertices[0] * directionX + vertices[1] * directionY + vertices[2] * directionZ;
+        float d1 = vertices[3] * directionX + vertices[4] * directionY + vertices[5] * directionZ;
+        float d2 = vertices[6] * directionX + vertices[7] * directionY + vertices[8] * directionZ;
+
+        int i = d0 >= d1 ? (d0 >= d2 ? 0 : 6) : (d1 >= d2 ? 3 : 6);
+        dest.set(vertices[i], vertices[i + 1], vertices[i + 2]);
+    }
+
+    @Override
+    public float getRadius()
+    {
+        return 0.0F;
+    }
+
+    @Override
+    public AxisAlignedBB getBounds(AxisAlignedBB dest)
+    {
+        float minX = Math.min(vertices[0], Math.min(vertices[3], vertices[6]));
+        float minY = Math.min(vertices[1], Math.min(vertices[4], vertices[7]));
+        float minZ = Math.min(vertices[2], Math.min(vertices[5], vertices[8]));
+        float maxX = Math.max(vertices[0], Math.max(vertices[3], vertices[6]));
+        float maxY = Math.max(vertices[1], Math.max(vertices[4], vertices[7]));
+        float maxZ = Math.max(vertices[2], Math.max(vertices[5], vertices[8]));
+
+        if (dest == null)
+            dest = new AxisAlignedBB(0.0F, 0.0F, 0.0F, 0.0F, 0.0F, 0.0F);
+
+        dest.getPosition().set((minX + maxX) * 0.5F, (minY + maxY) * 0.5F, (minZ + maxZ) * 0.5F);
+        dest.getHalfExtents().set((maxX - minX) * 0.5F, (maxY - minY) * 0.5F, (maxZ - minZ) * 0.5F);
+        return dest;
+    }
+}